@@ -164,6 +164,11 @@
 -keep interface com.squareup.okhttp.** { *; }
 -dontwarn com.squareup.okhttp.**
 
+# OkHttp3
+-dontwarn okhttp3.**
+-dontwarn org.conscrypt.**
+-keepnames class okhttp3.internal.publicsuffix.PublicSuffixDatabase
+
 # support design
 -dontwarn android.support.design.**
 -keep class android.support.design.** { *; }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * Compares the {@link SpeechCodec} with the GZIP it replaced, on the speech the text to speech
+ * engines on this device have produced, as held in the speech cache. The ratio, encode speed and
+ * decode speed of each are written to the log.
+ * <p>
+ * Entries stored by the codec are decoded first, so their audio carries its quantisation noise,
+ * which makes it a little harder for GZIP than the original output. Run the application and let
+ * it speak for a while first, as with an empty cache there is nothing to compare.
+ */
+public class SpeechCodecCacheTest extends AndroidTestCase {
+
+    private static final String TAG = SpeechCodecCacheTest.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "speech.db";
+    private static final String TABLE_SPEECH = "table_speech";
+    private static final String COLUMN_BINARY = "binary";
+    private static final int MAX_ENTRIES = 50;
+
+    public void testCodecAgainstGzipOnCachedSpeech() {
+
+        final File path = getContext().getDatabasePath(DATABASE_NAME);
+
+        if (!path.exists()) {
+            Log.w(TAG, "no speech cache to compare");
+            return;
+        }
+
+        final SQLiteDatabase database = SQLiteDatabase.openDatabase(path.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+
+        int entries = 0;
+        double seconds = 0;
+        long audioBytes = 0;
+        long codecBytes = 0;
+        long gzipBytes = 0;
+        long codecEncode = 0;
+        long codecDecode = 0;
+        long gzipEncode = 0;
+        long gzipDecode = 0;
+
+        try {
+
+            final Cursor cursor = database.query(TABLE_SPEECH, new String[]{COLUMN_BINARY}, null, null,
+                    null, null, null, String.valueOf(MAX_ENTRIES));
+
+            byte[] stored;
+            byte[] audio;
+            byte[] encoded;
+            byte[] gzip;
+            long then;
+
+            while (cursor.moveToNext()) {
+
+                try {
+                    stored = cursor.getBlob(0);
+                } catch (final SQLiteException e) {
+                    Log.w(TAG, "entry too large to read");
+                    continue;
+                }
+
+                audio = SpeechCodec.isEncoded(stored) ? SpeechCodec.decode(stored) : AudioCompression.gunzip(stored);
+
+                if (audio == null || !SpeechCodec.canEncode(audio)) {
+                    continue;
+                }
+
+                then = System.nanoTime();
+                encoded = SpeechCodec.encode(audio);
+                codecEncode += System.nanoTime() - then;
+
+                then = System.nanoTime();
+                SpeechCodec.decode(encoded);
+                codecDecode += System.nanoTime() - then;
+
+                then = System.nanoTime();
+                gzip = AudioCompression.gzip(audio);
+                gzipEncode += System.nanoTime() - then;
+
+                assertNotNull(gzip);
+
+                then = System.nanoTime();
+                AudioCompression.gunzip(gzip);
+                gzipDecode += System.nanoTime() - then;
+
+                entries++;
+                seconds += (double) SpeechCodec.getDecodedLength(encoded) / (SpeechCodec.getSampleRate(encoded) * 2);
+                audioBytes += audio.length;
+                codecBytes += encoded.length;
+                gzipBytes += gzip.length;
+            }
+
+            cursor.close();
+
+        } finally {
+            database.close();
+        }
+
+        if (entries == 0) {
+            Log.w(TAG, "no cached speech the codec can encode");
+            return;
+        }
+
+        Log.i(TAG, String.format(Locale.US, "%d entries, %.1fs of speech", entries, seconds));
+        Log.i(TAG, report("codec", audioBytes, codecBytes, seconds, codecEncode, codecDecode));
+        Log.i(TAG, report("gzip", audioBytes, gzipBytes, seconds, gzipEncode, gzipDecode));
+
+        assertTrue("codec " + codecBytes + " gzip " + gzipBytes, codecBytes < gzipBytes);
+    }
+
+    private static String report(final String name, final long audioBytes, final long compressedBytes,
+                                 final double seconds, final long encodeNanos, final long decodeNanos) {
+        return String.format(Locale.US, "%s: ratio %.2f, encode %.0fx real time, decode %.0fx real time",
+                name, (double) audioBytes / compressedBytes, seconds * 1000000000D / Math.max(encodeNanos, 1),
+                seconds * 1000000000D / Math.max(decodeNanos, 1));
+    }
+}
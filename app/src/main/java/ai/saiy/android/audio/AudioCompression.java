@@ -37,7 +37,8 @@ import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.UtilsFile;
 
 /**
- * Class to handle compression of audio bytes.
+ * Class to handle compression of audio bytes. Audio is stored using the {@link SpeechCodec}, with
+ * entries written by earlier versions still readable via GZIP.
  * <p>
  * Created by benrandall76@gmail.com on 27/04/2016.
  */
@@ -47,7 +48,8 @@ public class AudioCompression {
     private static final String CLS_NAME = AudioCompression.class.getSimpleName();
 
     /**
-     * Compress the audio bytes using GZIP
+     * Compress the audio bytes using the {@link SpeechCodec}, or GZIP if the audio is not in a
+     * format the codec supports
      *
      * @param listener the {@link IAudioCompression}
      * @param bytes    the byte array to compress
@@ -59,6 +61,80 @@ public class AudioCompression {
 
         final long then = System.nanoTime();
 
+        byte[] returnBytes = null;
+
+        try {
+            if (SpeechCodec.canEncode(bytes)) {
+                returnBytes = SpeechCodec.encode(bytes);
+            } else {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "compressBytes: unsupported format, using gzip");
+                }
+                returnBytes = gzip(bytes);
+            }
+
+            if (DEBUG) {
+                MyLog.d(CLS_NAME, "compressBytes returnBytes size: " + returnBytes.length);
+            }
+        } catch (final ArrayIndexOutOfBoundsException e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "compressBytes ArrayIndexOutOfBoundsException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "compressBytes Exception");
+                e.printStackTrace();
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.getElapsed(CLS_NAME, then);
+        }
+
+        listener.onCompressionCompleted(returnBytes);
+    }
+
+    /**
+     * Decode the stored audio bytes, using the {@link SpeechCodec} if the header is recognised, or
+     * GZIP for entries written by earlier versions.
+     *
+     * @param bytes the stored audio bytes
+     * @return the uncompressed audio bytes, or null if this was not possible
+     */
+    private static byte[] decode(@NonNull final byte[] bytes) {
+
+        if (SpeechCodec.isEncoded(bytes)) {
+
+            try {
+                return SpeechCodec.decode(bytes);
+            } catch (final ArrayIndexOutOfBoundsException e) {
+                if (DEBUG) {
+                    MyLog.e(CLS_NAME, "decode ArrayIndexOutOfBoundsException");
+                    e.printStackTrace();
+                }
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.e(CLS_NAME, "decode Exception");
+                    e.printStackTrace();
+                }
+            }
+
+            return null;
+        }
+
+        return gunzip(bytes);
+    }
+
+    /**
+     * Compress the audio bytes using GZIP. This is used to store audio the {@link SpeechCodec} cannot
+     * encode, and for the comparison against the codec in the audio path tests.
+     *
+     * @param bytes the byte array to compress
+     * @return the compressed bytes or null if the process failed
+     */
+    public static byte[] gzip(@NonNull final byte[] bytes) {
+
         ByteArrayOutputStream byteArrayOutputStream = null;
         GZIPOutputStream gzipOutputStream = null;
         byte[] returnBytes = null;
@@ -76,17 +152,17 @@ public class AudioCompression {
 
         } catch (final IOException e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "compressBytes IOException1");
+                MyLog.e(CLS_NAME, "gzip IOException1");
                 e.printStackTrace();
             }
         } catch (final NullPointerException e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "compressBytes NullPointerException1");
+                MyLog.e(CLS_NAME, "gzip NullPointerException1");
                 e.printStackTrace();
             }
         } catch (final Exception e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "compressBytes Exception1");
+                MyLog.e(CLS_NAME, "gzip Exception1");
                 e.printStackTrace();
             }
         } finally {
@@ -99,57 +175,41 @@ public class AudioCompression {
 
                 if (byteArrayOutputStream != null) {
                     byteArrayOutputStream.close();
-
                     returnBytes = byteArrayOutputStream.toByteArray();
-
-                    if (DEBUG) {
-                        MyLog.d(CLS_NAME, "compressBytes returnBytes size: " + returnBytes.length);
-                    }
                 } else {
                     if (DEBUG) {
-                        MyLog.w(CLS_NAME, "compressBytes byteArrayOutputStream: null");
+                        MyLog.w(CLS_NAME, "gzip byteArrayOutputStream: null");
                     }
                 }
 
             } catch (final IOException e) {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "compressBytes IOException");
+                    MyLog.e(CLS_NAME, "gzip IOException");
                     e.printStackTrace();
                 }
             } catch (final NullPointerException e) {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "compressBytes NullPointerException");
+                    MyLog.e(CLS_NAME, "gzip NullPointerException");
                     e.printStackTrace();
                 }
             } catch (final Exception e) {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "compressBytes Exception");
+                    MyLog.e(CLS_NAME, "gzip Exception");
                     e.printStackTrace();
                 }
             }
         }
 
-        if (DEBUG) {
-            MyLog.getElapsed(CLS_NAME, then);
-        }
-
-        listener.onCompressionCompleted(returnBytes);
+        return returnBytes;
     }
 
     /**
-     * Decompress the audio bytes
+     * Decompress GZIP audio bytes
      *
-     * @param ctx   the application context
-     * @param bytes the array of audio bytes
-     * @param rowId the row id of the {@link DBSpeech} they were stored in
-     * @return an array of decompressed audio bytes
+     * @param bytes the compressed bytes
+     * @return the decompressed bytes or null if the process failed
      */
-    public static byte[] decompressBytes(final Context ctx, final byte[] bytes, final long rowId) {
-        if (DEBUG) {
-            MyLog.d(CLS_NAME, "decompressBytes bytes size: " + bytes.length);
-        }
-
-        final long then = System.nanoTime();
+    public static byte[] gunzip(@NonNull final byte[] bytes) {
 
         ByteArrayInputStream byteArrayInputStream = null;
         GZIPInputStream gzipInputStream = null;
@@ -171,17 +231,17 @@ public class AudioCompression {
 
         } catch (final IOException e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "decompressBytes IOException");
+                MyLog.e(CLS_NAME, "gunzip IOException");
                 e.printStackTrace();
             }
         } catch (final NullPointerException e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "decompressBytes NullPointerException");
+                MyLog.e(CLS_NAME, "gunzip NullPointerException");
                 e.printStackTrace();
             }
         } catch (final Exception e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "decompressBytes Exception");
+                MyLog.e(CLS_NAME, "gunzip Exception");
                 e.printStackTrace();
             }
 
@@ -199,35 +259,54 @@ public class AudioCompression {
 
                 if (byteArrayOutputStream != null) {
                     byteArrayOutputStream.close();
-
                     returnBytes = byteArrayOutputStream.toByteArray();
-
-                    if (DEBUG) {
-                        MyLog.d(CLS_NAME, "decompressBytes returnBytes size: " + returnBytes.length);
-                    }
                 } else {
                     if (DEBUG) {
-                        MyLog.w(CLS_NAME, "decompressBytes byteArrayOutputStream: null");
+                        MyLog.w(CLS_NAME, "gunzip byteArrayOutputStream: null");
                     }
                 }
             } catch (final IOException e) {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "decompressBytes IOException");
+                    MyLog.e(CLS_NAME, "gunzip IOException");
                     e.printStackTrace();
                 }
             } catch (final NullPointerException e) {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "decompressBytes NullPointerException");
+                    MyLog.e(CLS_NAME, "gunzip NullPointerException");
                     e.printStackTrace();
                 }
             } catch (final Exception e) {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "decompressBytes Exception");
+                    MyLog.e(CLS_NAME, "gunzip Exception");
                     e.printStackTrace();
                 }
             }
         }
 
+        return returnBytes;
+    }
+
+    /**
+     * Decompress the audio bytes
+     *
+     * @param ctx   the application context
+     * @param bytes the array of audio bytes
+     * @param rowId the row id of the {@link DBSpeech} they were stored in
+     * @return an array of decompressed audio bytes
+     */
+    public static byte[] decompressBytes(final Context ctx, final byte[] bytes, final long rowId) {
+        if (DEBUG) {
+            MyLog.d(CLS_NAME, "decompressBytes bytes size: " + bytes.length);
+        }
+
+        final long then = System.nanoTime();
+
+        final byte[] returnBytes = decode(bytes);
+
+        if (DEBUG && returnBytes != null) {
+            MyLog.d(CLS_NAME, "decompressBytes returnBytes size: " + returnBytes.length);
+        }
+
         if (returnBytes == null || returnBytes.length <= 0) {
             if (DEBUG) {
                 MyLog.w(CLS_NAME, "decompressBytes null or empty: deleting entry");
@@ -266,105 +345,52 @@ public class AudioCompression {
         final long then = System.nanoTime();
 
         File tempAudioFile = null;
-        ByteArrayInputStream byteArrayInputStream = null;
-        GZIPInputStream gzipInputStream = null;
-        ByteArrayOutputStream byteArrayOutputStream = null;
-        byte[] returnBytes = null;
+        final byte[] returnBytes = decode(bytes);
 
-        try {
-
-            byteArrayInputStream = new ByteArrayInputStream(bytes);
-            gzipInputStream = new GZIPInputStream(byteArrayInputStream);
-            byteArrayOutputStream = new ByteArrayOutputStream();
-
-            final byte[] buffer = new byte[1024];
-
-            int count;
-            while ((count = gzipInputStream.read(buffer)) > 0) {
-                byteArrayOutputStream.write(buffer, 0, count);
-            }
-
-        } catch (final IOException e) {
-            if (DEBUG) {
-                MyLog.e(CLS_NAME, "decompressBytesToFile IOException");
-                e.printStackTrace();
-            }
-        } catch (final NullPointerException e) {
-            if (DEBUG) {
-                MyLog.e(CLS_NAME, "decompressBytesToFile NullPointerException");
-                e.printStackTrace();
-            }
-        } catch (final Exception e) {
+        if (returnBytes != null && returnBytes.length > 0) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "decompressBytesToFile Exception");
-                e.printStackTrace();
+                MyLog.d(CLS_NAME, "decompressBytesToFile returnBytes size: " + returnBytes.length);
             }
 
-        } finally {
-
-            try {
-
-                if (byteArrayInputStream != null) {
-                    byteArrayInputStream.close();
-                }
+            tempAudioFile = UtilsFile.getTempAudioFile(ctx);
 
-                if (gzipInputStream != null) {
-                    gzipInputStream.close();
+            if (tempAudioFile != null) {
+                if (DEBUG) {
+                    MyLog.d(CLS_NAME, "decompressBytesToFile: file name: " + tempAudioFile.getName());
                 }
 
-                if (byteArrayOutputStream != null) {
-
-                    returnBytes = byteArrayOutputStream.toByteArray();
-
-                    if (returnBytes != null && returnBytes.length > 0) {
-                        if (DEBUG) {
-                            MyLog.d(CLS_NAME, "decompressBytesToFile returnBytes size: " + returnBytes.length);
-                        }
+                FileOutputStream fos = null;
 
-                        tempAudioFile = UtilsFile.getTempAudioFile(ctx);
-
-                        if (tempAudioFile != null) {
-                            if (DEBUG) {
-                                MyLog.d(CLS_NAME, "decompressBytesToFile: file name: " + tempAudioFile.getName());
-                            }
-
-                            final FileOutputStream fos = new FileOutputStream(tempAudioFile);
-                            byteArrayOutputStream.writeTo(fos);
-                            byteArrayOutputStream.close();
-                            fos.write(bytes);
-                            fos.flush();
+                try {
+                    fos = new FileOutputStream(tempAudioFile);
+                    fos.write(returnBytes);
+                    fos.flush();
+                } catch (final IOException e) {
+                    if (DEBUG) {
+                        MyLog.e(CLS_NAME, "decompressBytesToFile IOException");
+                        e.printStackTrace();
+                    }
+                } finally {
+                    try {
+                        if (fos != null) {
                             fos.close();
-                        } else {
-                            if (DEBUG) {
-                                MyLog.w(CLS_NAME, "tempAudioFile null");
-                            }
                         }
-                    } else {
+                    } catch (final IOException e) {
                         if (DEBUG) {
-                            MyLog.d(CLS_NAME, "decompressBytesToFile returnBytes null or empty");
+                            MyLog.e(CLS_NAME, "decompressBytesToFile close IOException");
+                            e.printStackTrace();
                         }
                     }
-                } else {
-                    if (DEBUG) {
-                        MyLog.w(CLS_NAME, "decompressBytesToFile byteArrayOutputStream: null");
-                    }
                 }
-            } catch (final IOException e) {
+            } else {
                 if (DEBUG) {
-                    MyLog.e(CLS_NAME, "decompressBytesToFile IOException");
-                    e.printStackTrace();
-                }
-            } catch (final NullPointerException e) {
-                if (DEBUG) {
-                    MyLog.e(CLS_NAME, "decompressBytesToFile NullPointerException");
-                    e.printStackTrace();
-                }
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    MyLog.e(CLS_NAME, "decompressBytesToFile Exception");
-                    e.printStackTrace();
+                    MyLog.w(CLS_NAME, "tempAudioFile null");
                 }
             }
+        } else {
+            if (DEBUG) {
+                MyLog.d(CLS_NAME, "decompressBytesToFile returnBytes null or empty");
+            }
         }
 
         if (returnBytes == null || returnBytes.length <= 0) {
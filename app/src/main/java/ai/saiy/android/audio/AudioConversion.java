@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Conversions between the PCM layouts used by the capture and its consumers: little-endian 16 bit
+ * bytes as read from the microphone, 16 bit samples, normalised floats, and interleaved channels
+ * mixed down to mono. Each loop is a single pass over primitive arrays, with no allocation, so it
+ * can be applied to every captured buffer.
+ */
+public final class AudioConversion {
+
+    private static final float TO_FLOAT = 1f / 32768f;
+    private static final float TO_SHORT = 32767f;
+
+    /**
+     * Prevent instantiation
+     */
+    private AudioConversion() {
+    }
+
+    /**
+     * Little-endian 16 bit bytes to samples
+     *
+     * @param bytes  the PCM bytes
+     * @param length the number of valid bytes
+     * @param output the output array, of at least length / 2
+     * @return the number of samples written
+     */
+    public static int toShorts(@NonNull final byte[] bytes, final int length, @NonNull final short[] output) {
+        final int samples = length / 2;
+        for (int i = 0, j = 0; i < samples; i++, j += 2) {
+            output[i] = (short) ((bytes[j] & 0xff) | (bytes[j + 1] << 8));
+        }
+        return samples;
+    }
+
+    /**
+     * Samples to little-endian 16 bit bytes
+     *
+     * @param samples the samples
+     * @param length  the number of valid samples
+     * @param output  the output array, of at least length * 2
+     * @return the number of bytes written
+     */
+    public static int toBytes(@NonNull final short[] samples, final int length, @NonNull final byte[] output) {
+        for (int i = 0, j = 0; i < length; i++, j += 2) {
+            output[j] = (byte) samples[i];
+            output[j + 1] = (byte) (samples[i] >> 8);
+        }
+        return length * 2;
+    }
+
+    /**
+     * 16 bit samples to floats in the range -1 to 1
+     *
+     * @param samples the samples
+     * @param length  the number of valid samples
+     * @param output  the output array
+     * @return the number of samples written
+     */
+    public static int toFloats(@NonNull final short[] samples, final int length, @NonNull final float[] output) {
+        for (int i = 0; i < length; i++) {
+            output[i] = samples[i] * TO_FLOAT;
+        }
+        return length;
+    }
+
+    /**
+     * Floats in the range -1 to 1 to 16 bit samples, clipping any outside it
+     *
+     * @param samples the samples
+     * @param length  the number of valid samples
+     * @param output  the output array
+     * @return the number of samples written
+     */
+    public static int toShorts(@NonNull final float[] samples, final int length, @NonNull final short[] output) {
+        float value;
+        for (int i = 0; i < length; i++) {
+            value = samples[i];
+            if (value > 1f) {
+                value = 1f;
+            } else if (value < -1f) {
+                value = -1f;
+            }
+            output[i] = (short) Math.round(value * TO_SHORT);
+        }
+        return length;
+    }
+
+    /**
+     * Mix interleaved channels down to mono by averaging each frame
+     *
+     * @param samples  the interleaved samples
+     * @param length   the number of valid samples, across all channels
+     * @param channels the number of channels
+     * @param output   the output array, of at least length / channels
+     * @return the number of mono samples written
+     */
+    public static int downmix(@NonNull final short[] samples, final int length, final int channels,
+                              @NonNull final short[] output) {
+
+        final int frames = length / channels;
+
+        if (channels == 1) {
+            System.arraycopy(samples, 0, output, 0, frames);
+        } else if (channels == 2) {
+            for (int i = 0, j = 0; i < frames; i++, j += 2) {
+                output[i] = (short) ((samples[j] + samples[j + 1]) >> 1);
+            }
+        } else {
+            int sum;
+            for (int i = 0, j = 0; i < frames; i++) {
+                sum = 0;
+                for (int c = 0; c < channels; c++, j++) {
+                    sum += samples[j];
+                }
+                output[i] = (short) (sum / channels);
+            }
+        }
+
+        return frames;
+    }
+
+    /**
+     * Resample a whole recording of little-endian 16 bit mono audio. For a stream, hold a
+     * {@link Resampler} instead.
+     *
+     * @param bytes      the PCM bytes
+     * @param inputRate  the sample rate of the input
+     * @param outputRate the required sample rate
+     * @return the resampled PCM bytes, or the input if the rates are equal
+     */
+    public static byte[] resample(@NonNull final byte[] bytes, final int inputRate, final int outputRate) {
+
+        if (inputRate == outputRate) {
+            return bytes;
+        }
+
+        final Resampler resampler = new Resampler(inputRate, outputRate);
+        final short[] input = new short[bytes.length / 2];
+        final short[] output = new short[resampler.getMaxOutputLength(input.length)];
+
+        toShorts(bytes, bytes.length, input);
+        final int count = resampler.process(input, input.length, output);
+
+        final byte[] resampled = new byte[count * 2];
+        toBytes(output, count, resampled);
+        return resampled;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ai.saiy.android.utils.Constants;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsHttp;
+
+/**
+ * Streams captured audio to a chunked HTTP endpoint. Frames are coalesced into chunks of
+ * {@link #CHUNK_MILLIS} of audio, drawn from a fixed pool, and written whole by a sender thread, so
+ * the capture thread never waits on the network. The connection is set up by the sender thread,
+ * with retries, while the first chunks are queued.
+ * <p>
+ * If the network falls so far behind that the pool is exhausted, frames are dropped rather than
+ * holding up the capture thread.
+ */
+public class AudioUploader {
+
+    private final boolean DEBUG = MyLog.DEBUG;
+    private final String CLS_NAME = AudioUploader.class.getSimpleName();
+
+    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    private static final String CHUNKED = "chunked";
+
+    private static final int CHUNK_MILLIS = 100;
+    private static final int POOL_MILLIS = 3000;
+    private static final int MAX_RETRIES = 2;
+    private static final long RETRY_DELAY = 250L;
+    private static final long POOL_TIMEOUT = 20L;
+    private static final long FINISH_TIMEOUT = 10000L;
+
+    private final String url;
+    private final Map<String, String> properties = new LinkedHashMap<>();
+    private final int chunkSize;
+
+    private final BlockingQueue<byte[]> pool;
+    private final BlockingQueue<Chunk> pending = new LinkedBlockingQueue<>();
+
+    private volatile HttpURLConnection connection;
+    private volatile OutputStream outputStream;
+    private volatile InputStream inputStream;
+    private volatile boolean failed;
+    private volatile Thread sender;
+
+    private byte[] current;
+    private int currentLength;
+    private long dropped;
+
+    private static final class Chunk {
+
+        private final byte[] bytes;
+        private final int length;
+
+        Chunk(@Nullable final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    private static final Chunk END = new Chunk(null, 0);
+
+    /**
+     * Constructor
+     *
+     * @param url            the endpoint to POST the audio to
+     * @param bytesPerSecond the byte rate of the audio
+     */
+    public AudioUploader(@NonNull final String url, final int bytesPerSecond) {
+        this.url = url;
+        this.chunkSize = Math.max(bytesPerSecond * CHUNK_MILLIS / 1000, 2) & ~1;
+
+        final int chunks = POOL_MILLIS / CHUNK_MILLIS;
+        this.pool = new ArrayBlockingQueue<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            pool.add(new byte[chunkSize]);
+        }
+    }
+
+    /**
+     * Set a request header. Must be called before {@link #start()}.
+     *
+     * @param key   the header name
+     * @param value the header value
+     */
+    public void setRequestProperty(@NonNull final String key, @NonNull final String value) {
+        properties.put(key, value);
+    }
+
+    /**
+     * Start the sender thread, which will connect and then stream the chunks as they are queued
+     */
+    public void start() {
+
+        sender = new Thread(CLS_NAME) {
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
+
+                try {
+                    connect();
+                    send();
+                } catch (final IOException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "sender: IOException");
+                        e.printStackTrace();
+                    }
+                    failed = true;
+                } catch (final InterruptedException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "sender: InterruptedException");
+                    }
+                    failed = true;
+                } catch (final Exception e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "sender: Exception");
+                        e.printStackTrace();
+                    }
+                    failed = true;
+                } finally {
+                    pending.clear();
+                }
+            }
+        };
+
+        sender.start();
+    }
+
+    /**
+     * Queue a frame of audio. Called from a single capture thread.
+     *
+     * @param frame  the audio buffer
+     * @param length the number of valid bytes in the buffer
+     */
+    public void write(@NonNull final byte[] frame, final int length) {
+
+        if (failed || length <= 0) {
+            return;
+        }
+
+        int offset = 0;
+        int copy;
+        while (offset < length) {
+
+            if (current == null) {
+                try {
+                    current = pool.poll(POOL_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                if (current == null) {
+                    dropped += length - offset;
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "write: pool exhausted: dropped: " + dropped);
+                    }
+                    return;
+                }
+
+                currentLength = 0;
+            }
+
+            copy = Math.min(chunkSize - currentLength, length - offset);
+            System.arraycopy(frame, offset, current, currentLength, copy);
+            currentLength += copy;
+            offset += copy;
+
+            if (currentLength == chunkSize) {
+                pending.add(new Chunk(current, currentLength));
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Queue the final partial chunk and wait for everything to be sent. The response can then be read
+     * from {@link #getConnection()}.
+     *
+     * @return true if all of the audio was sent
+     */
+    public boolean finish() {
+
+        if (current != null) {
+            pending.add(new Chunk(current, currentLength));
+            current = null;
+        }
+
+        pending.add(END);
+
+        final Thread thread = sender;
+        if (thread != null) {
+            try {
+                thread.join(FINISH_TIMEOUT);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            if (thread.isAlive()) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "finish: timeout");
+                }
+                return false;
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "finish: failed: " + failed + " dropped: " + dropped);
+        }
+
+        return !failed && connection != null;
+    }
+
+    /**
+     * Get the connection, once {@link #finish()} has returned true
+     *
+     * @return the {@link HttpURLConnection}
+     */
+    public HttpURLConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Get the response body, which will be closed by {@link #close()}
+     *
+     * @return the {@link InputStream}
+     * @throws IOException if the response cannot be read
+     */
+    public InputStream getInputStream() throws IOException {
+        inputStream = connection.getInputStream();
+        return inputStream;
+    }
+
+    /**
+     * Abandon any unsent audio, and close the streams and connection
+     */
+    public void close() {
+
+        failed = true;
+        pending.add(END);
+
+        closeQuietly(outputStream);
+        closeQuietly(inputStream);
+
+        if (connection != null) {
+            try {
+                connection.disconnect();
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void connect() throws IOException, InterruptedException {
+
+        IOException last = null;
+
+        for (int attempt = 0; attempt <= MAX_RETRIES && !failed; attempt++) {
+
+            if (attempt > 0) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "connect: retry: " + attempt);
+                }
+                Thread.sleep(RETRY_DELAY * attempt);
+            }
+
+            try {
+
+                final HttpURLConnection urlConnection = UtilsHttp.open(new URL(url));
+                urlConnection.setAllowUserInteraction(false);
+                urlConnection.setInstanceFollowRedirects(true);
+                urlConnection.setRequestMethod(Constants.HTTP_POST);
+                urlConnection.setUseCaches(false);
+                urlConnection.setDoOutput(true);
+                urlConnection.setRequestProperty(TRANSFER_ENCODING, CHUNKED);
+
+                for (final Map.Entry<String, String> entry : properties.entrySet()) {
+                    urlConnection.setRequestProperty(entry.getKey(), entry.getValue());
+                }
+
+                urlConnection.setChunkedStreamingMode(chunkSize);
+                urlConnection.connect();
+
+                connection = urlConnection;
+                outputStream = urlConnection.getOutputStream();
+                return;
+
+            } catch (final IOException e) {
+                last = e;
+            }
+        }
+
+        throw last != null ? last : new IOException("connect: cancelled");
+    }
+
+    private void send() throws IOException, InterruptedException {
+
+        Chunk chunk;
+        while ((chunk = pending.take()) != END) {
+            try {
+                if (!failed) {
+                    outputStream.write(chunk.bytes, 0, chunk.length);
+                }
+            } finally {
+                pool.offer(chunk.bytes);
+            }
+        }
+
+        if (!failed) {
+            outputStream.close();
+        }
+    }
+
+    private void closeQuietly(@Nullable final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
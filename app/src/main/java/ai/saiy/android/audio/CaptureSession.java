@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+
+import ai.saiy.android.audio.capture.AudioRing;
+import ai.saiy.android.audio.capture.FormatAdapter;
+import ai.saiy.android.audio.capture.IAudioConsumer;
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Shares a single {@link RecognitionMic} capture between several {@link IMic} listeners, so that one
+ * utterance can be analysed by more than one of them at the same time. An emotion request shares it
+ * between the emotion analysis and identification, and hedged recognition between its providers.
+ * <p>
+ * Once the session is created, any listener passed to {@link RecognitionMic#setMicListener(IMic)}
+ * is attached to the session rather than replacing the previous one, so the existing consumers need
+ * no changes to take part. Each listener reads the capture ring on its own thread, through a
+ * {@link FormatAdapter} at the sample rate it asked for, and receives the lifecycle callbacks of
+ * the capture until it is detached. The first call to {@link RecognitionMic#startRecording()}
+ * starts the capture for all of them; a listener attached after that receives the audio from then
+ * on.
+ * <p>
+ * A listener that has all of the audio it needs calls {@link RecognitionMic#stopRecording(IMic)},
+ * which detaches it here. The recording stops once the last listener has detached, or when the
+ * capture ends by itself.
+ */
+public class CaptureSession implements IMic {
+
+    private final boolean DEBUG = MyLog.DEBUG;
+    private final String CLS_NAME = CaptureSession.class.getSimpleName();
+
+    private final RecognitionMic mic;
+    private final ArrayList<Attachment> attachments = new ArrayList<>();
+
+    private AudioRing ring;
+    private int sampleRateInHz;
+    private int channels;
+    private boolean started;
+
+    /**
+     * Constructor
+     *
+     * @param mic the initialised {@link RecognitionMic} object, which must not have started
+     */
+    public CaptureSession(@NonNull final RecognitionMic mic) {
+        this.mic = mic;
+        this.mic.setCaptureSession(this);
+    }
+
+    public RecognitionMic getMic() {
+        return mic;
+    }
+
+    /**
+     * Attach a listener to the capture
+     *
+     * @param iMic           the {@link IMic} listener
+     * @param sampleRateInHz the sample rate the listener expects
+     */
+    void attach(@NonNull final IMic iMic, final int sampleRateInHz) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "attach: " + iMic.getClass().getSimpleName() + ": " + sampleRateInHz);
+        }
+
+        final Attachment attachment = new Attachment(iMic, sampleRateInHz);
+        final boolean late;
+
+        synchronized (attachments) {
+
+            for (final Attachment existing : attachments) {
+                if (existing.iMic == iMic) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "attach: already attached");
+                    }
+                    return;
+                }
+            }
+
+            attachments.add(attachment);
+            late = started;
+
+            if (ring != null) {
+                addConsumer(ring, attachment);
+            }
+        }
+
+        if (late) {
+            iMic.onRecordingStarted();
+        }
+    }
+
+    /**
+     * Stop delivering the capture to a listener that has all the audio it needs. Once every listener
+     * has detached, the recording is stopped. Listeners detach through
+     * {@link RecognitionMic#stopRecording(IMic)}.
+     *
+     * @param iMic the {@link IMic} listener
+     */
+    void detach(@NonNull final IMic iMic) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "detach: " + iMic.getClass().getSimpleName());
+        }
+
+        boolean remaining = false;
+
+        synchronized (attachments) {
+            for (final Attachment attachment : attachments) {
+                if (attachment.iMic == iMic) {
+                    attachment.detached = true;
+                }
+                remaining |= !attachment.detached;
+            }
+        }
+
+        if (!remaining) {
+            mic.stopRecording();
+        }
+    }
+
+    /**
+     * Add a consumer to the capture ring for each listener attached so far. Called by the
+     * {@link RecognitionMic} before the first frame is published.
+     *
+     * @param ring           the {@link AudioRing}
+     * @param sampleRateInHz the sample rate of the capture
+     * @param channels       the number of channels in the capture
+     */
+    void addConsumers(@NonNull final AudioRing ring, final int sampleRateInHz, final int channels) {
+        synchronized (attachments) {
+            this.ring = ring;
+            this.sampleRateInHz = sampleRateInHz;
+            this.channels = channels;
+
+            for (final Attachment attachment : attachments) {
+                addConsumer(ring, attachment);
+            }
+        }
+    }
+
+    private void addConsumer(@NonNull final AudioRing ring, @NonNull final Attachment attachment) {
+        ring.addConsumer(attachment.iMic.getClass().getSimpleName(), new FormatAdapter(new IAudioConsumer() {
+            @Override
+            public void onFrame(final byte[] frame, final int length) {
+                if (!attachment.detached) {
+                    attachment.iMic.onBufferReceived(length, frame);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, sampleRateInHz, channels, attachment.sampleRateInHz), AudioRing.BackPressure.BLOCK);
+    }
+
+    /**
+     * Get the listeners still attached, to call outside of the lock
+     *
+     * @return the attached {@link IMic} listeners
+     */
+    private ArrayList<IMic> getAttached() {
+        synchronized (attachments) {
+            final ArrayList<IMic> attached = new ArrayList<>(attachments.size());
+            for (final Attachment attachment : attachments) {
+                if (!attachment.detached) {
+                    attached.add(attachment.iMic);
+                }
+            }
+            return attached;
+        }
+    }
+
+    @Override
+    public void onBufferReceived(final int bufferReadResult, final byte[] buffer) {
+        // Each listener reads the ring through its own consumer
+    }
+
+    @Override
+    public void onError(final int error) {
+        for (final IMic iMic : getAttached()) {
+            iMic.onError(error);
+        }
+    }
+
+    @Override
+    public void onPauseDetected() {
+        for (final IMic iMic : getAttached()) {
+            iMic.onPauseDetected();
+        }
+    }
+
+    @Override
+    public void onRecordingStarted() {
+        final ArrayList<IMic> attached;
+
+        synchronized (attachments) {
+            started = true;
+            attached = getAttached();
+        }
+
+        for (final IMic iMic : attached) {
+            iMic.onRecordingStarted();
+        }
+    }
+
+    @Override
+    public void onRecordingEnded() {
+        for (final IMic iMic : getAttached()) {
+            iMic.onRecordingEnded();
+        }
+    }
+
+    @Override
+    public void onFileWriteComplete(final boolean success) {
+        for (final IMic iMic : getAttached()) {
+            iMic.onFileWriteComplete(success);
+        }
+    }
+
+    private static final class Attachment {
+
+        private final IMic iMic;
+        private final int sampleRateInHz;
+        private volatile boolean detached;
+
+        Attachment(@NonNull final IMic iMic, final int sampleRateInHz) {
+            this.iMic = iMic;
+            this.sampleRateInHz = sampleRateInHz;
+        }
+    }
+}
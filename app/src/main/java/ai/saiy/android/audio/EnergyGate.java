@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.support.annotation.NonNull;
+
+import ai.saiy.android.audio.pause.SpeechClassifier;
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * A cheap gate in front of the hotword decoder, so that it only decodes audio that could be speech.
+ * Decoding every buffer of an always-on detection costs far more than measuring its energy.
+ * <p>
+ * Each {@link #WINDOW_MILLIS} window is classed by the same {@link SpeechClassifier} as the
+ * {@link ai.saiy.android.audio.pause.PauseDetector}, as speech when its energy is sufficiently above
+ * an adaptive noise floor. The gate opens after {@link #ONSET_WINDOWS} of speech, passing on the audio
+ * held in its pre-roll ring, so that the start of the hotword is not lost. It closes once there has
+ * been no speech for the hangover, which also gives the decoder the trailing silence it needs to end
+ * the utterance.
+ * <p>
+ * The noise floor follows the non-speech windows, falling quickly and rising slowly. While open, it
+ * also creeps towards the current energy, so that a sustained rise in the background noise, such as
+ * a car pulling away, does not hold the gate open indefinitely. All timing is measured in audio, so
+ * the outcome for a given recording is always the same.
+ */
+public class EnergyGate {
+
+    private final boolean DEBUG = MyLog.DEBUG;
+    private final String CLS_NAME = EnergyGate.class.getSimpleName();
+
+    public static final int DEFAULT_PRE_ROLL = 300;
+    public static final int DEFAULT_HANGOVER = 600;
+
+    private static final int WINDOW_MILLIS = 10;
+    private static final int ONSET_WINDOWS = 2;
+    private static final double SPEECH_RATIO = 2.5;
+    private static final double MIN_SPEECH_ENERGY = 80 * 80;
+    private static final double NOISE_RISE_OPEN = 0.002;
+
+    /**
+     * Receives the audio passed by the gate
+     */
+    public interface Sink {
+
+        /**
+         * @param samples the mono 16 bit audio, starting at index zero
+         * @param length  the number of samples
+         */
+        void write(@NonNull short[] samples, int length);
+    }
+
+    private final int sampleRateInHz;
+    private final int windowSamples;
+    private final int hangoverWindows;
+    private final short[] window;
+    private final short[] ring;
+    private final short[] flush;
+    private final SpeechClassifier classifier;
+
+    private int windowCount;
+    private int ringPosition;
+    private int ringLength;
+
+    private int speechRun;
+    private int hangover;
+    private boolean open;
+
+    private long samplesIn;
+    private long samplesPassed;
+    private int openings;
+
+    /**
+     * Constructor
+     *
+     * @param sampleRateInHz the sample rate of the mono 16 bit audio
+     * @param preRollMillis  the audio before the gate opens to pass on
+     * @param hangoverMillis the audio without speech after which the gate closes
+     */
+    public EnergyGate(final int sampleRateInHz, final int preRollMillis, final int hangoverMillis) {
+        this.sampleRateInHz = sampleRateInHz;
+        this.windowSamples = Math.max(sampleRateInHz * WINDOW_MILLIS / 1000, 1);
+        this.hangoverWindows = Math.max(hangoverMillis / WINDOW_MILLIS, 1);
+        this.window = new short[windowSamples];
+        this.ring = new short[Math.max(preRollMillis / WINDOW_MILLIS, ONSET_WINDOWS) * windowSamples];
+        this.flush = new short[ring.length];
+        this.classifier = new SpeechClassifier(windowSamples, SPEECH_RATIO, MIN_SPEECH_ENERGY,
+                SpeechClassifier.NO_FRICATIVES);
+    }
+
+    /**
+     * Close the gate and calibrate the noise floor again, ready for a new capture
+     */
+    public void reset() {
+        windowCount = 0;
+        ringPosition = 0;
+        ringLength = 0;
+        classifier.reset();
+        speechRun = 0;
+        hangover = 0;
+        open = false;
+        samplesIn = 0;
+        samplesPassed = 0;
+        openings = 0;
+    }
+
+    /**
+     * Add captured audio, writing whatever passes the gate to the sink. Audio short of a complete
+     * window is held until the next call.
+     *
+     * @param buffer the mono 16 bit audio
+     * @param length the number of samples
+     * @param sink   the {@link Sink} to write to
+     */
+    public void process(@NonNull final short[] buffer, final int length, @NonNull final Sink sink) {
+
+        for (int i = 0; i < length; i++) {
+            window[windowCount++] = buffer[i];
+
+            if (classifier.add(buffer[i])) {
+                onWindow(sink);
+                windowCount = 0;
+            }
+        }
+
+        samplesIn += length;
+    }
+
+    /**
+     * Pass on a complete window or hold it in the ring, according to its classification
+     *
+     * @param sink the {@link Sink} to write to
+     */
+    private void onWindow(@NonNull final Sink sink) {
+
+        if (classifier.isCalibrating()) {
+            hold();
+            return;
+        }
+
+        final boolean speech = classifier.isSpeech();
+        speechRun = speech ? speechRun + 1 : 0;
+
+        if (open) {
+
+            if (speech) {
+                hangover = hangoverWindows;
+                classifier.creep(NOISE_RISE_OPEN);
+            } else {
+                classifier.adapt();
+            }
+
+            pass(window, windowSamples, sink);
+
+            if (!speech && --hangover <= 0) {
+                open = false;
+                if (DEBUG) {
+                    MyLog.v(CLS_NAME, "closed: " + (classifier.getWindows() * WINDOW_MILLIS) + "ms");
+                }
+            }
+
+        } else {
+
+            if (!speech) {
+                classifier.adapt();
+            }
+
+            hold();
+
+            if (speechRun >= ONSET_WINDOWS) {
+                open = true;
+                openings++;
+                hangover = hangoverWindows;
+                if (DEBUG) {
+                    MyLog.v(CLS_NAME, "opened: " + (classifier.getWindows() * WINDOW_MILLIS) + "ms floor: "
+                            + Math.round(getNoiseFloor()));
+                }
+                flushRing(sink);
+            }
+        }
+    }
+
+    /**
+     * Write the current window to the ring, overwriting the oldest
+     */
+    private void hold() {
+        System.arraycopy(window, 0, ring, ringPosition, windowSamples);
+        ringPosition = (ringPosition + windowSamples) % ring.length;
+        ringLength = Math.min(ringLength + windowSamples, ring.length);
+    }
+
+    /**
+     * Pass on the contents of the ring, oldest first, and empty it
+     */
+    private void flushRing(@NonNull final Sink sink) {
+
+        final int start = (ringPosition - ringLength + ring.length) % ring.length;
+        final int first = Math.min(ringLength, ring.length - start);
+
+        System.arraycopy(ring, start, flush, 0, first);
+        System.arraycopy(ring, 0, flush, first, ringLength - first);
+
+        pass(flush, ringLength, sink);
+        ringLength = 0;
+    }
+
+    private void pass(@NonNull final short[] samples, final int length, @NonNull final Sink sink) {
+        samplesPassed += length;
+        sink.write(samples, length);
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * @return the number of times the gate has opened since {@link #reset()}
+     */
+    public int getOpenings() {
+        return openings;
+    }
+
+    /**
+     * @return the audio added since {@link #reset()}, in milliseconds
+     */
+    public long getMillisIn() {
+        return samplesIn * 1000 / sampleRateInHz;
+    }
+
+    /**
+     * @return the audio passed on since {@link #reset()}, in milliseconds
+     */
+    public long getMillisPassed() {
+        return samplesPassed * 1000 / sampleRateInHz;
+    }
+
+    /**
+     * @return the root mean square of the current noise floor
+     */
+    public double getNoiseFloor() {
+        return Math.sqrt(classifier.getNoiseFloor());
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Hands the audio that follows a hotword over to the command recognition. While the hotword
+ * detection is listening, each buffer it captures is written to a ring holding the most recent
+ * {@link #DEFAULT_MILLIS}, or the user's preference. The position at which the hotword is spotted is
+ * marked, and the detection can then {@link #hold()} the microphone, capturing into the ring rather
+ * than releasing it. The ring is grown for the hold, so that nothing from the mark onward is
+ * overwritten before the hold ends.
+ * <p>
+ * The next {@link SaiyRecorder} to initialise calls {@link #take(int)}, which ends the hold, waits for
+ * the microphone to be released and returns the audio captured since the mark, resampled to its rate,
+ * to be replayed ahead of its own. A command spoken in the same breath as the hotword is therefore not
+ * lost.
+ */
+public final class PreRoll {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = PreRoll.class.getSimpleName();
+
+    public static final int DEFAULT_MILLIS = 1500;
+
+    private static final long HOLD_TIMEOUT = 5000L;
+    private static final long RELEASE_TIMEOUT = 500L;
+
+    private static final Object lock = new Object();
+
+    private static short[] ring;
+    private static int sampleRateInHz;
+    private static long written;
+    private static long mark = -1;
+    private static long heldAt;
+    private static boolean holding;
+    private static boolean capturing;
+
+    /**
+     * Prevent instantiation
+     */
+    private PreRoll() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Begin a capture into the ring. Called by the hotword detection once its microphone is open.
+     *
+     * @param sampleRateInHz the sample rate of the mono 16 bit capture
+     * @param millis         the length of the ring in milliseconds
+     */
+    public static void open(final int sampleRateInHz, final int millis) {
+        synchronized (lock) {
+
+            final int capacity = Math.max(sampleRateInHz * millis / 1000, 1);
+            if (ring == null || ring.length != capacity) {
+                ring = new short[capacity];
+            }
+
+            PreRoll.sampleRateInHz = sampleRateInHz;
+            written = 0;
+            mark = -1;
+            holding = false;
+            capturing = true;
+        }
+    }
+
+    /**
+     * Write a captured buffer to the ring
+     *
+     * @param buffer the audio buffer
+     * @param length the number of valid samples in the buffer
+     */
+    public static void write(@NonNull final short[] buffer, final int length) {
+        synchronized (lock) {
+
+            if (ring == null || length <= 0) {
+                return;
+            }
+
+            int offset = Math.max(0, length - ring.length);
+            int position = (int) ((written + offset) % ring.length);
+            int copy;
+
+            while (offset < length) {
+                copy = Math.min(length - offset, ring.length - position);
+                System.arraycopy(buffer, offset, ring, position, copy);
+                offset += copy;
+                position = (position + copy) % ring.length;
+            }
+
+            written += length;
+        }
+    }
+
+    /**
+     * Mark the end of the hotword. Only the first call per capture has any effect.
+     */
+    public static void mark() {
+        synchronized (lock) {
+            if (mark < 0) {
+                mark = written;
+            }
+        }
+    }
+
+    /**
+     * Keep the microphone open after the hotword detection is stopped, until the next recorder takes
+     * the audio or {@link #HOLD_TIMEOUT} elapses.
+     *
+     * @return true if the hold began, false if there is no marked capture in progress
+     */
+    public static boolean hold() {
+        synchronized (lock) {
+
+            if (!capturing || mark < 0) {
+                return false;
+            }
+
+            final long start = Math.max(mark, written - ring.length);
+            grow((int) (written - start) + (int) (sampleRateInHz * (HOLD_TIMEOUT + RELEASE_TIMEOUT) / 1000));
+
+            holding = true;
+            heldAt = System.currentTimeMillis();
+            return true;
+        }
+    }
+
+    /**
+     * Replace the ring with a larger one, keeping the audio from the mark onward at the positions
+     * {@link #write(short[], int)} and {@link #take(int)} expect. Must be called holding the lock.
+     *
+     * @param capacity the capacity in samples of the new ring
+     */
+    private static void grow(final int capacity) {
+
+        if (capacity <= ring.length) {
+            return;
+        }
+
+        final short[] grown = new short[capacity];
+
+        final long start = Math.max(mark, written - ring.length);
+        for (long i = start; i < written; i++) {
+            grown[(int) (i % capacity)] = ring[(int) (i % ring.length)];
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "grow: " + ring.length + " to " + capacity);
+        }
+
+        ring = grown;
+    }
+
+    /**
+     * Check if the hotword detection should keep capturing after it has stopped decoding
+     *
+     * @return true if the capture is held
+     */
+    public static boolean isHolding() {
+        synchronized (lock) {
+
+            if (holding && System.currentTimeMillis() - heldAt > HOLD_TIMEOUT) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "isHolding: timeout");
+                }
+                holding = false;
+            }
+
+            return holding;
+        }
+    }
+
+    /**
+     * Signal that the capture has ended and the microphone has been released
+     */
+    public static void close() {
+        synchronized (lock) {
+            capturing = false;
+            holding = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * End any hold, wait for the microphone to be released, and take the audio captured since the
+     * hotword. Called before a recorder opens the microphone.
+     *
+     * @param sampleRateInHz the sample rate of the mono 16 bit recorder
+     * @return the little-endian PCM audio to replay, or null if there is none for this recorder
+     */
+    @Nullable
+    public static byte[] take(final int sampleRateInHz) {
+        synchronized (lock) {
+
+            if (ring == null) {
+                return null;
+            }
+
+            final boolean held = holding;
+            holding = false;
+
+            final long deadline = System.currentTimeMillis() + RELEASE_TIMEOUT;
+            long remaining;
+            while (capturing) {
+                remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "take: release timeout");
+                    }
+                    break;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            byte[] bytes = null;
+
+            if (held && mark >= 0) {
+
+                final long start = Math.max(mark, written - ring.length);
+                final int samples = (int) (written - start);
+
+                if (samples > 0) {
+                    bytes = new byte[samples * 2];
+
+                    int position = (int) (start % ring.length);
+                    for (int i = 0; i < samples; i++) {
+                        bytes[i * 2] = (byte) ring[position];
+                        bytes[i * 2 + 1] = (byte) (ring[position] >> 8);
+                        if (++position == ring.length) {
+                            position = 0;
+                        }
+                    }
+                }
+
+                if (bytes != null && sampleRateInHz != PreRoll.sampleRateInHz) {
+                    bytes = AudioConversion.resample(bytes, PreRoll.sampleRateInHz, sampleRateInHz);
+                }
+
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "take: samples: " + samples + " of " + written);
+                }
+            }
+
+            ring = null;
+            mark = -1;
+            return bytes;
+        }
+    }
+}
@@ -26,14 +26,23 @@ import android.support.annotation.Nullable;
 import java.io.File;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import ai.saiy.android.audio.capture.AudioRing;
+import ai.saiy.android.audio.capture.FormatAdapter;
+import ai.saiy.android.audio.capture.IAudioConsumer;
 import ai.saiy.android.audio.pause.PauseDetector;
 import ai.saiy.android.audio.pause.PauseListener;
 import ai.saiy.android.files.FileCreator;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
 
 /**
+ * A single reader thread captures the audio into the frames of an {@link AudioRing}, from which
+ * pause detection, file writing, the {@link IMic} listener and the RMS level each read on their own
+ * thread, without a thread being started per buffer. Only the consumers that may drop frames take a
+ * copy of each.
+ * <p>
  * Created by benrandall76@gmail.com on 12/08/2016.
  */
 
@@ -50,6 +59,11 @@ public class RecognitionMic implements PauseListener {
     private static final int ON_ERROR = 2;
     private static final int ON_END_OF_SPEECH = 3;
 
+    private static final int RING_MILLIS = 2000;
+    private static final int MIN_RING_FRAMES = 8;
+    private static final long DRAIN_TIMEOUT = 2000L;
+
+    private final AtomicBoolean isStarted = new AtomicBoolean();
     private final AtomicBoolean isRecording = new AtomicBoolean();
     private final AtomicBoolean isAvailable = new AtomicBoolean(true);
     private final AtomicBoolean isInterrupted = new AtomicBoolean();
@@ -59,6 +73,10 @@ public class RecognitionMic implements PauseListener {
     private FileCreator fileCreator;
     private PauseDetector pauseDetector;
     private volatile SaiyRecorder saiyRecorder;
+    private volatile AudioRing audioRing;
+    private final int bytesPerSecond;
+    private final int sampleRateInHz;
+    private final int nChannels;
     private final Object audioLock = new Object();
     private final Object errorLock = new Object();
 
@@ -66,6 +84,8 @@ public class RecognitionMic implements PauseListener {
     private final boolean pauseDetection;
     private final AtomicBoolean writeToFile;
     private IMic iMic;
+    private int micRateInHz;
+    private volatile CaptureSession captureSession;
     private final Object lock = new Object();
     private final Context mContext;
 
@@ -78,10 +98,16 @@ public class RecognitionMic implements PauseListener {
         this.pauseDetection = pauseDetection;
         this.writeToFile = new AtomicBoolean(writeToFile);
         this.ssp = ssp;
+        this.bytesPerSecond = audioParameters.getSampleRateInHz() * audioParameters.getnChannels()
+                * audioParameters.getbSamples() / 8;
+        this.sampleRateInHz = audioParameters.getSampleRateInHz();
+        this.nChannels = audioParameters.getnChannels();
+        this.micRateInHz = sampleRateInHz;
 
         if (this.pauseDetection) {
             pauseDetector = new PauseDetector(this, audioParameters.getSampleRateInHz(),
                     audioParameters.getnChannels(), pauseIgnoreTime);
+            pauseDetector.setEndSilence(SPH.getPauseTimeout(mContext));
         }
 
         saiyRecorder = new SaiyRecorder(audioParameters.getAudioSource(),
@@ -98,8 +124,56 @@ public class RecognitionMic implements PauseListener {
         return fileCreator.getDefaultFile();
     }
 
+    /**
+     * Set the listener to receive the audio at the sample rate of the capture. If a
+     * {@link CaptureSession} has been created for this capture, the listener is attached to it
+     * instead.
+     *
+     * @param iMic the {@link IMic} listener
+     */
     public void setMicListener(@NonNull final IMic iMic) {
-        this.iMic = iMic;
+        setMicListener(iMic, sampleRateInHz);
+    }
+
+    /**
+     * Set the listener to receive the audio at the given sample rate, resampled from the capture if
+     * they differ. If a {@link CaptureSession} has been created for this capture, the listener is
+     * attached to it instead.
+     *
+     * @param iMic           the {@link IMic} listener
+     * @param sampleRateInHz the sample rate the listener expects
+     */
+    public void setMicListener(@NonNull final IMic iMic, final int sampleRateInHz) {
+
+        final CaptureSession session = captureSession;
+
+        if (session != null) {
+            session.attach(iMic, sampleRateInHz);
+        } else {
+            this.iMic = iMic;
+            this.micRateInHz = sampleRateInHz;
+        }
+    }
+
+    /**
+     * Hand the capture to a {@link CaptureSession}, which then receives all of the {@link IMic}
+     * callbacks
+     *
+     * @param captureSession the {@link CaptureSession}
+     */
+    void setCaptureSession(@NonNull final CaptureSession captureSession) {
+
+        if (isStarted.get()) {
+            throw new IllegalStateException("Recording has already started");
+        }
+
+        this.iMic = captureSession;
+        this.micRateInHz = sampleRateInHz;
+        this.captureSession = captureSession;
+    }
+
+    public int getSampleRateInHz() {
+        return sampleRateInHz;
     }
 
     public IMic getMicListener() {
@@ -110,6 +184,10 @@ public class RecognitionMic implements PauseListener {
         return lock;
     }
 
+    public int getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
     public boolean isRecording() {
         return isRecording.get();
     }
@@ -146,6 +224,24 @@ public class RecognitionMic implements PauseListener {
         }
     }
 
+    /**
+     * Stop recording on behalf of a listener that has all of the audio it needs. If the capture is
+     * shared through a {@link CaptureSession}, the listener is only detached from it and the
+     * recording continues for the others, until the last one has detached.
+     *
+     * @param iMic the {@link IMic} listener
+     */
+    public void stopRecording(@NonNull final IMic iMic) {
+
+        final CaptureSession session = captureSession;
+
+        if (session != null) {
+            session.detach(iMic);
+        } else {
+            stopRecording();
+        }
+    }
+
     @Override
     public void onPauseDetected() {
         if (DEBUG) {
@@ -164,12 +260,19 @@ public class RecognitionMic implements PauseListener {
             MyLog.i(CLS_NAME, "startRecording");
         }
 
-        isRecording.set(true);
-
         if (iMic == null) {
             throw new IllegalArgumentException("No iMic listener is set");
         }
 
+        if (!isStarted.compareAndSet(false, true)) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "startRecording: already started");
+            }
+            return;
+        }
+
+        isRecording.set(true);
+
         new Thread() {
 
             public void run() {
@@ -182,8 +285,10 @@ public class RecognitionMic implements PauseListener {
                 }
 
                 final int bufferSize = saiyRecorder.getBufferSize();
-
-                final byte[] buffer = new byte[bufferSize];
+                final AudioRing ring = new AudioRing(bufferSize, Math.max(MIN_RING_FRAMES,
+                        (bytesPerSecond * RING_MILLIS / 1000) / bufferSize + 1));
+                addConsumers(ring);
+                audioRing = ring;
 
                 switch (saiyRecorder.initialise()) {
 
@@ -213,18 +318,7 @@ public class RecognitionMic implements PauseListener {
                                             count++;
                                         }
 
-                                        final int bufferReadResult = saiyRecorder.read(buffer);
-
-                                        if (pauseDetection && !pauseDetector.hasDetected()) {
-                                            pauseDetector.addLength(buffer, bufferReadResult);
-                                            pauseDetector.monitor();
-                                        }
-
-                                        if (writeToFile.get()) {
-                                            fileCreator.passBuffer(buffer);
-                                        }
-
-                                        iMic.onBufferReceived(bufferReadResult, buffer);
+                                        ring.publish(saiyRecorder.read(ring.claim()));
                                     }
 
                                     break;
@@ -268,6 +362,114 @@ public class RecognitionMic implements PauseListener {
         }.start();
     }
 
+    /**
+     * Attach the consumers of the capture ring. Pause detection and the RMS level only need the
+     * most recent audio, so never hold up the reader. The file and the {@link IMic} listener must
+     * receive every frame. A {@link CaptureSession} adds a consumer for each of its listeners.
+     *
+     * @param ring the {@link AudioRing}
+     */
+    private void addConsumers(@NonNull final AudioRing ring) {
+
+        if (pauseDetection) {
+            ring.addConsumer("pause", new IAudioConsumer() {
+                @Override
+                public void onFrame(final byte[] frame, final int length) {
+                    if (!pauseDetector.hasDetected()) {
+                        pauseDetector.addLength(frame, length);
+                        pauseDetector.monitor();
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            }, AudioRing.BackPressure.DROP);
+        }
+
+        if (writeToFile.get()) {
+            final FileCreator creator = fileCreator;
+            ring.addConsumer("file", new IAudioConsumer() {
+                @Override
+                public void onFrame(final byte[] frame, final int length) {
+                    creator.passBuffer(frame, length);
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            }, AudioRing.BackPressure.BLOCK);
+        }
+
+        final CaptureSession session = captureSession;
+
+        if (session != null) {
+            session.addConsumers(ring, sampleRateInHz, nChannels);
+        } else {
+            ring.addConsumer("mic", new FormatAdapter(new IAudioConsumer() {
+                @Override
+                public void onFrame(final byte[] frame, final int length) {
+                    iMic.onBufferReceived(length, frame);
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            }, sampleRateInHz, nChannels, micRateInHz), AudioRing.BackPressure.BLOCK);
+        }
+
+        if (listener != null) {
+            ring.addConsumer("rms", new IAudioConsumer() {
+                @Override
+                public void onFrame(final byte[] frame, final int length) {
+                    listener.onRmsChanged(getRmsdB(frame, length));
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            }, AudioRing.BackPressure.DROP);
+        }
+    }
+
+    /**
+     * Calculate the level of a frame of 16 bit little endian pcm in decibels relative to full scale
+     *
+     * @param frame  the frame
+     * @param length the number of valid bytes
+     * @return the level, between -96 and 0
+     */
+    private static float getRmsdB(@NonNull final byte[] frame, final int length) {
+
+        final int samples = length / 2;
+
+        if (samples == 0) {
+            return -96f;
+        }
+
+        long sum = 0;
+        int sample;
+        for (int i = 0; i < samples * 2; i += 2) {
+            sample = (short) ((frame[i] & 0xff) | (frame[i + 1] << 8));
+            sum += sample * sample;
+        }
+
+        final double rms = Math.sqrt((double) sum / samples);
+        return rms < 1 ? -96f : (float) Math.max(-96, 20 * Math.log10(rms / Short.MAX_VALUE));
+    }
+
+    /**
+     * Stop the consumers of the capture ring, once they have read the frames already captured
+     */
+    private void drainRing() {
+        final AudioRing ring = audioRing;
+        if (ring != null) {
+            audioRing = null;
+            ring.close();
+            ring.await(DRAIN_TIMEOUT);
+        }
+    }
+
     private void onError(final int error) {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "onError");
@@ -296,6 +498,11 @@ public class RecognitionMic implements PauseListener {
                 Recognition.setState(Recognition.State.IDLE);
                 saiyRecorder.shutdown(CLS_NAME);
                 saiyRecorder = null;
+                final AudioRing ring = audioRing;
+                if (ring != null) {
+                    audioRing = null;
+                    ring.close();
+                }
                 fileCreator = null;
             } else {
                 if (DEBUG) {
@@ -323,6 +530,7 @@ public class RecognitionMic implements PauseListener {
                 Recognition.setState(Recognition.State.IDLE);
                 saiyRecorder.shutdown(CLS_NAME);
                 saiyRecorder = null;
+                drainRing();
                 releaseLock();
                 recognitionListenerAction(ON_END_OF_SPEECH);
                 iMic.onRecordingEnded();
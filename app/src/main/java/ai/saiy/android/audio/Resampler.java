@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Streaming polyphase resampler for mono audio, converting between any two integer sample rates by
+ * the reduced ratio up / down. The prototype low-pass filter is a Kaiser windowed sinc, cut off
+ * just below the lower of the two Nyquist frequencies, giving around 80dB of alias rejection.
+ * <p>
+ * Only the filter phase needed for each output sample is evaluated. Each phase is stored reversed,
+ * so every output is a straight dot product over contiguous arrays, which the runtime can unroll
+ * and vectorise. Input is carried over between calls, so a stream may be fed in buffers of any
+ * size with the same result. The filter delays the output by half its length, a few milliseconds.
+ * <p>
+ * Not thread safe. Use one instance per stream.
+ */
+public class Resampler {
+
+    private static final int ZERO_CROSSINGS = 12;
+    private static final double KAISER_BETA = 8.0;
+    private static final double ROLLOFF = 0.9;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final float[][] phases;
+
+    private float[] work;
+    private int phase;
+    private int position;
+
+    /**
+     * Constructor
+     *
+     * @param inputRate  the sample rate of the input in hertz
+     * @param outputRate the sample rate of the output in hertz
+     */
+    public Resampler(final int inputRate, final int outputRate) {
+
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("sample rates must be positive");
+        }
+
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+
+        final int gcd = gcd(inputRate, outputRate);
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+
+        final int factor = Math.max(up, down);
+        this.taps = (int) Math.ceil(2.0 * ZERO_CROSSINGS * factor / up);
+        this.phases = design(up, taps, ROLLOFF * 0.5 / factor);
+        this.work = new float[taps - 1];
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * Check if the rates are equal, in which case the audio can be passed through untouched
+     *
+     * @return true if no resampling is required
+     */
+    public boolean isPassThrough() {
+        return up == down;
+    }
+
+    /**
+     * Get the most output samples that can result from the given number of input samples
+     *
+     * @param inputLength the number of input samples
+     * @return the required capacity of the output array
+     */
+    public int getMaxOutputLength(final int inputLength) {
+        return (int) (((long) inputLength * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Clear the carried input, so the next call starts a new stream
+     */
+    public void reset() {
+        Arrays.fill(work, 0f);
+        phase = 0;
+        position = 0;
+    }
+
+    /**
+     * Resample 16 bit audio
+     *
+     * @param input       the input samples
+     * @param inputLength the number of valid input samples
+     * @param output      the output array, of at least {@link #getMaxOutputLength(int)}
+     * @return the number of output samples written
+     */
+    public int process(@NonNull final short[] input, final int inputLength, @NonNull final short[] output) {
+        final float[] line = load(inputLength);
+        for (int i = 0; i < inputLength; i++) {
+            line[taps - 1 + i] = input[i];
+        }
+        return filter(inputLength, null, output);
+    }
+
+    /**
+     * Resample float audio
+     *
+     * @param input       the input samples
+     * @param inputLength the number of valid input samples
+     * @param output      the output array, of at least {@link #getMaxOutputLength(int)}
+     * @return the number of output samples written
+     */
+    public int process(@NonNull final float[] input, final int inputLength, @NonNull final float[] output) {
+        final float[] line = load(inputLength);
+        System.arraycopy(input, 0, line, taps - 1, inputLength);
+        return filter(inputLength, output, null);
+    }
+
+    private float[] load(final int inputLength) {
+        if (work.length < taps - 1 + inputLength) {
+            final float[] grown = new float[taps - 1 + inputLength];
+            System.arraycopy(work, 0, grown, 0, taps - 1);
+            work = grown;
+        }
+        return work;
+    }
+
+    private int filter(final int inputLength, final float[] floats, final short[] shorts) {
+
+        final float[] line = work;
+        final int span = taps;
+
+        int index = position;
+        int p = phase;
+        int count = 0;
+        float[] coefficients;
+        float acc;
+        int start;
+
+        while (index < inputLength) {
+
+            coefficients = phases[p];
+            start = index;
+            acc = 0f;
+            for (int k = 0; k < span; k++) {
+                acc += coefficients[k] * line[start + k];
+            }
+
+            if (shorts != null) {
+                shorts[count++] = clip(acc);
+            } else {
+                floats[count++] = acc;
+            }
+
+            p += down;
+            index += p / up;
+            p %= up;
+        }
+
+        position = index - inputLength;
+        phase = p;
+
+        System.arraycopy(line, inputLength, line, 0, taps - 1);
+        return count;
+    }
+
+    private static short clip(final float value) {
+        final int rounded = Math.round(value);
+        if (rounded > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        } else if (rounded < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) rounded;
+    }
+
+    /**
+     * Design the prototype filter at the upsampled rate, and split it into reversed phases
+     *
+     * @param up     the interpolation factor
+     * @param taps   the taps per phase
+     * @param cutoff the cut off in cycles per upsampled sample
+     * @return the phases
+     */
+    private static float[][] design(final int up, final int taps, final double cutoff) {
+
+        final int length = up * taps;
+        final double centre = (length - 1) / 2.0;
+        final double norm = besselI0(KAISER_BETA);
+        final float[][] phases = new float[up][taps];
+
+        double t;
+        double x;
+        double sinc;
+        double window;
+        for (int n = 0; n < length; n++) {
+            t = n - centre;
+            x = 2.0 * cutoff * t;
+            sinc = x == 0 ? 1.0 : Math.sin(Math.PI * x) / (Math.PI * x);
+            x = 2.0 * n / (length - 1) - 1.0;
+            window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0.0, 1.0 - x * x))) / norm;
+
+            // Tap k of phase p weights the input k samples before the newest
+            phases[n % up][taps - 1 - n / up] = (float) (2.0 * cutoff * up * sinc * window);
+        }
+
+        return phases;
+    }
+
+    private static double besselI0(final double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        final double half = x / 2.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        int t;
+        while (b != 0) {
+            t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
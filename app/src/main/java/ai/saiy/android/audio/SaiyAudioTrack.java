@@ -21,8 +21,10 @@ import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Pair;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -50,7 +52,39 @@ public class SaiyAudioTrack extends AudioTrack {
 
     private volatile SaiyProgressListener listener;
 
-    private final BlockingQueue<Pair<byte[], String>> byteQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Pair<AudioLoader, String>> byteQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * Supplies the uncompressed audio of a queued utterance when it reaches the front of the queue,
+     * so that it needn't be fetched and decoded until the audio ahead of it has been written.
+     */
+    public interface AudioLoader {
+
+        /**
+         * Called on the thread processing the queue, just before the audio is played.
+         *
+         * @return the uncompressed audio byte[], or null if it is no longer available
+         */
+        @Nullable
+        byte[] load();
+    }
+
+    /**
+     * An {@link AudioLoader} of audio that is already uncompressed
+     */
+    private static final class BytesLoader implements AudioLoader {
+
+        private final byte[] uncompressedBytes;
+
+        private BytesLoader(@NonNull final byte[] uncompressedBytes) {
+            this.uncompressedBytes = uncompressedBytes;
+        }
+
+        @Override
+        public byte[] load() {
+            return uncompressedBytes;
+        }
+    }
 
     /**
      * Class constructor.
@@ -156,9 +190,12 @@ public class SaiyAudioTrack extends AudioTrack {
             MyLog.i(CLS_NAME, "enqueue: queue size: " + byteQueue.size());
         }
 
+        final Pair<AudioLoader, String> item = new Pair<AudioLoader, String>(new BytesLoader(uncompressedBytes),
+                utteranceId);
+
         synchronized (byteQueue) {
             if (byteQueue.isEmpty()) {
-                byteQueue.add(new Pair<>(uncompressedBytes, utteranceId));
+                byteQueue.add(item);
                 try {
                     process();
                 } catch (final NoSuchElementException e) {
@@ -173,36 +210,99 @@ public class SaiyAudioTrack extends AudioTrack {
                     }
                 }
             } else {
-                byteQueue.add(new Pair<>(uncompressedBytes, utteranceId));
+                byteQueue.add(item);
             }
         }
     }
 
     /**
-     * Process any pending audio
+     * Add a sequence of audio segments to the queue as a single operation, so that they play back
+     * to back without the track being stopped in between. The audio of each segment is loaded only
+     * once the segment ahead of it has been written. If the queue isn't currently processing any
+     * audio, it will be started and this method will block until the segments have played.
+     *
+     * @param segments the {@link AudioLoader} and utterance id of each segment, in order
+     * @return the number of segments played on this thread, which is fewer than were enqueued if
+     * the audio of one couldn't be loaded. -1 if they were queued behind other audio, or playback
+     * was interrupted.
      */
-    private synchronized void process() throws NoSuchElementException, IllegalStateException {
+    public int enqueue(@NonNull final List<Pair<AudioLoader, String>> segments) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "enqueue: segments: " + segments.size() + " queue size: " + byteQueue.size());
+        }
+
+        synchronized (byteQueue) {
+            if (byteQueue.isEmpty()) {
+                byteQueue.addAll(segments);
+                try {
+                    return process();
+                } catch (final NoSuchElementException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "enqueue: segments: NoSuchElementException");
+                        e.printStackTrace();
+                    }
+                } catch (final IllegalStateException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "enqueue: segments: IllegalStateException");
+                        e.printStackTrace();
+                    }
+                }
+            } else {
+                byteQueue.addAll(segments);
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Check if the queue is currently empty
+     *
+     * @return true if no audio is pending
+     */
+    public boolean isIdle() {
+        return byteQueue.isEmpty();
+    }
+
+    /**
+     * Process any pending audio. If the audio of an item can't be loaded, it and the items queued
+     * behind it are dropped without being started, so that they can be synthesised instead.
+     *
+     * @return the number of items played
+     */
+    private synchronized int process() throws NoSuchElementException, IllegalStateException {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "process");
         }
 
+        int played = 0;
+
         while (!byteQueue.isEmpty()) {
             if (DEBUG) {
                 MyLog.i(CLS_NAME, "processing: queue size: " + byteQueue.size());
             }
 
+            final Pair<AudioLoader, String> item = byteQueue.element();
+            final byte[] audio = item.first.load();
+
+            if (audio == null) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "process: audio unavailable: " + item.second);
+                }
+
+                byteQueue.clear();
+                stop(false);
+                break;
+            }
+
             play();
-            listener.onStart(byteQueue.element().second);
+            listener.onStart(item.second);
 
             int offset = SaiyAudioTrack.WAV_OFFSET;
             int bytesToWrite;
-            String utteranceId = null;
-            while (byteQueue.element() != null && offset < byteQueue.element().first.length) {
-
-                utteranceId = byteQueue.element().second;
-                bytesToWrite = Math.min(SaiyAudioTrack.MAX_AUDIO_BUFFER_SIZE,
-                        byteQueue.element().first.length - offset);
-                write(byteQueue.element().first, offset, bytesToWrite);
+            while (byteQueue.element() == item && offset < audio.length) {
+                bytesToWrite = Math.min(SaiyAudioTrack.MAX_AUDIO_BUFFER_SIZE, audio.length - offset);
+                write(audio, offset, bytesToWrite);
                 offset += bytesToWrite;
             }
 
@@ -211,12 +311,15 @@ public class SaiyAudioTrack extends AudioTrack {
             if (byteQueue.isEmpty()) {
                 stop(false);
             }
-            listener.onDone(utteranceId);
+            listener.onDone(item.second);
+            played++;
         }
 
         if (DEBUG) {
             MyLog.i(CLS_NAME, "processing complete. Queue empty");
         }
+
+        return played;
     }
 
     /**
@@ -52,6 +52,9 @@ public class SaiyRecorder {
     private final int bufferSizeInBytes;
     private final boolean enhance;
 
+    private byte[] preRoll;
+    private int preRollOffset;
+
     /**
      * Constructor
      * <p>
@@ -110,6 +113,11 @@ public class SaiyRecorder {
      */
     public int initialise() {
 
+        final byte[] pending = PreRoll.take(sampleRateInHz);
+        preRoll = (channelConfig == AudioFormat.CHANNEL_IN_MONO
+                && audioFormat == AudioFormat.ENCODING_PCM_16BIT) ? pending : null;
+        preRollOffset = 0;
+
         int count = 0;
 
         while (count < 4) {
@@ -149,12 +157,28 @@ public class SaiyRecorder {
 
 
     /**
-     * Reads audio data from the audio hardware for recording into a byte array.
+     * Reads audio data from the audio hardware for recording into a byte array. Any audio handed over
+     * by the {@link PreRoll} is returned first.
      *
      * @param buffer the array to which the recorded audio data is written.
      * @return the number of bytes that were read. The number of bytes will not exceed sizeInBytes.
      */
     public int read(@NonNull final byte[] buffer) {
+
+        if (preRoll != null) {
+            final int length = Math.min(buffer.length, preRoll.length - preRollOffset) & ~1;
+            System.arraycopy(preRoll, preRollOffset, buffer, 0, length);
+            preRollOffset += length;
+
+            if (preRollOffset >= preRoll.length - 1) {
+                preRoll = null;
+            }
+
+            if (length > 0) {
+                return length;
+            }
+        }
+
         return saiyAudio.read(buffer, 0, buffer.length);
     }
 
@@ -0,0 +1,614 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java IMA-ADPCM codec for the 16-bit mono PCM held in the speech cache. Encoding is a single
+ * pass with no allocation beyond the output array, giving a fixed ratio of roughly 4:1, which is
+ * both faster and smaller than running {@link java.util.zip.Deflater#BEST_COMPRESSION} over PCM.
+ * <p>
+ * Encoded data starts with a versioned header, so it can be told apart from the GZIP entries
+ * written by earlier versions of the application:
+ * <pre>
+ *  0  magic          4 bytes  'S' 'P' 'C' 'M'
+ *  4  version        1 byte   {@link #VERSION}
+ *  5  codec          1 byte   {@link #CODEC_IMA_ADPCM}
+ *  6  block samples  2 bytes  little endian
+ *  8  sample rate    4 bytes  little endian
+ * 12  sample count   4 bytes  little endian
+ * 16  prefix length  2 bytes  little endian
+ * 18  prefix         n bytes  the original WAV header, stored verbatim
+ *     blocks         predictor (2 bytes), step index (1 byte), reserved (1 byte), packed nibbles
+ * </pre>
+ * Each block is independently decodable, so playback can begin before the whole entry is decoded.
+ */
+public final class SpeechCodec {
+
+    public static final int VERSION = 1;
+    public static final int CODEC_IMA_ADPCM = 1;
+
+    public static final int HEADER_LENGTH = 18;
+    public static final int BLOCK_SAMPLES = 505;
+    public static final int BLOCK_HEADER_LENGTH = 4;
+    public static final int BLOCK_LENGTH = BLOCK_HEADER_LENGTH + ((BLOCK_SAMPLES - 1) / 2);
+
+    private static final int WAV_HEADER_LENGTH = 44;
+    private static final int DEFAULT_SAMPLE_RATE = 16000;
+    private static final int FORMAT_PCM = 1;
+    private static final int MAX_PREFIX_LENGTH = 0xFFFF;
+
+    private static final byte[] MAGIC = {'S', 'P', 'C', 'M'};
+
+    private static final int[] INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+            19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+            130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+            337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+            876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+            2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+            5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+            15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    /**
+     * Prevent instantiation
+     */
+    private SpeechCodec() {
+    }
+
+    /**
+     * Check if the bytes were produced by this codec, rather than the legacy GZIP path
+     *
+     * @param bytes the stored bytes
+     * @return true if the header magic and version are recognised
+     */
+    public static boolean isEncoded(@Nullable final byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH) {
+            return false;
+        }
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+
+        return (bytes[4] & 0xFF) <= VERSION && (bytes[5] & 0xFF) == CODEC_IMA_ADPCM;
+    }
+
+    /**
+     * Get the length in bytes of the audio once decoded, including the stored WAV header
+     *
+     * @param encoded the encoded bytes
+     * @return the decoded length
+     */
+    public static int getDecodedLength(@NonNull final byte[] encoded) {
+        return readShort(encoded, 16) + (readInt(encoded, 12) * 2);
+    }
+
+    /**
+     * Get the sample rate recorded in the header
+     *
+     * @param encoded the encoded bytes
+     * @return the sample rate in Hz
+     */
+    public static int getSampleRate(@NonNull final byte[] encoded) {
+        return readInt(encoded, 8);
+    }
+
+    /**
+     * Check if the audio is in a layout {@link #encode(byte[])} supports: raw 16-bit PCM, or a WAV
+     * of 16-bit mono PCM whose data chunk runs to the end of the file. Anything else should be
+     * stored some other way.
+     *
+     * @param audio the WAV or raw PCM bytes
+     * @return true if the audio can be encoded
+     */
+    public static boolean canEncode(@NonNull final byte[] audio) {
+        if (isTag(audio, 0, "RIFF")) {
+            return parseWav(audio) != null;
+        }
+
+        return audio.length % 2 == 0;
+    }
+
+    /**
+     * Encode 16-bit little endian mono PCM. If the audio begins with a RIFF header, everything
+     * before the samples is stored verbatim so that {@link #decode(byte[])} returns a byte for byte
+     * compatible layout.
+     *
+     * @param audio the WAV or raw PCM bytes
+     * @return the encoded bytes
+     * @throws IllegalArgumentException if the audio is not in a layout {@link #canEncode(byte[])}
+     *                                  accepts
+     */
+    public static byte[] encode(@NonNull final byte[] audio) {
+
+        if (!canEncode(audio)) {
+            throw new IllegalArgumentException("unsupported audio format");
+        }
+
+        final int[] wav = isTag(audio, 0, "RIFF") ? parseWav(audio) : null;
+        final int prefixLength = wav != null ? wav[0] : 0;
+        final int sampleRate = wav != null ? wav[1] : DEFAULT_SAMPLE_RATE;
+        final int sampleCount = (audio.length - prefixLength) / 2;
+        final int blockCount = (sampleCount + BLOCK_SAMPLES - 1) / BLOCK_SAMPLES;
+
+        final byte[] out = new byte[HEADER_LENGTH + prefixLength + (blockCount * BLOCK_LENGTH)];
+
+        System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+        out[4] = (byte) VERSION;
+        out[5] = (byte) CODEC_IMA_ADPCM;
+        writeShort(out, 6, BLOCK_SAMPLES);
+        writeInt(out, 8, sampleRate);
+        writeInt(out, 12, sampleCount);
+        writeShort(out, 16, prefixLength);
+        System.arraycopy(audio, 0, out, HEADER_LENGTH, prefixLength);
+
+        int outOffset = HEADER_LENGTH + prefixLength;
+        int inOffset = prefixLength;
+        int remaining = sampleCount;
+        int index = 0;
+
+        while (remaining > 0) {
+            final int samples = Math.min(BLOCK_SAMPLES, remaining);
+            index = encodeBlock(audio, inOffset, samples, index, out, outOffset);
+            inOffset += samples * 2;
+            outOffset += BLOCK_LENGTH;
+            remaining -= samples;
+        }
+
+        return out;
+    }
+
+    /**
+     * Decode bytes produced by {@link #encode(byte[])}
+     *
+     * @param encoded the encoded bytes
+     * @return the WAV header, if one was stored, followed by 16-bit little endian PCM
+     */
+    public static byte[] decode(@NonNull final byte[] encoded) {
+        final byte[] out = new byte[getDecodedLength(encoded)];
+        decode(encoded, out, 0);
+        return out;
+    }
+
+    /**
+     * Decode bytes produced by {@link #encode(byte[])} into a caller supplied array, which allows
+     * the destination to be pooled.
+     *
+     * @param encoded the encoded bytes
+     * @param out     the destination, at least {@link #getDecodedLength(byte[])} from the offset
+     * @param offset  the offset into the destination
+     * @return the number of bytes written
+     */
+    public static int decode(@NonNull final byte[] encoded, @NonNull final byte[] out, final int offset) {
+
+        final int blockSamples = readShort(encoded, 6);
+        final int sampleCount = readInt(encoded, 12);
+        final int prefixLength = readShort(encoded, 16);
+        final int blockLength = BLOCK_HEADER_LENGTH + ((blockSamples - 1) / 2);
+
+        System.arraycopy(encoded, HEADER_LENGTH, out, offset, prefixLength);
+
+        int inOffset = HEADER_LENGTH + prefixLength;
+        int outOffset = offset + prefixLength;
+        int remaining = sampleCount;
+
+        while (remaining > 0) {
+            final int samples = Math.min(blockSamples, remaining);
+            decodeBlock(encoded, inOffset, samples, out, outOffset);
+            inOffset += blockLength;
+            outOffset += samples * 2;
+            remaining -= samples;
+        }
+
+        return outOffset - offset;
+    }
+
+    /**
+     * Incremental encoder for audio that arrives in chunks, such as from
+     * {@link android.speech.tts.UtteranceProgressListener#onAudioAvailable(String, byte[])}. Complete
+     * blocks are encoded as soon as they are available. The output array is retained between
+     * utterances, so a long-lived instance does not allocate per chunk.
+     */
+    public static final class Encoder {
+
+        private final byte[] carry = new byte[BLOCK_SAMPLES * 2];
+
+        private byte[] out = new byte[HEADER_LENGTH + WAV_HEADER_LENGTH + (BLOCK_LENGTH * 64)];
+        private int outLength;
+        private int carryLength;
+        private int sampleCount;
+        private int sampleRate;
+        private int index;
+
+        /**
+         * Prepare for a new utterance of raw 16-bit mono PCM. A WAV header is generated on
+         * {@link #finish()}, so the decoded layout matches the audio written by the engine to file.
+         *
+         * @param sampleRate the sample rate in Hz
+         */
+        public void reset(final int sampleRate) {
+            this.sampleRate = sampleRate;
+            outLength = HEADER_LENGTH + WAV_HEADER_LENGTH;
+            carryLength = 0;
+            sampleCount = 0;
+            index = 0;
+        }
+
+        /**
+         * Encode a chunk of 16-bit little endian mono PCM
+         *
+         * @param pcm    the audio
+         * @param offset the offset into the audio
+         * @param length the number of bytes
+         */
+        public void write(@NonNull final byte[] pcm, final int offset, final int length) {
+
+            int pos = offset;
+            final int end = offset + length;
+
+            if (carryLength > 0) {
+                final int copy = Math.min(carry.length - carryLength, end - pos);
+                System.arraycopy(pcm, pos, carry, carryLength, copy);
+                carryLength += copy;
+                pos += copy;
+
+                if (carryLength < carry.length) {
+                    return;
+                }
+
+                encodeFullBlock(carry, 0);
+                carryLength = 0;
+            }
+
+            while (end - pos >= carry.length) {
+                encodeFullBlock(pcm, pos);
+                pos += carry.length;
+            }
+
+            if (pos < end) {
+                System.arraycopy(pcm, pos, carry, 0, end - pos);
+                carryLength = end - pos;
+            }
+        }
+
+        /**
+         * Complete the utterance
+         *
+         * @return the encoded bytes, in the same format as {@link #encode(byte[])}
+         */
+        public byte[] finish() {
+
+            final int samples = carryLength / 2;
+
+            if (samples > 0) {
+                ensureCapacity(BLOCK_LENGTH);
+                Arrays.fill(out, outLength, outLength + BLOCK_LENGTH, (byte) 0);
+                index = encodeBlock(carry, 0, samples, index, out, outLength);
+                outLength += BLOCK_LENGTH;
+                sampleCount += samples;
+                carryLength = 0;
+            }
+
+            System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+            out[4] = (byte) VERSION;
+            out[5] = (byte) CODEC_IMA_ADPCM;
+            writeShort(out, 6, BLOCK_SAMPLES);
+            writeInt(out, 8, sampleRate);
+            writeInt(out, 12, sampleCount);
+            writeShort(out, 16, WAV_HEADER_LENGTH);
+            writeWavHeader(out, HEADER_LENGTH, sampleRate, sampleCount * 2);
+
+            return Arrays.copyOf(out, outLength);
+        }
+
+        /**
+         * @return the number of samples written so far
+         */
+        public int getSampleCount() {
+            return sampleCount + (carryLength / 2);
+        }
+
+        private void encodeFullBlock(final byte[] pcm, final int offset) {
+            ensureCapacity(BLOCK_LENGTH);
+            Arrays.fill(out, outLength, outLength + BLOCK_LENGTH, (byte) 0);
+            index = encodeBlock(pcm, offset, BLOCK_SAMPLES, index, out, outLength);
+            outLength += BLOCK_LENGTH;
+            sampleCount += BLOCK_SAMPLES;
+        }
+
+        private void ensureCapacity(final int additional) {
+            if (outLength + additional > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, outLength + additional));
+            }
+        }
+    }
+
+    /**
+     * Write a canonical 44 byte header for 16-bit mono PCM
+     */
+    private static void writeWavHeader(final byte[] bytes, final int offset, final int sampleRate,
+                                       final int dataLength) {
+        bytes[offset] = 'R';
+        bytes[offset + 1] = 'I';
+        bytes[offset + 2] = 'F';
+        bytes[offset + 3] = 'F';
+        writeInt(bytes, offset + 4, dataLength + WAV_HEADER_LENGTH - 8);
+        bytes[offset + 8] = 'W';
+        bytes[offset + 9] = 'A';
+        bytes[offset + 10] = 'V';
+        bytes[offset + 11] = 'E';
+        bytes[offset + 12] = 'f';
+        bytes[offset + 13] = 'm';
+        bytes[offset + 14] = 't';
+        bytes[offset + 15] = ' ';
+        writeInt(bytes, offset + 16, 16);
+        writeShort(bytes, offset + 20, 1);
+        writeShort(bytes, offset + 22, 1);
+        writeInt(bytes, offset + 24, sampleRate);
+        writeInt(bytes, offset + 28, sampleRate * 2);
+        writeShort(bytes, offset + 32, 2);
+        writeShort(bytes, offset + 34, 16);
+        bytes[offset + 36] = 'd';
+        bytes[offset + 37] = 'a';
+        bytes[offset + 38] = 't';
+        bytes[offset + 39] = 'a';
+        writeInt(bytes, offset + 40, dataLength);
+    }
+
+    /**
+     * Encode a single block. The first sample is stored verbatim as the predictor, alongside the
+     * step index carried over from the previous block.
+     *
+     * @return the step index to carry into the next block
+     */
+    private static int encodeBlock(final byte[] in, final int inOffset, final int samples, int index,
+                                   final byte[] out, final int outOffset) {
+
+        int predictor = (short) ((in[inOffset] & 0xFF) | (in[inOffset + 1] << 8));
+
+        writeShort(out, outOffset, predictor);
+        out[outOffset + 2] = (byte) index;
+        out[outOffset + 3] = 0;
+
+        int nibbleOffset = outOffset + BLOCK_HEADER_LENGTH;
+        int inPos = inOffset + 2;
+
+        for (int i = 1; i < samples; i++) {
+
+            final int sample = (short) ((in[inPos] & 0xFF) | (in[inPos + 1] << 8));
+            inPos += 2;
+
+            int step = STEP_TABLE[index];
+            int diff = sample - predictor;
+            int code = 0;
+
+            if (diff < 0) {
+                code = 8;
+                diff = -diff;
+            }
+
+            int delta = step >> 3;
+
+            if (diff >= step) {
+                code |= 4;
+                diff -= step;
+                delta += step;
+            }
+
+            step >>= 1;
+            if (diff >= step) {
+                code |= 2;
+                diff -= step;
+                delta += step;
+            }
+
+            step >>= 1;
+            if (diff >= step) {
+                code |= 1;
+                delta += step;
+            }
+
+            predictor += (code & 8) != 0 ? -delta : delta;
+
+            if (predictor > Short.MAX_VALUE) {
+                predictor = Short.MAX_VALUE;
+            } else if (predictor < Short.MIN_VALUE) {
+                predictor = Short.MIN_VALUE;
+            }
+
+            index += INDEX_TABLE[code];
+
+            if (index < 0) {
+                index = 0;
+            } else if (index > 88) {
+                index = 88;
+            }
+
+            if ((i & 1) == 1) {
+                out[nibbleOffset] = (byte) code;
+            } else {
+                out[nibbleOffset] |= (byte) (code << 4);
+                nibbleOffset++;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Decode a single block
+     */
+    private static void decodeBlock(final byte[] in, final int inOffset, final int samples,
+                                    final byte[] out, final int outOffset) {
+
+        int predictor = (short) ((in[inOffset] & 0xFF) | (in[inOffset + 1] << 8));
+        int index = in[inOffset + 2] & 0xFF;
+
+        if (index > 88) {
+            index = 88;
+        }
+
+        out[outOffset] = (byte) predictor;
+        out[outOffset + 1] = (byte) (predictor >> 8);
+
+        int nibbleOffset = inOffset + BLOCK_HEADER_LENGTH;
+        int outPos = outOffset + 2;
+
+        for (int i = 1; i < samples; i++) {
+
+            final int code;
+
+            if ((i & 1) == 1) {
+                code = in[nibbleOffset] & 0x0F;
+            } else {
+                code = (in[nibbleOffset] >> 4) & 0x0F;
+                nibbleOffset++;
+            }
+
+            final int step = STEP_TABLE[index];
+            int delta = step >> 3;
+
+            if ((code & 4) != 0) {
+                delta += step;
+            }
+            if ((code & 2) != 0) {
+                delta += step >> 1;
+            }
+            if ((code & 1) != 0) {
+                delta += step >> 2;
+            }
+
+            predictor += (code & 8) != 0 ? -delta : delta;
+
+            if (predictor > Short.MAX_VALUE) {
+                predictor = Short.MAX_VALUE;
+            } else if (predictor < Short.MIN_VALUE) {
+                predictor = Short.MIN_VALUE;
+            }
+
+            index += INDEX_TABLE[code];
+
+            if (index < 0) {
+                index = 0;
+            } else if (index > 88) {
+                index = 88;
+            }
+
+            out[outPos] = (byte) predictor;
+            out[outPos + 1] = (byte) (predictor >> 8);
+            outPos += 2;
+        }
+    }
+
+    /**
+     * Walk the chunks of a WAV, checking the format is 16-bit mono PCM and that the samples run from
+     * the data chunk to the end of the file, so none would be lost in the round trip. The size of
+     * the data chunk may be larger than the file, as engines writing a stream leave it unset.
+     *
+     * @param audio the WAV bytes
+     * @return the offset of the samples and the sample rate, or null if the layout is not supported
+     */
+    private static int[] parseWav(final byte[] audio) {
+
+        if (audio.length < 12 || !isTag(audio, 0, "RIFF") || !isTag(audio, 8, "WAVE")) {
+            return null;
+        }
+
+        int sampleRate = -1;
+        int offset = 12;
+        long size;
+
+        while (offset + 8 <= audio.length) {
+            size = readInt(audio, offset + 4) & 0xFFFFFFFFL;
+
+            if (isTag(audio, offset, "fmt ")) {
+                if (size < 16 || offset + 24 > audio.length
+                        || readShort(audio, offset + 8) != FORMAT_PCM
+                        || readShort(audio, offset + 10) != 1
+                        || readShort(audio, offset + 22) != 16) {
+                    return null;
+                }
+                sampleRate = readInt(audio, offset + 12);
+            } else if (isTag(audio, offset, "data")) {
+                final int start = offset + 8;
+                if (sampleRate <= 0 || start > MAX_PREFIX_LENGTH || start + size < audio.length
+                        || (audio.length - start) % 2 != 0) {
+                    return null;
+                }
+                return new int[]{start, sampleRate};
+            }
+
+            if (offset + 8 + size + (size & 1) > audio.length) {
+                return null;
+            }
+
+            offset += 8 + (int) size + (int) (size & 1);
+        }
+
+        return null;
+    }
+
+    private static boolean isTag(final byte[] bytes, final int offset, final String tag) {
+        if (bytes.length < offset + 4) {
+            return false;
+        }
+
+        for (int i = 0; i < 4; i++) {
+            if (bytes[offset + i] != tag.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int readShort(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16) | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+
+    private static void writeShort(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio.capture;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Single producer, multiple consumer ring of preallocated audio frames, coordinated by sequence
+ * numbers rather than a lock. The capture thread reads directly into the frame returned by
+ * {@link #claim()} and then calls {@link #publish(int)}, so no audio is allocated per buffer. Each
+ * {@link IAudioConsumer} has its own cursor, the sequence of the next frame it will read, and its own
+ * thread, which parks while it has caught up and is unparked by the producer.
+ * <p>
+ * A {@link BackPressure#BLOCK} consumer must see every frame, and is handed the frame in the ring
+ * itself. The producer never reuses a frame such a consumer has yet to finish with. If it would have
+ * to wait longer than {@link #BLOCK_TIMEOUT}, the newest audio is read into a spare frame and discarded
+ * instead, and counted as an overrun, so the audio a consumer holds is never overwritten.
+ * <p>
+ * A {@link BackPressure#DROP} consumer never holds up the producer. Each slot carries the sequence of
+ * the frame it holds, which the producer clears when it claims the slot and sets again when it publishes.
+ * The consumer checks the sequence of a slot, copies the frame into a frame of its own and then checks
+ * the sequence again, so a frame overwritten during the copy is dropped rather than delivered torn. If
+ * it falls a full ring behind, it skips to the oldest frame still held.
+ */
+public class AudioRing {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = AudioRing.class.getSimpleName();
+
+    private static final long BLOCK_TIMEOUT = 250L;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    public enum BackPressure {
+        BLOCK,
+        DROP
+    }
+
+    private final byte[][] frames;
+    private final int[] lengths;
+    private final byte[] spare;
+    private final int capacity;
+
+    private final CopyOnWriteArrayList<Cursor> cursors = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of frames published, which is the sequence of the next frame to publish
+     */
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * The sequence of the frame held in each slot, or -1 while the producer is filling it
+     */
+    private final AtomicLongArray sequences;
+
+    private volatile boolean closed;
+
+    /**
+     * Only accessed from the producer thread
+     */
+    private boolean discard;
+    private long overruns;
+
+    /**
+     * Constructor
+     *
+     * @param frameSize the size in bytes of each frame
+     * @param capacity  the number of frames to preallocate
+     */
+    public AudioRing(final int frameSize, final int capacity) {
+        this.capacity = capacity;
+        this.frames = new byte[capacity][frameSize];
+        this.lengths = new int[capacity];
+        this.spare = new byte[frameSize];
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    /**
+     * Register a consumer and start its thread. Consumers should be added before the first frame
+     * is published.
+     *
+     * @param name         the name of the consumer thread
+     * @param consumer     the {@link IAudioConsumer}
+     * @param backPressure the {@link BackPressure} policy
+     */
+    public void addConsumer(@NonNull final String name, @NonNull final IAudioConsumer consumer,
+                            @NonNull final BackPressure backPressure) {
+
+        final Cursor cursor = new Cursor(consumer, backPressure, frames[0].length);
+        cursor.position = published.get();
+        cursors.add(cursor);
+
+        final Thread thread = new Thread(cursor, CLS_NAME + "-" + name);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        cursor.thread = thread;
+        thread.start();
+    }
+
+    /**
+     * Get the frame to fill next. Only called from the producer thread.
+     *
+     * @return the frame array
+     */
+    public byte[] claim() {
+
+        final long sequence = published.get();
+        final long reuse = sequence - capacity;
+
+        if (reuse >= 0) {
+            for (final Cursor cursor : cursors) {
+                if (cursor.backPressure == BackPressure.BLOCK && !waitFor(cursor, reuse)) {
+                    overruns++;
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "claim: consumer overrun: " + overruns);
+                    }
+                    discard = true;
+                    return spare;
+                }
+            }
+        }
+
+        discard = false;
+        final int slot = (int) (sequence % capacity);
+        sequences.set(slot, -1);
+        return frames[slot];
+    }
+
+    /**
+     * Make the claimed frame available to the consumers. Only called from the producer thread.
+     *
+     * @param length the number of valid bytes in the frame
+     */
+    public void publish(final int length) {
+
+        if (discard) {
+            return;
+        }
+
+        final long sequence = published.get();
+        final int slot = (int) (sequence % capacity);
+        lengths[slot] = Math.max(length, 0);
+        sequences.set(slot, sequence);
+        published.set(sequence + 1);
+        wake();
+    }
+
+    /**
+     * Signal that no more frames will be published. Consumers finish the frames they hold and then
+     * receive {@link IAudioConsumer#onComplete()}.
+     */
+    public void close() {
+        closed = true;
+        wake();
+    }
+
+    /**
+     * Wait for every consumer to complete, after {@link #close()}
+     *
+     * @param timeout the maximum time to wait in milliseconds
+     * @return true if all consumers completed
+     */
+    public boolean await(final long timeout) {
+
+        final long deadline = System.currentTimeMillis() + timeout;
+
+        try {
+            for (final Cursor cursor : cursors) {
+                if (!cursor.done.await(Math.max(deadline - System.currentTimeMillis(), 0),
+                        TimeUnit.MILLISECONDS)) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "await: timeout");
+                    }
+                    return false;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Unpark the consumers waiting for a frame
+     */
+    private void wake() {
+        for (final Cursor cursor : cursors) {
+            if (cursor.waiting) {
+                cursor.waiting = false;
+                LockSupport.unpark(cursor.thread);
+            }
+        }
+    }
+
+    /**
+     * Wait for a blocking consumer to finish with the frame to be reused
+     *
+     * @return true if the frame is free, false if the wait timed out
+     */
+    private boolean waitFor(@NonNull final Cursor cursor, final long reuse) {
+
+        final long deadline = System.currentTimeMillis() + BLOCK_TIMEOUT;
+
+        while (cursor.position <= reuse && !cursor.finished) {
+            if (System.currentTimeMillis() > deadline || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+        }
+
+        return true;
+    }
+
+    private class Cursor implements Runnable {
+
+        private final IAudioConsumer consumer;
+        private final BackPressure backPressure;
+        private final byte[] copy;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile Thread thread;
+        private volatile long position;
+        private volatile boolean waiting;
+        private volatile boolean finished;
+
+        /**
+         * Written between the copy of a frame and the second check of its sequence. A volatile
+         * write can't be reordered with the reads before it, or the volatile read after it, so it
+         * keeps the copy from being completed after the check.
+         */
+        @SuppressWarnings("unused")
+        private volatile long fence;
+
+        private long dropped;
+
+        Cursor(@NonNull final IAudioConsumer consumer, @NonNull final BackPressure backPressure,
+               final int frameSize) {
+            this.consumer = consumer;
+            this.backPressure = backPressure;
+            this.copy = backPressure == BackPressure.DROP ? new byte[frameSize] : null;
+        }
+
+        @Override
+        public void run() {
+
+            long available;
+            int slot;
+            int length;
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+
+                    available = published.get();
+
+                    if (position >= available) {
+                        if (closed && position >= published.get()) {
+                            break;
+                        }
+
+                        waiting = true;
+                        if (position >= published.get() && !closed) {
+                            LockSupport.parkNanos(this, PARK_NANOS);
+                        }
+                        waiting = false;
+                        continue;
+                    }
+
+                    if (backPressure == BackPressure.BLOCK) {
+                        slot = (int) (position % capacity);
+                        consumer.onFrame(frames[slot], lengths[slot]);
+                        position++;
+                        continue;
+                    }
+
+                    if (available - position > capacity) {
+                        dropped += available - capacity - position;
+                        position = available - capacity;
+                    }
+
+                    slot = (int) (position % capacity);
+
+                    if (sequences.get(slot) != position) {
+                        // Already being overwritten
+                        dropped++;
+                        position++;
+                        continue;
+                    }
+
+                    length = lengths[slot];
+                    System.arraycopy(frames[slot], 0, copy, 0, length);
+                    fence = position;
+
+                    if (sequences.get(slot) != position) {
+                        // Overwritten during the copy
+                        dropped++;
+                        position++;
+                        continue;
+                    }
+
+                    consumer.onFrame(copy, length);
+                    position++;
+                }
+            } finally {
+                consumer.onComplete();
+                finished = true;
+                done.countDown();
+
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, Thread.currentThread().getName() + ": position: " + position
+                            + " dropped: " + dropped);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio.capture;
+
+import android.support.annotation.NonNull;
+
+import ai.saiy.android.audio.AudioConversion;
+import ai.saiy.android.audio.Resampler;
+
+/**
+ * An {@link IAudioConsumer} that converts each 16 bit frame from the capture format to the one its
+ * delegate expects, mixing down to mono and resampling, so that a single capture can serve
+ * consumers at different rates. The working arrays are sized on the first frame and reused, and
+ * the delegate receives a frame it must not retain, as with the ring itself.
+ */
+public class FormatAdapter implements IAudioConsumer {
+
+    private final IAudioConsumer delegate;
+    private final int channels;
+    private final Resampler resampler;
+
+    private short[] samples;
+    private short[] mono;
+    private short[] resampled;
+    private byte[] frame;
+
+    /**
+     * Constructor
+     *
+     * @param delegate   the {@link IAudioConsumer} expecting mono audio at the output rate
+     * @param inputRate  the sample rate of the capture
+     * @param channels   the number of interleaved channels in the capture
+     * @param outputRate the sample rate the delegate expects
+     */
+    public FormatAdapter(@NonNull final IAudioConsumer delegate, final int inputRate, final int channels,
+                         final int outputRate) {
+        this.delegate = delegate;
+        this.channels = channels;
+        this.resampler = new Resampler(inputRate, outputRate);
+    }
+
+    @Override
+    public void onFrame(final byte[] bytes, final int length) {
+
+        if (channels == 1 && resampler.isPassThrough()) {
+            delegate.onFrame(bytes, length);
+            return;
+        }
+
+        final int count = length / 2;
+        if (samples == null || samples.length < count) {
+            samples = new short[count];
+            mono = new short[count / channels + 1];
+            resampled = new short[resampler.getMaxOutputLength(mono.length)];
+            frame = new byte[resampled.length * 2];
+        }
+
+        AudioConversion.toShorts(bytes, length, samples);
+        int output = AudioConversion.downmix(samples, count, channels, mono);
+
+        if (!resampler.isPassThrough()) {
+            output = resampler.process(mono, output, resampled);
+            delegate.onFrame(frame, AudioConversion.toBytes(resampled, output, frame));
+        } else {
+            delegate.onFrame(frame, AudioConversion.toBytes(mono, output, frame));
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        delegate.onComplete();
+    }
+}
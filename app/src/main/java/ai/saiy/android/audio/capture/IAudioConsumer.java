@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio.capture;
+
+/**
+ * A reader of captured audio frames from an {@link AudioRing}. Each consumer is called on its own
+ * thread, in frame order. The frame array belongs to the ring, or for a
+ * {@link AudioRing.BackPressure#DROP} consumer to its cursor, and must not be retained beyond the call.
+ */
+public interface IAudioConsumer {
+
+    void onFrame(final byte[] frame, final int length);
+
+    void onComplete();
+}
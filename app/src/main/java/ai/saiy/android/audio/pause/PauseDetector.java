@@ -35,6 +35,7 @@
  *      limitations under the License.
  */
 
+
 package ai.saiy.android.audio.pause;
 
 import ai.saiy.android.utils.MyLog;
@@ -42,8 +43,17 @@ import ai.saiy.android.utils.MyLog;
 /**
  * Created by benrandall76@gmail.com on 15/02/2016.
  * <p/>
- * Class to detect when a user has stopped speaking adapted from the excellent library from the
- * author below.
+ * Class to detect when a user has stopped speaking. Originally adapted from the excellent library
+ * from the author below, it is now a streaming detector, which does constant work per frame and
+ * holds no recording.
+ * <p/>
+ * Each {@link #WINDOW_MILLIS} window of audio is classed by a {@link SpeechClassifier}, as speech
+ * when its energy is sufficiently above an adaptive noise floor, or, for unvoiced sounds, moderately
+ * above it with a high zero-crossing rate. The noise floor does not follow the audio until the
+ * {@link #HANGOVER_WINDOWS} after speech have passed. Speech must persist for {@link #ONSET_WINDOWS} to begin, and the end point is
+ * reached after {@link #setEndSilence(long)} of non-speech. Until speech has begun, the end point
+ * cannot be reached before the pause ignore time. All timing is measured in audio, not wall clock
+ * time, so that the outcome for a given recording is always the same.
  *
  * @author Kaarel Kaljurand
  */
@@ -52,24 +62,31 @@ public class PauseDetector {
     private final boolean DEBUG = MyLog.DEBUG;
     private final String CLS_NAME = PauseDetector.class.getSimpleName();
 
-    private final int PAUSE_THRESHOLD = 7;
     public static final long DEFAULT_PAUSE_IGNORE_TIME = 4000;
-    private final int MAX_RECORDING_LENGTH = 120;
+    public static final long DEFAULT_END_SILENCE = 800;
+    public static final double DEFAULT_SPEECH_RATIO = 4.0;
 
-    private long pauseCheck;
+    private static final int MAX_RECORDING_LENGTH = 120;
+    private static final int WINDOW_MILLIS = 10;
+    private static final int ONSET_WINDOWS = 3;
+    private static final int HANGOVER_WINDOWS = 20;
+    private static final double MIN_SPEECH_ENERGY = 150 * 150;
+    private static final double FRICATIVE_ZCR = 0.3;
+
+    private final PauseListener pauseListener;
     private final long pauseIgnoreTime;
+    private final SpeechClassifier classifier;
 
-    private final short RESOLUTION_IN_BYTES = 2;
-    private final int mOneSec;
+    private long endSilence = DEFAULT_END_SILENCE;
 
-    // TODO: use: mRecording.length instead
-    // TODO: synchronisation and atomics
-    private volatile int mRecordedLength = 0;
-    private final PauseListener pauseListener;
     private volatile boolean hasDetected;
-    private final byte[] mRecording;
-    private volatile double mAvgEnergy = 0;
-    private final int maxSize;
+    private volatile boolean endpoint;
+
+    private long endpointWindow = -1;
+    private int speechRun;
+    private int silenceRun;
+    private int hangover;
+    private boolean speechStarted;
 
     /**
      * Constructor for the PauseDetector
@@ -82,143 +99,147 @@ public class PauseDetector {
                          final int nChannels, final long pauseIgnoreTime) {
         this.pauseListener = pauseListener;
         this.pauseIgnoreTime = pauseIgnoreTime;
-
-        mOneSec = RESOLUTION_IN_BYTES * nChannels * sampleRateInHz;
-        mRecording = new byte[mOneSec * MAX_RECORDING_LENGTH];
-        hasDetected = false;
-        maxSize = mRecording.length;
+        this.classifier = new SpeechClassifier(sampleRateInHz * nChannels * WINDOW_MILLIS / 1000,
+                DEFAULT_SPEECH_RATIO, MIN_SPEECH_ENERGY, FRICATIVE_ZCR);
     }
 
     /**
-     * Start the pause detection
+     * Set the duration of non-speech after which the user is considered to have finished
+     *
+     * @param endSilence the duration in milliseconds. Values of zero or less are ignored.
      */
-    public void begin() {
-        pauseCheck = System.currentTimeMillis();
+    public void setEndSilence(final long endSilence) {
+        if (endSilence > 0) {
+            this.endSilence = endSilence;
+        }
     }
 
     /**
-     * Add information from the buffer
+     * Set how far above the noise floor the energy of a window must be for it to be considered speech
      *
-     * @param buffer           the audio buffer
-     * @param bufferReadResult the previous read result
+     * @param speechRatio the ratio of energies, such as 4.0 for 6dB
      */
-    public void addLength(final byte[] buffer, final int bufferReadResult) {
-
-        synchronized (this) {
-
-            if (!hasDetected) {
-                new Thread() {
-                    public void run() {
-
-                        mRecordedLength += buffer.length;
-
-                        if (mRecordedLength <= maxSize) {
-                            System.arraycopy(buffer, 0, mRecording, mRecordedLength, bufferReadResult);
-                        } else {
-                            hasDetected = true;
-                        }
-                    }
-                }.start();
-            }
+    public void setSpeechRatio(final double speechRatio) {
+        if (speechRatio > 1) {
+            classifier.setSpeechRatio(speechRatio);
         }
     }
 
     /**
-     * Check if a pause has been detected
+     * Start the pause detection
      */
-    public boolean hasDetected() {
-        return hasDetected;
+    public void begin() {
+        hasDetected = false;
+        endpoint = false;
+        endpointWindow = -1;
+        classifier.reset();
+        speechRun = 0;
+        silenceRun = 0;
+        hangover = 0;
+        speechStarted = false;
     }
 
     /**
-     * Monitor the audio data
+     * Add information from the buffer. Called on the pause detection thread of the capture ring.
+     *
+     * @param buffer           the audio buffer of 16 bit little endian pcm
+     * @param bufferReadResult the previous read result
      */
-    public void monitor() {
-
-        synchronized (this) {
-
-            if (!hasDetected) {
+    public void addLength(final byte[] buffer, final int bufferReadResult) {
 
-                new Thread() {
-                    public void run() {
+        if (endpoint || bufferReadResult <= 0) {
+            return;
+        }
 
-                        double pauseScore = getPauseScore();
-                        if (DEBUG) {
-                            MyLog.i(CLS_NAME, "Pause score: " + pauseScore);
-                        }
+        final int length = bufferReadResult - (bufferReadResult % 2);
 
-                        if (System.currentTimeMillis() - pauseCheck < pauseIgnoreTime) {
-                            if (DEBUG) {
-                                MyLog.i(CLS_NAME, "PAUSE_IGNORE_TIME: too early");
-                            }
-                        } else {
-                            if (pauseScore > PAUSE_THRESHOLD) {
-                                hasDetected = true;
-                                pauseListener.onPauseDetected();
-                            }
-                        }
-                    }
-                }.start();
+        for (int i = 0; i < length; i += 2) {
+            if (classifier.add((short) ((buffer[i] & 0xff) | (buffer[i + 1] << 8)))) {
+                onWindow();
 
-                if (DEBUG) {
-                    int running = 0;
-                    for (final Thread thread : Thread.getAllStackTraces().keySet()) {
-                        if (thread.getState() == Thread.State.RUNNABLE) {
-                            running++;
-                        }
-                    }
-
-                    MyLog.v(CLS_NAME, "Threads running: " + running);
+                if (endpoint) {
+                    return;
                 }
             }
         }
     }
 
     /**
-     * In order to calculate if the user has stopped speaking we take the
-     * data from the last second of the recording, map it to a number
-     * and compare this number to the numbers obtained previously. We
-     * return a confidence score (0-INF) of a longer pause having occurred in the
-     * speech input.
-     * <p/>
-     * TODO: base the implementation on some well-known technique.
-     * TODO: behaves very differently depending on the {@link android.media.MediaRecorder.AudioSource}
-     *
-     * @return positive value which the caller can use to determine if there is a pause
+     * Update the end point state from a complete window
      */
-    private double getPauseScore() {
+    private void onWindow() {
+
+        if (classifier.isCalibrating()) {
+            return;
+        }
 
-        long t2 = getRms(mRecordedLength, mOneSec);
+        final long windows = classifier.getWindows();
 
-        if (t2 == 0) {
-            return 0;
+        if (classifier.isSpeech()) {
+            silenceRun = 0;
+            hangover = HANGOVER_WINDOWS;
+            if (++speechRun >= ONSET_WINDOWS && !speechStarted) {
+                speechStarted = true;
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "speech started: " + (windows * WINDOW_MILLIS) + "ms");
+                }
+            }
+        } else {
+            speechRun = 0;
+            silenceRun++;
+
+            if (hangover > 0) {
+                hangover--;
+            } else {
+                classifier.adapt();
+            }
         }
 
-        double t = mAvgEnergy / t2;
-        mAvgEnergy = (2 * mAvgEnergy + t2) / 3;
+        final long elapsed = windows * WINDOW_MILLIS;
 
-        return t;
+        if ((silenceRun * WINDOW_MILLIS >= endSilence && (speechStarted || elapsed >= pauseIgnoreTime))
+                || elapsed >= MAX_RECORDING_LENGTH * 1000L) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "end point: " + elapsed + "ms speech: " + speechStarted);
+            }
+            endpointWindow = windows;
+            endpoint = true;
+        }
     }
 
-    private long getRms(int end, int span) {
-        int begin = end - span;
-        if (begin < 0) {
-            begin = 0;
-        }
+    /**
+     * Check if a pause has been detected
+     */
+    public boolean hasDetected() {
+        return hasDetected;
+    }
 
-        if (0 != (begin % 2)) {
-            begin++;
-        }
+    /**
+     * Check if speech has begun
+     *
+     * @return true if speech has been detected since {@link #begin()}
+     */
+    public boolean hasSpeechStarted() {
+        return speechStarted;
+    }
 
-        long sum = 0;
-        for (int i = begin; i < end; i += 2) {
-            short curSample = getShort(mRecording[i], mRecording[i + 1]);
-            sum += curSample * curSample;
-        }
-        return sum;
+    /**
+     * Get the position of the end point in the audio
+     *
+     * @return the end point in milliseconds, or -1 if not yet reached
+     */
+    public long getEndpointMillis() {
+        return endpointWindow < 0 ? -1 : endpointWindow * WINDOW_MILLIS;
     }
 
-    private short getShort(byte argB1, byte argB2) {
-        return (short) (argB1 | (argB2 << 8));
+    /**
+     * Notify the listener once the end point has been reached. Called on the pause detection thread
+     * of the capture ring, after {@link #addLength(byte[], int)}.
+     */
+    public void monitor() {
+        if (endpoint && !hasDetected) {
+            hasDetected = true;
+            pauseListener.onPauseDetected();
+        }
     }
 }
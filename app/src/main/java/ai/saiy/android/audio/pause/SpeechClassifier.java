@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio.pause;
+
+/**
+ * The energy voice activity classification shared by the {@link PauseDetector} and the
+ * {@link ai.saiy.android.audio.EnergyGate}.
+ * <p>
+ * Audio is added a sample at a time and measured in windows. The first {@link #CALIBRATION_WINDOWS}
+ * set the noise floor to their mean energy. Each window after those is classed as speech when its
+ * energy is above the noise floor by the speech ratio, and above a minimum. Optionally, a window of
+ * unvoiced speech, moderately above the threshold with a high zero-crossing rate, is also speech.
+ * <p>
+ * How the noise floor then follows the audio differs between the callers, so it only moves when
+ * they call {@link #adapt()} or {@link #creep(double)}.
+ */
+public class SpeechClassifier {
+
+    /**
+     * A zero-crossing rate no window can exceed, so that only energy decides
+     */
+    public static final double NO_FRICATIVES = 1.0;
+
+    private static final int CALIBRATION_WINDOWS = 10;
+    private static final double NOISE_FALL = 0.2;
+    private static final double NOISE_RISE = 0.02;
+
+    private final int windowSamples;
+    private final double minSpeechEnergy;
+    private final double fricativeZcr;
+
+    private double speechRatio;
+
+    private int windowCount;
+    private double windowSum;
+    private int windowCrossings;
+    private short lastSample;
+
+    private long windows;
+    private double noiseFloor;
+    private double energy;
+    private boolean speech;
+
+    /**
+     * Constructor
+     *
+     * @param windowSamples   the samples in each window
+     * @param speechRatio     how far above the noise floor the energy of speech must be
+     * @param minSpeechEnergy the mean square energy below which a window is never speech
+     * @param fricativeZcr    the zero-crossing rate above which a window at half the threshold is
+     *                        speech, or {@link #NO_FRICATIVES}
+     */
+    public SpeechClassifier(final int windowSamples, final double speechRatio, final double minSpeechEnergy,
+                            final double fricativeZcr) {
+        this.windowSamples = windowSamples;
+        this.speechRatio = speechRatio;
+        this.minSpeechEnergy = minSpeechEnergy;
+        this.fricativeZcr = fricativeZcr;
+    }
+
+    /**
+     * @param speechRatio the ratio of energies, such as 4.0 for 6dB
+     */
+    public void setSpeechRatio(final double speechRatio) {
+        this.speechRatio = speechRatio;
+    }
+
+    /**
+     * Discard the partial window and the noise floor, ready to calibrate again
+     */
+    public void reset() {
+        windowCount = 0;
+        windowSum = 0;
+        windowCrossings = 0;
+        lastSample = 0;
+        windows = 0;
+        noiseFloor = 0;
+        energy = 0;
+        speech = false;
+    }
+
+    /**
+     * Add a sample to the current window
+     *
+     * @param sample the 16 bit sample
+     * @return true if the window is now complete and has been classified
+     */
+    public boolean add(final short sample) {
+
+        windowSum += sample * sample;
+        if ((sample ^ lastSample) < 0) {
+            windowCrossings++;
+        }
+        lastSample = sample;
+
+        if (++windowCount == windowSamples) {
+            classify(windowSum / windowCount, (double) windowCrossings / windowCount);
+            windowCount = 0;
+            windowSum = 0;
+            windowCrossings = 0;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param energy the mean square energy of the window
+     * @param zcr    the zero-crossing rate of the window
+     */
+    private void classify(final double energy, final double zcr) {
+
+        this.energy = energy;
+        windows++;
+
+        if (windows <= CALIBRATION_WINDOWS) {
+            noiseFloor += (energy - noiseFloor) / windows;
+            speech = false;
+            return;
+        }
+
+        final double threshold = Math.max(noiseFloor * speechRatio, minSpeechEnergy);
+        speech = energy > threshold || (energy > threshold / 2 && zcr > fricativeZcr);
+    }
+
+    /**
+     * Move the noise floor towards the energy of the last window, falling quickly and rising slowly
+     */
+    public void adapt() {
+        noiseFloor += (energy - noiseFloor) * (energy < noiseFloor ? NOISE_FALL : NOISE_RISE);
+    }
+
+    /**
+     * Move the noise floor towards the energy of the last window
+     *
+     * @param rate the fraction of the difference to move
+     */
+    public void creep(final double rate) {
+        noiseFloor += (energy - noiseFloor) * rate;
+    }
+
+    /**
+     * @return true if the last window was used to calibrate the noise floor, and was not classified
+     */
+    public boolean isCalibrating() {
+        return windows <= CALIBRATION_WINDOWS;
+    }
+
+    /**
+     * @return true if the last window was speech
+     */
+    public boolean isSpeech() {
+        return speech;
+    }
+
+    /**
+     * @return the number of complete windows since {@link #reset()}
+     */
+    public long getWindows() {
+        return windows;
+    }
+
+    /**
+     * @return the mean square energy of the current noise floor
+     */
+    public double getNoiseFloor() {
+        return noiseFloor;
+    }
+}
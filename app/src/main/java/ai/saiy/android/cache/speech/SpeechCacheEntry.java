@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ai.saiy.android.cache.speech;
+
+/**
+ * Metadata of a single {@link ai.saiy.android.database.DBSpeech} entry, used to make eviction
+ * decisions without loading the audio itself.
+ */
+public class SpeechCacheEntry {
+
+    private final long rowId;
+    private final long size;
+    private final long lastUsed;
+    private final long hits;
+
+    public SpeechCacheEntry(final long rowId, final long size, final long lastUsed, final long hits) {
+        this.rowId = rowId;
+        this.size = size;
+        this.lastUsed = lastUsed;
+        this.hits = hits;
+    }
+
+    public long getRowId() {
+        return rowId;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.cache.speech;
+
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ai.saiy.android.database.DBSpeech;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
+
+/**
+ * Enforces the byte budget of {@link DBSpeech} given by {@link SPH#getMaxSpeechCacheSize(Context)}.
+ * Room is made before every insert, using the {@link SpeechCachePolicy} chosen by the user, so the
+ * cache never exceeds its budget. The check uses the running total kept by {@link DBSpeech}, so the
+ * entries are only read when some must be evicted. Freed pages are then returned to the file system
+ * in small incremental steps, rather than a single blocking VACUUM.
+ */
+public final class SpeechCacheEviction {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = SpeechCacheEviction.class.getSimpleName();
+
+    /**
+     * Evict down to this fraction of the budget, so that every insert doesn't trigger an eviction
+     */
+    private static final double LOW_WATERMARK = 0.9;
+
+    private static final int VACUUM_STEP_PAGES = 32;
+    private static final long VACUUM_STEP_DELAY = 250L;
+
+    private static final AtomicBoolean reclaiming = new AtomicBoolean();
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, CLS_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Prevent instantiation
+     */
+    private SpeechCacheEviction() {
+    }
+
+    /**
+     * Evict entries, if required, so that an insert of the given size will remain within budget.
+     * Must be called on the thread that will perform the insert.
+     *
+     * @param ctx      the application context
+     * @param incoming the size in bytes of the pending insert
+     */
+    @WorkerThread
+    public static synchronized void makeRoom(@NonNull final Context ctx, final long incoming) {
+
+        final long budget = SPH.getMaxSpeechCacheSize(ctx);
+
+        if (incoming > budget) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "makeRoom: incoming exceeds budget");
+            }
+            return;
+        }
+
+        final long used = new DBSpeech(ctx).getTotalSize();
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "makeRoom: used: " + used + " incoming: " + incoming + " budget: " + budget);
+        }
+
+        if (used >= 0 && used + incoming <= budget) {
+            return;
+        }
+
+        SpeechCacheUsage.flushNow(ctx);
+
+        final ArrayList<Long> evict = selectEvictions(new DBSpeech(ctx).getEntries(),
+                SPH.getSpeechCachePolicy(ctx), (long) (budget * LOW_WATERMARK) - incoming);
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "makeRoom: evicting: " + evict.size());
+        }
+
+        if (!evict.isEmpty() && new DBSpeech(ctx).deleteEntries(evict)) {
+            reclaim(ctx);
+        }
+    }
+
+    /**
+     * Choose which entries to evict, lowest priority first, until the remainder fits the target
+     *
+     * @param entries the current entries
+     * @param policy  the {@link SpeechCachePolicy}
+     * @param target  the size in bytes to reduce the cache to
+     * @return the row ids to evict
+     */
+    public static ArrayList<Long> selectEvictions(@NonNull final ArrayList<SpeechCacheEntry> entries,
+                                                  @NonNull final SpeechCachePolicy policy, final long target) {
+
+        final long now = System.currentTimeMillis();
+        final int size = entries.size();
+        final double[] priorities = new double[size];
+        final Integer[] order = new Integer[size];
+
+        long used = 0;
+        for (int i = 0; i < size; i++) {
+            priorities[i] = policy.getPriority(entries.get(i), now);
+            order[i] = i;
+            used += entries.get(i).getSize();
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                return Double.compare(priorities[a], priorities[b]);
+            }
+        });
+
+        final ArrayList<Long> evict = new ArrayList<>();
+
+        for (int i = 0; i < size && used > target; i++) {
+            final SpeechCacheEntry entry = entries.get(order[i]);
+            evict.add(entry.getRowId());
+            used -= entry.getSize();
+        }
+
+        return evict;
+    }
+
+    /**
+     * Return free pages to the file system in small steps on a background thread. Only one
+     * reclamation runs at a time.
+     *
+     * @param ctx the application context
+     */
+    public static void reclaim(@NonNull final Context ctx) {
+        if (reclaiming.compareAndSet(false, true)) {
+            final Context appContext = ctx.getApplicationContext();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+
+                    if (new DBSpeech(appContext).incrementalVacuum(VACUUM_STEP_PAGES) > 0) {
+                        executor.schedule(this, VACUUM_STEP_DELAY, TimeUnit.MILLISECONDS);
+                    } else {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "reclaim: complete");
+                        }
+                        reclaiming.set(false);
+                    }
+                }
+            });
+        }
+    }
+}
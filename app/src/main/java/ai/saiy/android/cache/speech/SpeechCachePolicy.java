@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ai.saiy.android.cache.speech;
+
+import android.support.annotation.NonNull;
+
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Eviction policies for the speech cache. Each assigns a priority to an entry, with the lowest
+ * priority entries evicted first, until the cache is back within its byte budget.
+ */
+public enum SpeechCachePolicy {
+
+    /**
+     * Least recently used
+     */
+    LRU {
+        @Override
+        public double getPriority(@NonNull final SpeechCacheEntry entry, final long now) {
+            return entry.getLastUsed();
+        }
+    },
+
+    /**
+     * Least frequently used, with recency breaking ties
+     */
+    LFU {
+        @Override
+        public double getPriority(@NonNull final SpeechCacheEntry entry, final long now) {
+            return entry.getHits() + ((double) entry.getLastUsed() / Math.max(now, 1L));
+        }
+    },
+
+    /**
+     * Size-aware GreedyDual-Size-Frequency. Small, frequently used entries are kept in preference
+     * to large ones, as they save the same network round trip for less space. The priorities are
+     * evaluated statelessly, so the age of the entry stands in for the usual inflation value.
+     */
+    GREEDY_DUAL {
+        @Override
+        public double getPriority(@NonNull final SpeechCacheEntry entry, final long now) {
+            final double hours = Math.max(0L, now - entry.getLastUsed()) / (double) HOUR;
+            return ((entry.getHits() + 1D) / Math.max(entry.getSize(), 1L)) / (1D + hours);
+        }
+    };
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = SpeechCachePolicy.class.getSimpleName();
+
+    private static final long HOUR = 3600000L;
+
+    /**
+     * Get the eviction priority of an entry. Lower values are evicted first.
+     *
+     * @param entry the {@link SpeechCacheEntry}
+     * @param now   the current time in milliseconds
+     * @return the priority
+     */
+    public abstract double getPriority(@NonNull final SpeechCacheEntry entry, final long now);
+
+    /**
+     * Get the policy from its stored name
+     *
+     * @param name the policy name
+     * @return the matching policy, or {@link #GREEDY_DUAL} if not recognised
+     */
+    public static SpeechCachePolicy getPolicy(final String name) {
+
+        if (name != null) {
+
+            try {
+                return Enum.valueOf(SpeechCachePolicy.class, name.trim());
+            } catch (final IllegalArgumentException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getPolicy: IllegalArgumentException");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return GREEDY_DUAL;
+    }
+}
@@ -65,6 +65,16 @@ public class SpeechCachePrepare implements IAudioCompression {
         }.start();
     }
 
+    /**
+     * Set audio that has already been compressed, such as by a streaming
+     * {@link ai.saiy.android.audio.SpeechCodec.Encoder}, and insert it directly
+     *
+     * @param compressedAudio byte[]
+     */
+    public void setCompressedAudio(@NonNull final byte[] compressedAudio) {
+        onCompressionCompleted(compressedAudio);
+    }
+
     public byte[] getCompressedAudio() {
         return compressedAudio;
     }
@@ -108,13 +118,19 @@ public class SpeechCachePrepare implements IAudioCompression {
     }
 
     /**
-     * Execute the insertion of the audio data into {@link DBSpeech}
+     * Execute the insertion of the audio data into {@link DBSpeech}, first evicting entries via
+     * {@link SpeechCacheEviction} if the insert would exceed the cache budget
      */
     private void executeInsert() {
         AsyncTask.execute(new Runnable() {
             @Override
             public void run() {
                 Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+
+                if (compressedAudio != null) {
+                    SpeechCacheEviction.makeRoom(mContext, compressedAudio.length);
+                }
+
                 final DBSpeech dbSpeech = new DBSpeech(mContext);
                 dbSpeech.insertRow(SpeechCachePrepare.this);
             }
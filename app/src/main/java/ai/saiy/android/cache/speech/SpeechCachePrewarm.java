@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.cache.speech;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashSet;
+
+import ai.saiy.android.database.DBSpeech;
+import ai.saiy.android.localisation.SupportedLanguage;
+import ai.saiy.android.personality.PersonalityResponse;
+import ai.saiy.android.service.helper.SelfAwareCache;
+import ai.saiy.android.utils.Conditions.Network;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
+
+/**
+ * Conditions and candidates for pre-warming the speech cache with the standard responses from
+ * {@link PersonalityResponse}, so that they are instant the first time they are spoken. Synthesis
+ * is only permitted whilst charging, on an unmetered network and with room left in the cache
+ * budget, at most once per {@link #RUN_INTERVAL}. The synthesis itself is paced by
+ * {@link SelfAwareCache}.
+ */
+public final class SpeechCachePrewarm {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = SpeechCachePrewarm.class.getSimpleName();
+
+    public static final long STEP_DELAY = 5000L;
+    public static final int MAX_PER_RUN = 40;
+
+    private static final long RUN_INTERVAL = 43200000L;
+
+    /**
+     * Pre-warmed entries may only fill this fraction of the budget, leaving the remainder for
+     * utterances that are actually spoken
+     */
+    private static final double BUDGET_FRACTION = 0.75;
+
+    /**
+     * Prevent instantiation
+     */
+    private SpeechCachePrewarm() {
+    }
+
+    /**
+     * Check if a new pre-warming run may begin
+     *
+     * @param ctx the application context
+     * @return true if the run interval has elapsed and conditions are met
+     */
+    @WorkerThread
+    public static boolean shouldRun(@NonNull final Context ctx) {
+
+        if (System.currentTimeMillis() - SPH.getSpeechCachePrewarm(ctx) < RUN_INTERVAL) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "shouldRun: false: interval");
+            }
+            return false;
+        }
+
+        return canContinue(ctx);
+    }
+
+    /**
+     * Check conditions before each synthesis, so a run stops as soon as the device is unplugged,
+     * moves to a metered network or the budget is reached
+     *
+     * @param ctx the application context
+     * @return true if conditions are met
+     */
+    @WorkerThread
+    public static boolean canContinue(@NonNull final Context ctx) {
+
+        if (!isCharging(ctx)) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "canContinue: false: not charging");
+            }
+            return false;
+        }
+
+        if (!Network.isConnectedUnmetered(ctx)) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "canContinue: false: metered");
+            }
+            return false;
+        }
+
+        long used = 0;
+        for (final SpeechCacheEntry entry : new DBSpeech(ctx).getEntries()) {
+            used += entry.getSize();
+        }
+
+        if (used > SPH.getMaxSpeechCacheSize(ctx) * BUDGET_FRACTION) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "canContinue: false: budget");
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the responses that are not yet cached for the given voice
+     *
+     * @param ctx        the application context
+     * @param sl         the {@link SupportedLanguage}
+     * @param initEngine the package name of the engine
+     * @param voiceName  the name of the voice
+     * @return the uncached responses, up to {@link #MAX_PER_RUN}
+     */
+    @WorkerThread
+    public static ArrayDeque<String> getUncached(@NonNull final Context ctx, @NonNull final SupportedLanguage sl,
+                                                 @NonNull final String initEngine, @NonNull final String voiceName) {
+
+        final LinkedHashSet<String> responses = new LinkedHashSet<>(PersonalityResponse.getCacheableResponses(ctx, sl));
+        final ArrayDeque<String> uncached = new ArrayDeque<>();
+        final DBSpeech dbSpeech = new DBSpeech(ctx);
+
+        for (final String response : responses) {
+            if (uncached.size() >= MAX_PER_RUN) {
+                break;
+            }
+
+            if (response.length() < SelfAwareCache.MAX_UTTERANCE_CHARS
+                    && !dbSpeech.entryExists(initEngine, voiceName, response)) {
+                uncached.add(response);
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getUncached: " + uncached.size() + " of " + responses.size());
+        }
+
+        return uncached;
+    }
+
+    private static boolean isCharging(@NonNull final Context ctx) {
+        final Intent batteryIntent = ctx.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return batteryIntent != null && batteryIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.cache.speech;
+
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ai.saiy.android.database.DBSpeech;
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Write-behind record of {@link DBSpeech} cache hits. A hit only touches this in-memory table, so
+ * the speaking thread never waits on a database write. Pending access times and hit counts are
+ * written in a single transaction after {@link #FLUSH_DELAY}, or immediately via {@link #flush(Context)}
+ * when the service is trimming memory or being destroyed.
+ */
+public final class SpeechCacheUsage {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = SpeechCacheUsage.class.getSimpleName();
+
+    private static final long FLUSH_DELAY = 60000L;
+
+    private static final ConcurrentHashMap<Long, Usage> pending = new ConcurrentHashMap<>();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, CLS_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Access time and hit count of a single entry, accumulated since the last flush
+     */
+    public static class Usage {
+
+        private long lastUsed;
+        private long hits;
+
+        public synchronized long getLastUsed() {
+            return lastUsed;
+        }
+
+        public synchronized long getHits() {
+            return hits;
+        }
+    }
+
+    /**
+     * Prevent instantiation
+     */
+    private SpeechCacheUsage() {
+    }
+
+    /**
+     * Record a cache hit. This does not touch the database.
+     *
+     * @param ctx   the application context
+     * @param rowId the row id of the entry
+     */
+    public static void record(@NonNull final Context ctx, final long rowId) {
+
+        Usage usage = pending.get(rowId);
+
+        if (usage == null) {
+            final Usage created = new Usage();
+            usage = pending.putIfAbsent(rowId, created);
+            if (usage == null) {
+                usage = created;
+            }
+        }
+
+        synchronized (usage) {
+            usage.lastUsed = System.currentTimeMillis();
+            usage.hits++;
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            final Context appContext = ctx.getApplicationContext();
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    flushScheduled.set(false);
+                    write(appContext);
+                }
+            }, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Discard any pending usage for an entry that is being deleted
+     *
+     * @param rowId the row id of the entry
+     */
+    public static void forget(final long rowId) {
+        pending.remove(rowId);
+    }
+
+    /**
+     * Write any pending usage to the database on a background thread
+     *
+     * @param ctx the application context
+     */
+    public static void flush(@NonNull final Context ctx) {
+        if (!pending.isEmpty()) {
+            final Context appContext = ctx.getApplicationContext();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    write(appContext);
+                }
+            });
+        }
+    }
+
+    /**
+     * Write any pending usage to the database on the calling thread. Used before maintenance, so
+     * that eviction decisions see the latest access times.
+     *
+     * @param ctx the application context
+     */
+    public static void flushNow(@NonNull final Context ctx) {
+        write(ctx);
+    }
+
+    private static synchronized void write(@NonNull final Context ctx) {
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final Map<Long, Usage> batch = new HashMap<>(pending.size());
+
+        for (final Long rowId : pending.keySet()) {
+            final Usage usage = pending.remove(rowId);
+            if (usage != null) {
+                batch.put(rowId, usage);
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "write: entries: " + batch.size());
+        }
+
+        if (!batch.isEmpty()) {
+            new DBSpeech(ctx).updateUsage(batch);
+        }
+    }
+}
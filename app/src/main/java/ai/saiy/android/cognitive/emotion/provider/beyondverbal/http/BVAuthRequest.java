@@ -32,7 +32,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -46,6 +45,7 @@ import java.util.concurrent.TimeoutException;
 import ai.saiy.android.cognitive.emotion.provider.beyondverbal.containers.BVCredentials;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.SPH;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Class to get an initial access token, which will be valid for a short period of time. This
@@ -102,8 +102,7 @@ public class BVAuthRequest {
         }
 
         final RequestFuture<String> future = RequestFuture.newFuture();
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final StringRequest request = new StringRequest(Request.Method.POST, AUTH_URL, future,
                 new Response.ErrorListener() {
@@ -113,7 +112,6 @@ public class BVAuthRequest {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             BVAuthRequest.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -159,7 +157,7 @@ public class BVAuthRequest {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            request.cancel();
         }
 
         if (response != null) {
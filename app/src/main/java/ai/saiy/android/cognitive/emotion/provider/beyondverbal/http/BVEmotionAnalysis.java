@@ -22,18 +22,14 @@ import android.support.annotation.NonNull;
 import android.util.Pair;
 
 import com.android.volley.AuthFailureError;
-import com.android.volley.Cache;
 import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.Network;
 import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.ServerError;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.BasicNetwork;
 import com.android.volley.toolbox.HttpHeaderParser;
-import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.StringRequest;
 import com.google.gson.Gson;
@@ -113,10 +109,7 @@ public class BVEmotionAnalysis {
         }
 
         final RequestFuture<String> future = RequestFuture.newFuture();
-        final Cache cache = UtilsVolley.getCache(mContext);
-        final Network network = new BasicNetwork(new HurlStack());
-        final RequestQueue queue = new RequestQueue(cache, network);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final String url = ANALYSIS_URL + recordingId + FROM_MS + String.valueOf(offset);
 
@@ -128,7 +121,6 @@ public class BVEmotionAnalysis {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             BVEmotionAnalysis.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -165,7 +157,7 @@ public class BVEmotionAnalysis {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            request.cancel();
         }
 
         if (response != null) {
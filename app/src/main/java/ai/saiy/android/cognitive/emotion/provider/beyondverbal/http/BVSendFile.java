@@ -24,13 +24,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.UnknownHostException;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsHttp;
 import ai.saiy.android.utils.UtilsString;
 
 /**
@@ -49,7 +49,7 @@ public class BVSendFile {
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String HEADER_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
 
-    private HttpsURLConnection urlConnection;
+    private HttpURLConnection urlConnection;
     private OutputStream outputStream;
     private FileInputStream fileInputStream;
 
@@ -71,7 +71,7 @@ public class BVSendFile {
 
         try {
 
-            urlConnection = (HttpsURLConnection) new URL(RECORDING_URL + recordingId).openConnection();
+            urlConnection = UtilsHttp.open(new URL(RECORDING_URL + recordingId));
             urlConnection.setRequestMethod(Constants.HTTP_POST);
             urlConnection.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
             urlConnection.setRequestProperty(AUTHORIZATION, BEARER_ + token);
@@ -102,7 +102,7 @@ public class BVSendFile {
                 MyLog.i(CLS_NAME, "responseCode: " + responseCode);
             }
 
-            if (responseCode != HttpsURLConnection.HTTP_OK) {
+            if (responseCode != HttpURLConnection.HTTP_OK) {
                 if (DEBUG) {
                     MyLog.e(CLS_NAME, "ErrorStream: "
                             + UtilsString.streamToString(urlConnection.getErrorStream()));
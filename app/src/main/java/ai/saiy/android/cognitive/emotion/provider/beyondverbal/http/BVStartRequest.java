@@ -32,7 +32,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonObjectRequest;
 import com.android.volley.toolbox.RequestFuture;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -47,6 +46,7 @@ import java.util.concurrent.TimeoutException;
 
 import ai.saiy.android.cognitive.emotion.provider.beyondverbal.containers.StartResponse;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Class to get a recording identifier that will be used for emotion analysis request. This identifier
@@ -99,8 +99,7 @@ public class BVStartRequest {
         }
 
         final RequestFuture<JSONObject> future = RequestFuture.newFuture();
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final JsonObjectRequest jsonObjReq = new JsonObjectRequest(Request.Method.POST, START_URL,
                 body, future, new Response.ErrorListener() {
@@ -110,7 +109,6 @@ public class BVStartRequest {
                     MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                     BVStartRequest.this.verboseError(error);
                 }
-                queue.stop();
             }
         }) {
 
@@ -147,7 +145,7 @@ public class BVStartRequest {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            jsonObjReq.cancel();
         }
 
         if (response != null) {
@@ -23,16 +23,14 @@ import android.speech.SpeechRecognizer;
 import android.support.annotation.NonNull;
 
 import java.io.IOException;
-import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.Timer;
 import java.util.TimerTask;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.R;
+import ai.saiy.android.audio.AudioUploader;
 import ai.saiy.android.audio.IMic;
 import ai.saiy.android.audio.RecognitionMic;
 import ai.saiy.android.cognitive.emotion.provider.beyondverbal.BeyondVerbal;
@@ -42,7 +40,6 @@ import ai.saiy.android.localisation.SupportedLanguage;
 import ai.saiy.android.personality.PersonalityResponse;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.service.helper.LocalRequest;
-import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.SPH;
 import ai.saiy.android.utils.UtilsString;
@@ -63,12 +60,9 @@ public class BVStreamAudio implements IMic {
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String HEADER_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
 
-    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
-    private static final String CHUNKED = "chunked";
     private static final String CONTENT_TYPE_AUDIO_PARAMS = "audio/l16; rate=8000";
 
-    private volatile HttpsURLConnection urlConnection;
-    private volatile OutputStream outputStream;
+    private final AudioUploader uploader;
 
     private volatile int retryCount;
 
@@ -93,7 +87,12 @@ public class BVStreamAudio implements IMic {
         this.recordingId = recordingId;
         this.sl = sl;
 
-        this.mic.setMicListener(this);
+        this.uploader = new AudioUploader(RECORDING_URL + recordingId, RecognitionMic.SAMPLE_RATE_HZ_8000 * 2);
+        this.uploader.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
+        this.uploader.setRequestProperty(AUTHORIZATION, BEARER_ + token);
+        this.uploader.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
+
+        this.mic.setMicListener(this, RecognitionMic.SAMPLE_RATE_HZ_8000);
     }
 
     /**
@@ -104,6 +103,7 @@ public class BVStreamAudio implements IMic {
             MyLog.i(CLS_NAME, "stream");
         }
 
+        uploader.start();
         mic.startRecording();
 
         final Thread httpThread = new Thread() {
@@ -113,21 +113,6 @@ public class BVStreamAudio implements IMic {
 
                 try {
 
-                    urlConnection = (HttpsURLConnection) new URL(RECORDING_URL + recordingId).openConnection();
-                    urlConnection.setAllowUserInteraction(false);
-                    urlConnection.setInstanceFollowRedirects(true);
-                    urlConnection.setRequestMethod(Constants.HTTP_POST);
-                    urlConnection.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
-                    urlConnection.setRequestProperty(AUTHORIZATION, BEARER_ + token);
-                    urlConnection.setUseCaches(false);
-                    urlConnection.setDoOutput(true);
-                    urlConnection.setRequestProperty(TRANSFER_ENCODING, CHUNKED);
-                    urlConnection.setChunkedStreamingMode(0);
-                    urlConnection.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
-                    urlConnection.connect();
-
-                    outputStream = urlConnection.getOutputStream();
-
                     synchronized (mic.getLock()) {
                         while (mic.isRecording()) {
                             try {
@@ -149,13 +134,18 @@ public class BVStreamAudio implements IMic {
                         MyLog.i(CLS_NAME, "requesting response");
                     }
 
+                    if (!uploader.finish()) {
+                        throw new IOException("audio upload failed");
+                    }
+
+                    final HttpURLConnection urlConnection = uploader.getConnection();
                     final int responseCode = urlConnection.getResponseCode();
 
                     if (DEBUG) {
                         MyLog.d(CLS_NAME, "responseCode: " + responseCode);
                     }
 
-                    if (responseCode != HttpsURLConnection.HTTP_OK) {
+                    if (responseCode != HttpURLConnection.HTTP_OK) {
                         if (DEBUG) {
                             MyLog.e(CLS_NAME, "audioThread ErrorStream: "
                                     + UtilsString.streamToString(urlConnection.getErrorStream()));
@@ -219,7 +209,7 @@ public class BVStreamAudio implements IMic {
                     onError(SpeechRecognizer.ERROR_NETWORK);
                 } finally {
                     closeConnection();
-                    mic.stopRecording();
+                    mic.stopRecording(BVStreamAudio.this);
                 }
             }
         };
@@ -233,18 +223,7 @@ public class BVStreamAudio implements IMic {
             MyLog.i(CLS_NAME, "onBufferReceived");
         }
 
-        try {
-            for (int i = 0; i < bufferReadResult; i++) {
-                if (outputStream != null) {
-                    outputStream.write(buffer[i]);
-                }
-            }
-        } catch (final IOException e) {
-            if (DEBUG) {
-                MyLog.e(CLS_NAME, "onBufferReceived: IOException");
-                e.printStackTrace();
-            }
-        }
+        uploader.write(buffer, bufferReadResult);
     }
 
     private void proceedAndNotify() {
@@ -375,26 +354,6 @@ public class BVStreamAudio implements IMic {
             MyLog.i(CLS_NAME, "closeConnection");
         }
 
-        if (outputStream != null) {
-
-            try {
-                outputStream.close();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        if (urlConnection != null) {
-
-            try {
-                urlConnection.disconnect();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
+        uploader.close();
     }
 }
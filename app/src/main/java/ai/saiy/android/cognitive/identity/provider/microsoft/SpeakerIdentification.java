@@ -104,6 +104,7 @@ public class SpeakerIdentification implements IMic {
                 MyLog.i(CLS_NAME, "record lock released");
             }
 
+            mic.stopRecording(this);
             mic.getRecognitionListener().onComplete();
 
         } else {
@@ -223,7 +224,7 @@ public class SpeakerIdentification implements IMic {
                         R.string.vocal_notify_verify));
                 localRequest.execute();
 
-                new ValidateID(mic, sl, apiKey, profileId, shortAudio, mic.getFile()).stream();
+                new ValidateID(mic, this, sl, apiKey, profileId, shortAudio, mic.getFile()).stream();
             } else {
                 onError(Speaker.ERROR_FILE);
             }
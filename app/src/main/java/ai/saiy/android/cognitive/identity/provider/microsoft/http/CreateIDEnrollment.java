@@ -27,6 +27,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -34,8 +35,6 @@ import java.net.UnknownHostException;
 import java.util.Timer;
 import java.util.TimerTask;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.audio.RecognitionMic;
 import ai.saiy.android.cognitive.identity.provider.microsoft.Speaker;
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.OperationStatus;
@@ -44,6 +43,7 @@ import ai.saiy.android.ui.notification.NotificationHelper;
 import ai.saiy.android.user.SaiyAccountHelper;
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsHttp;
 import ai.saiy.android.utils.UtilsString;
 
 /**
@@ -67,7 +67,7 @@ public class CreateIDEnrollment {
     private static final long FETCH_DELAY = 6000;
     private static final long FETCH_DELAY_EXTENDED = 12000;
 
-    private volatile HttpsURLConnection urlConnection;
+    private volatile HttpURLConnection urlConnection;
     private volatile OutputStream outputStream;
     private FileInputStream fileInputStream;
 
@@ -114,7 +114,7 @@ public class CreateIDEnrollment {
                     final String url = ENROLLMENT_URL + URLEncoder.encode(profileId, Constants.ENCODING_UTF8)
                             + ENROLLMENT_URL_EXTRA + String.valueOf(shortAudio);
 
-                    urlConnection = (HttpsURLConnection) new URL(url).openConnection();
+                    urlConnection = UtilsHttp.open(new URL(url));
                     urlConnection.setRequestMethod(Constants.HTTP_POST);
                     urlConnection.setRequestProperty(OCP_SUBSCRIPTION_KEY_HEADER, apiKey);
                     urlConnection.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
@@ -32,7 +32,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonObjectRequest;
 import com.android.volley.toolbox.RequestFuture;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -49,6 +48,7 @@ import java.util.concurrent.TimeoutException;
 
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.EnrollmentID;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Class to get an initial enrollment id, which will be used to enroll and validate the user.
@@ -116,8 +116,7 @@ public class CreateIDProfile {
         }
 
         final RequestFuture<JSONObject> future = RequestFuture.newFuture();
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final JsonObjectRequest jsonObjReq = new JsonObjectRequest(Request.Method.POST, CREATE_URL, object, future,
                 new Response.ErrorListener() {
@@ -127,7 +126,6 @@ public class CreateIDProfile {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             CreateIDProfile.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -165,7 +163,7 @@ public class CreateIDProfile {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            jsonObjReq.cancel();
         }
 
         if (DEBUG) {
@@ -30,7 +30,6 @@ import com.android.volley.ServerError;
 import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -39,6 +38,7 @@ import java.util.Map;
 
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Created by benrandall76@gmail.com on 07/09/2016.
@@ -86,8 +86,7 @@ public class DeleteIDProfile {
             }
         }
 
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final StringRequest stringRequest = new StringRequest(Request.Method.DELETE, url,
                 new Response.Listener<String>() {
@@ -96,7 +95,6 @@ public class DeleteIDProfile {
                         if (DEBUG) {
                             MyLog.i(CLS_NAME, "onResponse: success");
                         }
-                        queue.stop();
                     }
                 },
 
@@ -107,7 +105,6 @@ public class DeleteIDProfile {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             DeleteIDProfile.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -32,7 +32,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonObjectRequest;
 import com.android.volley.toolbox.RequestFuture;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -48,6 +47,7 @@ import java.util.concurrent.TimeoutException;
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.OperationStatus;
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.ProcessingResult;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Class to check the enrollment status of the user, post receipt of audio.
@@ -100,8 +100,7 @@ public class FetchIDOperation {
         final long then = System.nanoTime();
 
         final RequestFuture<JSONObject> future = RequestFuture.newFuture();
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final JsonObjectRequest jsonObjReq = new JsonObjectRequest(Request.Method.GET, url, null, future,
                 new Response.ErrorListener() {
@@ -111,7 +110,6 @@ public class FetchIDOperation {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             FetchIDOperation.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -149,7 +147,7 @@ public class FetchIDOperation {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            jsonObjReq.cancel();
         }
 
         if (DEBUG) {
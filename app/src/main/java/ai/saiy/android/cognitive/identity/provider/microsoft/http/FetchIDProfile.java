@@ -32,7 +32,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonObjectRequest;
 import com.android.volley.toolbox.RequestFuture;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -48,6 +47,7 @@ import java.util.concurrent.TimeoutException;
 
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.ProfileItem;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Class to get an initial enrollment id, which will be used to enroll and validate the user.
@@ -114,8 +114,7 @@ public class FetchIDProfile {
         }
 
         final RequestFuture<JSONObject> future = RequestFuture.newFuture();
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final JsonObjectRequest jsonObjReq = new JsonObjectRequest(Request.Method.GET, url, null, future,
                 new Response.ErrorListener() {
@@ -125,7 +124,6 @@ public class FetchIDProfile {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             FetchIDProfile.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -163,7 +161,7 @@ public class FetchIDProfile {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            jsonObjReq.cancel();
         }
 
         if (DEBUG) {
@@ -32,7 +32,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
@@ -49,6 +48,7 @@ import java.util.concurrent.TimeoutException;
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.ProfileList;
 import ai.saiy.android.cognitive.identity.provider.microsoft.containers.ProfileItem;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Class to get a list of enrollment ids.
@@ -102,8 +102,7 @@ public class ListIDProfiles {
         final long then = System.nanoTime();
 
         final RequestFuture<String> future = RequestFuture.newFuture();
-        final RequestQueue queue = Volley.newRequestQueue(mContext);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(mContext);
 
         final StringRequest request = new StringRequest(Request.Method.GET, LIST_URL, future,
                 new Response.ErrorListener() {
@@ -113,7 +112,6 @@ public class ListIDProfiles {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             ListIDProfiles.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -150,7 +148,7 @@ public class ListIDProfiles {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            request.cancel();
         }
 
         if (DEBUG) {
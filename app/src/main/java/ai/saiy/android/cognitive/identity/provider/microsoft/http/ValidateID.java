@@ -27,6 +27,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
@@ -34,8 +35,6 @@ import java.net.UnknownHostException;
 import java.util.Timer;
 import java.util.TimerTask;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.audio.IMic;
 import ai.saiy.android.audio.RecognitionMic;
 import ai.saiy.android.cognitive.identity.provider.microsoft.Speaker;
@@ -45,6 +44,7 @@ import ai.saiy.android.processing.Condition;
 import ai.saiy.android.ui.notification.NotificationHelper;
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsHttp;
 import ai.saiy.android.utils.UtilsString;
 
 /**
@@ -68,7 +68,7 @@ public class ValidateID implements IMic {
     private static final long FETCH_DELAY = 6000;
     private static final long FETCH_DELAY_EXTENDED = 12000;
 
-    private volatile HttpsURLConnection urlConnection;
+    private volatile HttpURLConnection urlConnection;
     private volatile OutputStream outputStream;
     private FileInputStream fileInputStream;
 
@@ -77,6 +77,7 @@ public class ValidateID implements IMic {
     private final String apiKey;
     private final String profileId;
     private final RecognitionMic mic;
+    private final IMic listener;
     private final SupportedLanguage sl;
     private final boolean shortAudio;
     private final File file;
@@ -85,15 +86,18 @@ public class ValidateID implements IMic {
      * Constructor
      *
      * @param mic       the initialised {@link RecognitionMic} object
+     * @param listener  the {@link IMic} to notify of errors, which may share the capture with others
      * @param sl        the {@link SupportedLanguage} object
      * @param apiKey    the api key
      * @param profileId of the user.
      */
-    public ValidateID(@NonNull final RecognitionMic mic, @NonNull final SupportedLanguage sl,
+    public ValidateID(@NonNull final RecognitionMic mic, @NonNull final IMic listener,
+                      @NonNull final SupportedLanguage sl,
                       @NonNull final String apiKey,
                       @NonNull final String profileId, final boolean shortAudio,
                       @NonNull final File file) {
         this.mic = mic;
+        this.listener = listener;
         this.apiKey = apiKey;
         this.profileId = profileId;
         this.sl = sl;
@@ -119,7 +123,7 @@ public class ValidateID implements IMic {
                     final String url = IDENTIFICATION_URL + URLEncoder.encode(profileId, Constants.ENCODING_UTF8)
                             + IDENTIFICATION_URL_EXTRA + String.valueOf(shortAudio);
 
-                    urlConnection = (HttpsURLConnection) new URL(url).openConnection();
+                    urlConnection = UtilsHttp.open(new URL(url));
                     urlConnection.setRequestMethod(Constants.HTTP_POST);
                     urlConnection.setRequestProperty(OCP_SUBSCRIPTION_KEY_HEADER, apiKey);
                     urlConnection.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
@@ -153,7 +157,7 @@ public class ValidateID implements IMic {
                                     + UtilsString.streamToString(urlConnection.getErrorStream()));
                         }
 
-                        mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                        listener.onError(Speaker.ERROR_NETWORK);
                     } else {
                         if (DEBUG) {
                             MyLog.d(CLS_NAME, "response: HTTP_ACCEPTED");
@@ -180,7 +184,7 @@ public class ValidateID implements IMic {
                             new Timer().schedule(timerTask, FETCH_DELAY);
 
                         } else {
-                            mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                            listener.onError(Speaker.ERROR_NETWORK);
                         }
                     }
                 } catch (final MalformedURLException e) {
@@ -188,49 +192,49 @@ public class ValidateID implements IMic {
                         MyLog.e(CLS_NAME, "MalformedURLException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final UnsupportedEncodingException e) {
                     if (DEBUG) {
                         MyLog.w(CLS_NAME, "UnsupportedEncodingException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final ParseException e) {
                     if (DEBUG) {
                         MyLog.w(CLS_NAME, "ParseException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final UnknownHostException e) {
                     if (DEBUG) {
                         MyLog.w(CLS_NAME, "UnknownHostException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final IOException e) {
                     if (DEBUG) {
                         MyLog.e(CLS_NAME, "IOException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final IllegalStateException e) {
                     if (DEBUG) {
                         MyLog.e(CLS_NAME, "IllegalStateException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final NullPointerException e) {
                     if (DEBUG) {
                         MyLog.w(CLS_NAME, "NullPointerException");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } catch (final Exception e) {
                     if (DEBUG) {
                         MyLog.w(CLS_NAME, "Exception");
                         e.printStackTrace();
                     }
-                    mic.getMicListener().onError(Speaker.ERROR_NETWORK);
+                    listener.onError(Speaker.ERROR_NETWORK);
                 } finally {
                     closeConnection();
                 }
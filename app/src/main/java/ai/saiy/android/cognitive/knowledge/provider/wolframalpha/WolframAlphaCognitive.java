@@ -34,6 +34,7 @@ import ai.saiy.android.cognitive.knowledge.provider.wolframalpha.resolve.Wolfram
 import ai.saiy.android.cognitive.knowledge.provider.wolframalpha.resolve.WolframAlphaResponse;
 import ai.saiy.android.configuration.WolframConfiguration;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsHttp;
 import ai.saiy.android.utils.UtilsString;
 
 /**
@@ -87,7 +88,7 @@ public class WolframAlphaCognitive {
                 MyLog.i(CLS_NAME, "url:" + urlString);
             }
 
-            urlConnection = (HttpURLConnection) new URL(urlString).openConnection();
+            urlConnection = (HttpURLConnection) UtilsHttp.open(new URL(urlString));
 
             urlConnection.setRequestMethod("GET");
             urlConnection.setDoInput(true);
@@ -195,7 +196,7 @@ public class WolframAlphaCognitive {
                 MyLog.i(CLS_NAME, "url:" + urlString);
             }
 
-            urlConnection = (HttpURLConnection) new URL(urlString).openConnection();
+            urlConnection = (HttpURLConnection) UtilsHttp.open(new URL(urlString));
 
             urlConnection.setRequestMethod("GET");
             urlConnection.setDoInput(true);
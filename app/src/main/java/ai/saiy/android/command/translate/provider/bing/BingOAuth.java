@@ -31,7 +31,6 @@ import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.StringRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.JsonSyntaxException;
 
 import java.io.UnsupportedEncodingException;
@@ -45,6 +44,7 @@ import java.util.concurrent.TimeoutException;
 import ai.saiy.android.configuration.MicrosoftConfiguration;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.SPH;
+import ai.saiy.android.utils.UtilsVolley;
 
 /**
  * Created by benrandall76@gmail.com on 18/04/2016.
@@ -91,8 +91,7 @@ public class BingOAuth {
             return false;
         }
 
-        final RequestQueue queue = Volley.newRequestQueue(ctx);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(ctx);
 
         Response.Listener<String> listener;
         RequestFuture<String> future = null;
@@ -116,8 +115,6 @@ public class BingOAuth {
                         MyLog.i(CLS_NAME, "onResponse: " + response);
                     }
 
-                    queue.stop();
-
                     final BingCredentials credentials = new BingCredentials(response, 600);
 
                     if (DEBUG) {
@@ -139,7 +136,6 @@ public class BingOAuth {
                             MyLog.i(CLS_NAME, "onErrorResponse: " + error.toString());
                             BingOAuth.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 })
 
@@ -208,7 +204,7 @@ public class BingOAuth {
                     e.printStackTrace();
                 }
             } finally {
-                queue.stop();
+                request.cancel();
             }
         }
 
@@ -22,18 +22,14 @@ import android.support.annotation.NonNull;
 import android.util.Pair;
 
 import com.android.volley.AuthFailureError;
-import com.android.volley.Cache;
 import com.android.volley.DefaultRetryPolicy;
-import com.android.volley.Network;
 import com.android.volley.NetworkResponse;
 import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.ServerError;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.BasicNetwork;
 import com.android.volley.toolbox.HttpHeaderParser;
-import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.RequestFuture;
 import com.android.volley.toolbox.StringRequest;
 import com.google.gson.GsonBuilder;
@@ -103,10 +99,7 @@ public class BingTranslateAPI {
         }
 
         final RequestFuture<String> future = RequestFuture.newFuture();
-        final Cache cache = UtilsVolley.getCache(ctx);
-        final Network network = new BasicNetwork(new HurlStack());
-        final RequestQueue queue = new RequestQueue(cache, network);
-        queue.start();
+        final RequestQueue queue = UtilsVolley.getRequestQueue(ctx);
 
         final String url = SERVICE_URL + params;
 
@@ -118,7 +111,6 @@ public class BingTranslateAPI {
                             MyLog.w(CLS_NAME, "onErrorResponse: " + error.toString());
                             BingTranslateAPI.this.verboseError(error);
                         }
-                        queue.stop();
                     }
                 }) {
 
@@ -156,7 +148,7 @@ public class BingTranslateAPI {
                 e.printStackTrace();
             }
         } finally {
-            queue.stop();
+            request.cancel();
         }
 
         if (DEBUG) {
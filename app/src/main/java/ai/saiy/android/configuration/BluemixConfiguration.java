@@ -49,8 +49,8 @@ public class BluemixConfiguration {
     public static URI getSpeechURI(@NonNull final String model) {
 
         try {
-            return new URI(BluemixConfiguration.BLUEMIX_SERVICE_URL + BluemixConfiguration.BLUEMIX_SERVICE_URL_EXT
-                    + model);
+            return new URI(Endpoints.resolve(BluemixConfiguration.BLUEMIX_SERVICE_URL
+                    + BluemixConfiguration.BLUEMIX_SERVICE_URL_EXT + model));
         } catch (final URISyntaxException e) {
             if (DEBUG) {
                 MyLog.w(CLS_NAME, "URISyntaxException");
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.configuration;
+
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Redirects the endpoints of the cloud providers, so that they can be pointed at local stand-in
+ * servers for offline end to end and load testing.
+ * <p>
+ * An override replaces the start of any url beginning with the given endpoint, such as
+ * {@link WitConfiguration#WIT_SPEECH_URL} or just the scheme and host of a provider, and the longest
+ * matching endpoint wins. The REST integrations are redirected through the shared client in
+ * {@link ai.saiy.android.utils.UtilsHttp}, the IBM WebSocket through
+ * {@link BluemixConfiguration#getSpeechURI(String)} and the Google Cloud Speech channel through
+ * {@link GoogleConfiguration#GOOGLE_CLOUD_SPEECH_URL}. A replacement using http or ws is connected
+ * to without TLS. The Nuance and Microsoft speech SDKs manage their own connections and cannot be
+ * redirected.
+ * <p>
+ * With no overrides set, urls are returned unchanged.
+ */
+public final class Endpoints {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = Endpoints.class.getSimpleName();
+
+    private static final String PATH_SEPARATOR = "/";
+    private static final String BOUNDARIES = "/?#:";
+
+    private static final Map<String, String> overrides = new ConcurrentHashMap<>();
+
+    /**
+     * Prevent instantiation
+     */
+    private Endpoints() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Redirect the urls beginning with the endpoint
+     *
+     * @param endpoint    the start of the urls to redirect
+     * @param replacement what to replace it with
+     */
+    public static void override(@NonNull final String endpoint, @NonNull final String replacement) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "override: " + endpoint + " -> " + replacement);
+        }
+        overrides.put(endpoint, replacement);
+    }
+
+    /**
+     * Remove all of the overrides
+     */
+    public static void reset() {
+        overrides.clear();
+    }
+
+    /**
+     * Check if any endpoint has been overridden
+     *
+     * @return true if there are overrides
+     */
+    public static boolean isOverridden() {
+        return !overrides.isEmpty();
+    }
+
+    /**
+     * Apply the longest matching override to the url
+     *
+     * @param url the url of the provider
+     * @return the redirected url, or the url unchanged
+     */
+    public static String resolve(@NonNull final String url) {
+
+        if (overrides.isEmpty()) {
+            return url;
+        }
+
+        String match = null;
+
+        for (final String endpoint : overrides.keySet()) {
+            if (matches(url, endpoint) && (match == null || endpoint.length() > match.length())) {
+                match = endpoint;
+            }
+        }
+
+        if (match != null) {
+            final String replacement = overrides.get(match);
+            if (replacement != null) {
+                return replacement + url.substring(match.length());
+            }
+        }
+
+        return url;
+    }
+
+    /**
+     * Check the url begins with the endpoint, and that it does not end part way through a host name or
+     * path segment
+     */
+    private static boolean matches(@NonNull final String url, @NonNull final String endpoint) {
+
+        if (!url.startsWith(endpoint)) {
+            return false;
+        }
+
+        if (url.length() == endpoint.length() || endpoint.endsWith(PATH_SEPARATOR)) {
+            return true;
+        }
+
+        return BOUNDARIES.indexOf(url.charAt(endpoint.length())) >= 0;
+    }
+}
@@ -40,6 +40,7 @@ public final class GoogleConfiguration {
 
     public static final String GOOGLE_SPEECH_API_KEY = "_your_value_here_";
     public static final String GOOGLE_TRANSLATE_API_KEY = "_your_value_here_";
+    public static final String GOOGLE_CLOUD_SPEECH_URL = "https://speech.googleapis.com:443";
 
     private static final String GOOGLE_SPEECH_CLOUD_API_KEY = "_your_value_here_";
 
@@ -21,18 +21,25 @@ import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.support.annotation.NonNull;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import ai.saiy.android.cache.speech.SpeechCacheEntry;
 import ai.saiy.android.cache.speech.SpeechCachePrepare;
 import ai.saiy.android.cache.speech.SpeechCacheResult;
+import ai.saiy.android.cache.speech.SpeechCacheUsage;
 import ai.saiy.android.utils.MyLog;
-import ai.saiy.android.utils.SPH;
 
 /**
  * Database class to hold compressed audio of Text to Speech Engine utterances. Utterances stored here,
@@ -48,13 +55,12 @@ public class DBSpeech extends SQLiteOpenHelper {
     private final String CLS_NAME = DBSpeech.class.getSimpleName();
 
     public static final long MAX_CACHE_SIZE = 20000000L;
-    private static final long MAX_UNUSED_THRESHOLD = 2600000000L;
-    private static final long VACUUM_THRESHOLD = 25L;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
     private static final String DATABASE_NAME = "speech.db";
     private final String DATABASE_PATH;
     private static final String TABLE_SPEECH = "table_speech";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     private static final String COLUMN_ID = "_id";
     private static final String COLUMN_ENGINE_PACKAGE = "engine_package";
@@ -63,9 +69,10 @@ public class DBSpeech extends SQLiteOpenHelper {
     private static final String COLUMN_UTTERANCE = "utterance";
     private static final String COLUMN_BINARY = "binary";
     private static final String COLUMN_DATE = "last_used_date";
+    private static final String COLUMN_HITS = "hit_count";
 
     private static final String[] ALL_COLUMNS = {COLUMN_ID, COLUMN_ENGINE_PACKAGE, COLUMN_VOICE_NAME,
-            COLUMN_VOICE_LOCALE, COLUMN_UTTERANCE, COLUMN_BINARY, COLUMN_DATE};
+            COLUMN_VOICE_LOCALE, COLUMN_UTTERANCE, COLUMN_BINARY, COLUMN_DATE, COLUMN_HITS};
 
     private static final String DATABASE_CREATE = "create table "
             + TABLE_SPEECH
@@ -82,8 +89,40 @@ public class DBSpeech extends SQLiteOpenHelper {
             + COLUMN_BINARY
             + " blob not null, "
             + COLUMN_DATE
-            + " integer not null);";
+            + " integer not null, "
+            + COLUMN_HITS
+            + " integer not null default 0);";
 
+    private static final String DATABASE_ADD_HITS = "alter table "
+            + TABLE_SPEECH
+            + " add column "
+            + COLUMN_HITS
+            + " integer not null default 0;";
+
+    private static final String SELECT_ENTRIES = "select "
+            + COLUMN_ID + ", length(" + COLUMN_BINARY + "), " + COLUMN_DATE + ", " + COLUMN_HITS
+            + " from " + TABLE_SPEECH;
+
+    private static final String SELECT_TOTAL_SIZE = "select total(length(" + COLUMN_BINARY + ")) from "
+            + TABLE_SPEECH;
+
+    private static final String SELECT_SIZE = "select length(" + COLUMN_BINARY + ") from "
+            + TABLE_SPEECH + " where " + COLUMN_ID + "=?";
+
+    private static final String UPDATE_USAGE = "update "
+            + TABLE_SPEECH
+            + " set "
+            + COLUMN_DATE + "=?, "
+            + COLUMN_HITS + "=" + COLUMN_HITS + "+?"
+            + " where " + COLUMN_ID + "=?";
+
+    /**
+     * The size of the stored audio, kept by each insert and delete so the budget can be checked
+     * without reading the table. Negative until counted once in the process.
+     */
+    private static final AtomicLong totalSize = new AtomicLong(-1);
+
+    private final Context mContext;
     private SQLiteDatabase database;
 
     /**
@@ -96,6 +135,7 @@ public class DBSpeech extends SQLiteOpenHelper {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "Constructor");
         }
+        this.mContext = mContext.getApplicationContext();
         DATABASE_PATH = mContext.getDatabasePath(DATABASE_NAME).getPath();
     }
 
@@ -119,6 +159,17 @@ public class DBSpeech extends SQLiteOpenHelper {
         database.close();
     }
 
+    /**
+     * Enable incremental vacuuming, which takes effect for a new database. An existing database
+     * is not converted, as that needs a full VACUUM, which would block the cache while the whole
+     * file is rewritten. Its free pages are reused by later inserts instead.
+     */
+    @Override
+    public void onConfigure(final SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.execSQL("PRAGMA auto_vacuum = " + AUTO_VACUUM_INCREMENTAL);
+    }
+
     @Override
     public void onCreate(final SQLiteDatabase dataBase) {
         if (DEBUG) {
@@ -131,11 +182,22 @@ public class DBSpeech extends SQLiteOpenHelper {
     public void onUpgrade(final SQLiteDatabase db, final int oldVersion, final int newVersion) {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "onUpgrade");
-            MyLog.w(CLS_NAME, "Upgrading database from version " + oldVersion + " to " + newVersion
-                    + ", which will destroy all old data");
         }
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SPEECH);
-        onCreate(db);
+
+        if (oldVersion == 1 && newVersion == 2) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "Upgrading database from version " + oldVersion + " to " + newVersion
+                        + ", adding " + COLUMN_HITS);
+            }
+            db.execSQL(DATABASE_ADD_HITS);
+        } else {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "Upgrading database from version " + oldVersion + " to " + newVersion
+                        + ", which will destroy all old data");
+            }
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_SPEECH);
+            onCreate(db);
+        }
     }
 
     /**
@@ -158,6 +220,7 @@ public class DBSpeech extends SQLiteOpenHelper {
 
             if (database.isOpen()) {
                 database.delete(TABLE_SPEECH, null, null);
+                totalSize.set(0);
                 return true;
             } else {
                 if (DEBUG) {
@@ -221,11 +284,16 @@ public class DBSpeech extends SQLiteOpenHelper {
         }
 
         final long then = System.nanoTime();
+        SpeechCacheUsage.forget(rowId);
 
         try {
             open();
             if (database.isOpen()) {
-                database.delete(TABLE_SPEECH, COLUMN_ID + "=?", new String[]{String.valueOf(rowId)});
+                final String[] args = {String.valueOf(rowId)};
+                final long size = DatabaseUtils.longForQuery(database, SELECT_SIZE, args);
+                if (database.delete(TABLE_SPEECH, COLUMN_ID + "=?", args) > 0) {
+                    addTotalSize(-size);
+                }
                 return true;
             } else {
                 if (DEBUG) {
@@ -417,14 +485,8 @@ public class DBSpeech extends SQLiteOpenHelper {
 
                     if (cursor.moveToFirst()) {
                         compressedBytes = cursor.getBlob(4);
-
-                        final ContentValues values = new ContentValues();
-                        values.put(COLUMN_DATE, String.valueOf(System.currentTimeMillis()));
-
-                        database.update(TABLE_SPEECH, values, COLUMN_ID + "=?",
-                                new String[]{String.valueOf(cursor.getLong(0))});
-
                         rowId = cursor.getLong(0);
+                        SpeechCacheUsage.record(mContext, rowId);
                     }
 
                     cursor.close();
@@ -489,59 +551,173 @@ public class DBSpeech extends SQLiteOpenHelper {
 
 
     /**
-     * Check if we should run the database maintenance, so it doesn't exceed a size that a user may
-     * be concerned about.
+     * Get the compressed audio of an entry previously found by {@link #getRowIds(String, String, List)}
      *
-     * @param ctx the application context
-     * @return true if the total size of the database exceeds {@link SPH#getMaxSpeechCacheSize(Context)}
+     * @param rowId the row id of the entry
+     * @return a populated {@link SpeechCacheResult}, which will not be successful if the entry has
+     * since been removed
      */
-    public boolean shouldRunMaintenance(@NonNull final Context ctx) {
+    public SpeechCacheResult getBytes(final long rowId) {
         if (DEBUG) {
-            MyLog.d(CLS_NAME, ": shouldRunMaintenance");
+            MyLog.i(CLS_NAME, "getBytes: rowId");
         }
 
         final long then = System.nanoTime();
-        long dbSize = 0;
+
+        byte[] compressedBytes = null;
 
         try {
+
             open();
+
             if (database.isOpen()) {
 
-                final String dbPath = database.getPath();
-                if (dbPath != null) {
+                final Cursor cursor = database.query(TABLE_SPEECH, new String[]{COLUMN_BINARY},
+                        COLUMN_ID + "=" + rowId, null, null, null, null);
+
+                if (cursor != null) {
 
-                    final File dbFile = new File(dbPath);
-                    dbSize = dbFile.length();
+                    if (cursor.moveToFirst()) {
+                        compressedBytes = cursor.getBlob(0);
+                        SpeechCacheUsage.record(mContext, rowId);
+                    }
 
+                    cursor.close();
+                }
+            }
+        } catch (final IllegalStateException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getBytes: rowId: IllegalStateException");
+                e.printStackTrace();
+            }
+        } catch (final SQLException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getBytes: rowId: SQLException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getBytes: rowId: Exception");
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                if (database.isOpen()) {
                     if (DEBUG) {
-                        MyLog.d(CLS_NAME, ": Database size: " + dbSize);
+                        MyLog.i(CLS_NAME, "getBytes: rowId: finally closing");
                     }
-                } else {
+                    close();
+
                     if (DEBUG) {
-                        MyLog.w(CLS_NAME, ": Database Path: null");
+                        MyLog.getElapsed(CLS_NAME, then);
                     }
                 }
+            } catch (final IllegalStateException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getBytes: rowId: IllegalStateException");
+                    e.printStackTrace();
+                }
+            } catch (final SQLException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getBytes: rowId: SQLException");
+                    e.printStackTrace();
+                }
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getBytes: rowId: Exception");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (compressedBytes != null && compressedBytes.length > 0) {
+            return new SpeechCacheResult(compressedBytes, rowId, true);
+        } else {
+            return new SpeechCacheResult(null, rowId, false);
+        }
+    }
+
+    /**
+     * Find which of a sequence of utterances have entries, in a single query that doesn't read the
+     * audio itself, so the audio of each can be fetched with {@link #getBytes(long)} only when
+     * it's needed.
+     *
+     * @param initEngine the package name of the Text to Speech Engine
+     * @param voice      the {@link android.speech.tts.Voice}
+     * @param utterances the utterances
+     * @return the row id of the entry of each utterance, in order, or -1 where none exists
+     */
+    public long[] getRowIds(@NonNull final String initEngine, @NonNull final String voice,
+                            @NonNull final List<String> utterances) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getRowIds: " + utterances.size());
+        }
+
+        final long then = System.nanoTime();
+
+        final int size = utterances.size();
+        final long[] rowIds = new long[size];
+        final String[] keys = new String[size];
+
+        final StringBuilder in = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            rowIds[i] = -1;
+            keys[i] = utterances.get(i).trim().replaceAll("[^a-zA-Z0-9]", "");
+            if (i > 0) {
+                in.append(",");
+            }
+            in.append("'").append(keys[i]).append("'");
+        }
+
+        try {
+
+            open();
+
+            if (database.isOpen()) {
+
+                final String whereClause = COLUMN_ENGINE_PACKAGE + "='" + initEngine
+                        + "' AND " + COLUMN_VOICE_NAME + "='" + voice
+                        + "' AND " + COLUMN_UTTERANCE + " IN (" + in + ")"
+                        + " AND length(" + COLUMN_BINARY + ") > 0";
+
+                final Cursor cursor = database.query(TABLE_SPEECH, new String[]{COLUMN_ID, COLUMN_UTTERANCE},
+                        whereClause, null, null, null, null);
+
+                if (cursor != null) {
+
+                    String utterance;
+                    while (cursor.moveToNext()) {
+                        utterance = cursor.getString(1);
+                        for (int i = 0; i < size; i++) {
+                            if (keys[i].equals(utterance)) {
+                                rowIds[i] = cursor.getLong(0);
+                            }
+                        }
+                    }
+
+                    cursor.close();
+                }
             }
         } catch (final IllegalStateException e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "shouldRunMaintenance: IllegalStateException");
+                MyLog.w(CLS_NAME, "getRowIds: IllegalStateException");
                 e.printStackTrace();
             }
         } catch (final SQLException e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "shouldRunMaintenance: SQLException");
+                MyLog.w(CLS_NAME, "getRowIds: SQLException");
                 e.printStackTrace();
             }
         } catch (final Exception e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "shouldRunMaintenance: Exception");
+                MyLog.w(CLS_NAME, "getRowIds: Exception");
                 e.printStackTrace();
             }
         } finally {
             try {
                 if (database.isOpen()) {
                     if (DEBUG) {
-                        MyLog.i(CLS_NAME, "shouldRunMaintenance: finally closing");
+                        MyLog.i(CLS_NAME, "getRowIds: finally closing");
                     }
                     close();
 
@@ -551,86 +727,229 @@ public class DBSpeech extends SQLiteOpenHelper {
                 }
             } catch (final IllegalStateException e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "shouldRunMaintenance: IllegalStateException");
+                    MyLog.w(CLS_NAME, "getRowIds: IllegalStateException");
                     e.printStackTrace();
                 }
             } catch (final SQLException e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "shouldRunMaintenance: SQLException");
+                    MyLog.w(CLS_NAME, "getRowIds: SQLException");
                     e.printStackTrace();
                 }
             } catch (final Exception e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "shouldRunMaintenance: Exception");
+                    MyLog.w(CLS_NAME, "getRowIds: Exception");
                     e.printStackTrace();
                 }
             }
         }
 
-        return dbSize > SPH.getMaxSpeechCacheSize(ctx);
+        return rowIds;
     }
 
     /**
-     * Check which entries have remained unused for a period longer than {@link #MAX_UNUSED_THRESHOLD}
-     * and remove them.
+     * Write the access times and hit counts accumulated by {@link SpeechCacheUsage} in a
+     * single transaction.
      *
-     * @param ctx the application context
+     * @param batch the pending usage, keyed by row id
      */
-    public void runMaintenance(@NonNull final Context ctx) {
+    public void updateUsage(@NonNull final Map<Long, SpeechCacheUsage.Usage> batch) {
         if (DEBUG) {
-            MyLog.d(CLS_NAME, "runMaintenance");
+            MyLog.i(CLS_NAME, "updateUsage: " + batch.size());
         }
 
         final long then = System.nanoTime();
 
         try {
+
             open();
+
             if (database.isOpen()) {
-                final Cursor cursor = database.query(TABLE_SPEECH,
-                        new String[]{COLUMN_ID, COLUMN_UTTERANCE, COLUMN_DATE}, null, null, null, null, null);
 
-                if (cursor != null && cursor.getCount() > 0) {
-                    cursor.moveToFirst();
+                final SQLiteStatement statement = database.compileStatement(UPDATE_USAGE);
 
-                    final long lastUsedApp = SPH.getLastUsed(ctx);
-                    long lastUsedEntry;
-                    long usageGap;
-                    int deleteCount = 0;
+                database.beginTransaction();
 
-                    while (!cursor.isAfterLast()) {
+                try {
 
-                        lastUsedEntry = cursor.getLong(2);
-                        usageGap = lastUsedApp - lastUsedEntry;
+                    for (final Map.Entry<Long, SpeechCacheUsage.Usage> entry : batch.entrySet()) {
+                        statement.clearBindings();
+                        statement.bindLong(1, entry.getValue().getLastUsed());
+                        statement.bindLong(2, entry.getValue().getHits());
+                        statement.bindLong(3, entry.getKey());
+                        statement.executeUpdateDelete();
+                    }
 
-                        if (DEBUG) {
-                            MyLog.v(CLS_NAME, "utterance: " + cursor.getString(1));
-                            MyLog.d(CLS_NAME, "lastUsedApp: " + lastUsedApp);
-                            MyLog.d(CLS_NAME, "lastUsedEntry: " + lastUsedEntry);
-                            MyLog.d(CLS_NAME, "usageGap: " + usageGap);
-                        }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                    statement.close();
+                }
+            }
+        } catch (final IllegalStateException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "updateUsage: IllegalStateException");
+                e.printStackTrace();
+            }
+        } catch (final SQLException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "updateUsage: SQLException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "updateUsage: Exception");
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                if (database.isOpen()) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "updateUsage: finally closing");
+                    }
+                    close();
 
-                        if (usageGap > MAX_UNUSED_THRESHOLD) {
-                            if (DEBUG) {
-                                MyLog.v(CLS_NAME, "deleting: true");
-                            }
-                            database.delete(TABLE_SPEECH, COLUMN_ID + "=?",
-                                    new String[]{String.valueOf(cursor.getLong(0))});
-                            deleteCount++;
-                        } else {
-                            if (DEBUG) {
-                                MyLog.v(CLS_NAME, "deleting: false");
-                            }
-                        }
+                    if (DEBUG) {
+                        MyLog.getElapsed(CLS_NAME, then);
+                    }
+                }
+            } catch (final IllegalStateException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "updateUsage: IllegalStateException");
+                    e.printStackTrace();
+                }
+            } catch (final SQLException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "updateUsage: SQLException");
+                    e.printStackTrace();
+                }
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "updateUsage: Exception");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 
-                        cursor.moveToNext();
+    /**
+     * Get the size of the stored audio. The table is only read the first time this is called in the
+     * process, after which the size is kept by each insert and delete.
+     *
+     * @return the size in bytes, or -1 if it could not be counted
+     */
+    public long getTotalSize() {
+
+        final long size = totalSize.get();
+
+        if (size >= 0) {
+            return size;
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getTotalSize: counting");
+        }
+
+        final long then = System.nanoTime();
+
+        try {
+
+            open();
+
+            if (database.isOpen()) {
+                final long counted = DatabaseUtils.longForQuery(database, SELECT_TOTAL_SIZE, null);
+                totalSize.compareAndSet(-1, counted);
+                return totalSize.get();
+            }
+        } catch (final IllegalStateException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getTotalSize: IllegalStateException");
+                e.printStackTrace();
+            }
+        } catch (final SQLException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getTotalSize: SQLException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getTotalSize: Exception");
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                if (database.isOpen()) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "getTotalSize: finally closing");
                     }
+                    close();
 
                     if (DEBUG) {
-                        MyLog.d(CLS_NAME, "deleteCount: " + deleteCount);
+                        MyLog.getElapsed(CLS_NAME, then);
                     }
+                }
+            } catch (final IllegalStateException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getTotalSize: IllegalStateException");
+                    e.printStackTrace();
+                }
+            } catch (final SQLException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getTotalSize: SQLException");
+                    e.printStackTrace();
+                }
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getTotalSize: Exception");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Adjust the size of the stored audio, if it has been counted
+     *
+     * @param delta the bytes inserted, or negative for those deleted
+     */
+    private static void addTotalSize(final long delta) {
+        long size;
+        do {
+            size = totalSize.get();
+            if (size < 0) {
+                return;
+            }
+        } while (!totalSize.compareAndSet(size, Math.max(0, size + delta)));
+    }
+
+    /**
+     * Get the metadata of every entry, without loading the audio, so that an eviction policy can be
+     * applied.
+     *
+     * @return a list of {@link SpeechCacheEntry}, which may be empty
+     */
+    public ArrayList<SpeechCacheEntry> getEntries() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getEntries");
+        }
+
+        final long then = System.nanoTime();
+        final ArrayList<SpeechCacheEntry> entries = new ArrayList<>();
+
+        try {
+
+            open();
 
-                    if (deleteCount > VACUUM_THRESHOLD) {
-                        database.execSQL("VACUUM");
+            if (database.isOpen()) {
+
+                final Cursor cursor = database.rawQuery(SELECT_ENTRIES, null);
+
+                if (cursor != null) {
+
+                    while (cursor.moveToNext()) {
+                        entries.add(new SpeechCacheEntry(cursor.getLong(0), cursor.getLong(1),
+                                cursor.getLong(2), cursor.getLong(3)));
                     }
 
                     cursor.close();
@@ -638,24 +957,24 @@ public class DBSpeech extends SQLiteOpenHelper {
             }
         } catch (final IllegalStateException e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "runMaintenance: IllegalStateException");
+                MyLog.w(CLS_NAME, "getEntries: IllegalStateException");
                 e.printStackTrace();
             }
         } catch (final SQLException e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "runMaintenance: SQLException");
+                MyLog.w(CLS_NAME, "getEntries: SQLException");
                 e.printStackTrace();
             }
         } catch (final Exception e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "runMaintenance: Exception");
+                MyLog.w(CLS_NAME, "getEntries: Exception");
                 e.printStackTrace();
             }
         } finally {
             try {
                 if (database.isOpen()) {
                     if (DEBUG) {
-                        MyLog.i(CLS_NAME, "runMaintenance: finally closing");
+                        MyLog.i(CLS_NAME, "getEntries: finally closing");
                     }
                     close();
 
@@ -665,21 +984,204 @@ public class DBSpeech extends SQLiteOpenHelper {
                 }
             } catch (final IllegalStateException e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "runMaintenance: IllegalStateException");
+                    MyLog.w(CLS_NAME, "getEntries: IllegalStateException");
                     e.printStackTrace();
                 }
             } catch (final SQLException e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "runMaintenance: SQLException");
+                    MyLog.w(CLS_NAME, "getEntries: SQLException");
                     e.printStackTrace();
                 }
             } catch (final Exception e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "runMaintenance: Exception");
+                    MyLog.w(CLS_NAME, "getEntries: Exception");
                     e.printStackTrace();
                 }
             }
         }
+
+        return entries;
+    }
+
+    /**
+     * Delete the given entries in a single transaction
+     *
+     * @param rowIds the row identifiers
+     * @return true if the deletion was successful
+     */
+    public boolean deleteEntries(@NonNull final List<Long> rowIds) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "deleteEntries: " + rowIds.size());
+        }
+
+        final long then = System.nanoTime();
+
+        for (final Long rowId : rowIds) {
+            SpeechCacheUsage.forget(rowId);
+        }
+
+        try {
+
+            open();
+
+            if (database.isOpen()) {
+
+                database.beginTransaction();
+
+                try {
+
+                    long deleted = 0;
+                    String[] args;
+
+                    for (final Long rowId : rowIds) {
+                        args = new String[]{String.valueOf(rowId)};
+                        final long size = DatabaseUtils.longForQuery(database, SELECT_SIZE, args);
+                        if (database.delete(TABLE_SPEECH, COLUMN_ID + "=?", args) > 0) {
+                            deleted += size;
+                        }
+                    }
+
+                    database.setTransactionSuccessful();
+                    addTotalSize(-deleted);
+                    return true;
+                } finally {
+                    database.endTransaction();
+                }
+            }
+        } catch (final IllegalStateException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "deleteEntries: IllegalStateException");
+                e.printStackTrace();
+            }
+        } catch (final SQLException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "deleteEntries: SQLException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "deleteEntries: Exception");
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                if (database.isOpen()) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "deleteEntries: finally closing");
+                    }
+                    close();
+
+                    if (DEBUG) {
+                        MyLog.getElapsed(CLS_NAME, then);
+                    }
+                }
+            } catch (final IllegalStateException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "deleteEntries: IllegalStateException");
+                    e.printStackTrace();
+                }
+            } catch (final SQLException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "deleteEntries: SQLException");
+                    e.printStackTrace();
+                }
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "deleteEntries: Exception");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Release a limited number of free pages back to the file system. Each call holds the database
+     * only briefly, so lookups can interleave between steps. A database created before incremental
+     * vacuuming was enabled releases nothing, see {@link #onConfigure(SQLiteDatabase)}.
+     *
+     * @param pages the maximum number of pages to release
+     * @return the number of free pages remaining, or zero if this failed
+     */
+    public long incrementalVacuum(final int pages) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "incrementalVacuum: " + pages);
+        }
+
+        final long then = System.nanoTime();
+        long remaining = 0;
+
+        try {
+
+            open();
+
+            if (database.isOpen()) {
+
+                if (DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null) == AUTO_VACUUM_INCREMENTAL) {
+                    final Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum(" + pages + ")", null);
+                    if (cursor != null) {
+                        cursor.getCount();
+                        cursor.close();
+                    }
+
+                    remaining = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null);
+                } else {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "incrementalVacuum: not enabled for this database");
+                    }
+                }
+            }
+        } catch (final IllegalStateException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "incrementalVacuum: IllegalStateException");
+                e.printStackTrace();
+            }
+        } catch (final SQLException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "incrementalVacuum: SQLException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "incrementalVacuum: Exception");
+                e.printStackTrace();
+            }
+        } finally {
+            try {
+                if (database.isOpen()) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "incrementalVacuum: finally closing");
+                    }
+                    close();
+
+                    if (DEBUG) {
+                        MyLog.getElapsed(CLS_NAME, then);
+                    }
+                }
+            } catch (final IllegalStateException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "incrementalVacuum: IllegalStateException");
+                    e.printStackTrace();
+                }
+            } catch (final SQLException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "incrementalVacuum: SQLException");
+                    e.printStackTrace();
+                }
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "incrementalVacuum: Exception");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "incrementalVacuum: remaining: " + remaining);
+        }
+
+        return remaining;
     }
 
     /**
@@ -711,6 +1213,9 @@ public class DBSpeech extends SQLiteOpenHelper {
                     values.put(COLUMN_DATE, String.valueOf(System.currentTimeMillis()));
 
                     final long insertId = database.insert(TABLE_SPEECH, null, values);
+                    if (insertId != -1) {
+                        addTotalSize(scp.getCompressedAudio().length);
+                    }
                     final Cursor cursor = database.query(TABLE_SPEECH, ALL_COLUMNS,
                             COLUMN_ID + " = " + insertId, null, null,
                             null, null);
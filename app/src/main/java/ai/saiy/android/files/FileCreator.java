@@ -19,11 +19,21 @@ package ai.saiy.android.files;
 
 import android.content.Context;
 import android.media.MediaMetadataRetriever;
+import android.os.Process;
 import android.support.annotation.NonNull;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
@@ -31,7 +41,12 @@ import ai.saiy.android.utils.UtilsFile;
 
 /**
  * Class to handle writing audio data to a file whilst it is being recorded. This can be done
- * simultaneously to other audio functions, although performance can take a hit.
+ * simultaneously to other audio functions.
+ * <p/>
+ * Audio is copied into large page aligned buffers, which are written through a {@link FileChannel}
+ * in order by a single background writer, so the caller never waits on the disk unless every
+ * buffer is in flight. The file is preallocated, and the WAV header is patched once, in
+ * {@link #completeWrite()}.
  * <p/>
  * Created by benrandall76@gmail.com on 14/02/2016.
  */
@@ -40,15 +55,36 @@ public class FileCreator {
     private static final boolean DEBUG = MyLog.DEBUG;
     private static final String CLS_NAME = FileCreator.class.getSimpleName();
 
-    private volatile int payloadSize;
+    private static final int WAV_HEADER_LENGTH = 44;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 3;
+    private static final int PREALLOCATE_SECONDS = 30;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, CLS_NAME);
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(BUFFER_COUNT);
+
+    private volatile long payloadSize;
+    private volatile FileChannel channel;
     private volatile RandomAccessFile fWriter;
     private volatile String absolutePath;
+    private volatile boolean failed;
 
     private final Object lock = new Object();
     private final int samplingRate;
     private final int nChannels;
     private final int bSamples;
     private File defaultFile;
+    private ByteBuffer current;
+    private long position = WAV_HEADER_LENGTH;
+    private Future<?> lastWrite;
 
     /**
      * Constructor
@@ -60,12 +96,22 @@ public class FileCreator {
      */
     public FileCreator(@NonNull final Context mContext, final int nChannels, final int samplingRate,
                        final int bSamples) {
+        this(UtilsFile.getPrivateDir(mContext), nChannels, samplingRate, bSamples);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param filePath     the directory in which to create the file
+     * @param nChannels    the number of channels
+     * @param samplingRate the sampling rate in hertz
+     * @param bSamples     the sampling rate
+     */
+    public FileCreator(final File filePath, final int nChannels, final int samplingRate, final int bSamples) {
         this.nChannels = nChannels;
         this.samplingRate = samplingRate;
         this.bSamples = bSamples;
 
-        final File filePath = UtilsFile.getPrivateDir(mContext);
-
         try {
 
             defaultFile = File.createTempFile(Constants.DEFAULT_FILE_PREFIX,
@@ -80,7 +126,13 @@ public class FileCreator {
             }
 
             this.absolutePath = defaultFile.getAbsolutePath();
-            this.fWriter = getWriter();
+            this.channel = getWriter();
+
+            if (channel != null) {
+                for (int i = 0; i < BUFFER_COUNT; i++) {
+                    pool.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+                }
+            }
 
         } catch (final IOException e) {
             if (DEBUG) {
@@ -100,58 +152,133 @@ public class FileCreator {
     }
 
     /**
-     * Pass the audio buffer data
+     * Pass the audio buffer data. Called on the file writing thread of the capture ring.
      *
-     * @param buff the audio buffer
+     * @param buff   the audio buffer
+     * @param length the number of valid bytes in the buffer
      */
-    public void passBuffer(@NonNull final byte[] buff) {
+    public void passBuffer(@NonNull final byte[] buff, final int length) {
 
-        if (fWriter != null) {
+        if (channel != null && !failed && length > 0) {
 
             synchronized (lock) {
+                try {
+
+                    int offset = 0;
+                    int chunk;
+                    while (offset < length) {
 
-                new Thread() {
-                    public void run() {
-                        try {
-                            fWriter.write(buff);
-                            payloadSize += buff.length;
-                        } catch (final IOException e) {
-                            if (DEBUG) {
-                                MyLog.w(CLS_NAME, "IOException: recording is aborted");
-                                e.printStackTrace();
+                        if (current == null) {
+                            current = pool.take();
+                            current.clear();
+
+                            if (position == WAV_HEADER_LENGTH) {
+                                // Align the following writes to the buffer size
+                                current.limit(BUFFER_SIZE - WAV_HEADER_LENGTH);
                             }
                         }
+
+                        chunk = Math.min(current.remaining(), length - offset);
+                        current.put(buff, offset, chunk);
+                        offset += chunk;
+
+                        if (!current.hasRemaining()) {
+                            submit(current);
+                            current = null;
+                        }
+                    }
+
+                    payloadSize += length;
+
+                } catch (final InterruptedException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "InterruptedException: recording is aborted");
                     }
-                }.start();
+                    failed = true;
+                }
             }
         }
     }
 
+    /**
+     * Queue a full buffer to be written at the next position in the file, and returned to the pool
+     *
+     * @param buffer the buffer to write
+     */
+    private void submit(@NonNull final ByteBuffer buffer) {
+
+        buffer.flip();
+        final long writePosition = position;
+        position += buffer.remaining();
+
+        lastWrite = writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                try {
+                    long at = writePosition;
+                    while (buffer.hasRemaining()) {
+                        at += channel.write(buffer, at);
+                    }
+                } catch (final IOException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "IOException: recording is aborted");
+                        e.printStackTrace();
+                    }
+                    failed = true;
+                } finally {
+                    pool.offer(buffer);
+                }
+            }
+        });
+    }
+
     /**
      * Finish writing the file
      */
     public boolean completeWrite() {
 
-        if (fWriter != null) {
+        if (channel != null) {
 
-            try {
+            synchronized (lock) {
 
-                fWriter.seek(4);
-                fWriter.writeInt(Integer.reverseBytes(36 + payloadSize));
-                fWriter.seek(40);
-                fWriter.writeInt(Integer.reverseBytes(payloadSize));
-                fWriter.close();
+                try {
 
-                if (DEBUG) {
-                    MyLog.i(CLS_NAME, "finished successfully with payload: " + payloadSize);
-                }
+                    if (current != null && current.position() > 0) {
+                        submit(current);
+                        current = null;
+                    }
+
+                    if (lastWrite != null) {
+                        lastWrite.get();
+                    }
 
-                return true;
+                    final long end = WAV_HEADER_LENGTH + payloadSize;
+                    final ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
 
-            } catch (final IOException e) {
-                if (DEBUG) {
-                    MyLog.w(CLS_NAME, "IOException: completeFileWrite");
-                    e.printStackTrace();
+                    size.putInt(0, (int) (end - 8));
+                    channel.write(size, 4);
+                    size.clear();
+                    size.putInt(0, (int) payloadSize);
+                    channel.write(size, 40);
+
+                    channel.truncate(end);
+
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "finished successfully with payload: " + payloadSize);
+                    }
+
+                    return !failed;
+
+                } catch (final Exception e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "Exception: completeFileWrite");
+                        e.printStackTrace();
+                    }
+                } finally {
+                    channel = null;
+                    closeWriter();
                 }
             }
         }
@@ -161,30 +288,51 @@ public class FileCreator {
 
 
     /**
-     * Constructs the wave header data
+     * Close the file, which also closes its channel
      */
-    private RandomAccessFile getWriter() {
+    private void closeWriter() {
+        try {
+            fWriter.close();
+        } catch (final IOException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "IOException: closeWriter");
+                e.printStackTrace();
+            }
+        }
+    }
 
-        RandomAccessFile myWriter = null;
+    /**
+     * Constructs the wave header data and preallocates the file
+     */
+    private FileChannel getWriter() {
 
         try {
 
-            myWriter = new RandomAccessFile(absolutePath, "rws");
-
-            myWriter.setLength(0);
-            myWriter.writeBytes("RIFF");
-            myWriter.writeInt(0);
-            myWriter.writeBytes("WAVE");
-            myWriter.writeBytes("fmt ");
-            myWriter.writeInt(Integer.reverseBytes(16));
-            myWriter.writeShort(Short.reverseBytes((short) 1));
-            myWriter.writeShort(Short.reverseBytes((short) nChannels));
-            myWriter.writeInt(Integer.reverseBytes(samplingRate));
-            myWriter.writeInt(Integer.reverseBytes(samplingRate * bSamples * nChannels / 8));
-            myWriter.writeShort(Short.reverseBytes((short) (nChannels * bSamples / 8)));
-            myWriter.writeShort(Short.reverseBytes((short) bSamples));
-            myWriter.writeBytes("data");
-            myWriter.writeInt(0);
+            fWriter = new RandomAccessFile(absolutePath, "rw");
+            fWriter.setLength(WAV_HEADER_LENGTH
+                    + (long) samplingRate * nChannels * (bSamples / 8) * PREALLOCATE_SECONDS);
+
+            final ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(new byte[]{'R', 'I', 'F', 'F'});
+            header.putInt(0);
+            header.put(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+            header.putInt(16);
+            header.putShort((short) 1);
+            header.putShort((short) nChannels);
+            header.putInt(samplingRate);
+            header.putInt(samplingRate * bSamples * nChannels / 8);
+            header.putShort((short) (nChannels * bSamples / 8));
+            header.putShort((short) bSamples);
+            header.put(new byte[]{'d', 'a', 't', 'a'});
+            header.putInt(0);
+            header.flip();
+
+            final FileChannel fileChannel = fWriter.getChannel();
+            while (header.hasRemaining()) {
+                fileChannel.write(header, header.position());
+            }
+
+            return fileChannel;
 
         } catch (final IOException e) {
             if (DEBUG) {
@@ -193,7 +341,7 @@ public class FileCreator {
             }
         }
 
-        return myWriter;
+        return null;
     }
 
     /**
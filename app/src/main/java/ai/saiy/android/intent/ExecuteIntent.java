@@ -32,6 +32,7 @@ import android.speech.RecognizerIntent;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import ai.saiy.android.R;
@@ -42,6 +43,7 @@ import ai.saiy.android.device.DeviceInfo;
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.UtilsBundle;
+import ai.saiy.android.utils.UtilsFile;
 import ai.saiy.android.utils.UtilsString;
 
 /**
@@ -485,6 +487,53 @@ public class ExecuteIntent {
         return false;
     }
 
+    /**
+     * Intent to share a file from the private storage, granting the receiving application
+     * permission to read it.
+     *
+     * @param ctx      the application context
+     * @param file     the file
+     * @param mimeType the mime type of the file
+     * @return true if the intent was successfully processed, false otherwise
+     */
+    public static boolean shareFile(@NonNull final Context ctx, @NonNull final File file,
+                                    @NonNull final String mimeType) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "shareFile");
+        }
+
+        final Uri contentUri = UtilsFile.getContentUri(ctx, file);
+
+        if (contentUri == null) {
+            return false;
+        }
+
+        final Intent intent = new Intent(android.content.Intent.ACTION_SEND);
+        intent.setType(mimeType);
+        intent.putExtra(Intent.EXTRA_STREAM, contentUri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        final Intent chooserIntent = Intent.createChooser(intent, ctx.getString(R.string.chooser_share_via));
+        chooserIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+        try {
+            ctx.startActivity(chooserIntent);
+            return true;
+        } catch (final ActivityNotFoundException e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "shareFile: ActivityNotFoundException");
+                e.printStackTrace();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "shareFile: Exception");
+                e.printStackTrace();
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Intent to prepare and send a feedback email.
      *
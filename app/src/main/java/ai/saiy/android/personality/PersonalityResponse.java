@@ -23,6 +23,7 @@ import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IllegalFormatException;
 import java.util.Random;
 
 import ai.saiy.android.R;
@@ -48,6 +49,75 @@ public final class PersonalityResponse {
         throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
     }
 
+    /**
+     * Response arrays that are either used verbatim, or formatted only with
+     * {@link PersonalityHelper#getUserNameOrNot(Context)}, so every variant can be spoken in advance.
+     */
+    private static final int[] CACHEABLE_ARRAYS = {
+            R.array.array_intro,
+            R.array.array_cancel,
+            R.array.array_no_comprende,
+            R.array.array_no_network,
+            R.array.array_repeat_command,
+            R.array.array_user_name,
+            R.array.array_user_name_repeat,
+            R.array.array_user_name_error,
+            R.array.array_error_secure,
+            R.array.array_error_tasker_match,
+            R.array.array_error_wolfram_alpha_unknown,
+            R.array.array_wolfram_alpha_intro,
+            R.array.array_clipboard_copy,
+            R.array.array_error_clipboard_data,
+            R.array.array_error_clipboard_access,
+            R.array.array_error_spell,
+            R.array.array_error_enrollment,
+            R.array.array_error_enrollment_api,
+            R.array.array_error_vocal_id,
+            R.array.array_vocal_id_high,
+            R.array.array_vocal_id_medium,
+            R.array.array_vocal_id_low,
+            R.array.array_beyond_verbal,
+            R.array.array_beyond_verbal_error,
+            R.array.array_bv_analysis_complete
+    };
+
+    /**
+     * Get every variant of the standard responses that does not depend on the content of a command,
+     * both with and without the user's name, so they can be synthesised ahead of time.
+     *
+     * @param ctx the application context
+     * @param sl  the {@link SupportedLanguage}
+     * @return the list of responses
+     */
+    public static ArrayList<String> getCacheableResponses(@NonNull final Context ctx,
+                                                          @NonNull final SupportedLanguage sl) {
+
+        final String userName = SPH.getUserName(ctx);
+        final ArrayList<String> responses = new ArrayList<>();
+
+        for (final int arrayId : CACHEABLE_ARRAYS) {
+            for (final String item : SaiyResourcesHelper.getArrayResource(ctx, sl, arrayId)) {
+
+                if (!item.contains("%")) {
+                    responses.add(item);
+                } else if (!item.matches(".*%[2-9].*")) {
+
+                    try {
+                        responses.add(UtilsString.stripNameSpace(String.format(item, "")));
+
+                        if (UtilsString.notNaked(userName)) {
+                            responses.add(UtilsString.stripNameSpace(String.format(item, userName)));
+                        }
+                    } catch (final IllegalFormatException ignored) {
+                        // Translations may differ in their arguments. The variant is not cached.
+                    }
+                }
+            }
+        }
+
+        return responses;
+    }
+
     /**
      * Get the Beyond Verbal intro response
      *
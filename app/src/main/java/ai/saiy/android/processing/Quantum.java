@@ -353,6 +353,12 @@ public class Quantum extends Tunnelling {
                         request.setAction(LocalRequest.ACTION_SPEAK_LISTEN);
                         request.setCondition(Condition.CONDITION_EMOTION);
                         result = outcome.getOutcome();
+
+                        // With an enrolled voice print, verify it from the same utterance
+                        final Outcome identity = new CommandVocalRecognition().getResponse(mContext, sl);
+                        if (identity.getOutcome() == Outcome.SUCCESS) {
+                            request.setIdentityProfile((String) identity.getExtra());
+                        }
                     } else {
                         request.setAction(LocalRequest.ACTION_SPEAK_ONLY);
                         request.setUtterance(PersonalityResponse.getSecureErrorResponse(mContext, sl));
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.helper;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.provider.google.cloud.GoogleCloudChannel;
+import ai.saiy.android.utils.Conditions.Network;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsFile;
+
+/**
+ * Measures how long each recognition provider takes, so that they can be compared.
+ * <p>
+ * The {@link SaiyRecognitionListener} given to a provider is wrapped by {@link #track(Context, String,
+ * Locale, SaiyRecognitionListener)}, which times the callbacks it passes on. The provider marks when
+ * it starts listening and, where it makes its own connection, when that connection is established.
+ * Each session is recorded against its provider, network type and locale, and the most recent
+ * {@link #WINDOW} of each are kept, to be summarised as histograms by {@link #getReport()}.
+ * <p>
+ * The report also totals the CPU time of the hotword detection, split between its energy gate and
+ * the decoder, with how much of the audio the gate let through. See {@link #onHotword(long, long, int,
+ * long, long)}.
+ * <p>
+ * Where Google Cloud Speech has been used, the report includes how often its recognitions found the
+ * connection of the shared {@link GoogleCloudChannel} already open.
+ */
+public final class RecognitionTelemetry {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = RecognitionTelemetry.class.getSimpleName();
+
+    public static final int WINDOW = 100;
+
+    private static final String DIAGNOSTICS_FILE = "recognition_diagnostics.txt";
+    private static final String ENCODING = "UTF-8";
+    private static final String SEPARATOR = " | ";
+    private static final long[] BUCKETS = {100L, 250L, 500L, 1000L, 2000L, 4000L};
+
+    private enum Metric {
+        CONNECT,
+        READY,
+        FIRST_PARTIAL,
+        FINAL
+    }
+
+    private static final Object lock = new Object();
+    private static final LinkedHashMap<String, Stats> stats = new LinkedHashMap<>();
+
+    private static int hotwordSessions;
+    private static int hotwordOpenings;
+    private static long hotwordMillisIn;
+    private static long hotwordMillisPassed;
+    private static long hotwordGateNanos;
+    private static long hotwordDecoderNanos;
+
+    /**
+     * Prevent instantiation
+     */
+    private RecognitionTelemetry() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Wrap the listener given to a provider, so that its callbacks are timed
+     *
+     * @param ctx      the application context
+     * @param provider the name of the provider
+     * @param locale   the recognition {@link Locale}
+     * @param listener the {@link SaiyRecognitionListener} to pass the callbacks on to
+     * @return the wrapping {@link SaiyRecognitionListener}
+     */
+    public static SaiyRecognitionListener track(@NonNull final Context ctx, @NonNull final String provider,
+                                                @NonNull final Locale locale,
+                                                @NonNull final SaiyRecognitionListener listener) {
+        return new Tracker(provider + SEPARATOR + Network.getConnectionName(ctx) + SEPARATOR + locale,
+                listener);
+    }
+
+    /**
+     * Mark the start of a session. Called by the provider as it begins listening.
+     *
+     * @param listener the listener given to the provider
+     */
+    public static void onStart(@Nullable final SaiyRecognitionListener listener) {
+        if (listener instanceof Tracker) {
+            ((Tracker) listener).start();
+        }
+    }
+
+    /**
+     * Mark the connection to the provider as established
+     *
+     * @param listener the listener given to the provider
+     */
+    public static void onConnected(@Nullable final SaiyRecognitionListener listener) {
+        if (listener instanceof Tracker) {
+            ((Tracker) listener).connected();
+        }
+    }
+
+    /**
+     * Record the cost of a hotword detection session, once its capture has ended
+     *
+     * @param millisIn     the audio captured, in milliseconds
+     * @param millisPassed the audio passed to the decoder by the gate, in milliseconds
+     * @param openings     the number of times the gate opened
+     * @param gateNanos    the thread CPU time spent in the gate
+     * @param decoderNanos the thread CPU time spent in the decoder
+     */
+    public static void onHotword(final long millisIn, final long millisPassed, final int openings,
+                                 final long gateNanos, final long decoderNanos) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onHotword: audio: " + millisIn + "ms: decoded: " + millisPassed
+                    + "ms: gate cpu: " + (gateNanos / 1000000) + "ms: decoder cpu: " + (decoderNanos / 1000000) + "ms");
+        }
+
+        synchronized (lock) {
+            hotwordSessions++;
+            hotwordOpenings += openings;
+            hotwordMillisIn += millisIn;
+            hotwordMillisPassed += millisPassed;
+            hotwordGateNanos += gateNanos;
+            hotwordDecoderNanos += decoderNanos;
+        }
+    }
+
+    /**
+     * Discard the measurements so far
+     */
+    public static void reset() {
+        synchronized (lock) {
+            stats.clear();
+            hotwordSessions = 0;
+            hotwordOpenings = 0;
+            hotwordMillisIn = 0;
+            hotwordMillisPassed = 0;
+            hotwordGateNanos = 0;
+            hotwordDecoderNanos = 0;
+        }
+
+        GoogleCloudChannel.resetMetrics();
+    }
+
+    /**
+     * Summarise the measurements of each provider, network type and locale
+     *
+     * @return the readable report
+     */
+    public static String getReport() {
+
+        final StringBuilder sb = new StringBuilder();
+
+        synchronized (lock) {
+
+            if (stats.isEmpty() && hotwordSessions == 0 && GoogleCloudChannel.getStreamsStarted() == 0) {
+                return sb.append("No recognition sessions recorded").toString();
+            }
+
+            for (final Map.Entry<String, Stats> entry : stats.entrySet()) {
+                entry.getValue().report(entry.getKey(), sb);
+                sb.append("\n");
+            }
+
+            final long streams = GoogleCloudChannel.getStreamsStarted();
+
+            if (streams > 0) {
+                sb.append("Google Cloud connection\n");
+                sb.append("streams: ").append(streams).append(", reused: ")
+                        .append(GoogleCloudChannel.getStreamsReused())
+                        .append(String.format(Locale.US, " (%.1f%%)",
+                                GoogleCloudChannel.getStreamsReused() * 100F / streams))
+                        .append(", channels opened: ").append(GoogleCloudChannel.getChannelsOpened())
+                        .append(", pre-connects: ").append(GoogleCloudChannel.getPreConnects())
+                        .append(", token updates: ").append(GoogleCloudChannel.getTokenUpdates()).append("\n\n");
+            }
+
+            if (hotwordSessions > 0) {
+                sb.append("Hotword\n");
+                sb.append("sessions: ").append(hotwordSessions).append(", audio: ")
+                        .append(hotwordMillisIn / 1000).append("s, decoded: ")
+                        .append(String.format(Locale.US, "%.1f%%", hotwordMillisIn > 0
+                                ? hotwordMillisPassed * 100F / hotwordMillisIn : 0F))
+                        .append(", gate openings: ").append(hotwordOpenings).append("\n");
+                sb.append("cpu: gate ").append(hotwordGateNanos / 1000000).append("ms").append(SEPARATOR)
+                        .append("decoder ").append(hotwordDecoderNanos / 1000000).append("ms\n");
+            }
+        }
+
+        return sb.toString().trim();
+    }
+
+    /**
+     * Write the report to a file in the application's own storage, from where it can be shared
+     * through the file provider
+     *
+     * @param ctx the application context
+     * @return the file, or null if it could not be written
+     */
+    @Nullable
+    public static File export(@NonNull final Context ctx) {
+
+        final File dir = UtilsFile.getPrivateDir(ctx);
+
+        if (dir == null) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "export: dir null");
+            }
+            return null;
+        }
+
+        final File file = new File(dir, DIAGNOSTICS_FILE);
+        final String report = "Recognition diagnostics: " + new Date() + "\n"
+                + "Latencies in milliseconds, of the last " + WINDOW + " sessions of each\n\n" + getReport() + "\n";
+
+        try {
+            FileUtils.writeStringToFile(file, report, ENCODING);
+            return file;
+        } catch (final IOException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "export: IOException");
+                e.printStackTrace();
+            }
+        }
+
+        return null;
+    }
+
+    private static void record(@NonNull final String key, @NonNull final long[] latencies, final int error) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "record: " + key + ": " + Arrays.toString(latencies) + ": error: " + error);
+        }
+
+        synchronized (lock) {
+
+            Stats stat = stats.get(key);
+            if (stat == null) {
+                stat = new Stats();
+                stats.put(key, stat);
+            }
+
+            stat.add(latencies, error);
+        }
+    }
+
+    /**
+     * The rolling measurements of one provider, network type and locale. Must be used holding the lock.
+     */
+    private static final class Stats {
+
+        private final long[][] samples = new long[Metric.values().length][WINDOW];
+        private final int[] counts = new int[Metric.values().length];
+        private final int[] positions = new int[Metric.values().length];
+        private final TreeMap<Integer, Integer> errorCodes = new TreeMap<>();
+
+        private int sessions;
+        private int errors;
+
+        private void add(@NonNull final long[] latencies, final int error) {
+
+            sessions++;
+
+            if (error != Tracker.NO_ERROR) {
+                errors++;
+                final Integer count = errorCodes.get(error);
+                errorCodes.put(error, count == null ? 1 : count + 1);
+            }
+
+            for (int i = 0; i < latencies.length; i++) {
+                if (latencies[i] >= 0) {
+                    samples[i][positions[i]] = latencies[i];
+                    positions[i] = (positions[i] + 1) % WINDOW;
+                    counts[i] = Math.min(counts[i] + 1, WINDOW);
+                }
+            }
+        }
+
+        private void report(@NonNull final String key, @NonNull final StringBuilder sb) {
+
+            sb.append(key).append("\n");
+            sb.append("sessions: ").append(sessions).append(", errors: ").append(errors)
+                    .append(String.format(Locale.US, " (%.1f%%)", errors * 100F / sessions));
+
+            for (final Map.Entry<Integer, Integer> entry : errorCodes.entrySet()) {
+                sb.append(", code ").append(entry.getKey()).append(" x").append(entry.getValue());
+            }
+
+            sb.append("\n");
+
+            for (final Metric metric : Metric.values()) {
+
+                final int count = counts[metric.ordinal()];
+
+                sb.append(metric.name().toLowerCase(Locale.US)).append(": n=").append(count);
+
+                if (count > 0) {
+
+                    final long[] sorted = Arrays.copyOf(samples[metric.ordinal()], count);
+                    Arrays.sort(sorted);
+
+                    sb.append(" p50=").append(percentile(sorted, 50))
+                            .append(" p90=").append(percentile(sorted, 90))
+                            .append(" max=").append(sorted[count - 1]).append(SEPARATOR);
+
+                    int bucket = 0;
+                    int inBucket = 0;
+                    for (final long sample : sorted) {
+                        while (bucket < BUCKETS.length && sample >= BUCKETS[bucket]) {
+                            appendBucket(sb, bucket, inBucket);
+                            bucket++;
+                            inBucket = 0;
+                        }
+                        inBucket++;
+                    }
+
+                    while (bucket <= BUCKETS.length) {
+                        appendBucket(sb, bucket, inBucket);
+                        bucket++;
+                        inBucket = 0;
+                    }
+                }
+
+                sb.append("\n");
+            }
+        }
+
+        private void appendBucket(@NonNull final StringBuilder sb, final int bucket, final int count) {
+            if (bucket < BUCKETS.length) {
+                sb.append("<").append(BUCKETS[bucket]);
+            } else {
+                sb.append(">=").append(BUCKETS[BUCKETS.length - 1]);
+            }
+            sb.append(":").append(count).append(" ");
+        }
+
+        private long percentile(@NonNull final long[] sorted, final int percentile) {
+            return sorted[Math.min(sorted.length - 1, (sorted.length * percentile) / 100)];
+        }
+    }
+
+    /**
+     * Times the callbacks of one provider, and passes them on unchanged
+     */
+    private static final class Tracker extends SaiyRecognitionListener {
+
+        private static final int NO_ERROR = 0;
+        private static final long UNSET = -1L;
+
+        private final String key;
+        private final SaiyRecognitionListener listener;
+
+        private long started;
+        private long connected = UNSET;
+        private long ready = UNSET;
+        private long firstPartial = UNSET;
+        private long endOfSpeech = UNSET;
+        private boolean recorded;
+
+        Tracker(@NonNull final String key, @NonNull final SaiyRecognitionListener listener) {
+            this.key = key;
+            this.listener = listener;
+            this.started = SystemClock.elapsedRealtime();
+        }
+
+        private synchronized void start() {
+            started = SystemClock.elapsedRealtime();
+            connected = UNSET;
+            ready = UNSET;
+            firstPartial = UNSET;
+            endOfSpeech = UNSET;
+            recorded = false;
+        }
+
+        private synchronized void connected() {
+            if (connected == UNSET) {
+                connected = SystemClock.elapsedRealtime();
+            }
+        }
+
+        private void finish(final boolean success, final int error) {
+
+            final long[] latencies = new long[Metric.values().length];
+
+            synchronized (this) {
+
+                if (recorded) {
+                    return;
+                }
+
+                recorded = true;
+
+                final long now = SystemClock.elapsedRealtime();
+                final long finalFrom = endOfSpeech != UNSET ? endOfSpeech : ready;
+
+                latencies[Metric.CONNECT.ordinal()] = since(started, connected);
+                latencies[Metric.READY.ordinal()] = since(started, ready);
+                latencies[Metric.FIRST_PARTIAL.ordinal()] = since(ready, firstPartial);
+                latencies[Metric.FINAL.ordinal()] = success ? since(finalFrom, now) : UNSET;
+            }
+
+            record(key, latencies, success ? NO_ERROR : error);
+        }
+
+        private long since(final long from, final long to) {
+            return from == UNSET || to == UNSET ? UNSET : to - from;
+        }
+
+        @Override
+        public void resetBugVariables() {
+            listener.resetBugVariables();
+        }
+
+        @Override
+        public void onReadyForSpeech(final Bundle params) {
+            synchronized (this) {
+                if (ready == UNSET) {
+                    ready = SystemClock.elapsedRealtime();
+                }
+            }
+            listener.onReadyForSpeech(params);
+        }
+
+        @Override
+        public void onBeginningOfSpeech() {
+            listener.onBeginningOfSpeech();
+        }
+
+        @Override
+        public void onRmsChanged(final float rmsdB) {
+            listener.onRmsChanged(rmsdB);
+        }
+
+        @Override
+        public void onBufferReceived(final byte[] buffer) {
+            listener.onBufferReceived(buffer);
+        }
+
+        @Override
+        public void onEndOfSpeech() {
+            synchronized (this) {
+                if (endOfSpeech == UNSET) {
+                    endOfSpeech = SystemClock.elapsedRealtime();
+                }
+            }
+            listener.onEndOfSpeech();
+        }
+
+        @Override
+        public void onError(final int error) {
+            finish(false, error);
+            listener.onError(error);
+        }
+
+        @Override
+        public void onResults(final Bundle results) {
+            finish(true, NO_ERROR);
+            listener.onResults(results);
+        }
+
+        @Override
+        public void onComplete() {
+            listener.onComplete();
+        }
+
+        @Override
+        public void onPartialResults(final Bundle partialResults) {
+            synchronized (this) {
+                if (firstPartial == UNSET) {
+                    firstPartial = SystemClock.elapsedRealtime();
+                }
+            }
+            listener.onPartialResults(partialResults);
+        }
+
+        @Override
+        public void onEvent(final int eventType, final Bundle params) {
+            listener.onEvent(eventType, params);
+        }
+
+        @Override
+        public void onCancelDetected() {
+            listener.onCancelDetected();
+        }
+
+        @Override
+        public void onTranslateDetected() {
+            listener.onTranslateDetected();
+        }
+    }
+}
@@ -0,0 +1,638 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.bluemix;
+
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ai.saiy.android.recognition.provider.bluemix.mod.TrustAllBluemixWebSocketClient;
+import ai.saiy.android.utils.MyLog;
+
+/**
+ * Keeps the authenticated Bluemix WebSocket open between utterances, so that the follow-up turns of
+ * a conversation re-arm recognition with a new {@code start} action on the open connection, rather
+ * than each paying for the TLS handshake and WebSocket upgrade.
+ * <p>
+ * Only one recognition uses the connection at a time. When it is released, a {@code stop} action
+ * ends the utterance and the connection is reused once the server reports it is listening again.
+ * The service closes a connection that has received nothing for {@link #SERVER_IDLE}, so while the
+ * connection is idle it is replaced with a fresh one shortly before that happens, and reopened
+ * straight away if the server closes it regardless. Once nothing has used it for
+ * {@link #KEEP_OPEN}, it is closed.
+ */
+public final class BluemixSession {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = BluemixSession.class.getSimpleName();
+
+    private static final String ACTION = "action";
+    private static final String STOP = "stop";
+    private static final String STATE = "state";
+    private static final String LISTENING = "listening";
+    private static final String ERROR = "error";
+
+    private static final long SERVER_IDLE = 30000L;
+    private static final long REPLACE_MARGIN = 5000L;
+    private static final long KEEP_OPEN = TimeUnit.MINUTES.toMillis(2);
+    private static final long READY_WAIT = 1000L;
+
+    private static final Object lock = new Object();
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private static final AtomicLong connectionsOpened = new AtomicLong();
+    private static final AtomicLong sessionsStarted = new AtomicLong();
+    private static final AtomicLong sessionsReused = new AtomicLong();
+    private static final AtomicLong reconnects = new AtomicLong();
+
+    private static TrustAllBluemixWebSocketClient client;
+    private static IWebSocketCallback owner;
+    private static URI uri;
+    private static Map<String, String> header;
+    private static String key;
+    private static boolean ready;
+    private static long released;
+    private static ScheduledFuture<?> replace;
+    private static ScheduledFuture<?> idle;
+
+    /**
+     * Prevent instantiation
+     */
+    private BluemixSession() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Forwards the events of one connection to the recognition using it, if the connection is
+     * still the current one, otherwise handles them on behalf of the session.
+     */
+    private static final class Relay implements IWebSocketCallback {
+
+        private volatile TrustAllBluemixWebSocketClient webSocket;
+
+        @Override
+        public void onOpen(final ServerHandshake handshakeData) {
+            final IWebSocketCallback callback = getOwner(webSocket);
+            if (callback != null) {
+                callback.onOpen(handshakeData);
+            }
+        }
+
+        @Override
+        public void onMessage(final String message) {
+            final IWebSocketCallback callback = getOwner(webSocket);
+            if (callback != null) {
+                callback.onMessage(message);
+            } else {
+                onIdleMessage(webSocket, message);
+            }
+        }
+
+        @Override
+        public void onClose(final int code, final String reason, final boolean remote) {
+            final IWebSocketCallback callback = getOwner(webSocket);
+            onClosed(webSocket, remote);
+            if (callback != null) {
+                callback.onClose(code, reason, remote);
+            }
+        }
+
+        @Override
+        public void onError(final Exception ex) {
+            final IWebSocketCallback callback = getOwner(webSocket);
+            if (callback != null) {
+                callback.onError(ex);
+            } else {
+                synchronized (lock) {
+                    if (webSocket == client) {
+                        discard();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get an open connection for a recognition, reusing the idle one if it was opened with the same
+     * url and credentials and the server is ready for a new utterance, otherwise opening a new one.
+     * Blocks while the connection is opened. Once the connection is returned, the recognition
+     * should send its {@code start} action, and pass it to {@link #release(TrustAllBluemixWebSocketClient, boolean)}
+     * when it is done with it.
+     *
+     * @param serverURI the speech {@link URI} for the recognition model
+     * @param headers   the headers, including the authorisation
+     * @param callback  the {@link IWebSocketCallback} to receive the events of the connection
+     * @return the open {@link TrustAllBluemixWebSocketClient} or null if it could not be opened
+     */
+    public static TrustAllBluemixWebSocketClient acquire(@NonNull final URI serverURI,
+                                                         @NonNull final Map<String, String> headers,
+                                                         @NonNull final IWebSocketCallback callback) {
+
+        final String requestKey = serverURI.toString() + headers.toString();
+        final TrustAllBluemixWebSocketClient webSocket;
+
+        synchronized (lock) {
+            cancelTimers();
+            sessionsStarted.incrementAndGet();
+
+            if (client != null && owner == null && requestKey.equals(key)) {
+
+                final long deadline = System.currentTimeMillis() + READY_WAIT;
+
+                while (!ready && client != null && System.currentTimeMillis() < deadline) {
+                    try {
+                        lock.wait(Math.max(1, deadline - System.currentTimeMillis()));
+                    } catch (final InterruptedException e) {
+                        if (DEBUG) {
+                            MyLog.w(CLS_NAME, "acquire: InterruptedException");
+                        }
+                        break;
+                    }
+                }
+
+                if (ready && client != null && client.getReadyState() == WebSocket.READYSTATE.OPEN) {
+                    owner = callback;
+                    ready = false;
+                    sessionsReused.incrementAndGet();
+
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "acquire: reusing: " + getMetrics());
+                    }
+
+                    return client;
+                }
+
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "acquire: idle connection not ready");
+                }
+            }
+
+            discard();
+
+            uri = serverURI;
+            header = new HashMap<>(headers);
+            key = requestKey;
+            webSocket = create();
+            client = webSocket;
+            owner = callback;
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "acquire: opening: " + getMetrics());
+        }
+
+        if (open(webSocket)) {
+            return webSocket;
+        }
+
+        synchronized (lock) {
+            if (client == webSocket) {
+                client = null;
+                owner = null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Open the connection ahead of a recognition that is likely to follow, so that
+     * {@link #acquire(URI, Map, IWebSocketCallback)} finds it idle and ready, without waiting for the
+     * TLS handshake and WebSocket upgrade. Nothing is done if a connection with the same url and
+     * credentials is already open or in use. Blocks while the connection is opened.
+     *
+     * @param serverURI the speech {@link URI} for the recognition model
+     * @param headers   the headers, including the authorisation
+     */
+    public static void preOpen(@NonNull final URI serverURI, @NonNull final Map<String, String> headers) {
+
+        final String requestKey = serverURI.toString() + headers.toString();
+        final TrustAllBluemixWebSocketClient webSocket;
+
+        synchronized (lock) {
+            if (client != null && (owner != null || requestKey.equals(key))) {
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "preOpen: already open");
+                }
+                return;
+            }
+
+            cancelTimers();
+            discard();
+
+            uri = serverURI;
+            header = new HashMap<>(headers);
+            key = requestKey;
+            released = System.currentTimeMillis();
+            webSocket = create();
+            client = webSocket;
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "preOpen: opening: " + getMetrics());
+        }
+
+        final boolean opened = open(webSocket);
+
+        synchronized (lock) {
+            if (client != webSocket) {
+                // A recognition discarded it, having given up waiting
+                return;
+            }
+
+            if (!opened) {
+                client = null;
+                lock.notifyAll();
+                return;
+            }
+
+            ready = true;
+            lock.notifyAll();
+            scheduleReplace();
+            scheduleIdle();
+        }
+    }
+
+    /**
+     * Return a connection from {@link #acquire(URI, Map, IWebSocketCallback)}. The utterance is
+     * stopped and the connection kept open for the next recognition, unless it is no longer in a
+     * fit state to be reused.
+     *
+     * @param webSocket the {@link TrustAllBluemixWebSocketClient}
+     * @param reusable  false if the recognition ended in error, in which case the connection is closed
+     */
+    public static void release(@NonNull final TrustAllBluemixWebSocketClient webSocket, final boolean reusable) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "release: reusable: " + reusable);
+        }
+
+        synchronized (lock) {
+
+            if (webSocket != client) {
+                webSocket.disconnect();
+                return;
+            }
+
+            owner = null;
+            ready = false;
+
+            if (!reusable || webSocket.getReadyState() != WebSocket.READYSTATE.OPEN) {
+                discard();
+                return;
+            }
+
+            try {
+                final JSONObject jsonObject = new JSONObject();
+                jsonObject.put(ACTION, STOP);
+                webSocket.send(jsonObject.toString());
+            } catch (final JSONException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "release: JSONException");
+                    e.printStackTrace();
+                }
+                discard();
+                return;
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "release: Exception");
+                    e.printStackTrace();
+                }
+                discard();
+                return;
+            }
+
+            released = System.currentTimeMillis();
+            scheduleReplace();
+            scheduleIdle();
+        }
+    }
+
+    /**
+     * Close the connection immediately
+     */
+    public static void shutdown() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "shutdown: " + getMetrics());
+        }
+
+        synchronized (lock) {
+            cancelTimers();
+            discard();
+        }
+    }
+
+    private static IWebSocketCallback getOwner(@Nullable final TrustAllBluemixWebSocketClient webSocket) {
+        synchronized (lock) {
+            return webSocket != null && webSocket == client ? owner : null;
+        }
+    }
+
+    /**
+     * A message received while no recognition is using the connection. The server reports it is
+     * listening once the previous utterance has been stopped, after which the connection is ready.
+     */
+    private static void onIdleMessage(@Nullable final TrustAllBluemixWebSocketClient webSocket,
+                                      @NonNull final String message) {
+
+        String state = null;
+        boolean error = false;
+
+        try {
+            final JSONObject jsonObject = new JSONObject(message);
+            state = jsonObject.optString(STATE, null);
+            error = jsonObject.has(ERROR);
+        } catch (final JSONException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "onIdleMessage: JSONException");
+            }
+        }
+
+        synchronized (lock) {
+            if (webSocket == null || webSocket != client || owner != null) {
+                return;
+            }
+
+            if (error) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "onIdleMessage: error: " + message);
+                }
+                discard();
+            } else if (LISTENING.equals(state)) {
+                ready = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The connection has closed. If it was idle and closed by the server, it is reopened in the
+     * background, so the next utterance still finds it open.
+     */
+    private static void onClosed(@Nullable final TrustAllBluemixWebSocketClient webSocket, final boolean remote) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onClosed: remote: " + remote);
+        }
+
+        synchronized (lock) {
+            if (webSocket == null || webSocket != client) {
+                return;
+            }
+
+            final boolean wasIdle = owner == null;
+
+            client = null;
+            ready = false;
+            lock.notifyAll();
+
+            if (wasIdle && remote && idle != null) {
+                cancelReplace();
+                replace = executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        reconnect();
+                    }
+                }, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Open a fresh connection in place of the idle one, if it is still idle and has been in use
+     * recently enough to be worth keeping.
+     */
+    private static void reconnect() {
+
+        final TrustAllBluemixWebSocketClient webSocket;
+
+        synchronized (lock) {
+            if (owner != null || uri == null
+                    || System.currentTimeMillis() - released >= KEEP_OPEN - REPLACE_MARGIN) {
+                return;
+            }
+
+            webSocket = create();
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "reconnect");
+        }
+
+        reconnects.incrementAndGet();
+
+        if (!open(webSocket)) {
+            return;
+        }
+
+        synchronized (lock) {
+            if (owner == null && idle != null) {
+                final TrustAllBluemixWebSocketClient previous = client;
+                client = webSocket;
+                ready = true;
+                lock.notifyAll();
+
+                if (previous != null) {
+                    previous.disconnect();
+                }
+
+                scheduleReplace();
+            } else {
+                webSocket.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static TrustAllBluemixWebSocketClient create() {
+        final Relay relay = new Relay();
+        final TrustAllBluemixWebSocketClient webSocket = new TrustAllBluemixWebSocketClient(uri, header, relay);
+        relay.webSocket = webSocket;
+        return webSocket;
+    }
+
+    /**
+     * Open the connection, blocking until it is open or has failed. Must not be called holding the
+     * lock, as the connection's own events need it.
+     */
+    private static boolean open(@NonNull final TrustAllBluemixWebSocketClient webSocket) {
+
+        try {
+            webSocket.start();
+            if (webSocket.getReadyState() == WebSocket.READYSTATE.OPEN) {
+                connectionsOpened.incrementAndGet();
+                return true;
+            }
+        } catch (final NoSuchAlgorithmException e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "open: NoSuchAlgorithmException");
+                e.printStackTrace();
+            }
+        } catch (final KeyManagementException e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "open: KeyManagementException");
+                e.printStackTrace();
+            }
+        } catch (final InterruptedException e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "open: InterruptedException");
+                e.printStackTrace();
+            }
+        } catch (final CertificateException e) {
+            if (DEBUG) {
+                MyLog.e(CLS_NAME, "open: CertificateException");
+                e.printStackTrace();
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.w(CLS_NAME, "open: failed");
+        }
+
+        return false;
+    }
+
+    /**
+     * Close the current connection. Must be called holding the lock.
+     */
+    private static void discard() {
+        if (client != null) {
+            final TrustAllBluemixWebSocketClient webSocket = client;
+            client = null;
+            owner = null;
+            ready = false;
+            lock.notifyAll();
+            webSocket.disconnect();
+        }
+    }
+
+    /**
+     * Replace the idle connection shortly before the server would close it. Must be called holding
+     * the lock.
+     */
+    private static void scheduleReplace() {
+        cancelReplace();
+
+        replace = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                reconnect();
+            }
+        }, SERVER_IDLE - REPLACE_MARGIN, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static void scheduleIdle() {
+        if (idle != null) {
+            idle.cancel(false);
+        }
+
+        idle = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    if (owner == null) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "idle");
+                        }
+                        idle = null;
+                        cancelReplace();
+                        discard();
+                    }
+                }
+            }
+        }, KEEP_OPEN, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static void cancelReplace() {
+        if (replace != null) {
+            replace.cancel(false);
+            replace = null;
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static void cancelTimers() {
+        cancelReplace();
+
+        if (idle != null) {
+            idle.cancel(false);
+            idle = null;
+        }
+    }
+
+    /**
+     * @return the number of connections opened by the process
+     */
+    public static long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return the number of recognitions that asked for a connection
+     */
+    public static long getSessionsStarted() {
+        return sessionsStarted.get();
+    }
+
+    /**
+     * @return the number of recognitions that found the connection open and skipped the handshake
+     */
+    public static long getSessionsReused() {
+        return sessionsReused.get();
+    }
+
+    /**
+     * @return the number of idle connections replaced or reopened in the background
+     */
+    public static long getReconnects() {
+        return reconnects.get();
+    }
+
+    /**
+     * @return a summary of the counts, for logging
+     */
+    public static String getMetrics() {
+        return "opened: " + connectionsOpened.get() + " started: " + sessionsStarted.get()
+                + " reused: " + sessionsReused.get() + " reconnects: " + reconnects.get();
+    }
+}
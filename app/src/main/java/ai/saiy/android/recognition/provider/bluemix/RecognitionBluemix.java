@@ -33,10 +33,8 @@ import org.java_websocket.util.Base64;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.net.URI;
 import java.nio.charset.Charset;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -58,7 +56,9 @@ import ai.saiy.android.nlu.bluemix.ResolveBluemix;
 import ai.saiy.android.nlu.bluemix.Result;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.recognition.provider.bluemix.mod.TrustAllBluemixWebSocketClient;
+import ai.saiy.android.recognition.provider.hedge.IHedgeLeg;
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.UtilsList;
@@ -74,7 +74,7 @@ import ai.saiy.android.utils.UtilsString;
  * <p/>
  * Created by benrandall76@gmail.com on 21/09/2016.
  */
-public class RecognitionBluemix implements IMic, IWebSocketCallback {
+public class RecognitionBluemix implements IMic, IHedgeLeg, IWebSocketCallback {
 
     private static final boolean DEBUG = MyLog.DEBUG;
     private static final String CLS_NAME = RecognitionBluemix.class.getSimpleName();
@@ -110,6 +110,8 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
     private final Bundle bundle = new Bundle();
 
     private volatile TrustAllBluemixWebSocketClient client;
+    private final URI serverURI;
+    private final HashMap<String, String> header = new HashMap<>();
 
     private final RecognitionMic mic;
     private final SaiyRecognitionListener listener;
@@ -153,46 +155,101 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
             MyLog.i(CLS_NAME, "model: " + vrLocale.getModel());
         }
 
+        header.putAll(getHeaders(userName, password));
+
+        //noinspection ConstantConditions
+        serverURI = BluemixConfiguration.getSpeechURI(this.vrLocale.getModel());
+    }
+
+    /**
+     * Open the connection to the recognition model ahead of a likely recognition, with the same url
+     * and credentials the recognition will use, so that it finds the connection already open in the
+     * {@link BluemixSession}. Blocks while the connection is opened.
+     *
+     * @param userName the Bluemix service user name
+     * @param password the Bluemix service password
+     * @param vrLocale the {@link VRLanguageIBM}
+     */
+    public static void preOpen(@NonNull final String userName, @NonNull final String password,
+                               @NonNull final VRLanguageIBM vrLocale) {
+
+        final URI uri = BluemixConfiguration.getSpeechURI(vrLocale.getModel());
+
+        if (uri != null) {
+            BluemixSession.preOpen(uri, getHeaders(userName, password));
+        }
+    }
+
+    /**
+     * @return the headers of the connection, including the authorisation
+     */
+    private static HashMap<String, String> getHeaders(@NonNull final String userName,
+                                                      @NonNull final String password) {
+
         final String auth = BASIC + Base64.encodeBytes((userName + DELIMITER + password)
                 .getBytes(Charset.forName(Constants.ENCODING_UTF8)));
 
-        final HashMap<String, String> header = new HashMap<>();
-        header.put(CONTENT_TYPE, AUDIO_FORMAT_DEFAULT);
-        header.put(AUTHORIZATION, auth);
-
-        //noinspection ConstantConditions
-        client = new TrustAllBluemixWebSocketClient(BluemixConfiguration.getSpeechURI(this.vrLocale.getModel()),
-                header, this);
+        final HashMap<String, String> headers = new HashMap<>();
+        headers.put(CONTENT_TYPE, AUDIO_FORMAT_DEFAULT);
+        headers.put(AUTHORIZATION, auth);
+        return headers;
     }
 
     /**
-     * Attempt to start the client, catching any exceptions
+     * Attempt to get a connection from the {@link BluemixSession}, which may already be open from a
+     * previous utterance, and start the recognition on it
      *
      * @return true if the client started successfully, false otherwise
      */
     private boolean startClient() {
 
-        try {
-            client.start();
-            return true;
-        } catch (final NoSuchAlgorithmException e) {
-            if (DEBUG) {
-                MyLog.e(CLS_NAME, "NoSuchAlgorithmException");
-                e.printStackTrace();
-            }
-        } catch (final KeyManagementException e) {
-            if (DEBUG) {
-                MyLog.e(CLS_NAME, "KeyManagementException");
-                e.printStackTrace();
+        client = BluemixSession.acquire(serverURI, header, this);
+
+        if (client != null) {
+            RecognitionTelemetry.onConnected(listener);
+
+            if (sendStart()) {
+                return true;
             }
-        } catch (final InterruptedException e) {
+
+            BluemixSession.release(client, false);
+            client = null;
+        }
+
+        return false;
+    }
+
+    /**
+     * Send the start action, which begins a new utterance on the connection
+     *
+     * @return true if the start action was sent, false otherwise
+     */
+    private boolean sendStart() {
+
+        final JSONObject jsonObject = new JSONObject();
+
+        try {
+            jsonObject.put(ACTION, START);
+            jsonObject.put(CONTENT_TYPE, AUDIO_FORMAT_DEFAULT);
+            jsonObject.put(INTERIM_RESULTS, true);
+            jsonObject.put(CONTINUOUS, true);
+            jsonObject.put(MAX_ALTERNATIVES, MAX_ALTERNATIVE_VALUE);
+            jsonObject.put(PROFANITY_FILTER, false);
+            jsonObject.put(INACTIVITY_TIMEOUT, PAUSE_TIMEOUT);
+        } catch (final JSONException e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "InterruptedException");
+                MyLog.i(CLS_NAME, "sendStart: JSONException");
                 e.printStackTrace();
             }
-        } catch (final CertificateException e) {
+        }
+
+        try {
+            client.send(jsonObject.toString());
+            doneHandshake.set(true);
+            return true;
+        } catch (final Exception e) {
             if (DEBUG) {
-                MyLog.e(CLS_NAME, "CertificateException");
+                MyLog.w(CLS_NAME, "sendStart: Exception");
                 e.printStackTrace();
             }
         }
@@ -209,9 +266,11 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
             MyLog.i(CLS_NAME, "startListening");
         }
 
+        RecognitionTelemetry.onStart(listener);
+
         if (doError.get()) {
             if (mic.isAvailable()) {
-                if (client != null) {
+                if (serverURI != null) {
                     isRecording.set(true);
                     mic.startRecording();
 
@@ -314,7 +373,7 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
             new Thread() {
                 public void run() {
                     android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
-                    mic.stopRecording();
+                    mic.stopRecording(RecognitionBluemix.this);
                     Recognition.setState(Recognition.State.IDLE);
 
                     if (!haveFinal.get() || !doError.get()) {
@@ -343,9 +402,40 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
     }
 
     /**
-     * Close the web socket connection
+     * The confidence of each alternative is reported by IBM Watson
      */
-    private void closeConnection() {
+    @Override
+    public boolean isConfidenceCalibrated() {
+        return true;
+    }
+
+    /**
+     * Cancel the recognition. The utterance is stopped straight away, rather than waiting for the
+     * final result, and the connection returned to the {@link BluemixSession}, which no longer
+     * passes its messages here.
+     */
+    @Override
+    public void cancel() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "cancel");
+        }
+
+        isRecording.set(false);
+
+        new Thread() {
+            public void run() {
+                android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
+                mic.stopRecording(RecognitionBluemix.this);
+                closeConnection();
+            }
+        }.start();
+    }
+
+    /**
+     * Return the web socket connection to the {@link BluemixSession}, which keeps it open for the
+     * next utterance unless the recognition ended in error
+     */
+    private synchronized void closeConnection() {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "closeConnection");
         }
@@ -355,7 +445,7 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
         if (client != null) {
 
             try {
-                client.disconnect();
+                BluemixSession.release(client, doError.get());
             } catch (final Exception e) {
                 if (DEBUG) {
                     MyLog.w(CLS_NAME, "closeConnection: Exception");
@@ -516,25 +606,7 @@ public class RecognitionBluemix implements IMic, IWebSocketCallback {
             MyLog.i(CLS_NAME, "onOpen");
         }
 
-        final JSONObject jsonObject = new JSONObject();
-
-        try {
-            jsonObject.put(ACTION, START);
-            jsonObject.put(CONTENT_TYPE, AUDIO_FORMAT_DEFAULT);
-            jsonObject.put(INTERIM_RESULTS, true);
-            jsonObject.put(CONTINUOUS, true);
-            jsonObject.put(MAX_ALTERNATIVES, MAX_ALTERNATIVE_VALUE);
-            jsonObject.put(PROFANITY_FILTER, false);
-            jsonObject.put(INACTIVITY_TIMEOUT, PAUSE_TIMEOUT);
-        } catch (final JSONException e) {
-            if (DEBUG) {
-                MyLog.i(CLS_NAME, "onOpen: JSONException");
-                e.printStackTrace();
-            }
-        }
-
-        client.send(jsonObject.toString());
-        doneHandshake.set(true);
+        // The start action is sent once the session returns the connection, which may already be open
     }
 
     @Override
@@ -51,6 +51,7 @@ public class TrustAllBluemixWebSocketClient extends WebSocketClient {
     private final String CLS_NAME = TrustAllBluemixWebSocketClient.class.getSimpleName();
 
     private static final String SSL_NULL = "ssl == null";
+    private static final String SECURE_SCHEME = "wss";
 
     private final IWebSocketCallback callback;
 
@@ -62,23 +63,26 @@ public class TrustAllBluemixWebSocketClient extends WebSocketClient {
 
     public void start() throws NoSuchAlgorithmException, KeyManagementException, InterruptedException, CertificateException {
 
-        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        if (SECURE_SCHEME.equals(getURI().getScheme())) {
 
-        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
-            public X509Certificate[] getAcceptedIssuers() {
-                return new X509Certificate[]{};
-            }
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
 
-            @SuppressLint("TrustAllX509TrustManager")
-            public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
-            }
+            sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[]{};
+                }
 
-            @SuppressLint("TrustAllX509TrustManager")
-            public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
-            }
-        }}, new java.security.SecureRandom());
+                @SuppressLint("TrustAllX509TrustManager")
+                public void checkClientTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+                }
+
+                @SuppressLint("TrustAllX509TrustManager")
+                public void checkServerTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+                }
+            }}, new java.security.SecureRandom());
 
-        this.setWebSocketFactory(new DefaultSSLWebSocketClientFactory(sslContext));
+            this.setWebSocketFactory(new DefaultSSLWebSocketClientFactory(sslContext));
+        }
 
         this.connectBlocking();
     }
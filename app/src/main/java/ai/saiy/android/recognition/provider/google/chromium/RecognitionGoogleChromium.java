@@ -33,17 +33,15 @@ import org.json.JSONTokener;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.api.language.vr.VRLanguageGoogle;
+import ai.saiy.android.audio.AudioUploader;
 import ai.saiy.android.audio.SaiyRecorder;
 import ai.saiy.android.audio.SaiySoundPool;
 import ai.saiy.android.audio.pause.PauseDetector;
@@ -51,8 +49,10 @@ import ai.saiy.android.audio.pause.PauseListener;
 import ai.saiy.android.configuration.GoogleConfiguration;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.utils.Constants;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsHttp;
 import ai.saiy.android.utils.UtilsString;
 
 /**
@@ -84,8 +84,6 @@ public class RecognitionGoogleChromium implements PauseListener {
     private static final String FINAL = "final";
     private static final String RESULTS_THREAD = "resultsThread";
     private static final String AUDIO_THREAD = "audioThread";
-    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
-    private static final String CHUNKED = "chunked";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String CONTENT_TYPE_AUDIO_PARAMS = "audio/l16; rate=8000";
 
@@ -184,6 +182,8 @@ public class RecognitionGoogleChromium implements PauseListener {
             MyLog.i(CLS_NAME, "called startRecording");
         }
 
+        RecognitionTelemetry.onStart(listener);
+
         isRecording.set(true);
         thrown = false;
 
@@ -200,18 +200,19 @@ public class RecognitionGoogleChromium implements PauseListener {
 
                     final URL url = new URL(RESULTS_URL + apiPair);
 
-                    final HttpsURLConnection httpConnResults = (HttpsURLConnection) url.openConnection();
+                    final HttpURLConnection httpConnResults = UtilsHttp.open(url);
                     httpConnResults.setAllowUserInteraction(false);
                     httpConnResults.setInstanceFollowRedirects(true);
                     httpConnResults.setRequestMethod(Constants.HTTP_GET);
                     httpConnResults.connect();
+                    RecognitionTelemetry.onConnected(listener);
                     final int responseCode = httpConnResults.getResponseCode();
 
                     if (DEBUG) {
                         MyLog.i(CLS_NAME, "resultsThread responseCode: " + responseCode);
                     }
 
-                    if (responseCode == HttpsURLConnection.HTTP_OK) {
+                    if (responseCode == HttpURLConnection.HTTP_OK) {
 
                         final InputStream inStream = httpConnResults.getInputStream();
 
@@ -335,21 +336,10 @@ public class RecognitionGoogleChromium implements PauseListener {
 
                         try {
 
-                            final URL url = new URL(AUDIO_URL + apiKey + LANGUAGE + language + PAIR + apiPair);
-                            final URLConnection urlConn = url.openConnection();
-
-                            final HttpsURLConnection httpConnAudio = (HttpsURLConnection) urlConn;
-                            httpConnAudio.setAllowUserInteraction(false);
-                            httpConnAudio.setInstanceFollowRedirects(true);
-                            httpConnAudio.setRequestMethod(Constants.HTTP_POST);
-                            httpConnAudio.setDoOutput(true);
-                            httpConnAudio.setRequestProperty(TRANSFER_ENCODING, CHUNKED);
-                            httpConnAudio.setChunkedStreamingMode(0);
-                            httpConnAudio.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
-
-                            httpConnAudio.connect();
-
-                            final OutputStream out = httpConnAudio.getOutputStream();
+                            final AudioUploader uploader = new AudioUploader(AUDIO_URL + apiKey + LANGUAGE
+                                    + language + PAIR + apiPair, sampleRateInHz * nChannels * 2);
+                            uploader.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
+                            uploader.start();
 
                             switch (saiyRecorder.startRecording()) {
 
@@ -383,31 +373,25 @@ public class RecognitionGoogleChromium implements PauseListener {
                                                 pauseDetector.monitor();
                                             }
 
-                                            for (int i = 0; i < bufferReadResult; i++) {
-                                                out.write(buffer[i]);
-                                            }
+                                            uploader.write(buffer, bufferReadResult);
                                         }
                                     }
 
                                     audioShutdown(RESULTS_THREAD);
 
-                                    if (out != null) {
-                                        try {
-                                            out.close();
-                                        } catch (final IOException e) {
-                                            if (DEBUG) {
-                                                MyLog.e(CLS_NAME, "audioThread out.close()");
-                                            }
-                                        }
+                                    if (!uploader.finish()) {
+                                        uploader.close();
+                                        throw new IOException("audio upload failed");
                                     }
 
+                                    final HttpURLConnection httpConnAudio = uploader.getConnection();
                                     final int responseCode = httpConnAudio.getResponseCode();
 
                                     if (DEBUG) {
                                         MyLog.d(CLS_NAME, "audioThread responseCode: " + responseCode);
                                     }
 
-                                    if (responseCode != HttpsURLConnection.HTTP_OK) {
+                                    if (responseCode != HttpURLConnection.HTTP_OK) {
                                         if (DEBUG) {
                                             MyLog.e(CLS_NAME, "audioThread ErrorStream: "
                                                     + UtilsString.streamToString(httpConnAudio.getErrorStream()));
@@ -418,19 +402,7 @@ public class RecognitionGoogleChromium implements PauseListener {
 
                                     }
 
-                                    try {
-                                        httpConnAudio.disconnect();
-                                    } catch (final NullPointerException e) {
-                                        if (DEBUG) {
-                                            MyLog.e(CLS_NAME, "audioThread NullPointerException disconnect()");
-                                            e.printStackTrace();
-                                        }
-                                    } catch (final Exception e) {
-                                        if (DEBUG) {
-                                            MyLog.e(CLS_NAME, "audioThread Exception disconnect()");
-                                            e.printStackTrace();
-                                        }
-                                    }
+                                    uploader.close();
                                 }
 
                                 break;
@@ -438,6 +410,7 @@ public class RecognitionGoogleChromium implements PauseListener {
                                     if (DEBUG) {
                                         MyLog.w(CLS_NAME, "audioThread: != AudioRecord.RECORDSTATE_RECORDING");
                                     }
+                                    uploader.close();
                                     handleError(ERROR_AUDIO);
                                     break;
                             }
@@ -686,10 +659,10 @@ public class RecognitionGoogleChromium implements PauseListener {
      *
      * @param inStream        the InputStream
      * @param scanner         the Scanner
-     * @param httpConnResults the HttpsURLConnection
+     * @param httpConnResults the HttpURLConnection
      */
     private void closeResources(final InputStream inStream, final Scanner scanner,
-                                final HttpsURLConnection httpConnResults) {
+                                final HttpURLConnection httpConnResults) {
 
         if (inStream != null) {
             try {
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.google.cloud;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+
+import com.google.android.gms.common.GooglePlayServicesNotAvailableException;
+import com.google.android.gms.common.GooglePlayServicesRepairableException;
+import com.google.android.gms.security.ProviderInstaller;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.speech.v1beta1.SpeechGrpc;
+import com.google.cloud.speech.v1beta1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1beta1.StreamingRecognizeResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ai.saiy.android.configuration.Endpoints;
+import ai.saiy.android.configuration.GoogleConfiguration;
+import ai.saiy.android.utils.MyLog;
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.internal.DnsNameResolverProvider;
+import io.grpc.okhttp.OkHttpChannelProvider;
+
+/**
+ * Holds a single gRPC channel to Google Cloud Speech for the life of the process, so that
+ * consecutive recognitions share one connection, rather than each paying for DNS, TCP, TLS and the
+ * credentials set up before the first audio can be sent.
+ * <p>
+ * The connection is kept alive with keepalive pings, and the channel shut down once it has been idle
+ * for {@link #IDLE_TIMEOUT}. {@link #preConnect(Context, AccessToken)} can be
+ * called as soon as a recognition becomes likely, to open the connection and prepare the
+ * credentials ahead of it. The channel can't obtain an access token of its own, so it uses the
+ * token most recently supplied by the caller, and swaps it into the credentials whenever a
+ * different one is supplied.
+ * <p>
+ * Counts of the channels opened and the streams that reused them are kept, to show how often a
+ * recognition found the connection warm.
+ */
+public final class GoogleCloudChannel {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = GoogleCloudChannel.class.getSimpleName();
+
+    private static final String PLAINTEXT_SCHEME = "http";
+    private static final int PORT = 443;
+
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(3);
+    private static final long KEEP_ALIVE_DELAY = 30000L;
+    private static final long KEEP_ALIVE_TIMEOUT = 10000L;
+
+    private static final Object lock = new Object();
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private static final AtomicLong channelsOpened = new AtomicLong();
+    private static final AtomicLong streamsStarted = new AtomicLong();
+    private static final AtomicLong streamsReused = new AtomicLong();
+    private static final AtomicLong preConnects = new AtomicLong();
+    private static final AtomicLong tokenUpdates = new AtomicLong();
+
+    private static ManagedChannel channel;
+    private static TokenCredentials credentials;
+    private static ScheduledFuture<?> idle;
+    private static boolean warm;
+    private static long idleGeneration;
+
+    /**
+     * Prevent instantiation
+     */
+    private GoogleCloudChannel() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Credentials that hand out the access token most recently supplied to the channel, so the
+     * token can change without the channel being rebuilt. Refreshing them only adopts that token,
+     * it doesn't fetch a new one.
+     */
+    private static final class TokenCredentials extends GoogleCredentials {
+
+        private volatile AccessToken token;
+
+        TokenCredentials(@NonNull final AccessToken token) {
+            super(token);
+            this.token = token;
+        }
+
+        @Override
+        public AccessToken refreshAccessToken() throws IOException {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "refreshAccessToken");
+            }
+            return token;
+        }
+    }
+
+    /**
+     * Get a stub for a recognition on the shared channel, opening the channel if there is none
+     *
+     * @param ctx   the application context
+     * @param token the current {@link AccessToken}
+     * @return the {@link SpeechGrpc.SpeechStub}
+     * @throws GooglePlayServicesRepairableException  if the security provider needs updating
+     * @throws GooglePlayServicesNotAvailableException if the security provider is unavailable
+     */
+    public static SpeechGrpc.SpeechStub getStub(@NonNull final Context ctx, @NonNull final AccessToken token)
+            throws GooglePlayServicesRepairableException, GooglePlayServicesNotAvailableException {
+
+        synchronized (lock) {
+            final ManagedChannel managedChannel = getChannel(ctx, token);
+            scheduleIdle();
+
+            streamsStarted.incrementAndGet();
+            if (warm) {
+                streamsReused.incrementAndGet();
+            }
+            warm = true;
+
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "getStub: " + getMetrics());
+            }
+
+            return SpeechGrpc.newStub(managedChannel);
+        }
+    }
+
+    /**
+     * Called once a stream on a stub from {@link #getStub(Context, AccessToken)} is complete, so the
+     * channel stays open for {@link #IDLE_TIMEOUT} from then on. A stream still in progress when the
+     * channel is shut down is allowed to complete.
+     */
+    public static void release() {
+        synchronized (lock) {
+            if (channel != null) {
+                scheduleIdle();
+            }
+        }
+    }
+
+    /**
+     * Open the connection and prepare the credentials ahead of a likely recognition. Returns
+     * immediately, with the work done in the background.
+     *
+     * @param ctx   the application context
+     * @param token the current {@link AccessToken}
+     */
+    public static void preConnect(@NonNull final Context ctx, @NonNull final AccessToken token) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "preConnect");
+        }
+
+        final Context context = ctx.getApplicationContext();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                try {
+
+                    final ManagedChannel managedChannel;
+
+                    synchronized (lock) {
+                        if (warm && channel != null && !channel.isShutdown()) {
+                            if (DEBUG) {
+                                MyLog.i(CLS_NAME, "preConnect: already warm");
+                            }
+                            setToken(token);
+                            return;
+                        }
+
+                        managedChannel = getChannel(context, token);
+                        warm = true;
+                        scheduleIdle();
+                    }
+
+                    preConnects.incrementAndGet();
+
+                    // Starting a call makes the channel resolve, connect and handshake, and the
+                    // credentials interceptor fetch its metadata. Cancelling the call before anything
+                    // is sent leaves the connection open for the recognition that follows.
+                    final ClientCall<StreamingRecognizeRequest, StreamingRecognizeResponse> call =
+                            managedChannel.newCall(SpeechGrpc.METHOD_STREAMING_RECOGNIZE, CallOptions.DEFAULT);
+                    call.start(new ClientCall.Listener<StreamingRecognizeResponse>() {
+                    }, new Metadata());
+                    call.cancel("preConnect", null);
+
+                } catch (final GooglePlayServicesRepairableException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "preConnect: GooglePlayServicesRepairableException");
+                    }
+                } catch (final GooglePlayServicesNotAvailableException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "preConnect: GooglePlayServicesNotAvailableException");
+                    }
+                } catch (final Exception e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "preConnect: Exception");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Shut down the channel immediately, allowing any stream in progress to complete
+     */
+    public static void shutdown() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "shutdown: " + getMetrics());
+        }
+
+        synchronized (lock) {
+            cancelIdle();
+
+            if (channel != null) {
+                channel.shutdown();
+                channel = null;
+            }
+
+            warm = false;
+        }
+    }
+
+    /**
+     * Get the open channel, or open a new one. Must be called holding the lock.
+     */
+    private static ManagedChannel getChannel(@NonNull final Context ctx, @NonNull final AccessToken token)
+            throws GooglePlayServicesRepairableException, GooglePlayServicesNotAvailableException {
+
+        if (channel != null && !channel.isShutdown()) {
+            setToken(token);
+            return channel;
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getChannel: opening");
+        }
+
+        ProviderInstaller.installIfNeeded(ctx);
+
+        credentials = new TokenCredentials(token);
+
+        final URI uri = URI.create(Endpoints.resolve(GoogleConfiguration.GOOGLE_CLOUD_SPEECH_URL));
+
+        channel = new OkHttpChannelProvider()
+                .builderForAddress(uri.getHost(), uri.getPort() != -1 ? uri.getPort() : PORT)
+                .nameResolverFactory(new DnsNameResolverProvider())
+                .intercept(new GoogleCredentialsInterceptor(credentials))
+                .enableKeepAlive(true, KEEP_ALIVE_DELAY, TimeUnit.MILLISECONDS,
+                        KEEP_ALIVE_TIMEOUT, TimeUnit.MILLISECONDS)
+                .usePlaintext(PLAINTEXT_SCHEME.equals(uri.getScheme()))
+                .build();
+
+        channelsOpened.incrementAndGet();
+        warm = false;
+
+        return channel;
+    }
+
+    /**
+     * Supply the channel with the current token, swapping it into the credentials if it has changed.
+     * Must be called holding the lock.
+     */
+    private static void setToken(@NonNull final AccessToken token) {
+        if (credentials != null && !token.getTokenValue().equals(credentials.token.getTokenValue())) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "setToken: changed");
+            }
+
+            credentials.token = token;
+            tokenUpdates.incrementAndGet();
+
+            try {
+                credentials.refresh();
+            } catch (final IOException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "setToken: IOException");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static void scheduleIdle() {
+        cancelIdle();
+
+        final long generation = ++idleGeneration;
+
+        idle = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    // The channel may have been used again while this was waiting for the lock
+                    if (generation == idleGeneration) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "idle");
+                        }
+                        shutdown();
+                    }
+                }
+            }
+        }, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static void cancelIdle() {
+        if (idle != null) {
+            idle.cancel(false);
+            idle = null;
+        }
+    }
+
+    /**
+     * @return the number of channels opened by the process
+     */
+    public static long getChannelsOpened() {
+        return channelsOpened.get();
+    }
+
+    /**
+     * @return the number of recognition streams started
+     */
+    public static long getStreamsStarted() {
+        return streamsStarted.get();
+    }
+
+    /**
+     * @return the number of recognition streams that found the channel already connected, or
+     * connecting, from a previous stream or a pre-connect
+     */
+    public static long getStreamsReused() {
+        return streamsReused.get();
+    }
+
+    /**
+     * @return the number of pre-connects that opened the connection
+     */
+    public static long getPreConnects() {
+        return preConnects.get();
+    }
+
+    /**
+     * @return the number of times a different access token was swapped into the credentials
+     */
+    public static long getTokenUpdates() {
+        return tokenUpdates.get();
+    }
+
+    /**
+     * Discard the counts so far
+     */
+    public static void resetMetrics() {
+        channelsOpened.set(0);
+        streamsStarted.set(0);
+        streamsReused.set(0);
+        preConnects.set(0);
+        tokenUpdates.set(0);
+    }
+
+    /**
+     * @return a summary of the connection reuse, for logging
+     */
+    public static String getMetrics() {
+        return "channels: " + channelsOpened.get() + ", streams: " + streamsStarted.get() + ", reused: "
+                + streamsReused.get() + ", preConnects: " + preConnects.get() + ", token updates: "
+                + tokenUpdates.get();
+    }
+}
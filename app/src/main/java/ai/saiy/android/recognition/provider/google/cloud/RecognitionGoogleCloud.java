@@ -26,9 +26,7 @@ import android.support.annotation.NonNull;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.common.GooglePlayServicesNotAvailableException;
 import com.google.android.gms.common.GooglePlayServicesRepairableException;
-import com.google.android.gms.security.ProviderInstaller;
 import com.google.auth.oauth2.AccessToken;
-import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.speech.v1beta1.RecognitionConfig;
 import com.google.cloud.speech.v1beta1.SpeechGrpc;
 import com.google.cloud.speech.v1beta1.SpeechRecognitionAlternative;
@@ -41,11 +39,7 @@ import com.google.protobuf.TextFormat;
 
 import org.apache.commons.lang3.ArrayUtils;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ai.saiy.android.api.language.vr.VRLanguageGoogle;
@@ -54,31 +48,28 @@ import ai.saiy.android.audio.RecognitionMic;
 import ai.saiy.android.cognitive.identity.provider.microsoft.Speaker;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
+import ai.saiy.android.recognition.provider.hedge.IHedgeLeg;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
 import ai.saiy.android.utils.UtilsList;
-import io.grpc.ManagedChannel;
 import io.grpc.Status;
 import io.grpc.StatusException;
 import io.grpc.StatusRuntimeException;
-import io.grpc.internal.DnsNameResolverProvider;
-import io.grpc.okhttp.OkHttpChannelProvider;
 import io.grpc.stub.StreamObserver;
 
 /**
  * Created by benrandall76@gmail.com on 21/09/2016.
  */
 
-public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRecognizeResponse> {
+public class RecognitionGoogleCloud implements IMic, IHedgeLeg, StreamObserver<StreamingRecognizeResponse> {
 
     private static final boolean DEBUG = MyLog.DEBUG;
     private static final String CLS_NAME = RecognitionGoogleCloud.class.getSimpleName();
 
     private static final int UNRECOVERABLE = -99;
 
-    private static final List<String> OAUTH2_SCOPES = Collections.singletonList(
-            "https://www.googleapis.com/auth/cloud-platform");
-    private static final String HOSTNAME = "speech.googleapis.com";
-    private static final int PORT = 443;
+    public static final int DEFAULT_BATCH_MILLIS = 100;
 
     private final AtomicBoolean isRecording = new AtomicBoolean();
     private final AtomicBoolean doBeginning = new AtomicBoolean(true);
@@ -86,6 +77,7 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
     private final AtomicBoolean doEnd = new AtomicBoolean(true);
     private final AtomicBoolean doResults = new AtomicBoolean(true);
     private final AtomicBoolean doRecordingEnded = new AtomicBoolean(true);
+    private final AtomicBoolean isCancelled = new AtomicBoolean();
 
     private final ArrayList<String> partialArray = new ArrayList<>();
     private final ArrayList<String> resultsArray = new ArrayList<>();
@@ -100,6 +92,11 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
     private volatile StreamingRecognizeRequest initial;
     private volatile SpeechGrpc.SpeechStub mApi;
 
+    private final StreamingRecognizeRequest.Builder audioRequest = StreamingRecognizeRequest.newBuilder();
+    private final Object batchLock = new Object();
+    private final int batchSize;
+    private ByteString.Output batch;
+
     /**
      * Constructor
      *
@@ -117,36 +114,21 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
         this.mic = mic;
         this.mContext = mContext;
 
-        this.mic.setMicListener(this);
-
-        try {
+        // Whole samples of 16 bit mono audio
+        this.batchSize = Math.max(2, RecognitionMic.SAMPLE_RATE_HZ_16000 * 2
+                * SPH.getGoogleCloudBatch(mContext) / 1000) & ~1;
 
-            ProviderInstaller.installIfNeeded(mContext);
+        this.mic.setMicListener(this, RecognitionMic.SAMPLE_RATE_HZ_16000);
 
-            final GoogleCredentials googleCredentials = new GoogleCredentials(accessToken) {
-                @Override
-                public AccessToken refreshAccessToken() throws IOException {
-                    if (DEBUG) {
-                        MyLog.i(CLS_NAME, "refreshAccessToken");
-                    }
-                    return accessToken;
-                }
-            }.createScoped(OAUTH2_SCOPES);
+        try {
 
             if (DEBUG) {
                 MyLog.i(CLS_NAME, "language: " + language);
             }
 
-            final ManagedChannel channel = new OkHttpChannelProvider()
-                    .builderForAddress(HOSTNAME, PORT)
-                    .nameResolverFactory(new DnsNameResolverProvider())
-                    .intercept(new GoogleCredentialsInterceptor(googleCredentials.createScoped(OAUTH2_SCOPES)))
-                    .enableKeepAlive(false)
-                    .build();
-
             final long then = System.nanoTime();
 
-            mApi = SpeechGrpc.newStub(channel);
+            mApi = GoogleCloudChannel.getStub(mContext, accessToken);
 
             if (DEBUG) {
                 MyLog.getElapsed(CLS_NAME + " End of requestObserver", then);
@@ -216,6 +198,8 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
             MyLog.i(CLS_NAME, "startListening");
         }
 
+        RecognitionTelemetry.onStart(listener);
+
         if (doError.get()) {
             if (mic.isAvailable()) {
                 isRecording.set(true);
@@ -302,9 +286,28 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
 
             try {
 
-                requestObserver.onNext(StreamingRecognizeRequest.newBuilder()
-                        .setAudioContent(ByteString.copyFrom(buffer, 0, bufferReadResult))
-                        .build());
+                synchronized (batchLock) {
+
+                    int offset = 0;
+                    int remaining = bufferReadResult;
+                    int length;
+
+                    while (remaining > 0) {
+
+                        if (batch == null) {
+                            batch = ByteString.newOutput(batchSize);
+                        }
+
+                        length = Math.min(remaining, batchSize - batch.size());
+                        batch.write(buffer, offset, length);
+                        offset += length;
+                        remaining -= length;
+
+                        if (batch.size() == batchSize) {
+                            sendBatch();
+                        }
+                    }
+                }
 
             } catch (final IllegalStateException e) {
                 if (DEBUG) {
@@ -324,6 +327,40 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
         }
     }
 
+    /**
+     * Send the batched audio as a single request. The output is filled to exactly the capacity it
+     * was created with, so its array is adopted by the {@link ByteString} rather than copied. A new
+     * output is started for the next batch, so the array is never written again once it has been
+     * handed to the stream. Must be called holding the batch lock.
+     */
+    private void sendBatch() {
+
+        final ByteString audio = batch.toByteString();
+        batch = null;
+
+        if (!audio.isEmpty()) {
+            requestObserver.onNext(audioRequest.setAudioContent(audio).build());
+        }
+    }
+
+    /**
+     * Send any partial batch, before the stream is completed
+     */
+    private void flushBatch() {
+        synchronized (batchLock) {
+            if (batch != null) {
+                try {
+                    sendBatch();
+                } catch (final Exception e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "flushBatch Exception");
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
     @Override
     public void onError(final int error) {
         if (DEBUG) {
@@ -415,19 +452,17 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
                 public void run() {
                     android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
 
-                    mic.stopRecording();
-                    requestObserver.onCompleted();
-                    Recognition.setState(Recognition.State.IDLE);
+                    mic.stopRecording(RecognitionGoogleCloud.this);
 
-                    final ManagedChannel channel = (ManagedChannel) mApi.getChannel();
-                    if (channel != null && !channel.isShutdown()) {
-                        try {
-                            channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
-                        } catch (final InterruptedException e) {
-                            MyLog.e(CLS_NAME, "Error shutting down the gRPC channel.");
-                            e.printStackTrace();
+                    synchronized (batchLock) {
+                        if (!isCancelled.get()) {
+                            flushBatch();
+                            requestObserver.onCompleted();
                         }
                     }
+
+                    Recognition.setState(Recognition.State.IDLE);
+                    GoogleCloudChannel.release();
                 }
             }.start();
         } else {
@@ -437,6 +472,60 @@ public class RecognitionGoogleCloud implements IMic, StreamObserver<StreamingRec
         }
     }
 
+    /**
+     * The confidence of each alternative is reported by Google Cloud Speech
+     */
+    @Override
+    public boolean isConfidenceCalibrated() {
+        return true;
+    }
+
+    /**
+     * Cancel the recognition. The stream is cancelled rather than completed, whether or not the
+     * recognition has been stopped, so the server stops processing the audio and no result is
+     * reported.
+     */
+    @Override
+    public void cancel() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "cancel");
+        }
+
+        if (isCancelled.getAndSet(true)) {
+            return;
+        }
+
+        doError.set(false);
+        doResults.set(false);
+        isRecording.set(false);
+
+        new Thread() {
+            public void run() {
+                android.os.Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
+
+                mic.stopRecording(RecognitionGoogleCloud.this);
+
+                synchronized (batchLock) {
+                    batch = null;
+
+                    if (requestObserver != null) {
+                        try {
+                            requestObserver.onError(Status.CANCELLED
+                                    .withDescription("Recognition cancelled").asRuntimeException());
+                        } catch (final Exception e) {
+                            if (DEBUG) {
+                                MyLog.w(CLS_NAME, "cancel Exception");
+                                e.printStackTrace();
+                            }
+                        }
+                    }
+                }
+
+                GoogleCloudChannel.release();
+            }
+        }.start();
+    }
+
 
     /**
      * Receives a value from the stream.
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.hedge;
+
+/**
+ * A recogniser taking part in a {@link RecognitionHedge}
+ */
+public interface IHedgeLeg {
+
+    void startListening();
+
+    /**
+     * Stop listening, and report the result of the speech so far
+     */
+    void stopListening();
+
+    /**
+     * Abandon the recognition, without waiting for a result. Any request to a provider is cancelled
+     * rather than completed, so it is not processed further.
+     */
+    void cancel();
+
+    /**
+     * Check if the confidence reported with a final result is an estimate of its accuracy from the
+     * recogniser itself. A leg whose confidence isn't can't win the race before the others have
+     * answered, and only wins if none of them has a result.
+     *
+     * @return true if the confidence can be compared with the leg's threshold
+     */
+    boolean isConfidenceCalibrated();
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.hedge;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.speech.SpeechRecognizer;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+
+import ai.saiy.android.audio.CaptureSession;
+import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsList;
+
+/**
+ * Races two or more recognisers over the same captured audio, so that a slow or unreachable
+ * network provider does not leave the user waiting for it to time out.
+ * <p>
+ * Each leg reads the capture through a {@link CaptureSession}, and reports to the hedge rather than
+ * to the {@link SaiyRecognitionListener}. A final result with a confidence at or above its leg's
+ * threshold is accepted as soon as it arrives, and the other legs are cancelled, provided the leg's
+ * confidence is calibrated. See {@link IHedgeLeg#isConfidenceCalibrated()}. Otherwise the results
+ * are held until every leg has answered, failed or used up its latency budget, counted from the end
+ * of speech, and the most confident is accepted, preferring legs with a calibrated confidence. The
+ * listener receives a single set of callbacks, as it would from one recogniser, with
+ * {@link SaiyRecognitionListener#onComplete()} held until the race is decided and no leg is still
+ * running.
+ */
+public class RecognitionHedge {
+
+    private final boolean DEBUG = MyLog.DEBUG;
+    private final String CLS_NAME = RecognitionHedge.class.getSimpleName();
+
+    public static final float DEFAULT_CONFIDENCE = 0.85F;
+    public static final long DEFAULT_BUDGET = 2500L;
+
+    private enum State {
+        PENDING,
+        RESULT,
+        FAILED,
+        TIMED_OUT
+    }
+
+    /**
+     * Creates the recogniser for a leg, given the listener it must report to
+     */
+    public interface LegFactory {
+        IHedgeLeg create(@NonNull SaiyRecognitionListener legListener);
+    }
+
+    private final SaiyRecognitionListener listener;
+    private final ArrayList<Leg> legs = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private boolean decided;
+    private boolean doReady = true;
+    private boolean doBeginning = true;
+    private boolean doEndOfSpeech = true;
+    private boolean doComplete = true;
+    private long endOfSpeech;
+
+    /**
+     * Constructor
+     *
+     * @param listener the {@link SaiyRecognitionListener} to receive the outcome
+     */
+    public RecognitionHedge(@NonNull final SaiyRecognitionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Add a leg to the race. Legs added first are preferred when their results are equally
+     * confident, and their partial results are the ones shown.
+     *
+     * @param name       the name of the provider, for logging
+     * @param confidence the confidence at or above which the leg's result is accepted immediately
+     * @param budget     the time in milliseconds the leg has to answer after the end of speech
+     * @param factory    the {@link LegFactory} to create the recogniser
+     */
+    public void addLeg(@NonNull final String name, final float confidence, final long budget,
+                       @NonNull final LegFactory factory) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "addLeg: " + name + ": confidence: " + confidence + ": budget: " + budget);
+        }
+
+        final Leg leg = new Leg(name, confidence, budget);
+        leg.recogniser = factory.create(leg.legListener);
+        leg.calibrated = leg.recogniser.isConfidenceCalibrated();
+
+        synchronized (this) {
+            legs.add(leg);
+        }
+    }
+
+    /**
+     * Start each of the legs on its own thread
+     */
+    public void startListening() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "startListening");
+        }
+
+        for (final Leg leg : getLegs()) {
+            leg.started = SystemClock.elapsedRealtime();
+
+            new Thread() {
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_MORE_FAVORABLE);
+                    leg.recogniser.startListening();
+                }
+            }.start();
+        }
+    }
+
+    /**
+     * Stop each of the legs listening. Their results are still awaited, within their budgets.
+     */
+    public void stopListening() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "stopListening");
+        }
+
+        for (final Leg leg : getLegs()) {
+            leg.recogniser.stopListening();
+        }
+
+        onEndOfSpeech();
+    }
+
+    private synchronized ArrayList<Leg> getLegs() {
+        return new ArrayList<>(legs);
+    }
+
+    /**
+     * The end of speech starts each leg's budget
+     */
+    private void onEndOfSpeech() {
+
+        final ArrayList<Leg> pending = new ArrayList<>();
+
+        synchronized (this) {
+            if (decided || endOfSpeech > 0) {
+                return;
+            }
+
+            endOfSpeech = SystemClock.elapsedRealtime();
+
+            for (final Leg leg : legs) {
+                if (leg.state == State.PENDING) {
+                    pending.add(leg);
+                }
+            }
+        }
+
+        for (final Leg leg : pending) {
+            handler.postDelayed(leg.timeout, leg.budget);
+        }
+    }
+
+    /**
+     * Decide on the result of a leg, or the most confident once every leg has answered, or on the
+     * error if none has a result. Must be called holding the lock.
+     *
+     * @return the outcome to run once the lock is released, or null if the race is still undecided
+     */
+    private Runnable evaluate() {
+
+        if (decided) {
+            return null;
+        }
+
+        Leg winner = null;
+        boolean resolved = true;
+
+        for (final Leg leg : legs) {
+            switch (leg.state) {
+
+                case RESULT:
+                    if (leg.calibrated && leg.confidence >= leg.threshold) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "evaluate: early result: " + leg.name);
+                        }
+                        return accept(leg);
+                    }
+
+                    if (winner == null || (leg.calibrated && !winner.calibrated)
+                            || (leg.calibrated == winner.calibrated && leg.confidence > winner.confidence)) {
+                        winner = leg;
+                    }
+                    break;
+                case PENDING:
+                    resolved = false;
+                    break;
+            }
+        }
+
+        if (!resolved) {
+            return null;
+        }
+
+        return winner != null ? accept(winner) : fail();
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private Runnable accept(@NonNull final Leg winner) {
+
+        decided = true;
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "accept: " + winner.name + ": confidence: " + winner.confidence
+                    + ": latency: " + (winner.answered - winner.started));
+        }
+
+        final ArrayList<Leg> losers = new ArrayList<>();
+
+        for (final Leg leg : legs) {
+            handler.removeCallbacks(leg.timeout);
+            if (leg != winner && leg.state == State.PENDING) {
+                leg.cancelled = true;
+                losers.add(leg);
+            }
+        }
+
+        final Bundle results = winner.results;
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                for (final Leg leg : losers) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "accept: cancelling: " + leg.name);
+                    }
+                    leg.recogniser.cancel();
+                }
+
+                listener.onResults(results);
+            }
+        };
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private Runnable fail() {
+
+        decided = true;
+
+        int code = SpeechRecognizer.ERROR_NETWORK_TIMEOUT;
+
+        for (final Leg leg : legs) {
+            handler.removeCallbacks(leg.timeout);
+            if (leg.state == State.FAILED) {
+                code = leg.error;
+                break;
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.w(CLS_NAME, "fail: " + code);
+        }
+
+        final int error = code;
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(error);
+            }
+        };
+    }
+
+    /**
+     * Pass on a single {@link SaiyRecognitionListener#onComplete()}, once the outcome has been
+     * delivered and every leg has answered or been cancelled
+     */
+    private void complete() {
+
+        synchronized (this) {
+            if (!decided || !doComplete) {
+                return;
+            }
+
+            for (final Leg leg : legs) {
+                if (leg.state == State.PENDING && !leg.cancelled) {
+                    return;
+                }
+            }
+
+            doComplete = false;
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "complete");
+        }
+
+        listener.onComplete();
+    }
+
+    /**
+     * The state of one recogniser in the race
+     */
+    private final class Leg {
+
+        private final String name;
+        private final float threshold;
+        private final long budget;
+
+        private IHedgeLeg recogniser;
+        private boolean calibrated;
+        private boolean cancelled;
+        private State state = State.PENDING;
+        private Bundle results;
+        private float confidence;
+        private int error;
+        private long started;
+        private long answered;
+
+        private final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+
+                final Runnable outcome;
+
+                synchronized (RecognitionHedge.this) {
+                    if (decided || state != State.PENDING) {
+                        return;
+                    }
+
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "timeout: " + name);
+                    }
+
+                    state = State.TIMED_OUT;
+                    outcome = evaluate();
+                }
+
+                recogniser.cancel();
+
+                if (outcome != null) {
+                    outcome.run();
+                    complete();
+                }
+            }
+        };
+
+        private final SaiyRecognitionListener legListener = new SaiyRecognitionListener() {
+
+            @Override
+            public void onReadyForSpeech(final Bundle params) {
+                synchronized (RecognitionHedge.this) {
+                    if (!doReady) {
+                        return;
+                    }
+                    doReady = false;
+                }
+                listener.onReadyForSpeech(params);
+            }
+
+            @Override
+            public void onBeginningOfSpeech() {
+                synchronized (RecognitionHedge.this) {
+                    if (!doBeginning) {
+                        return;
+                    }
+                    doBeginning = false;
+                }
+                listener.onBeginningOfSpeech();
+            }
+
+            @Override
+            public void onPartialResults(final Bundle partialResults) {
+                synchronized (RecognitionHedge.this) {
+                    if (decided || !isPreferred()) {
+                        return;
+                    }
+                }
+                listener.onPartialResults(partialResults);
+            }
+
+            @Override
+            public void onEndOfSpeech() {
+                synchronized (RecognitionHedge.this) {
+                    if (!doEndOfSpeech) {
+                        return;
+                    }
+                    doEndOfSpeech = false;
+                }
+                listener.onEndOfSpeech();
+                RecognitionHedge.this.onEndOfSpeech();
+            }
+
+            @Override
+            public void onResults(final Bundle bundle) {
+
+                final Runnable outcome;
+
+                synchronized (RecognitionHedge.this) {
+                    if (decided || state != State.PENDING) {
+                        return;
+                    }
+
+                    answered = SystemClock.elapsedRealtime();
+
+                    if (bundle != null && UtilsList.notNaked(bundle.getStringArrayList(
+                            SpeechRecognizer.RESULTS_RECOGNITION))) {
+                        state = State.RESULT;
+                        results = bundle;
+
+                        final float[] scores = bundle.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES);
+                        confidence = scores != null && scores.length > 0 ? scores[0] : 0F;
+                    } else {
+                        state = State.FAILED;
+                        error = SpeechRecognizer.ERROR_NO_MATCH;
+                    }
+
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "onResults: " + name + ": " + state.name() + ": confidence: "
+                                + confidence + ": latency: " + (answered - started));
+                    }
+
+                    outcome = evaluate();
+                }
+
+                if (outcome != null) {
+                    outcome.run();
+                    complete();
+                } else {
+                    // An answer from one leg starts the budgets of the others
+                    RecognitionHedge.this.onEndOfSpeech();
+                }
+            }
+
+            @Override
+            public void onError(final int code) {
+
+                final Runnable outcome;
+
+                synchronized (RecognitionHedge.this) {
+                    if (decided || state != State.PENDING) {
+                        return;
+                    }
+
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "onError: " + name + ": " + code);
+                    }
+
+                    answered = SystemClock.elapsedRealtime();
+                    state = State.FAILED;
+                    error = code;
+                    outcome = evaluate();
+                }
+
+                if (outcome != null) {
+                    outcome.run();
+                    complete();
+                } else {
+                    // An answer from one leg starts the budgets of the others
+                    RecognitionHedge.this.onEndOfSpeech();
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                complete();
+            }
+
+            @Override
+            public void onCancelDetected() {
+                listener.onCancelDetected();
+            }
+
+            @Override
+            public void onTranslateDetected() {
+                listener.onTranslateDetected();
+            }
+        };
+
+        Leg(@NonNull final String name, final float threshold, final long budget) {
+            this.name = name;
+            this.threshold = threshold;
+            this.budget = budget;
+        }
+
+        /**
+         * The partial results shown are those of the first leg still in the race. Must be called
+         * holding the lock.
+         */
+        private boolean isPreferred() {
+            for (final Leg leg : legs) {
+                if (leg.state == State.PENDING) {
+                    return leg == this;
+                }
+            }
+            return false;
+        }
+    }
+}
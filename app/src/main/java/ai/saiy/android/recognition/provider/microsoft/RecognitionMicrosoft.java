@@ -47,6 +47,7 @@ import ai.saiy.android.localisation.SupportedLanguage;
 import ai.saiy.android.nlu.microsoft.ResolveMicrosoft;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.UtilsLocale;
 
@@ -152,6 +153,8 @@ public class RecognitionMicrosoft implements ISpeechRecognitionServerEvents {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "called startRecording");
         }
+
+        RecognitionTelemetry.onStart(listener);
         client.startMicAndRecognition();
     }
 
@@ -50,6 +50,7 @@ import ai.saiy.android.localisation.SupportedLanguage;
 import ai.saiy.android.nlu.nuance.ResolveNuance;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.UtilsLocale;
 
@@ -186,6 +187,7 @@ public class RecognitionNuance {
             MyLog.i(CLS_NAME, "startListening");
         }
 
+        RecognitionTelemetry.onStart(listener);
 
         if (languageModel != SaiyDefaults.LanguageModel.NUANCE) {
             if (DEBUG) {
@@ -14,24 +14,21 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.api.remote.Request;
+import ai.saiy.android.audio.AudioUploader;
 import ai.saiy.android.audio.SaiyRecorder;
 import ai.saiy.android.audio.SaiySoundPool;
 import ai.saiy.android.audio.pause.PauseDetector;
 import ai.saiy.android.audio.pause.PauseListener;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
-import ai.saiy.android.utils.Constants;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.UtilsString;
 
@@ -49,8 +46,6 @@ public class RecognitionRemote implements PauseListener {
     private static final String LANGUAGE = "language";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String HEADER_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
-    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
-    private static final String CHUNKED = "chunked";
     private static final String CONTENT_TYPE_AUDIO_PARAMS = "audio/l16; rate=8000";
 
     // May become part of the constructor.
@@ -66,9 +61,7 @@ public class RecognitionRemote implements PauseListener {
     private final AtomicBoolean isRecording = new AtomicBoolean();
     private final SaiySoundPool ssp;
 
-    private HttpsURLConnection urlConnection;
-    private OutputStream outputStream;
-    private InputStream inputStream;
+    private volatile AudioUploader uploader;
 
     private final PauseDetector pauseDetector;
 
@@ -133,6 +126,9 @@ public class RecognitionRemote implements PauseListener {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "startRecording");
         }
+
+        RecognitionTelemetry.onStart(listener);
+
         android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
 
         isRecording.set(true);
@@ -153,21 +149,12 @@ public class RecognitionRemote implements PauseListener {
 
                 try {
 
-                    urlConnection = (HttpsURLConnection) new URL(remoteUri.toString()).openConnection();
-                    urlConnection.setAllowUserInteraction(false);
-                    urlConnection.setInstanceFollowRedirects(true);
-                    urlConnection.setRequestMethod(Constants.HTTP_POST);
-                    urlConnection.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
-                    urlConnection.setRequestProperty(AUTHORIZATION, BEARER_ + apiKey);
-                    urlConnection.setRequestProperty(LANGUAGE, language);
-                    urlConnection.setUseCaches(false);
-                    urlConnection.setDoOutput(true);
-                    urlConnection.setRequestProperty(TRANSFER_ENCODING, CHUNKED);
-                    urlConnection.setChunkedStreamingMode(0);
-                    urlConnection.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
-                    urlConnection.connect();
-
-                    outputStream = urlConnection.getOutputStream();
+                    uploader = new AudioUploader(remoteUri.toString(), sampleRateInHz * nChannels * 2);
+                    uploader.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
+                    uploader.setRequestProperty(AUTHORIZATION, BEARER_ + apiKey);
+                    uploader.setRequestProperty(LANGUAGE, language);
+                    uploader.setRequestProperty(CONTENT_TYPE, CONTENT_TYPE_AUDIO_PARAMS);
+                    uploader.start();
 
                     switch (saiyRecorder.startRecording()) {
 
@@ -200,29 +187,30 @@ public class RecognitionRemote implements PauseListener {
                                         pauseDetector.monitor();
                                     }
 
-                                    for (int i = 0; i < bufferReadResult; i++) {
-                                        outputStream.write(buffer[i]);
-                                    }
+                                    uploader.write(buffer, bufferReadResult);
                                 }
                             }
 
                             audioShutdown();
 
+                            if (!uploader.finish()) {
+                                throw new IOException("audio upload failed");
+                            }
+
+                            final HttpURLConnection urlConnection = uploader.getConnection();
                             final int responseCode = urlConnection.getResponseCode();
 
                             if (DEBUG) {
                                 MyLog.d(CLS_NAME, "responseCode: " + responseCode);
                             }
 
-                            if (responseCode != HttpsURLConnection.HTTP_OK) {
+                            if (responseCode != HttpURLConnection.HTTP_OK) {
                                 if (DEBUG) {
                                     MyLog.e(CLS_NAME, "audioThread ErrorStream: "
                                             + UtilsString.streamToString(urlConnection.getErrorStream()));
                                 }
                             } else {
-                                inputStream = urlConnection.getInputStream();
-
-                                final String response = UtilsString.streamToString(inputStream);
+                                final String response = UtilsString.streamToString(uploader.getInputStream());
 
                                 if (DEBUG) {
                                     MyLog.d(CLS_NAME, "response: " + response);
@@ -351,38 +339,8 @@ public class RecognitionRemote implements PauseListener {
     }
 
     private void closeConnection() {
-
-        if (outputStream != null) {
-
-            try {
-                outputStream.close();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        if (inputStream != null) {
-
-            try {
-                inputStream.close();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        if (urlConnection != null) {
-
-            try {
-                urlConnection.disconnect();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
+        if (uploader != null) {
+            uploader.close();
         }
     }
 }
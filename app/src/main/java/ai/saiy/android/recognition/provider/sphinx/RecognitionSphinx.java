@@ -24,17 +24,24 @@ import android.support.annotation.WorkerThread;
 import java.io.File;
 import java.io.IOException;
 
+import ai.saiy.android.audio.PreRoll;
 import ai.saiy.android.localisation.SupportedLanguage;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyHotwordListener;
 import ai.saiy.android.utils.MyLog;
-import ai.saiy.android.utils.UtilsFile;
-import edu.cmu.pocketsphinx.Assets;
-import edu.cmu.pocketsphinx.SpeechRecognizer;
-
-import static edu.cmu.pocketsphinx.SpeechRecognizerSetup.defaultSetup;
+import ai.saiy.android.utils.SPH;
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
 
 /**
+ * Spots the hotword with pocketsphinx.
+ * <p>
+ * Loading the acoustic model, dictionary and keyword search takes seconds, so the decoder is kept
+ * resident once loaded. Stopping the detection, such as while speaking, only pauses it, and the next
+ * instance resumes with the same decoder. It is released with {@link #release()} when the hotword is
+ * shutdown or memory is short. The capture is gated by its energy, so that the decoder only runs while
+ * there may be speech.
+ * <p>
  * Created by benrandall76@gmail.com on 04/09/2016.
  */
 
@@ -47,20 +54,23 @@ public class RecognitionSphinx {
     private static final String HOTWORD_FILE = "hotwords.txt";
     private static final String ACOUSTIC_MODEL_EN = "en-us-ptm";
     private static final String DICTIONARY_FILE = "basic.dic";
+    private static final String ACOUSTIC_MODEL = "-hmm";
+    private static final String DICTIONARY = "-dict";
     private static final String CONTEXT_INDEPENDENT = "-allphone_ci";
     private static final String VOICE_ACTIVATION_THRESHOLD = "-vad_threshold";
 
     private static final float VAD_THRESHOLD = 3.0f;
 
+    private static final Object lock = new Object();
+    private static SphinxRecognizer resident;
+    private static String residentDictionary;
+
     private final Context mContext;
     private final SaiyHotwordListener listener;
 
     private final String dictionary;
 
-    private volatile SpeechRecognizer recognizer;
-
-    private static String dirPath = null;
-    private static File assetsDir = null;
+    private volatile SphinxRecognizer recognizer;
 
     /**
      * @param mContext the application context
@@ -90,67 +100,82 @@ public class RecognitionSphinx {
     }
 
     /**
-     * Set up the recognizer. This is resource intensive.
+     * Set up the recognizer, resuming the resident decoder if there is one. Otherwise, this is
+     * resource intensive.
      */
     private void setUp() {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "setUp");
         }
 
-        if (dirPath == null) {
-            dirPath = UtilsFile.getPrivateDirPath(mContext);
-        } else {
-            if (DEBUG) {
-                MyLog.i(CLS_NAME, "setUp: have path: " + dirPath);
-            }
-        }
+        try {
 
-        if (dirPath != null) {
+            synchronized (lock) {
 
-            try {
+                if (resident == null || !dictionary.equals(residentDictionary)) {
 
-                if (assetsDir == null) {
-                    assetsDir = new Assets(mContext, dirPath).syncAssets();
-                }
+                    final File assetsDir = SphinxAssets.getAssetsDir(mContext);
 
-                assetsDir = new Assets(mContext, dirPath).syncAssets();
+                    if (assetsDir == null) {
+                        if (DEBUG) {
+                            MyLog.w(CLS_NAME, "setUp assetsDir null");
+                        }
+                        onError(SaiyHotwordListener.ERROR_PERMISSIONS);
+                        return;
+                    }
 
-                recognizer = defaultSetup()
-                        .setAcousticModel(new File(assetsDir, ACOUSTIC_MODEL_EN))
-                        .setDictionary(new File(assetsDir, dictionary))
-                        .setBoolean(CONTEXT_INDEPENDENT, true)
-                        .setFloat(VOICE_ACTIVATION_THRESHOLD, VAD_THRESHOLD)
-                        .getRecognizer();
+                    releaseResident();
 
-                recognizer.addKeywordSearch(HOTWORD_SEARCH, new File(assetsDir, HOTWORD_FILE));
-                recognizer.addListener(listener);
+                    final long then = System.nanoTime();
 
-                listener.onHotwordInitialised();
+                    final Config config = Decoder.defaultConfig();
+                    config.setString(ACOUSTIC_MODEL, new File(assetsDir, ACOUSTIC_MODEL_EN).getPath());
+                    config.setString(DICTIONARY, new File(assetsDir, dictionary).getPath());
+                    config.setBoolean(CONTEXT_INDEPENDENT, true);
+                    config.setFloat(VOICE_ACTIVATION_THRESHOLD, VAD_THRESHOLD);
 
-            } catch (final IOException e) {
-                if (DEBUG) {
-                    MyLog.w(CLS_NAME, "setUp IOException");
-                    e.printStackTrace();
-                }
-                onError(SaiyHotwordListener.ERROR_INITIALISE);
-            } catch (final NullPointerException e) {
-                if (DEBUG) {
-                    MyLog.w(CLS_NAME, "setUp NullPointerException");
-                    e.printStackTrace();
-                }
-                onError(SaiyHotwordListener.ERROR_INITIALISE);
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    MyLog.w(CLS_NAME, "setUp Exception");
-                    e.printStackTrace();
+                    final SphinxRecognizer recognizer = new SphinxRecognizer(config);
+                    recognizer.addKeywordSearch(HOTWORD_SEARCH, new File(assetsDir, HOTWORD_FILE));
+                    recognizer.setGated(true);
+                    resident = recognizer;
+                    residentDictionary = dictionary;
+
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "setUp: loaded in " + ((System.nanoTime() - then) / 1000000) + "ms");
+                    }
+                } else {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "setUp: resuming resident decoder");
+                    }
                 }
-                onError(SaiyHotwordListener.ERROR_INITIALISE);
+
+                resident.setPreRollMillis(SPH.getHotwordPreRoll(mContext));
+                resident.addListener(listener);
+                recognizer = resident;
             }
-        } else {
+
+            listener.onHotwordInitialised();
+
+        } catch (final IOException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "setUp IOException");
+                e.printStackTrace();
+            }
+            SphinxAssets.invalidate(mContext);
+            onError(SaiyHotwordListener.ERROR_INITIALISE);
+        } catch (final NullPointerException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "setUp NullPointerException");
+                e.printStackTrace();
+            }
+            onError(SaiyHotwordListener.ERROR_INITIALISE);
+        } catch (final Exception e) {
             if (DEBUG) {
-                MyLog.w(CLS_NAME, "setUp dirPath null");
+                MyLog.w(CLS_NAME, "setUp Exception");
+                e.printStackTrace();
             }
-            onError(SaiyHotwordListener.ERROR_PERMISSIONS);
+            SphinxAssets.invalidate(mContext);
+            onError(SaiyHotwordListener.ERROR_INITIALISE);
         }
     }
 
@@ -162,9 +187,10 @@ public class RecognitionSphinx {
             MyLog.i(CLS_NAME, "startListening");
         }
 
+        final SphinxRecognizer recognizer = this.recognizer;
+
         if (recognizer != null) {
             Recognition.setState(Recognition.State.LISTENING);
-            System.gc();
             recognizer.startListening(HOTWORD_SEARCH);
             listener.onHotwordStarted();
         } else {
@@ -173,7 +199,21 @@ public class RecognitionSphinx {
     }
 
     /**
-     * Stop the recognition
+     * Keep the microphone open once the recognition is stopped, so that the speech following the
+     * hotword can be replayed to the command recognition. See {@link PreRoll}.
+     *
+     * @return true if the microphone is being held
+     */
+    public boolean holdPreRoll() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "holdPreRoll");
+        }
+
+        return recognizer != null && SPH.getHotwordPreRoll(mContext) > 0 && PreRoll.hold();
+    }
+
+    /**
+     * Stop the recognition. The decoder remains resident, ready for the next instance.
      */
     public void stopListening() {
         if (DEBUG) {
@@ -182,11 +222,14 @@ public class RecognitionSphinx {
 
         Recognition.setState(Recognition.State.IDLE);
 
+        final SphinxRecognizer recognizer = this.recognizer;
+
         if (recognizer != null) {
+            this.recognizer = null;
 
             try {
                 recognizer.cancel();
-                recognizer.shutdown();
+                recognizer.removeListener(listener);
             } catch (final Exception e) {
                 if (DEBUG) {
                     MyLog.w(CLS_NAME, "stopListening Exception");
@@ -194,12 +237,32 @@ public class RecognitionSphinx {
                 }
             } finally {
                 listener.onHotwordShutdown();
-                recognizer = null;
-                System.gc();
             }
         }
     }
 
+    /**
+     * Release the resident decoder, unless it is listening. The next instance will load it again.
+     */
+    public static void release() {
+        synchronized (lock) {
+            if (resident != null && !resident.isListening()) {
+                releaseResident();
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the lock
+     */
+    private static void releaseResident() {
+        if (resident != null) {
+            resident.release();
+            resident = null;
+            residentDictionary = null;
+        }
+    }
+
     /**
      * Report an error to the {@link SaiyHotwordListener}
      *
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.sphinx;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.speech.SpeechRecognizer;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import ai.saiy.android.audio.AudioConversion;
+import ai.saiy.android.audio.IMic;
+import ai.saiy.android.audio.RecognitionMic;
+import ai.saiy.android.localisation.SupportedLanguage;
+import ai.saiy.android.recognition.Recognition;
+import ai.saiy.android.recognition.SaiyRecognitionListener;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
+import ai.saiy.android.recognition.provider.hedge.IHedgeLeg;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsString;
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Recognises the commands that need no network on the device, by decoding a grammar built from their
+ * trigger phrases and the user's custom command keyphrases. See {@link SphinxCommandGrammar}.
+ * <p>
+ * Used in place of the default recognition when there is no network connection. The result is
+ * reported to the {@link SaiyRecognitionListener} as from any other provider, with the audio
+ * following the hotword replayed ahead of the capture.
+ * <p>
+ * Given a {@link RecognitionMic}, it instead decodes that capture, so it can be raced against a
+ * network provider as a leg of a {@link ai.saiy.android.recognition.provider.hedge.RecognitionHedge}
+ * sharing the same audio.
+ */
+public class RecognitionSphinxCommand implements RecognitionListener, IMic, IHedgeLeg {
+
+    private final boolean DEBUG = MyLog.DEBUG;
+    private final String CLS_NAME = RecognitionSphinxCommand.class.getSimpleName();
+
+    private static final String COMMAND_SEARCH = "commands";
+    private static final String ACOUSTIC_MODEL_EN = "en-us-ptm";
+    private static final String DICTIONARY_FILE = "commands.dic";
+    private static final String ACOUSTIC_MODEL = "-hmm";
+    private static final String DICTIONARY = "-dict";
+    private static final String VOICE_ACTIVATION_THRESHOLD = "-vad_threshold";
+    private static final String LOG_BASE = "-logbase";
+
+    private static final float VAD_THRESHOLD = 3.0f;
+    private static final float MIN_CONFIDENCE = 0.3f;
+    private static final int TIMEOUT = 5000;
+
+    private final Context mContext;
+    private final SaiyRecognitionListener listener;
+    private final SupportedLanguage sl;
+    private final RecognitionMic mic;
+    private final Feed feed;
+
+    private volatile SphinxRecognizer recognizer;
+    private volatile boolean doResult = true;
+
+    /**
+     * Constructor
+     *
+     * @param mContext the application context
+     * @param listener the {@link SaiyRecognitionListener}
+     * @param sl       the {@link SupportedLanguage}
+     */
+    @WorkerThread
+    public RecognitionSphinxCommand(@NonNull final Context mContext, @NonNull final SaiyRecognitionListener listener,
+                                    @NonNull final SupportedLanguage sl) {
+        this(mContext, listener, sl, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param mContext the application context
+     * @param listener the {@link SaiyRecognitionListener}
+     * @param sl       the {@link SupportedLanguage}
+     * @param mic      the initialised {@link RecognitionMic} to decode, or null to capture from the
+     *                 microphone
+     */
+    @WorkerThread
+    public RecognitionSphinxCommand(@NonNull final Context mContext, @NonNull final SaiyRecognitionListener listener,
+                                    @NonNull final SupportedLanguage sl, @Nullable final RecognitionMic mic) {
+        this.mContext = mContext;
+        this.listener = listener;
+        this.sl = sl;
+        this.mic = mic;
+        this.feed = mic != null ? new Feed() : null;
+
+        setUp();
+
+        final SphinxRecognizer recognizer = this.recognizer;
+
+        if (mic != null && recognizer != null) {
+            mic.setMicListener(this, recognizer.getSampleRateInHz());
+        }
+    }
+
+    /**
+     * Set up the decoder and its grammar. This is resource intensive.
+     */
+    private void setUp() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "setUp");
+        }
+
+        try {
+
+            final File assetsDir = SphinxAssets.getAssetsDir(mContext);
+
+            if (assetsDir != null) {
+
+                final Config config = Decoder.defaultConfig();
+                config.setString(ACOUSTIC_MODEL, new File(assetsDir, ACOUSTIC_MODEL_EN).getPath());
+                config.setString(DICTIONARY, new File(assetsDir, DICTIONARY_FILE).getPath());
+                config.setFloat(VOICE_ACTIVATION_THRESHOLD, VAD_THRESHOLD);
+
+                final SphinxRecognizer recognizer = new SphinxRecognizer(config);
+                final String grammar = SphinxCommandGrammar.build(mContext, sl, recognizer.getDecoder());
+
+                if (grammar != null) {
+                    recognizer.addGrammarSearch(COMMAND_SEARCH, grammar);
+                    recognizer.setReplayPreRoll(mic == null);
+                    recognizer.setSource(feed);
+                    recognizer.setTimeout(TIMEOUT);
+                    recognizer.addListener(this);
+                    this.recognizer = recognizer;
+                } else {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "setUp: grammar null");
+                    }
+                }
+            } else {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "setUp assetsDir null");
+                }
+            }
+
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "setUp Exception");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Start the recognition
+     */
+    public void startListening() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "startListening");
+        }
+
+        RecognitionTelemetry.onStart(listener);
+
+        final SphinxRecognizer recognizer = this.recognizer;
+
+        if (recognizer != null && (mic == null || mic.isAvailable())
+                && recognizer.startListening(COMMAND_SEARCH)) {
+            Recognition.setState(Recognition.State.LISTENING);
+
+            if (mic != null) {
+                mic.startRecording();
+            }
+
+            listener.onReadyForSpeech(null);
+        } else {
+            onError(SpeechRecognizer.ERROR_CLIENT);
+        }
+    }
+
+    /**
+     * Stop the recognition and report the result of the speech so far
+     */
+    public void stopListening() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "stopListening");
+        }
+
+        if (mic != null) {
+            mic.stopRecording(this);
+        }
+
+        final SphinxRecognizer recognizer = this.recognizer;
+
+        if (recognizer != null && recognizer.stop()) {
+            Recognition.setState(Recognition.State.PROCESSING);
+        }
+    }
+
+    /**
+     * The posterior of a hypothesis from the command grammar isn't on the same scale as the network
+     * providers' confidence, so the offline result is only used when the network has none
+     */
+    @Override
+    public boolean isConfidenceCalibrated() {
+        return false;
+    }
+
+    /**
+     * Stop the recognition without a result
+     */
+    @Override
+    public void cancel() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "cancel");
+        }
+
+        doResult = false;
+        shutdown();
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onBeginningOfSpeech");
+        }
+        listener.onBeginningOfSpeech();
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onEndOfSpeech");
+        }
+
+        listener.onEndOfSpeech();
+        stopListening();
+    }
+
+    @Override
+    public void onPartialResult(final Hypothesis hypothesis) {
+
+        if (hypothesis != null && UtilsString.notNaked(hypothesis.getHypstr())
+                && !SphinxCommandGrammar.isRejected(hypothesis.getHypstr())) {
+
+            final ArrayList<String> partialArray = new ArrayList<>(1);
+            partialArray.add(hypothesis.getHypstr());
+
+            final Bundle bundle = new Bundle();
+            bundle.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, partialArray);
+            listener.onPartialResults(bundle);
+        }
+    }
+
+    @Override
+    public void onResult(final Hypothesis hypothesis) {
+
+        if (hypothesis != null && UtilsString.notNaked(hypothesis.getHypstr())
+                && !SphinxCommandGrammar.isRejected(hypothesis.getHypstr())) {
+
+            final float confidence = getConfidence(hypothesis);
+
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "onResult: " + hypothesis.getHypstr() + " ~ " + confidence);
+            }
+
+            if (confidence < MIN_CONFIDENCE) {
+                onError(SpeechRecognizer.ERROR_NO_MATCH);
+            } else if (doResult) {
+                doResult = false;
+
+                final ArrayList<String> resultsArray = new ArrayList<>(1);
+                resultsArray.add(hypothesis.getHypstr());
+
+                final Bundle bundle = new Bundle();
+                bundle.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, resultsArray);
+                bundle.putFloatArray(SpeechRecognizer.CONFIDENCE_SCORES, new float[]{confidence});
+
+                shutdown();
+                listener.onResults(bundle);
+            }
+        } else {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "onResult: no match");
+            }
+            onError(SpeechRecognizer.ERROR_NO_MATCH);
+        }
+    }
+
+    @Override
+    public void onError(final Exception e) {
+        if (DEBUG) {
+            MyLog.w(CLS_NAME, "onError: " + e.getMessage());
+        }
+        onError(SpeechRecognizer.ERROR_AUDIO);
+    }
+
+    @Override
+    public void onTimeout() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onTimeout");
+        }
+        onError(SpeechRecognizer.ERROR_SPEECH_TIMEOUT);
+    }
+
+    /**
+     * Report an error to the {@link SaiyRecognitionListener}, only once
+     *
+     * @param error the {@link SpeechRecognizer} error constant
+     */
+    @Override
+    public void onError(final int error) {
+
+        if (doResult) {
+            doResult = false;
+            shutdown();
+            listener.onError(error);
+        }
+    }
+
+    /**
+     * The posterior probability of the hypothesis, held in the decoder's log base. The phone loop of
+     * the grammar competes with the phrases in the lattice, so speech that only loosely matches a
+     * phrase is given a low posterior.
+     *
+     * @param hypothesis the final {@link Hypothesis}
+     * @return the confidence score
+     */
+    private float getConfidence(@NonNull final Hypothesis hypothesis) {
+
+        final SphinxRecognizer recognizer = this.recognizer;
+
+        if (recognizer != null) {
+            try {
+                final double base = recognizer.getDecoder().getConfig().getFloat(LOG_BASE);
+                return (float) Math.min(1D, Math.pow(base, hypothesis.getProb()));
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "getConfidence: Exception");
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return 0F;
+    }
+
+    @Override
+    public void onBufferReceived(final int bufferReadResult, final byte[] buffer) {
+        feed.write(buffer, bufferReadResult);
+    }
+
+    @Override
+    public void onPauseDetected() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onPauseDetected");
+        }
+        stopListening();
+    }
+
+    @Override
+    public void onRecordingStarted() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onRecordingStarted");
+        }
+    }
+
+    @Override
+    public void onRecordingEnded() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "onRecordingEnded");
+        }
+        stopListening();
+    }
+
+    @Override
+    public void onFileWriteComplete(final boolean success) {
+    }
+
+    /**
+     * Release the decoder, and the capture if it is shared
+     */
+    private void shutdown() {
+
+        Recognition.setState(Recognition.State.IDLE);
+
+        if (mic != null) {
+            mic.stopRecording(this);
+        }
+
+        final SphinxRecognizer recognizer = this.recognizer;
+
+        if (recognizer != null) {
+            this.recognizer = null;
+            recognizer.shutdown();
+        }
+    }
+
+    /**
+     * Holds the shared capture until the decoder reads it, as it arrives on the capture's thread
+     */
+    private static final class Feed implements SphinxRecognizer.AudioSource {
+
+        private static final long POLL_TIMEOUT = 50L;
+
+        private final LinkedBlockingQueue<short[]> frames = new LinkedBlockingQueue<>();
+
+        private short[] frame;
+        private int offset;
+
+        /**
+         * Queue a frame of the capture, which is copied as the capture reuses its buffers
+         *
+         * @param buffer the 16 bit little-endian audio
+         * @param length the number of bytes
+         */
+        void write(@NonNull final byte[] buffer, final int length) {
+            final short[] samples = new short[length / 2];
+            AudioConversion.toShorts(buffer, length, samples);
+            frames.offer(samples);
+        }
+
+        @Override
+        public int read(@NonNull final short[] buffer, final int length) {
+
+            if (frame == null) {
+                try {
+                    frame = frames.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                if (frame == null) {
+                    return 0;
+                }
+
+                offset = 0;
+            }
+
+            final int count = Math.min(length, frame.length - offset);
+            System.arraycopy(frame, offset, buffer, 0, count);
+            offset += count;
+
+            if (offset == frame.length) {
+                frame = null;
+            }
+
+            return count;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.sphinx;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+import ai.saiy.android.BuildConfig;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
+import ai.saiy.android.utils.UtilsFile;
+import edu.cmu.pocketsphinx.Assets;
+
+/**
+ * Locates the pocketsphinx models, shared by the hotword and the offline command recognition.
+ * <p>
+ * {@link Assets#syncAssets()} reads the checksum of every asset and compares it with the manifest
+ * written alongside the copies, which takes seconds on slower devices. The assets only change with
+ * the app, so the sync is run once for each version, and afterwards the manifest only needs to
+ * exist. The directory is then cached for the life of the process.
+ */
+public final class SphinxAssets {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = SphinxAssets.class.getSimpleName();
+
+    private static volatile File assetsDir;
+
+    /**
+     * Prevent instantiation
+     */
+    private SphinxAssets() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Get the directory of the synced assets, syncing them if this version of the app has not
+     * already done so. This may be resource intensive, so should not be called on the main thread.
+     *
+     * @param ctx the application context
+     * @return the assets directory, or null if the private storage is unavailable
+     * @throws IOException if the assets could not be copied
+     */
+    @Nullable
+    public static synchronized File getAssetsDir(@NonNull final Context ctx) throws IOException {
+
+        if (assetsDir != null) {
+            return assetsDir;
+        }
+
+        final String dirPath = UtilsFile.getPrivateDirPath(ctx);
+
+        if (dirPath == null) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getAssetsDir: dirPath null");
+            }
+            return null;
+        }
+
+        final Assets assets = new Assets(ctx, dirPath);
+        final File dir = assets.getExternalDir();
+
+        if (SPH.getSphinxAssetsVersion(ctx) == BuildConfig.VERSION_CODE
+                && new File(dir, Assets.ASSET_LIST_NAME).isFile()) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "getAssetsDir: synced for version " + BuildConfig.VERSION_CODE);
+            }
+            assetsDir = dir;
+            return dir;
+        }
+
+        final long then = System.nanoTime();
+        assetsDir = assets.syncAssets();
+        SPH.setSphinxAssetsVersion(ctx, BuildConfig.VERSION_CODE);
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getAssetsDir: synced in " + ((System.nanoTime() - then) / 1000000) + "ms");
+        }
+
+        return assetsDir;
+    }
+
+    /**
+     * Sync the assets again on the next use, such as after they have been deleted
+     *
+     * @param ctx the application context
+     */
+    public static synchronized void invalidate(@NonNull final Context ctx) {
+        assetsDir = null;
+        SPH.setSphinxAssetsVersion(ctx, 0);
+    }
+}
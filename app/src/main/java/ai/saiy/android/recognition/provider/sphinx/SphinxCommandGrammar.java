@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.sphinx;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+import ai.saiy.android.R;
+import ai.saiy.android.custom.CustomCommandContainer;
+import ai.saiy.android.custom.CustomCommandHelper;
+import ai.saiy.android.localisation.SaiyResources;
+import ai.saiy.android.localisation.SupportedLanguage;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsString;
+import edu.cmu.pocketsphinx.Decoder;
+
+/**
+ * Builds the JSGF grammar decoded by {@link RecognitionSphinxCommand}, from the phrases that trigger
+ * the commands resolved locally by {@link ai.saiy.android.processing.Quantum}, and the keyphrases
+ * of the user's custom commands.
+ * <p>
+ * The phrases are taken from the same string resources as the command classes, so that the
+ * recognised utterance will resolve to the command. Pocketsphinx cannot pronounce a word missing
+ * from the dictionary, so any phrase containing one is left out of the grammar.
+ * <p>
+ * A grammar of phrases alone will match any speech to its nearest phrase. A loop over the phones
+ * of the acoustic model is offered as an alternative to them, so speech that is none of the phrases
+ * can be decoded as the loop and rejected with {@link #isRejected(String)}. The loop is given a low
+ * weight, so that it only wins when no phrase is a plausible match.
+ */
+public final class SphinxCommandGrammar {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = SphinxCommandGrammar.class.getSimpleName();
+
+    private static final String GARBAGE_WEIGHT = "0.001";
+    private static final String GARBAGE_PREFIX = "garbage_";
+    private static final String[] PHONES = {"AA", "AE", "AH", "AO", "AW", "AY", "B", "CH", "D", "DH", "EH", "ER",
+            "EY", "F", "G", "HH", "IH", "IY", "JH", "K", "L", "M", "N", "NG", "OW", "OY", "P", "R", "S", "SH", "T",
+            "TH", "UH", "UW", "V", "W", "Y", "Z", "ZH"};
+
+    private static final String HEADER = "#JSGF V1.0;\n\ngrammar commands;\n\n";
+    private static final String PUBLIC_RULE = "public <command> = /1/ <phrase> | /" + GARBAGE_WEIGHT
+            + "/ <garbage>;\n";
+    private static final String PHRASE_RULE = "<phrase> = ";
+    private static final String GARBAGE_RULE = "<garbage> = <phone>+;\n";
+    private static final String PHONE_RULE = "<phone> = ";
+    private static final String ALTERNATIVE = " | ";
+    private static final String END_RULE = ";\n";
+    private static final String WORD_SEPARATOR = " ";
+    private static final String NOT_WORD = "[^\\p{L}' ]";
+    private static final String WHITESPACE = "\\s+";
+
+    /**
+     * Prevent instantiation
+     */
+    private SphinxCommandGrammar() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Build the grammar
+     *
+     * @param ctx     the application context
+     * @param sl      the {@link SupportedLanguage}
+     * @param decoder the {@link Decoder} whose dictionary the words must be in
+     * @return the JSGF grammar, or null if there are no phrases that can be recognised
+     */
+    @WorkerThread
+    @Nullable
+    public static String build(@NonNull final Context ctx, @NonNull final SupportedLanguage sl,
+                               @NonNull final Decoder decoder) {
+
+        final long then = System.nanoTime();
+        final Locale loc = sl.getLocale();
+
+        final LinkedHashSet<String> phrases = new LinkedHashSet<>();
+
+        final SaiyResources sr = new SaiyResources(ctx, sl);
+        addCancel(sr, phrases);
+        addPardon(sr, phrases);
+        addBattery(sr, phrases);
+        addHotword(sr, phrases);
+        sr.reset();
+
+        final ArrayList<CustomCommandContainer> customCommands = new CustomCommandHelper().getCustomCommands(ctx);
+        for (final CustomCommandContainer container : customCommands) {
+            phrases.add(container.getKeyphrase());
+        }
+
+        final LinkedHashSet<String> pronounceable = new LinkedHashSet<>();
+
+        String normalised;
+        for (final String phrase : phrases) {
+
+            normalised = normalise(phrase, loc);
+
+            if (isPronounceable(normalised, decoder)) {
+                pronounceable.add(normalised);
+            } else {
+                if (DEBUG) {
+                    MyLog.v(CLS_NAME, "build: not in dictionary: " + phrase);
+                }
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder(HEADER).append(PUBLIC_RULE).append(PHRASE_RULE);
+
+        int count = 0;
+        for (final String phrase : pronounceable) {
+            if (count++ > 0) {
+                sb.append(ALTERNATIVE);
+            }
+            sb.append(phrase);
+        }
+
+        sb.append(END_RULE);
+
+        if (count > 0) {
+            addGarbage(decoder, sb);
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "build: phrases: " + count + " of " + phrases.size());
+            MyLog.getElapsed(CLS_NAME, then);
+        }
+
+        return count > 0 ? sb.toString() : null;
+    }
+
+    /**
+     * Check if the hypothesis was decoded, in whole or in part, as the phone loop, rather than as
+     * one of the phrases
+     *
+     * @param hypothesis the hypothesis string
+     * @return true if the hypothesis should be rejected
+     */
+    public static boolean isRejected(@Nullable final String hypothesis) {
+        return hypothesis == null || hypothesis.contains(GARBAGE_PREFIX);
+    }
+
+    /**
+     * Add a word to the dictionary for each phone, and the rules that loop over them
+     *
+     * @param decoder the {@link Decoder}
+     * @param sb      the grammar being built
+     */
+    private static void addGarbage(@NonNull final Decoder decoder, @NonNull final StringBuilder sb) {
+
+        sb.append(GARBAGE_RULE).append(PHONE_RULE);
+
+        String word;
+        for (int i = 0; i < PHONES.length; i++) {
+
+            word = GARBAGE_PREFIX + PHONES[i].toLowerCase(Locale.US);
+
+            if (decoder.lookupWord(word) == null) {
+                decoder.addWord(word, PHONES[i], i == PHONES.length - 1 ? 1 : 0);
+            }
+
+            if (i > 0) {
+                sb.append(ALTERNATIVE);
+            }
+            sb.append(word);
+        }
+
+        sb.append(END_RULE);
+    }
+
+    private static void addCancel(@NonNull final SaiyResources sr, @NonNull final LinkedHashSet<String> phrases) {
+        phrases.add(sr.getString(R.string.cancel_));
+        phrases.add(sr.getString(R.string.cancel_that));
+        phrases.add(sr.getString(R.string.never_mind));
+        phrases.add(sr.getString(R.string.shush));
+        phrases.add(sr.getString(R.string.shut_up));
+    }
+
+    private static void addPardon(@NonNull final SaiyResources sr, @NonNull final LinkedHashSet<String> phrases) {
+        phrases.add(sr.getString(R.string.pardon));
+        phrases.add(sr.getString(R.string.say_that_again));
+        phrases.add(sr.getString(R.string.what_did_you_say));
+        phrases.add(sr.getString(R.string.come_again));
+        phrases.add(sr.getString(R.string.repeat) + WORD_SEPARATOR + sr.getString(R.string.that));
+    }
+
+    private static void addBattery(@NonNull final SaiyResources sr, @NonNull final LinkedHashSet<String> phrases) {
+
+        final String battery = sr.getString(R.string.battery) + WORD_SEPARATOR;
+
+        phrases.add(battery + sr.getString(R.string.temperature));
+        phrases.add(battery + sr.getString(R.string.level));
+        phrases.add(battery + sr.getString(R.string.percentage));
+        phrases.add(battery + sr.getString(R.string.percent));
+        phrases.add(battery + sr.getString(R.string.voltage));
+        phrases.add(battery + sr.getString(R.string.volts));
+        phrases.add(battery + sr.getString(R.string.status));
+        phrases.add(battery + sr.getString(R.string.health));
+    }
+
+    private static void addHotword(@NonNull final SaiyResources sr, @NonNull final LinkedHashSet<String> phrases) {
+
+        final String[] subjects = {sr.getString(R.string.hotword), sr.getString(R.string.hot_word),
+                sr.getString(R.string.listening)};
+        final String[] verbs = {sr.getString(R.string.start), sr.getString(R.string.stop),
+                sr.getString(R.string.enable), sr.getString(R.string.disable), sr.getString(R.string.toggle)};
+        final String[] switches = {sr.getString(R.string.turn), sr.getString(R.string.word_switch)};
+        final String[] states = {sr.getString(R.string.on), sr.getString(R.string.off)};
+
+        for (final String subject : subjects) {
+
+            for (final String verb : verbs) {
+                phrases.add(verb + WORD_SEPARATOR + subject);
+            }
+
+            for (final String toggle : switches) {
+                for (final String state : states) {
+                    phrases.add(toggle + WORD_SEPARATOR + state + WORD_SEPARATOR + subject);
+                    phrases.add(toggle + WORD_SEPARATOR + subject + WORD_SEPARATOR + state);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reduce a phrase to lower case words separated by single spaces, as they appear in the
+     * dictionary
+     *
+     * @param phrase the phrase
+     * @param loc    the {@link Locale}
+     * @return the normalised phrase
+     */
+    private static String normalise(@NonNull final String phrase, @NonNull final Locale loc) {
+        return phrase.toLowerCase(loc).replaceAll(NOT_WORD, WORD_SEPARATOR).trim().replaceAll(WHITESPACE,
+                WORD_SEPARATOR);
+    }
+
+    /**
+     * Check every word of the phrase has a pronunciation
+     *
+     * @param phrase  the normalised phrase
+     * @param decoder the {@link Decoder}
+     * @return true if the phrase can be added to the grammar
+     */
+    private static boolean isPronounceable(@NonNull final String phrase, @NonNull final Decoder decoder) {
+
+        if (!UtilsString.notNaked(phrase)) {
+            return false;
+        }
+
+        for (final String word : phrase.split(WORD_SEPARATOR)) {
+            if (decoder.lookupWord(word) == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.recognition.provider.sphinx;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ai.saiy.android.audio.EnergyGate;
+import ai.saiy.android.audio.PreRoll;
+import ai.saiy.android.audio.SaiyAudio;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
+import ai.saiy.android.utils.MyLog;
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Drives the pocketsphinx {@link Decoder} from our own capture, in place of the library's
+ * SpeechRecognizer, which keeps its AudioRecord private. Owning the capture lets each buffer be
+ * written to the {@link PreRoll}, and the microphone be held after the hotword until the command
+ * recognition takes it over.
+ * <p>
+ * When decoding commands rather than spotting the hotword, the audio held by the {@link PreRoll} is
+ * instead replayed to the decoder ahead of the capture, and the utterance can be stopped with a final
+ * result.
+ * <p>
+ * As with the library, the {@link RecognitionListener} callbacks are posted to the main thread. The
+ * recognizer can be started again once cancelled, and an utterance only begins once the previous one
+ * has ended, so the loaded {@link Decoder} can be kept and reused.
+ * <p>
+ * When spotting the hotword, the capture can be passed through an {@link EnergyGate}, so the decoder
+ * only runs while there is speech-like energy. The CPU time of each is reported to the
+ * {@link RecognitionTelemetry} once the capture ends.
+ * <p>
+ * Commands can also be decoded from audio captured elsewhere, such as a capture shared with other
+ * recognisers, by setting an {@link AudioSource} in place of the microphone.
+ */
+public class SphinxRecognizer {
+
+    private final boolean DEBUG = MyLog.DEBUG;
+    private final String CLS_NAME = SphinxRecognizer.class.getSimpleName();
+
+    private static final String LIBRARY = "pocketsphinx_jni";
+    private static final String SAMPLE_RATE = "-samprate";
+    private static final float BUFFER_SIZE_SECONDS = 0.4f;
+
+    private final Decoder decoder;
+    private final int sampleRateInHz;
+    private final int bufferSize;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CopyOnWriteArrayList<RecognitionListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile RecognizerThread recognizerThread;
+    private volatile boolean released;
+    private AudioSource source;
+    private int preRollMillis = PreRoll.DEFAULT_MILLIS;
+    private boolean replayPreRoll;
+    private int timeoutMillis;
+    private EnergyGate gate;
+
+    static {
+        System.loadLibrary(LIBRARY);
+    }
+
+    /**
+     * Audio captured elsewhere, to decode in place of the microphone
+     */
+    public interface AudioSource {
+
+        /**
+         * Read the next of the 16 bit mono audio, at the sample rate of the decoder. Should not block
+         * for long when there is none, so that the decoding can be stopped.
+         *
+         * @param buffer the buffer to read into
+         * @param length the maximum number of samples to read
+         * @return the number of samples read, which may be zero
+         */
+        int read(@NonNull short[] buffer, int length);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param config the decoder {@link Config}
+     */
+    public SphinxRecognizer(@NonNull final Config config) {
+        this.decoder = new Decoder(config);
+        this.sampleRateInHz = (int) decoder.getConfig().getFloat(SAMPLE_RATE);
+        this.bufferSize = Math.round(sampleRateInHz * BUFFER_SIZE_SECONDS);
+    }
+
+    public void addListener(@NonNull final RecognitionListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(@NonNull final RecognitionListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void addKeywordSearch(@NonNull final String name, @NonNull final File file) {
+        decoder.setKws(name, file.getPath());
+    }
+
+    public void addGrammarSearch(@NonNull final String name, @NonNull final String jsgf) {
+        decoder.setJsgfString(name, jsgf);
+    }
+
+    public Decoder getDecoder() {
+        return decoder;
+    }
+
+    public int getSampleRateInHz() {
+        return sampleRateInHz;
+    }
+
+    /**
+     * Decode commands from the given audio, rather than from the microphone. The {@link PreRoll} is
+     * neither replayed nor written.
+     *
+     * @param source the {@link AudioSource}, or null to capture from the microphone
+     */
+    public void setSource(final AudioSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Set the length of the {@link PreRoll} ring
+     *
+     * @param preRollMillis the length in milliseconds
+     */
+    public void setPreRollMillis(final int preRollMillis) {
+        this.preRollMillis = preRollMillis;
+    }
+
+    /**
+     * Replay the audio held by the {@link PreRoll} ahead of the capture, rather than writing the
+     * capture to it
+     *
+     * @param replayPreRoll true to replay the audio following the hotword
+     */
+    public void setReplayPreRoll(final boolean replayPreRoll) {
+        this.replayPreRoll = replayPreRoll;
+    }
+
+    /**
+     * Only decode the capture while it has speech-like energy. Not applied when replaying the
+     * {@link PreRoll}.
+     *
+     * @param gated true to pass the capture through an {@link EnergyGate}
+     */
+    public void setGated(final boolean gated) {
+        this.gate = gated ? new EnergyGate(sampleRateInHz, EnergyGate.DEFAULT_PRE_ROLL,
+                EnergyGate.DEFAULT_HANGOVER) : null;
+    }
+
+    /**
+     * Set the time without speech after which {@link RecognitionListener#onTimeout()} is called and
+     * the decoding stops
+     *
+     * @param timeoutMillis the timeout in milliseconds, or zero for none
+     */
+    public void setTimeout(final int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Check if the recognizer is decoding
+     *
+     * @return true if it's listening
+     */
+    public boolean isListening() {
+        return recognizerThread != null;
+    }
+
+    /**
+     * Start decoding the given search
+     *
+     * @param searchName the name of the search
+     * @return false if the recognizer is already listening, or has been released
+     */
+    public boolean startListening(@NonNull final String searchName) {
+
+        if (recognizerThread != null || released) {
+            return false;
+        }
+
+        recognizerThread = new RecognizerThread(searchName);
+        recognizerThread.start();
+        return true;
+    }
+
+    /**
+     * Stop decoding, and post the final hypothesis to {@link RecognitionListener#onResult(Hypothesis)}
+     *
+     * @return false if the recognizer was not listening
+     */
+    public boolean stop() {
+
+        final RecognizerThread thread = recognizerThread;
+
+        if (thread == null) {
+            return false;
+        }
+
+        recognizerThread = null;
+        thread.running = false;
+        return true;
+    }
+
+    /**
+     * Stop decoding without a final result. If the {@link PreRoll} is holding the microphone, the
+     * capture continues in the background until it is taken.
+     *
+     * @return false if the recognizer was not listening
+     */
+    public boolean cancel() {
+
+        final RecognizerThread thread = recognizerThread;
+
+        if (thread == null) {
+            return false;
+        }
+
+        recognizerThread = null;
+        thread.cancelled = true;
+        thread.running = false;
+        mainHandler.removeCallbacksAndMessages(null);
+
+        if (!PreRoll.isHolding()) {
+            try {
+                thread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Cancel and release the listeners
+     */
+    public void shutdown() {
+        cancel();
+        listeners.clear();
+    }
+
+    /**
+     * Shutdown and delete the native {@link Decoder}. A cancelled thread may still be ending its
+     * utterance, as {@link #cancel()} does not wait for it while the {@link PreRoll} holds the
+     * microphone, so the decoder is deleted holding its lock, which the thread holds for as long as
+     * it uses the decoder. The recognizer cannot be started again.
+     */
+    public void release() {
+        shutdown();
+
+        synchronized (decoder) {
+            if (!released) {
+                released = true;
+                decoder.delete();
+            }
+        }
+    }
+
+    private void post(@NonNull final RecognizerThread source, @NonNull final Event event) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!source.cancelled) {
+                    for (final RecognitionListener listener : listeners) {
+                        event.execute(listener);
+                    }
+                }
+            }
+        });
+    }
+
+    private interface Event {
+        void execute(@NonNull RecognitionListener listener);
+    }
+
+    private final class RecognizerThread extends Thread implements EnergyGate.Sink {
+
+        private final String search;
+        private volatile boolean running = true;
+        private volatile boolean cancelled;
+
+        private boolean decoded;
+        private long gateNanos;
+        private long decoderNanos;
+
+        RecognizerThread(@NonNull final String search) {
+            super(CLS_NAME);
+            this.search = search;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+            final AudioSource source = SphinxRecognizer.this.source;
+
+            if (source != null) {
+                try {
+                    decode(source, null, false, null);
+                } catch (final Exception e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "run: source: Exception");
+                        e.printStackTrace();
+                    }
+                    onError(e);
+                }
+                return;
+            }
+
+            final byte[] pending = replayPreRoll ? PreRoll.take(sampleRateInHz) : null;
+            final EnergyGate gate = replayPreRoll ? null : SphinxRecognizer.this.gate;
+            final SaiyAudio recorder;
+
+            try {
+                recorder = new SaiyAudio(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRateInHz,
+                        AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize * 2, false);
+            } catch (final IllegalArgumentException e) {
+                onError(e);
+                return;
+            }
+
+            if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+                recorder.release();
+                onError(new IOException("Failed to initialise recorder. Microphone might be in use"));
+                return;
+            }
+
+            if (!replayPreRoll) {
+                PreRoll.open(sampleRateInHz, preRollMillis);
+            }
+
+            try {
+
+                recorder.startRecording();
+
+                if (recorder.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+                    onError(new IOException("Failed to start recording. Microphone might be in use"));
+                    return;
+                }
+
+                final short[] buffer = new short[bufferSize];
+                int nread;
+
+                // The first buffer is usually zeroes
+                recorder.read(buffer, 0, buffer.length);
+
+                decode(new AudioSource() {
+                    @Override
+                    public int read(@NonNull final short[] buffer, final int length) {
+                        return recorder.read(buffer, 0, length);
+                    }
+                }, pending, !replayPreRoll, gate);
+
+                while (!replayPreRoll && PreRoll.isHolding()) {
+                    nread = recorder.read(buffer, 0, buffer.length);
+                    if (nread < 0) {
+                        break;
+                    }
+                    PreRoll.write(buffer, nread);
+                }
+
+            } catch (final Exception e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "run: Exception");
+                    e.printStackTrace();
+                }
+                onError(e);
+            } finally {
+
+                try {
+                    recorder.stop();
+                } catch (final IllegalStateException e) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "recorder.stop(): IllegalStateException");
+                    }
+                }
+
+                recorder.release();
+
+                if (!replayPreRoll) {
+                    PreRoll.close();
+                }
+            }
+        }
+
+        /**
+         * Decode an utterance, until it is stopped or times out. When spotting the hotword, the audio
+         * is written to the {@link PreRoll} and only the partial results are posted; otherwise the
+         * final result is posted once the utterance ends.
+         *
+         * @param input   the {@link AudioSource}
+         * @param pending the audio to replay ahead of the input, or null
+         * @param hotword true if spotting the hotword
+         * @param gate    the {@link EnergyGate} to pass the input through, or null
+         */
+        private void decode(@NonNull final AudioSource input, final byte[] pending, final boolean hotword,
+                            final EnergyGate gate) {
+
+            final short[] buffer = new short[bufferSize];
+            int nread;
+
+            synchronized (decoder) {
+
+                if (released) {
+                    return;
+                }
+
+                decoder.setSearch(search);
+                decoder.startUtt();
+
+                if (gate != null) {
+                    gate.reset();
+                }
+
+                if (pending != null) {
+                    replay(pending);
+                }
+
+                final int timeoutSamples = timeoutMillis * sampleRateInHz / 1000;
+                int remainingSamples = timeoutSamples;
+                boolean speech = decoder.getInSpeech();
+                boolean spotted = false;
+
+                while (running) {
+
+                    nread = input.read(buffer, buffer.length);
+
+                    if (nread < 0) {
+                        onError(new IOException("Error reading audio buffer: " + nread));
+                        break;
+                    } else if (nread > 0) {
+
+                        if (hotword) {
+                            PreRoll.write(buffer, nread);
+                        }
+
+                        if (gate != null) {
+                            final long then = Debug.threadCpuTimeNanos();
+                            final long decoding = decoderNanos;
+                            decoded = false;
+                            gate.process(buffer, nread, this);
+                            gateNanos += Debug.threadCpuTimeNanos() - then - (decoderNanos - decoding);
+
+                            if (!decoded) {
+                                // Nothing new to decode
+                                continue;
+                            }
+                        } else {
+                            decoder.processRaw(buffer, nread, false, false);
+                        }
+
+                        if (decoder.getInSpeech() != speech) {
+                            speech = !speech;
+                            onSpeechChange(speech);
+                        }
+
+                        if (timeoutSamples > 0) {
+                            remainingSamples = speech ? timeoutSamples : remainingSamples - nread;
+                            if (remainingSamples <= 0) {
+                                onTimeout();
+                                break;
+                            }
+                        }
+
+                        final Hypothesis hypothesis = decoder.hyp();
+
+                        if (hypothesis != null && !spotted && hotword) {
+                            spotted = true;
+                            PreRoll.mark();
+                        }
+
+                        post(this, new Event() {
+                            @Override
+                            public void execute(@NonNull final RecognitionListener listener) {
+                                listener.onPartialResult(hypothesis);
+                            }
+                        });
+                    }
+                }
+
+                decoder.endUtt();
+
+                if (gate != null) {
+                    RecognitionTelemetry.onHotword(gate.getMillisIn(), gate.getMillisPassed(),
+                            gate.getOpenings(), gateNanos, decoderNanos);
+                }
+
+                if (!hotword) {
+                    final Hypothesis hypothesis = decoder.hyp();
+
+                    post(this, new Event() {
+                        @Override
+                        public void execute(@NonNull final RecognitionListener listener) {
+                            listener.onResult(hypothesis);
+                        }
+                    });
+                }
+            }
+        }
+
+        /**
+         * Decode the audio passed by the {@link EnergyGate}
+         */
+        @Override
+        public void write(@NonNull final short[] samples, final int length) {
+            final long then = Debug.threadCpuTimeNanos();
+            decoder.processRaw(samples, length, false, false);
+            decoderNanos += Debug.threadCpuTimeNanos() - then;
+            decoded = true;
+        }
+
+        /**
+         * Decode the little-endian audio captured since the hotword
+         *
+         * @param pending the audio from {@link PreRoll#take(int)}
+         */
+        private void replay(@NonNull final byte[] pending) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "replay: " + pending.length);
+            }
+
+            final short[] samples = new short[pending.length / 2];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) ((pending[2 * i] & 0xFF) | (pending[2 * i + 1] << 8));
+            }
+
+            decoder.processRaw(samples, samples.length, false, false);
+        }
+
+        private void onTimeout() {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "onTimeout");
+            }
+
+            running = false;
+            cancelled = true;
+
+            if (recognizerThread == this) {
+                recognizerThread = null;
+            }
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (final RecognitionListener listener : listeners) {
+                        listener.onTimeout();
+                    }
+                }
+            });
+        }
+
+        private void onSpeechChange(final boolean speech) {
+            post(this, new Event() {
+                @Override
+                public void execute(@NonNull final RecognitionListener listener) {
+                    if (speech) {
+                        listener.onBeginningOfSpeech();
+                    } else {
+                        listener.onEndOfSpeech();
+                    }
+                }
+            });
+        }
+
+        private void onError(@NonNull final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "onError: " + e.getMessage());
+            }
+
+            post(this, new Event() {
+                @Override
+                public void execute(@NonNull final RecognitionListener listener) {
+                    listener.onError(e);
+                }
+            });
+        }
+    }
+}
@@ -13,21 +13,18 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import javax.net.ssl.HttpsURLConnection;
-
 import ai.saiy.android.api.SaiyDefaults;
 import ai.saiy.android.api.language.vr.VRLanguageIBM;
 import ai.saiy.android.api.language.vr.VRLanguageWit;
 import ai.saiy.android.api.remote.Request;
+import ai.saiy.android.audio.AudioUploader;
 import ai.saiy.android.audio.SaiyRecorder;
 import ai.saiy.android.audio.SaiySoundPool;
 import ai.saiy.android.audio.pause.PauseDetector;
@@ -38,8 +35,9 @@ import ai.saiy.android.nlu.wit.NLUWit;
 import ai.saiy.android.nlu.wit.ResolveWit;
 import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
-import ai.saiy.android.utils.Constants;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
 import ai.saiy.android.utils.UtilsLocale;
 import ai.saiy.android.utils.UtilsString;
 
@@ -56,8 +54,6 @@ public class RecognitionWit implements PauseListener {
     private static final String BEARER_ = "Bearer ";
     private static final String CONTENT_TYPE = "Content-Type";
     private static final String HEADER_CONTENT_TYPE = "audio/raw;encoding=signed-integer;bits=16;rate=16000;endian=little";
-    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
-    private static final String CHUNKED = "chunked";
     private static final String ACCEPT_HEADER = "Accept";
     private static final String N_HEADER = "n";
     private static final String ACCEPT_VERSION = "application/vnd.wit." + "20160526";
@@ -69,9 +65,7 @@ public class RecognitionWit implements PauseListener {
     private final int channelConfig = AudioFormat.CHANNEL_IN_MONO;
     private final int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
 
-    private HttpsURLConnection urlConnection;
-    private OutputStream outputStream;
-    private InputStream inputStream;
+    private volatile AudioUploader uploader;
 
     private final PauseDetector pauseDetector;
 
@@ -123,6 +117,7 @@ public class RecognitionWit implements PauseListener {
         saiyRecorder = new SaiyRecorder(audioSource, sampleRateInHz, channelConfig, audioFormat, true);
         pauseDetector = new PauseDetector(this, sampleRateInHz, nChannels,
                 PauseDetector.DEFAULT_PAUSE_IGNORE_TIME);
+        pauseDetector.setEndSilence(SPH.getPauseTimeout(mContext));
 
     }
 
@@ -153,6 +148,9 @@ public class RecognitionWit implements PauseListener {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "startRecording");
         }
+
+        RecognitionTelemetry.onStart(listener);
+
         android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
 
         isRecording.set(true);
@@ -172,21 +170,12 @@ public class RecognitionWit implements PauseListener {
 
                 try {
 
-                    urlConnection = (HttpsURLConnection) new URL(WitConfiguration.WIT_SPEECH_URL).openConnection();
-                    urlConnection.setAllowUserInteraction(false);
-                    urlConnection.setInstanceFollowRedirects(true);
-                    urlConnection.setRequestMethod(Constants.HTTP_POST);
-                    urlConnection.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
-                    urlConnection.setRequestProperty(AUTHORIZATION, BEARER_ + accessToken);
-                    urlConnection.setRequestProperty(ACCEPT_HEADER, ACCEPT_VERSION);
-                    urlConnection.setRequestProperty(N_HEADER, "5");
-                    urlConnection.setUseCaches(false);
-                    urlConnection.setDoOutput(true);
-                    urlConnection.setRequestProperty(TRANSFER_ENCODING, CHUNKED);
-                    urlConnection.setChunkedStreamingMode(0);
-                    urlConnection.connect();
-
-                    outputStream = urlConnection.getOutputStream();
+                    uploader = new AudioUploader(WitConfiguration.WIT_SPEECH_URL, sampleRateInHz * nChannels * 2);
+                    uploader.setRequestProperty(CONTENT_TYPE, HEADER_CONTENT_TYPE);
+                    uploader.setRequestProperty(AUTHORIZATION, BEARER_ + accessToken);
+                    uploader.setRequestProperty(ACCEPT_HEADER, ACCEPT_VERSION);
+                    uploader.setRequestProperty(N_HEADER, "5");
+                    uploader.start();
 
                     ssp.play(ssp.getBeepStart());
 
@@ -222,21 +211,24 @@ public class RecognitionWit implements PauseListener {
                                         pauseDetector.monitor();
                                     }
 
-                                    for (int i = 0; i < bufferReadResult; i++) {
-                                        outputStream.write(buffer[i]);
-                                    }
+                                    uploader.write(buffer, bufferReadResult);
                                 }
                             }
 
                             audioShutdown();
 
+                            if (!uploader.finish()) {
+                                throw new IOException("audio upload failed");
+                            }
+
+                            final HttpURLConnection urlConnection = uploader.getConnection();
                             final int responseCode = urlConnection.getResponseCode();
 
                             if (DEBUG) {
                                 MyLog.d(CLS_NAME, "responseCode: " + responseCode);
                             }
 
-                            if (responseCode != HttpsURLConnection.HTTP_OK) {
+                            if (responseCode != HttpURLConnection.HTTP_OK) {
                                 if (DEBUG) {
                                     MyLog.e(CLS_NAME, "audioThread ErrorStream: "
                                             + UtilsString.streamToString(urlConnection.getErrorStream()));
@@ -245,9 +237,7 @@ public class RecognitionWit implements PauseListener {
                                 listener.onError(SpeechRecognizer.ERROR_NETWORK);
 
                             } else {
-                                inputStream = urlConnection.getInputStream();
-
-                                final String response = UtilsString.streamToString(inputStream);
+                                final String response = UtilsString.streamToString(uploader.getInputStream());
 
                                 final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
                                 final NLUWit nluWit = gson.fromJson(response, NLUWit.class);
@@ -378,38 +368,8 @@ public class RecognitionWit implements PauseListener {
     }
 
     private void closeConnection() {
-
-        if (outputStream != null) {
-
-            try {
-                outputStream.close();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        if (inputStream != null) {
-
-            try {
-                inputStream.close();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        if (urlConnection != null) {
-
-            try {
-                urlConnection.disconnect();
-            } catch (final Exception e) {
-                if (DEBUG) {
-                    e.printStackTrace();
-                }
-            }
+        if (uploader != null) {
+            uploader.close();
         }
     }
 }
@@ -36,6 +36,7 @@ import ai.saiy.android.personality.PersonalityHelper;
 import ai.saiy.android.personality.PersonalityResponse;
 import ai.saiy.android.processing.Condition;
 import ai.saiy.android.service.helper.LocalRequest;
+import ai.saiy.android.service.helper.PreConnect;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.SPH;
 import ai.saiy.android.utils.UtilsString;
@@ -119,6 +120,8 @@ public class NotificationService extends IntentService {
                                     MyLog.i(CLS_NAME, "onHandleIntent: NOTIFICATION_FOREGROUND");
                                 }
 
+                                PreConnect.warm(getApplicationContext(), PreConnect.TRIGGER_NOTIFICATION);
+
                                 bundle.putInt(LocalRequest.EXTRA_ACTION, LocalRequest.ACTION_SPEAK_LISTEN);
                                 bundle.putString(LocalRequest.EXTRA_UTTERANCE, PersonalityHelper.getIntro(getApplicationContext(), sl));
                                 bundle.putString(LocalRequest.EXTRA_RECOGNITION_LANGUAGE, SPH.getVRLocale(getApplicationContext()).toString());
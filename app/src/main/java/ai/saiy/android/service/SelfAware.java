@@ -47,7 +47,9 @@ import ai.saiy.android.api.helper.CallbackType;
 import ai.saiy.android.api.remote.Request;
 import ai.saiy.android.api.request.SaiyRequestParams;
 import ai.saiy.android.audio.AudioParameters;
+import ai.saiy.android.audio.CaptureSession;
 import ai.saiy.android.audio.RecognitionMic;
+import ai.saiy.android.cache.speech.SpeechCacheUsage;
 import ai.saiy.android.cognitive.emotion.provider.beyondverbal.BeyondVerbal;
 import ai.saiy.android.cognitive.identity.provider.microsoft.SpeakerEnrollment;
 import ai.saiy.android.cognitive.identity.provider.microsoft.SpeakerIdentification;
@@ -65,15 +67,20 @@ import ai.saiy.android.recognition.RecognitionAction;
 import ai.saiy.android.recognition.SaiyHotwordListener;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
 import ai.saiy.android.recognition.helper.GoogleNowMonitor;
+import ai.saiy.android.recognition.provider.bluemix.BluemixSession;
 import ai.saiy.android.recognition.provider.bluemix.RecognitionBluemix;
 import ai.saiy.android.recognition.provider.google.chromium.RecognitionGoogleChromium;
+import ai.saiy.android.recognition.provider.google.cloud.GoogleCloudChannel;
 import ai.saiy.android.recognition.provider.google.cloud.RecognitionGoogleCloud;
+import ai.saiy.android.recognition.provider.hedge.RecognitionHedge;
 import ai.saiy.android.recognition.provider.microsoft.RecognitionMicrosoft;
 import ai.saiy.android.recognition.provider.nuance.RecognitionNuance;
 import ai.saiy.android.recognition.provider.remote.RecognitionRemote;
 import ai.saiy.android.recognition.provider.sphinx.RecognitionSphinx;
+import ai.saiy.android.recognition.provider.sphinx.RecognitionSphinxCommand;
 import ai.saiy.android.recognition.provider.wit.RecognitionWit;
 import ai.saiy.android.service.helper.LocalRequest;
+import ai.saiy.android.service.helper.PreConnect;
 import ai.saiy.android.service.helper.SelfAwareCache;
 import ai.saiy.android.service.helper.SelfAwareConditions;
 import ai.saiy.android.service.helper.SelfAwareParameters;
@@ -88,6 +95,7 @@ import ai.saiy.android.ui.notification.NotificationHelper;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.SPH;
 import ai.saiy.android.utils.UtilsBundle;
+import ai.saiy.android.utils.UtilsString;
 
 /**
  * This foreground service class will remain running unless the user deactivates it
@@ -143,6 +151,8 @@ public class SelfAware extends Service {
     private volatile RecognitionRemote recogRemote;
     private volatile RecognitionSphinx recogSphinx;
     private volatile RecognitionMic recogMic;
+    private volatile RecognitionHedge recogHedge;
+    private volatile RecognitionSphinxCommand recogOffline;
     private volatile SpeechRecognizer recogNative;
 
     private volatile SelfAwareConditions conditions;
@@ -469,7 +479,7 @@ public class SelfAware extends Service {
                                 break;
                         }
 
-                        if (isSpeakListen) {
+                        if (isSpeakListen && !conditions.isHedgedRecognition()) {
                             switch (conditions.getDefaultRecognition()) {
                                 case GOOGLE_CLOUD:
                                     switch (Recognition.getState()) {
@@ -638,7 +648,12 @@ public class SelfAware extends Service {
     protected void stopListening(final boolean shutdown) {
         conditions.setHotwordShutdown(recogSphinx, shutdown);
         conditions.stopListening(recogNuance, recogGoogleCloud, recogGoogleChromium, recogOxford,
-                recogWit, recogIBM, recogRemote, recogMic, recogNative, recogSphinx);
+                recogWit, recogIBM, recogRemote, recogMic, recogNative, recogSphinx, recogHedge,
+                recogOffline);
+
+        if (shutdown) {
+            RecognitionSphinx.release();
+        }
     }
 
     /**
@@ -765,6 +780,11 @@ public class SelfAware extends Service {
 
                                     recognitionListener.resetBugVariables();
 
+                                    if (conditions.isHedgedRecognition()) {
+                                        startHedgedRecognition();
+                                        break;
+                                    }
+
                                     AsyncTask.execute(new Runnable() {
                                         @Override
                                         public void run() {
@@ -789,7 +809,11 @@ public class SelfAware extends Service {
                                         MyLog.i(CLS_NAME, "GOOGLE_CLOUD: PROCESSING");
                                     }
 
-                                    recogGoogleCloud.stopListening();
+                                    if (recogHedge != null) {
+                                        recogHedge.stopListening();
+                                    } else {
+                                        recogGoogleCloud.stopListening();
+                                    }
                                     conditions.manageCallback(CallbackType.CB_ERROR_BUSY, null);
                                     break;
                                 case LISTENING:
@@ -797,7 +821,11 @@ public class SelfAware extends Service {
                                         MyLog.i(CLS_NAME, "GOOGLE_CLOUD: LISTENING");
                                     }
 
-                                    recogGoogleCloud.stopListening();
+                                    if (recogHedge != null) {
+                                        recogHedge.stopListening();
+                                    } else {
+                                        recogGoogleCloud.stopListening();
+                                    }
                                     conditions.manageCallback(CallbackType.CB_ERROR_BUSY, null);
                                     break;
                             }
@@ -949,6 +977,13 @@ public class SelfAware extends Service {
                                     }
 
                                     conditions.setFetchingCountdown();
+
+                                    if (conditions.isHedgedRecognition()) {
+                                        recognitionListener.resetBugVariables();
+                                        startHedgedRecognition();
+                                        break;
+                                    }
+
                                     AsyncTask.execute(new Runnable() {
                                         @Override
                                         public void run() {
@@ -970,7 +1005,11 @@ public class SelfAware extends Service {
                                         MyLog.i(CLS_NAME, "IBM: PROCESSING");
                                     }
 
-                                    recogIBM.stopListening();
+                                    if (recogHedge != null) {
+                                        recogHedge.stopListening();
+                                    } else {
+                                        recogIBM.stopListening();
+                                    }
                                     conditions.manageCallback(CallbackType.CB_ERROR_BUSY, null);
                                     break;
                                 case LISTENING:
@@ -978,7 +1017,11 @@ public class SelfAware extends Service {
                                         MyLog.i(CLS_NAME, "WIT: LISTENING");
                                     }
 
-                                    recogIBM.stopListening();
+                                    if (recogHedge != null) {
+                                        recogHedge.stopListening();
+                                    } else {
+                                        recogIBM.stopListening();
+                                    }
                                     conditions.manageCallback(CallbackType.CB_ERROR_BUSY, null);
                                     break;
                             }
@@ -1014,6 +1057,7 @@ public class SelfAware extends Service {
 
                                             if (nativePair != null) {
                                                 recogNative = nativePair.first;
+                                                conditions.onNativeStarted();
                                                 recogNative.startListening(nativePair.second);
                                             } else {
                                                 if (DEBUG) {
@@ -1026,6 +1070,7 @@ public class SelfAware extends Service {
                                             if (DEBUG) {
                                                 MyLog.i(CLS_NAME, "NATIVE: exists");
                                             }
+                                            conditions.onNativeStarted();
                                             recogNative.startListening(conditions.getNativeIntent());
                                         }
                                     } else {
@@ -1116,17 +1161,51 @@ public class SelfAware extends Service {
                                             }
 
                                             conditions.setFetchingCountdown();
-                                            recogMic = conditions.getMicRecognition(recognitionListener,
-                                                    AudioParameters.getDefaultBeyondVerbal(), true,
-                                                    BeyondVerbal.MINIMUM_AUDIO_TIME, false, false);
 
-                                            AsyncTask.execute(new Runnable() {
-                                                @Override
-                                                public void run() {
-                                                    new BeyondVerbal(getApplicationContext(),
-                                                            recogMic, conditions.getSupportedLanguage(false)).stream();
+                                            final String profileId = conditions.getIdentityProfile();
+
+                                            if (UtilsString.notNaked(profileId)) {
+                                                if (DEBUG) {
+                                                    MyLog.i(CLS_NAME, "MIC: CONDITION_EMOTION: sharing with identify");
                                                 }
-                                            });
+
+                                                // One capture at the identity rate, resampled for the emotion analysis
+                                                recogMic = conditions.getMicRecognition(recognitionListener,
+                                                        AudioParameters.getDefaultMicrosoft(), true,
+                                                        BeyondVerbal.MINIMUM_AUDIO_TIME, false, true);
+
+                                                final CaptureSession captureSession = new CaptureSession(recogMic);
+
+                                                AsyncTask.execute(new Runnable() {
+                                                    @Override
+                                                    public void run() {
+
+                                                        final SpeakerIdentification identification =
+                                                                new SpeakerIdentification(captureSession.getMic(),
+                                                                        conditions.getSupportedLanguage(false),
+                                                                        MicrosoftConfiguration.OCP_APIM_KEY_1,
+                                                                        profileId, true);
+
+                                                        new BeyondVerbal(getApplicationContext(),
+                                                                captureSession.getMic(),
+                                                                conditions.getSupportedLanguage(false)).stream();
+
+                                                        identification.record();
+                                                    }
+                                                });
+                                            } else {
+                                                recogMic = conditions.getMicRecognition(recognitionListener,
+                                                        AudioParameters.getDefaultBeyondVerbal(), true,
+                                                        BeyondVerbal.MINIMUM_AUDIO_TIME, false, false);
+
+                                                AsyncTask.execute(new Runnable() {
+                                                    @Override
+                                                    public void run() {
+                                                        new BeyondVerbal(getApplicationContext(),
+                                                                recogMic, conditions.getSupportedLanguage(false)).stream();
+                                                    }
+                                                });
+                                            }
                                             break;
                                         case Condition.CONDITION_IDENTITY:
                                             if (DEBUG) {
@@ -1197,6 +1276,32 @@ public class SelfAware extends Service {
                             conditions.manageCallback(CallbackType.CB_ERROR_SAIY, null);
                             break;
                     }
+                } else if (conditions.isOfflineRecognition()) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "No network connection: OFFLINE");
+                    }
+
+                    switch (Recognition.getState()) {
+
+                        case IDLE:
+                            if (DEBUG) {
+                                MyLog.i(CLS_NAME, "OFFLINE: IDLE");
+                            }
+
+                            recognitionListener.resetBugVariables();
+                            startOfflineRecognition();
+                            break;
+                        case PROCESSING:
+                        case LISTENING:
+                            if (DEBUG) {
+                                MyLog.i(CLS_NAME, "OFFLINE: LISTENING");
+                            }
+
+                            if (recogOffline != null) {
+                                recogOffline.stopListening();
+                            }
+                            break;
+                    }
                 } else {
                     if (DEBUG) {
                         MyLog.w(CLS_NAME, "No network connection");
@@ -1470,10 +1575,21 @@ public class SelfAware extends Service {
                         MyLog.i(CLS_NAME, "hotwordListener: onHotwordDetected: WAKEUP_SAIY");
                     }
 
+                    conditions.preConnectRecognition(PreConnect.TRIGGER_HOTWORD);
+
+                    final boolean preRoll = conditions.supportsPreRoll() && recogSphinx != null
+                            && recogSphinx.holdPreRoll();
+
                     stopListening(false);
                     conditions.acquireDisplayWakeLock();
                     final LocalRequest lr = new LocalRequest(getApplicationContext());
-                    lr.prepareIntro();
+
+                    if (preRoll) {
+                        lr.prepareDefault(LocalRequest.ACTION_SPEAK_LISTEN, SaiyRequestParams.SILENCE);
+                    } else {
+                        lr.prepareIntro();
+                    }
+
                     lr.setSecure(conditions.isSecure());
                     lr.execute();
 
@@ -1586,6 +1702,9 @@ public class SelfAware extends Service {
 
             conditions.onVRError();
 
+            recogHedge = null;
+            recogOffline = null;
+
             switch (conditions.getDefaultRecognition()) {
 
                 case GOOGLE_CLOUD:
@@ -1764,6 +1883,12 @@ public class SelfAware extends Service {
 
             conditions.onVRComplete();
 
+            recogHedge = null;
+
+            // The offline commands are resolved locally, as the language model cannot be reached
+            final boolean offline = recogOffline != null;
+            recogOffline = null;
+
             switch (conditions.getDefaultRecognition()) {
 
                 case GOOGLE_CLOUD:
@@ -1782,7 +1907,7 @@ public class SelfAware extends Service {
             final boolean servingRemote = conditions.servingRemote();
             conditions.putResults(results);
 
-            switch (conditions.getDefaultLanguageModel(servingRemote)) {
+            switch (offline ? SaiyDefaults.LanguageModel.LOCAL : conditions.getDefaultLanguageModel(servingRemote)) {
 
                 case API_AI:
 
@@ -2033,6 +2158,40 @@ public class SelfAware extends Service {
         }
     };
 
+    /**
+     * Race the default recognition against the provider chosen by the user, over one capture
+     */
+    private void startHedgedRecognition() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "startHedgedRecognition");
+        }
+
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                recogHedge = conditions.getHedgedRecognition(recognitionListener);
+                recogHedge.startListening();
+            }
+        });
+    }
+
+    /**
+     * Build the offline command grammar and start the recognition, off the main thread
+     */
+    private void startOfflineRecognition() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "startOfflineRecognition");
+        }
+
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                recogOffline = conditions.getOfflineRecognition(recognitionListener);
+                recogOffline.startListening();
+            }
+        });
+    }
+
     @WorkerThread
     private boolean waitGoogleCloud() {
         if (DEBUG) {
@@ -2357,6 +2516,10 @@ public class SelfAware extends Service {
         releasePartialHelper();
         motionRecognition.destroy();
         conditions.releaseWakeLock();
+        cache.release();
+        SpeechCacheUsage.flush(getApplicationContext());
+        GoogleCloudChannel.shutdown();
+        BluemixSession.shutdown();
 
         if (telephonyManager != null) {
             telephonyManager.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
@@ -2376,6 +2539,8 @@ public class SelfAware extends Service {
      * memory, but they are already released after a period of {@link SPH#getInactivityTimeout(Context)}.
      * Changing the behaviour here for the sake of lower-end or poorly performing devices (for a myriad of
      * unidentifiable reasons) is not currently the way forward.
+     * <p>
+     * Pending speech cache usage is cheap to write, so is flushed here, in case the process is killed.
      *
      * @param level a hint to the amount of trimming the application may like to perform.
      */
@@ -2385,10 +2550,13 @@ public class SelfAware extends Service {
         if (DEBUG) {
             SelfAwareVerbose.memoryVerbose(level);
         }
+
+        SpeechCacheUsage.flush(getApplicationContext());
     }
 
     /**
-     * See above.
+     * See above. The paused hotword decoder is the exception, as it is only kept to speed up restarting
+     * the detection, so it is released.
      */
     @Override
     public void onLowMemory() {
@@ -2396,6 +2564,8 @@ public class SelfAware extends Service {
         if (DEBUG) {
             MyLog.w(CLS_NAME, "onLowMemory");
         }
+
+        RecognitionSphinx.release();
     }
 
     @Override
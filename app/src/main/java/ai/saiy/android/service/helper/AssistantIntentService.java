@@ -75,6 +75,8 @@ public class AssistantIntentService extends IntentService {
             examineIntent(intent);
         }
 
+        PreConnect.warm(getApplicationContext(), PreConnect.TRIGGER_ASSIST);
+
         final Bundle actionBundle = new Bundle();
         actionBundle.putInt(LocalRequest.EXTRA_ACTION, LocalRequest.ACTION_SPEAK_LISTEN);
 
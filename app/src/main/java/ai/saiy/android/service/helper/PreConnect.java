@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.service.helper;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.google.auth.oauth2.AccessToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ai.saiy.android.api.SaiyDefaults;
+import ai.saiy.android.api.language.vr.VRLanguageIBM;
+import ai.saiy.android.cognitive.emotion.provider.beyondverbal.containers.BVCredentials;
+import ai.saiy.android.command.translate.provider.bing.BingCredentials;
+import ai.saiy.android.configuration.BeyondVerbalConfiguration;
+import ai.saiy.android.configuration.BluemixConfiguration;
+import ai.saiy.android.configuration.GoogleConfiguration;
+import ai.saiy.android.configuration.WitConfiguration;
+import ai.saiy.android.recognition.provider.bluemix.RecognitionBluemix;
+import ai.saiy.android.recognition.provider.google.cloud.GoogleCloudChannel;
+import ai.saiy.android.utils.Conditions.Network;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.SPH;
+import ai.saiy.android.utils.UtilsHttp;
+import ai.saiy.android.utils.UtilsString;
+
+/**
+ * Opens the connections and fetches the tokens the default recognition and NLU providers will need,
+ * as soon as a recognition becomes likely: the hotword is detected, the notification is tapped or
+ * the assist gesture starts. By the time the introduction has been spoken and the audio begins to
+ * flow, the DNS lookup and TLS handshake are done, and the connection is waiting in the pool.
+ * <p>
+ * Requests for the same providers within {@link #MIN_INTERVAL} of each other are ignored, as the
+ * connections will still be warm.
+ */
+public final class PreConnect {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = PreConnect.class.getSimpleName();
+
+    public static final String TRIGGER_HOTWORD = "hotword";
+    public static final String TRIGGER_NOTIFICATION = "notification";
+    public static final String TRIGGER_ASSIST = "assist";
+    public static final String TRIGGER_UI = "ui";
+
+    private static final String GOOGLE_CHROMIUM_URL = "https://www.google.com/";
+    private static final String WIT_URL = "https://api.wit.ai/";
+    private static final String API_AI_URL = "https://api.api.ai/";
+    private static final String BEYOND_VERBAL_URL = "https://apiv4.beyondverbal.com/";
+    private static final String HEAD = "HEAD";
+
+    private static final long MIN_INTERVAL = 30000L;
+    private static final int TIMEOUT = 5000;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Object lock = new Object();
+
+    private static long then;
+    private static String last;
+
+    /**
+     * Prevent instantiation
+     */
+    private PreConnect() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Warm the connections for the providers in the user's defaults
+     *
+     * @param ctx     the application context
+     * @param trigger the event that made a recognition likely, for logging
+     */
+    public static void warm(@NonNull final Context ctx, @NonNull final String trigger) {
+        warm(ctx, trigger, SPH.getDefaultRecognition(ctx), SPH.getDefaultLanguageModel(ctx),
+                GoogleConfiguration.ACCESS_TOKEN, null);
+    }
+
+    /**
+     * Warm the connections for the given providers, which may be those requested by a remote caller
+     *
+     * @param ctx           the application context
+     * @param trigger       the event that made a recognition likely, for logging
+     * @param vr            the {@link SaiyDefaults.VR} recognition provider
+     * @param languageModel the {@link SaiyDefaults.LanguageModel} NLU provider
+     * @param googleToken   the Google Cloud {@link AccessToken}
+     * @param remoteUri     the remote recognition server, or null if there is none
+     */
+    public static void warm(@NonNull final Context ctx, @NonNull final String trigger,
+                            @NonNull final SaiyDefaults.VR vr,
+                            @NonNull final SaiyDefaults.LanguageModel languageModel,
+                            @NonNull final AccessToken googleToken, @Nullable final String remoteUri) {
+
+        final String key = vr.name() + languageModel.name() + remoteUri;
+
+        synchronized (lock) {
+            if (key.equals(last) && System.currentTimeMillis() < (then + MIN_INTERVAL)) {
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "warm: " + trigger + ": recently warmed");
+                }
+                return;
+            }
+
+            then = System.currentTimeMillis();
+            last = key;
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "warm: " + trigger + ": " + vr.name() + " ~ " + languageModel.name());
+        }
+
+        final Context context = ctx.getApplicationContext();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                if (!Network.isNetworkAvailable(context)) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "warm: no network");
+                    }
+                    return;
+                }
+
+                final long start = System.nanoTime();
+
+                warmRecognition(context, vr, googleToken, remoteUri);
+                warmLanguageModel(languageModel);
+                warmTokens(context);
+
+                if (DEBUG) {
+                    MyLog.getElapsed(CLS_NAME + " warm", start);
+                }
+            }
+        });
+    }
+
+    @WorkerThread
+    private static void warmRecognition(@NonNull final Context ctx, @NonNull final SaiyDefaults.VR vr,
+                                        @NonNull final AccessToken googleToken,
+                                        @Nullable final String remoteUri) {
+        switch (vr) {
+
+            case GOOGLE_CLOUD:
+                GoogleCloudChannel.preConnect(ctx, googleToken);
+                break;
+            case GOOGLE_CHROMIUM:
+                warmHost(GOOGLE_CHROMIUM_URL);
+                break;
+            case WIT:
+                warmHost(WitConfiguration.WIT_SPEECH_URL);
+                break;
+            case IBM:
+                // Opened in the session the recognition acquires its WebSocket from
+                RecognitionBluemix.preOpen(BluemixConfiguration.BLUEMIX_USERNAME,
+                        BluemixConfiguration.BLUEMIX_PASSWORD, VRLanguageIBM.getLanguage(SPH.getVRLocale(ctx)));
+                break;
+            case REMOTE:
+                if (UtilsString.notNaked(remoteUri)) {
+                    warmHost(remoteUri);
+                }
+                break;
+            case MICROSOFT:
+            case NUANCE:
+            case NATIVE:
+            case MIC:
+            default:
+                // Connections are managed by the provider's own SDK or service
+                break;
+        }
+    }
+
+    @WorkerThread
+    private static void warmLanguageModel(@NonNull final SaiyDefaults.LanguageModel languageModel) {
+        switch (languageModel) {
+
+            case WIT:
+                warmHost(WIT_URL);
+                break;
+            case API_AI:
+                warmHost(API_AI_URL);
+                break;
+            case MICROSOFT:
+            case LOCAL:
+            case NUANCE:
+            case IBM:
+            case REMOTE:
+            default:
+                // Handled locally, with the recognition or by the provider's own SDK
+                break;
+        }
+    }
+
+    /**
+     * Refresh any expired tokens for the commands that may follow the recognition
+     */
+    @WorkerThread
+    private static void warmTokens(@NonNull final Context ctx) {
+
+        BingCredentials.refreshTokenIfRequired(ctx);
+
+        if (SPH.getEmotionPermission(ctx)) {
+            BVCredentials.refreshTokenIfRequired(ctx, BeyondVerbalConfiguration.API_KEY);
+            warmHost(BEYOND_VERBAL_URL);
+        }
+    }
+
+    /**
+     * Make a HEAD request to the host, so the connection is resolved, handshaken and returned to the
+     * pool for the request that follows. The response itself is of no interest.
+     *
+     * @param url the url of the host
+     */
+    @WorkerThread
+    private static void warmHost(@NonNull final String url) {
+
+        HttpURLConnection connection = null;
+
+        try {
+
+            final long start = System.nanoTime();
+
+            connection = (HttpURLConnection) UtilsHttp.open(new URL(url));
+            connection.setRequestMethod(HEAD);
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setUseCaches(false);
+
+            final int responseCode = connection.getResponseCode();
+
+            // Drain the response, so the connection can be reused
+            final InputStream inputStream = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+            if (inputStream != null) {
+                while (inputStream.read() != -1) {
+                }
+                inputStream.close();
+            }
+
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "warmHost: " + url + ": " + responseCode);
+                MyLog.getElapsed(CLS_NAME + " warmHost", start);
+            }
+
+        } catch (final IOException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "warmHost: " + url + ": IOException");
+                e.printStackTrace();
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        } catch (final Exception e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "warmHost: " + url + ": Exception");
+                e.printStackTrace();
+            }
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+}
@@ -19,22 +19,38 @@ package ai.saiy.android.service.helper;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.os.AsyncTask;
+import android.media.AudioFormat;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Process;
 import android.speech.tts.TextToSpeech;
 import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Locale;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.saiy.android.audio.SpeechCodec;
 import ai.saiy.android.cache.speech.SpeechCachePrepare;
+import ai.saiy.android.cache.speech.SpeechCachePrewarm;
 import ai.saiy.android.database.DBSpeech;
+import ai.saiy.android.localisation.SupportedLanguage;
 import ai.saiy.android.service.SelfAware;
 import ai.saiy.android.tts.SaiyProgressListener;
+import ai.saiy.android.tts.SaiyTextToSpeech;
 import ai.saiy.android.tts.helper.SaiyVoice;
 import ai.saiy.android.utils.MyLog;
 import ai.saiy.android.utils.SPH;
@@ -45,6 +61,12 @@ import ai.saiy.android.utils.UtilsString;
  * Utility class to manage the caching of data associated with the
  * {@link SelfAware} Service.
  * <p/>
+ * Cache jobs are queued to a single background worker, which keeps one {@link TextToSpeech} object
+ * bound between utterances, rather than initialising a new engine for each. From
+ * {@link Build.VERSION_CODES#N} the pcm is captured from {@link #onAudioAvailable(String, byte[])}
+ * and encoded as it arrives, with the engine writing to a null sink, so no temporary file is used.
+ * On earlier versions, a single scratch file is reused and read back.
+ * <p/>
  * Created by benrandall76@gmail.com on 28/04/2016.
  */
 public class SelfAwareCache extends SaiyProgressListener {
@@ -53,13 +75,34 @@ public class SelfAwareCache extends SaiyProgressListener {
     private final String CLS_NAME = SelfAwareCache.class.getSimpleName();
 
     public static final int MAX_UTTERANCE_CHARS = 150;
-    private static final long DBS_MAINTENANCE_INCREMENT = 40L;
+
+    private static final int MIN_SEGMENT_SIGHTINGS = 2;
+    private static final int MAX_SEGMENT_SIGHTINGS = 256;
+
+    private static final long INIT_TIMEOUT = 10000L;
+    private static final long SYNTHESIS_TIMEOUT = 30000L;
+    private static final long IDLE_TIMEOUT = 300000L;
+
+    private static final String UTTERANCE_PREFIX = "saiy_cache_";
+    private static final File NULL_SINK = new File("/dev/null");
 
     private final Context mContext;
+    private final ScheduledThreadPoolExecutor executor;
+    private final SpeechCodec.Encoder encoder = new SpeechCodec.Encoder();
+    private final LruCache<String, Integer> segmentSightings = new LruCache<>(MAX_SEGMENT_SIGHTINGS);
 
     private volatile TextToSpeech ttsCache;
-    private volatile SpeechCachePrepare scp;
-    private volatile File tempFile;
+    private volatile String boundEngine;
+    private volatile File scratchFile;
+    private volatile ScheduledFuture<?> idleRelease;
+
+    private volatile String currentId;
+    private volatile CountDownLatch synthesisLatch;
+    private volatile boolean capturing;
+    private final AtomicBoolean success = new AtomicBoolean();
+    private final AtomicBoolean prewarming = new AtomicBoolean();
+    private final AtomicInteger pendingJobs = new AtomicInteger();
+    private long sequence;
 
     /**
      * Constructor
@@ -68,6 +111,12 @@ public class SelfAwareCache extends SaiyProgressListener {
      */
     public SelfAwareCache(@NonNull final Context mContext) {
         this.mContext = mContext;
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(runnable, CLS_NAME);
+            }
+        });
     }
 
     /**
@@ -84,103 +133,381 @@ public class SelfAwareCache extends SaiyProgressListener {
                                @NonNull final String utterance, @NonNull final String initEngine,
                                @NonNull final SaiyVoice voice) {
 
-        AsyncTask.execute(new Runnable() {
+        if (UtilsString.notNaked(initEngine)) {
+            if (voice.isNetworkConnectionRequired()) {
+                if (params.shouldNetwork()) {
+
+                    final SpeechCachePrepare scp = new SpeechCachePrepare(mContext);
+                    scp.setVoice(voice);
+                    scp.setEngine(initEngine);
+                    scp.setUtterance(utterance);
+                    scp.setLocale(ttsLocale.toString());
+                    enqueue(scp, new Bundle(params.getBundle()));
+
+                } else {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "shouldCache: network not requested");
+                    }
+                }
+            } else {
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "shouldCache: not network voice");
+                }
+            }
+        } else {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "shouldCache: initEngine naked");
+            }
+        }
+    }
+
+    /**
+     * Check if the current synthesis should be cached. An utterance too long to be cached whole is
+     * cached as its separate segments, so that those repeated across responses can be streamed by
+     * {@link SaiyTextToSpeech} without the remainder being synthesised again. As most segments of
+     * a long response are never heard again, a segment is only cached once it has been spoken
+     * {@link #MIN_SEGMENT_SIGHTINGS} times.
+     *
+     * @param params     the {@link SelfAwareParameters}
+     * @param ttsLocale  the {@link TextToSpeech} {@link Locale}
+     * @param utterance  the utterance
+     * @param initEngine the initialised {@link TextToSpeech} engine
+     * @param voice      the {@link SaiyVoice}
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    protected void shouldCacheSegments(@NonNull final SelfAwareParameters params, @NonNull final Locale ttsLocale,
+                                       @NonNull final String utterance, @NonNull final String initEngine,
+                                       @NonNull final SaiyVoice voice) {
+
+        if (utterance.length() < MAX_UTTERANCE_CHARS) {
+            shouldCache(params, ttsLocale, utterance, initEngine, voice);
+        } else {
+
+            final ArrayList<String> segments = SelfAwareHelper.splitUtteranceSegments(utterance, MAX_UTTERANCE_CHARS);
+
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "shouldCacheSegments: segments: " + segments.size());
+            }
+
+            for (final String segment : segments) {
+                if (isRecurring(initEngine, voice, segment)) {
+                    shouldCache(params, ttsLocale, segment, initEngine, voice);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count a sighting of a segment, remembering the most recent {@link #MAX_SEGMENT_SIGHTINGS}.
+     *
+     * @param initEngine the initialised {@link TextToSpeech} engine
+     * @param voice      the {@link SaiyVoice}
+     * @param segment    the segment
+     * @return true if the segment has now been spoken {@link #MIN_SEGMENT_SIGHTINGS} times or more
+     */
+    private boolean isRecurring(@NonNull final String initEngine, @NonNull final SaiyVoice voice,
+                                @NonNull final String segment) {
+
+        final String key = initEngine + voice.getName() + segment.trim().replaceAll("[^a-zA-Z0-9]", "");
+
+        synchronized (segmentSightings) {
+            final Integer sightings = segmentSightings.get(key);
+            final int count = sightings == null ? 1 : sightings + 1;
+            segmentSightings.put(key, count);
+
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "isRecurring: sightings: " + count);
+            }
+
+            return count >= MIN_SEGMENT_SIGHTINGS;
+        }
+    }
+
+    /**
+     * Queue a populated {@link SpeechCachePrepare} for synthesis on the background worker.
+     *
+     * @param scp    the populated {@link SpeechCachePrepare}
+     * @param bundle the synthesis parameters
+     */
+    public void enqueue(@NonNull final SpeechCachePrepare scp, @NonNull final Bundle bundle) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "enqueue: queue size: " + executor.getQueue().size());
+        }
+
+        pendingJobs.incrementAndGet();
+
+        executor.execute(new Runnable() {
             @Override
             public void run() {
                 Process.setThreadPriority(Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                try {
+                    doAudioCache(scp, bundle);
+                } finally {
+                    pendingJobs.decrementAndGet();
+                }
+            }
+        });
+    }
 
-                if (UtilsString.notNaked(initEngine)) {
-                    if (voice.isNetworkConnectionRequired()) {
-                        if (params.shouldNetwork()) {
-
-                            final DBSpeech dbSpeech = new DBSpeech(mContext);
-                            if (!dbSpeech.entryExists(initEngine, voice.getName(), utterance)) {
-
-                                if (DEBUG) {
-                                    MyLog.i(CLS_NAME, "shouldCache: proceeding");
-                                }
-
-                                final SpeechCachePrepare scp1 = new SpeechCachePrepare(mContext);
-                                scp1.setVoice(voice);
-                                scp1.setEngine(initEngine);
-                                scp1.setUtterance(utterance);
-                                scp1.setLocale(ttsLocale.toString());
-                                SelfAwareCache.this.doAudioCache(scp1, params);
-
-
-                            } else {
-                                if (DEBUG) {
-                                    MyLog.i(CLS_NAME, "shouldCache: entry already exists");
-                                }
-                            }
-                        } else {
-                            if (DEBUG) {
-                                MyLog.i(CLS_NAME, "shouldCache: network not requested");
-                            }
-                        }
-                    } else {
-                        if (DEBUG) {
-                            MyLog.i(CLS_NAME, "shouldCache: not network voice");
-                        }
-                    }
+    /**
+     * Begin pre-warming the cache with the standard responses for the current voice, if the
+     * conditions of {@link SpeechCachePrewarm} are met. Responses are synthesised one at a time,
+     * {@link SpeechCachePrewarm#STEP_DELAY} apart, and always yield to utterances that have
+     * actually been spoken.
+     *
+     * @param sl         the {@link SupportedLanguage}
+     * @param ttsLocale  the {@link TextToSpeech} {@link Locale}
+     * @param initEngine the initialised {@link TextToSpeech} engine
+     * @param voice      the {@link SaiyVoice}
+     * @param params     the {@link SelfAwareParameters}
+     */
+    protected void prewarm(@NonNull final SupportedLanguage sl, @NonNull final Locale ttsLocale,
+                           @NonNull final String initEngine, @NonNull final SaiyVoice voice,
+                           @NonNull final SelfAwareParameters params) {
+
+        if (!voice.isNetworkConnectionRequired() || !prewarming.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Bundle bundle = new Bundle(params.getBundle());
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+
+                if (SpeechCachePrewarm.shouldRun(mContext)) {
+                    SPH.setSpeechCachePrewarm(mContext, System.currentTimeMillis());
+                    prewarmNext(SpeechCachePrewarm.getUncached(mContext, sl, initEngine, voice.getName()),
+                            ttsLocale, initEngine, voice, bundle);
                 } else {
-                    if (DEBUG) {
-                        MyLog.i(CLS_NAME, "shouldCache: initEngine naked");
-                    }
+                    prewarming.set(false);
                 }
             }
         });
     }
 
     /**
-     * Synthesise the audio to a temporary file in the application's internal storage cache, using
-     * a temporary and short-lived {@link TextToSpeech} object. The result of this will report
-     * to {@link SaiyProgressListener#onDone(String)} from where the raw pcm will be stored in {@link DBSpeech}
+     * Schedule the next pre-warming synthesis
+     */
+    private void prewarmNext(@NonNull final ArrayDeque<String> remaining, @NonNull final Locale ttsLocale,
+                             @NonNull final String initEngine, @NonNull final SaiyVoice voice,
+                             @NonNull final Bundle bundle) {
+
+        if (remaining.isEmpty()) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "prewarm: complete");
+            }
+            prewarming.set(false);
+            return;
+        }
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+
+                if (pendingJobs.get() > 0) {
+                    prewarmNext(remaining, ttsLocale, initEngine, voice, bundle);
+                    return;
+                }
+
+                if (!SpeechCachePrewarm.canContinue(mContext)) {
+                    prewarming.set(false);
+                    return;
+                }
+
+                final SpeechCachePrepare scp = new SpeechCachePrepare(mContext);
+                scp.setVoice(voice);
+                scp.setEngine(initEngine);
+                scp.setUtterance(remaining.poll());
+                scp.setLocale(ttsLocale.toString());
+                doAudioCache(scp, bundle);
+
+                prewarmNext(remaining, ttsLocale, initEngine, voice, bundle);
+            }
+        }, SpeechCachePrewarm.STEP_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Synthesise the audio using the long-lived {@link TextToSpeech} object and wait for the
+     * result, before passing it to {@link DBSpeech} via the {@link SpeechCachePrepare}
      *
      * @param scp    the populated {@link SpeechCachePrepare}
-     * @param params the {@link SelfAwareParameters}
+     * @param bundle the synthesis parameters
      */
     @SuppressWarnings("deprecation")
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-    private void doAudioCache(@NonNull final SpeechCachePrepare scp, @NonNull final SelfAwareParameters params) {
-        this.scp = scp;
+    @WorkerThread
+    private void doAudioCache(@NonNull final SpeechCachePrepare scp, @NonNull final Bundle bundle) {
 
-        AsyncTask.execute(new Runnable() {
-            @Override
-            public void run() {
-                Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        cancelIdleRelease();
+
+        if (new DBSpeech(mContext).entryExists(scp.getEngine(), scp.getVoice().getName(), scp.getUtterance())) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "doAudioCache: entry already exists");
+            }
+            scheduleIdleRelease();
+            return;
+        }
+
+        if (!bindEngine(scp.getEngine())) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "doAudioCache: bindEngine failed");
+            }
+            return;
+        }
+
+        final File sink = getSink();
+
+        if (sink == null) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "doAudioCache: sink null");
+            }
+            scheduleIdleRelease();
+            return;
+        }
+
+        final long then = System.nanoTime();
+
+        capturing = false;
+        success.set(false);
+        synthesisLatch = new CountDownLatch(1);
+        currentId = UTTERANCE_PREFIX + sequence++;
 
-                ttsCache = new TextToSpeech(mContext, new TextToSpeech.OnInitListener() {
-                    @Override
-                    public void onInit(final int status) {
-                        switch (status) {
-                            case TextToSpeech.SUCCESS:
+        ttsCache.setVoice(scp.getVoice());
 
-                                ttsCache.setVoice(scp.getVoice());
-                                ttsCache.setOnUtteranceProgressListener(SelfAwareCache.this);
+        if (ttsCache.synthesizeToFile(scp.getUtterance(), bundle, sink, currentId) == TextToSpeech.SUCCESS) {
 
-                                tempFile = UtilsFile.getTempAudioFile(mContext);
+            try {
+                if (!synthesisLatch.await(SYNTHESIS_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "doAudioCache: timeout");
+                    }
+                    ttsCache.stop();
+                }
+            } catch (final InterruptedException e) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "doAudioCache: InterruptedException");
+                    e.printStackTrace();
+                }
+            }
 
-                                if (DEBUG) {
-                                    MyLog.i(CLS_NAME, "doAudioCache: " + tempFile.getAbsolutePath());
-                                }
+            if (success.get()) {
 
-                                ttsCache.synthesizeToFile(scp.getUtterance(), params.getBundle(), tempFile, params.getUtteranceId());
+                if (capturing) {
+                    final byte[] compressedAudio;
+                    synchronized (encoder) {
+                        compressedAudio = encoder.getSampleCount() > 0 ? encoder.finish() : null;
+                    }
 
-                                break;
-                            case TextToSpeech.ERROR:
-                                break;
+                    if (compressedAudio != null) {
+                        scp.setCompressedAudio(compressedAudio);
+                    }
+                } else if (sink != NULL_SINK) {
+                    try {
+                        scp.setUncompressedAudio(FileUtils.readFileToByteArray(sink));
+                    } catch (final IOException e) {
+                        if (DEBUG) {
+                            MyLog.w(CLS_NAME, "doAudioCache: IOException");
+                            e.printStackTrace();
                         }
                     }
-                }, scp.getEngine());
+                } else {
+                    if (DEBUG) {
+                        MyLog.w(CLS_NAME, "doAudioCache: nothing captured");
+                    }
+                }
             }
-        });
+        } else {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "doAudioCache: synthesizeToFile failed");
+            }
+        }
+
+        currentId = null;
+
+        if (DEBUG) {
+            MyLog.getElapsed(CLS_NAME, "doAudioCache", then);
+        }
+
+        scheduleIdleRelease();
+    }
+
+    /**
+     * Bind the {@link TextToSpeech} engine, if it is not already bound, waiting for initialisation.
+     *
+     * @param engine the package name of the engine
+     * @return true if the engine is ready
+     */
+    @WorkerThread
+    private boolean bindEngine(@NonNull final String engine) {
+
+        if (ttsCache != null && engine.equals(boundEngine)) {
+            return true;
+        }
+
+        releaseEngine();
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "bindEngine: " + engine);
+        }
+
+        final CountDownLatch initLatch = new CountDownLatch(1);
+        final AtomicBoolean initialised = new AtomicBoolean();
+
+        ttsCache = new TextToSpeech(mContext, new TextToSpeech.OnInitListener() {
+            @Override
+            public void onInit(final int status) {
+                initialised.set(status == TextToSpeech.SUCCESS);
+                initLatch.countDown();
+            }
+        }, engine);
+
+        try {
+            initLatch.await(INIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "bindEngine: InterruptedException");
+                e.printStackTrace();
+            }
+        }
+
+        if (initialised.get()) {
+            ttsCache.setOnUtteranceProgressListener(this);
+            boundEngine = engine;
+            return true;
+        }
+
+        releaseEngine();
+        return false;
+    }
+
+    /**
+     * Get the file the engine should synthesise to. If the audio can be captured in memory, this
+     * is a null sink.
+     *
+     * @return the file or null if one could not be created
+     */
+    private File getSink() {
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && NULL_SINK.canWrite()) {
+            return NULL_SINK;
+        }
+
+        if (scratchFile == null) {
+            scratchFile = UtilsFile.getTempAudioFile(mContext);
+        }
+
+        return scratchFile;
     }
 
     @Override
     public void onAudioAvailable(final String utteranceId, final byte[] audio) {
-        if (DEBUG) {
-            MyLog.i(CLS_NAME, "onAudioAvailable");
+        if (capturing && utteranceId != null && utteranceId.equals(currentId)) {
+            synchronized (encoder) {
+                encoder.write(audio, 0, audio.length);
+            }
         }
     }
 
@@ -188,7 +515,14 @@ public class SelfAwareCache extends SaiyProgressListener {
     public void onBeginSynthesis(final String utteranceId, final int sampleRateInHz, final int audioFormat,
                                  final int channelCount) {
         if (DEBUG) {
-            MyLog.i(CLS_NAME, "onBeginSynthesis");
+            MyLog.i(CLS_NAME, "onBeginSynthesis: " + sampleRateInHz + " " + audioFormat + " " + channelCount);
+        }
+
+        if (utteranceId != null && utteranceId.equals(currentId)) {
+            synchronized (encoder) {
+                encoder.reset(sampleRateInHz);
+            }
+            capturing = audioFormat == AudioFormat.ENCODING_PCM_16BIT && channelCount == 1;
         }
     }
 
@@ -205,30 +539,10 @@ public class SelfAwareCache extends SaiyProgressListener {
             MyLog.i(CLS_NAME, "onDone");
         }
 
-        try {
-            scp.setUncompressedAudio(FileUtils.readFileToByteArray(tempFile));
-        } catch (final IOException e) {
-            if (DEBUG) {
-                MyLog.w(CLS_NAME, "onDone: IOException");
-                e.printStackTrace();
-            }
-        } finally {
-
-            if (tempFile != null) {
-                final boolean success = tempFile.delete();
-
-                if (DEBUG) {
-                    MyLog.i(CLS_NAME, "onDone: tempFile deleted: " + success);
-                }
-            } else {
-                if (DEBUG) {
-                    MyLog.w(CLS_NAME, "onDone: tempFile null");
-                }
-            }
+        if (utteranceId != null && utteranceId.equals(currentId)) {
+            success.set(true);
+            synthesisLatch.countDown();
         }
-
-        shutdownTTS();
-        speechMaintenance();
     }
 
     @Override
@@ -237,56 +551,80 @@ public class SelfAwareCache extends SaiyProgressListener {
             MyLog.w(CLS_NAME, "onError");
         }
 
-        shutdownTTS();
+        if (utteranceId != null && utteranceId.equals(currentId)) {
+            synthesisLatch.countDown();
+        }
     }
 
-    /**
-     * Check the {@link DBSpeech} size to see if we need to reduce it.
-     */
-
-    private void speechMaintenance() {
+    @Override
+    public void onStop(final String utteranceId, final boolean interrupted) {
         if (DEBUG) {
-            MyLog.i(CLS_NAME, "speechMaintenance");
+            MyLog.w(CLS_NAME, "onStop");
         }
 
-        if (SPH.getUsedIncrement(mContext) % DBS_MAINTENANCE_INCREMENT == 0) {
-            new Thread() {
-                public void run() {
-                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        if (utteranceId != null && utteranceId.equals(currentId)) {
+            synthesisLatch.countDown();
+        }
+    }
 
-                    final DBSpeech dbSpeech = new DBSpeech(mContext);
-                    if (dbSpeech.shouldRunMaintenance(mContext)) {
-                        if (DEBUG) {
-                            MyLog.i(CLS_NAME, "shouldRunMaintenance: true");
-                        }
-                        dbSpeech.runMaintenance(mContext);
-                    } else {
-                        if (DEBUG) {
-                            MyLog.i(CLS_NAME, "shouldRunMaintenance: false");
-                        }
-                    }
+    /**
+     * Release the engine once no further jobs have arrived for {@link #IDLE_TIMEOUT}
+     */
+    private void scheduleIdleRelease() {
+        idleRelease = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "idleRelease");
                 }
-            }.start();
-        } else {
-            if (DEBUG) {
-                MyLog.i(CLS_NAME, "shouldRunMaintenance: false: " + SPH.getUsedIncrement(mContext));
+                releaseEngine();
             }
+        }, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelIdleRelease() {
+        if (idleRelease != null) {
+            idleRelease.cancel(false);
+            idleRelease = null;
+        }
+    }
+
+    /**
+     * Release the engine and worker. Called when the {@link SelfAware} service is destroyed.
+     */
+    public void release() {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "release");
         }
+
+        executor.shutdownNow();
+        releaseEngine();
     }
 
     /**
-     * Shutdown the temporary {@link TextToSpeech} object
+     * Shutdown the long-lived {@link TextToSpeech} object and delete any scratch file
      */
-    private void shutdownTTS() {
+    private void releaseEngine() {
         if (ttsCache != null) {
             try {
                 ttsCache.shutdown();
             } catch (final Exception e) {
                 if (DEBUG) {
-                    MyLog.w(CLS_NAME, "shutdownTTS: Exception");
+                    MyLog.w(CLS_NAME, "releaseEngine: Exception");
                     e.printStackTrace();
                 }
             }
         }
+
+        ttsCache = null;
+        boundEngine = null;
+
+        if (scratchFile != null) {
+            final boolean deleted = scratchFile.delete();
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "releaseEngine: scratchFile deleted: " + deleted);
+            }
+            scratchFile = null;
+        }
     }
 }
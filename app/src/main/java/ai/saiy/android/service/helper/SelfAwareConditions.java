@@ -70,6 +70,8 @@ import ai.saiy.android.api.language.vr.VRLanguageNuance;
 import ai.saiy.android.api.language.vr.VRLanguageWit;
 import ai.saiy.android.api.request.SaiyRequestParams;
 import ai.saiy.android.audio.AudioParameters;
+import ai.saiy.android.audio.CaptureSession;
+import ai.saiy.android.audio.PreRoll;
 import ai.saiy.android.audio.RecognitionMic;
 import ai.saiy.android.audio.SaiySoundPool;
 import ai.saiy.android.command.helper.CC;
@@ -88,14 +90,18 @@ import ai.saiy.android.recognition.Recognition;
 import ai.saiy.android.recognition.SaiyHotwordListener;
 import ai.saiy.android.recognition.SaiyRecognitionListener;
 import ai.saiy.android.recognition.helper.RecognitionDefaults;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.recognition.provider.android.RecognitionNative;
 import ai.saiy.android.recognition.provider.bluemix.RecognitionBluemix;
 import ai.saiy.android.recognition.provider.google.chromium.RecognitionGoogleChromium;
 import ai.saiy.android.recognition.provider.google.cloud.RecognitionGoogleCloud;
+import ai.saiy.android.recognition.provider.hedge.IHedgeLeg;
+import ai.saiy.android.recognition.provider.hedge.RecognitionHedge;
 import ai.saiy.android.recognition.provider.microsoft.RecognitionMicrosoft;
 import ai.saiy.android.recognition.provider.nuance.RecognitionNuance;
 import ai.saiy.android.recognition.provider.remote.RecognitionRemote;
 import ai.saiy.android.recognition.provider.sphinx.RecognitionSphinx;
+import ai.saiy.android.recognition.provider.sphinx.RecognitionSphinxCommand;
 import ai.saiy.android.recognition.provider.wit.RecognitionWit;
 import ai.saiy.android.service.ISaiyListener;
 import ai.saiy.android.service.SelfAware;
@@ -147,6 +153,8 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
     public static final long DEFAULT_INACTIVITY_TIMEOUT = 900000L;
     private static final long SCREEN_WAKE_TIME = 10000L;
 
+    public static final String OFFLINE_PROVIDER = "OFFLINE";
+
     private final PowerManager.WakeLock wakeLock;
     private final PowerManager.WakeLock wakeLockDisplay;
 
@@ -192,6 +200,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
     private volatile boolean isCancelled;
     private volatile boolean restartHotword;
     private final SaiySoundPool saiySoundPool;
+    private volatile SaiyRecognitionListener nativeListener;
 
     /**
      * Constructor
@@ -430,6 +439,27 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         return false;
     }
 
+    /**
+     * Check if the default recognition captures its own audio through a SaiyRecorder, so that
+     * the speech following the hotword can be handed over to it. See {@link PreRoll}.
+     *
+     * @return true if the {@link PreRoll} can be replayed
+     */
+    public boolean supportsPreRoll() {
+
+        switch (getDefaultRecognition()) {
+
+            case GOOGLE_CLOUD:
+            case GOOGLE_CHROMIUM:
+            case IBM:
+            case REMOTE:
+            case WIT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Check if the hotword detection is currently active
      *
@@ -696,7 +726,8 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
                               final RecognitionMicrosoft recogOxford, final RecognitionWit recogWit,
                               final RecognitionBluemix recogIBM, final RecognitionRemote recogRemote,
                               final RecognitionMic recogMic, final SpeechRecognizer recogNative,
-                              final RecognitionSphinx recogSphinx) {
+                              final RecognitionSphinx recogSphinx, final RecognitionHedge recogHedge,
+                              final RecognitionSphinxCommand recogOffline) {
         if (DEBUG) {
             MyLog.i(CLS_NAME, "stopListening");
         }
@@ -709,6 +740,18 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
             }
 
             recogSphinx.stopListening();
+        } else if (recogHedge != null) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "stopListening: hedged");
+            }
+
+            recogHedge.stopListening();
+        } else if (recogOffline != null) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "stopListening: offline");
+            }
+
+            recogOffline.stopListening();
         } else {
 
             switch (getDefaultRecognition()) {
@@ -1749,6 +1792,28 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
     }
 
+    /**
+     * Wrap the listener given to a recognition provider, so that its latencies are measured by
+     * {@link RecognitionTelemetry}
+     *
+     * @param provider            the {@link SaiyDefaults.VR} provider
+     * @param recognitionListener the {@link SaiyRecognitionListener}
+     * @return the wrapping {@link SaiyRecognitionListener}
+     */
+    private SaiyRecognitionListener track(@NonNull final SaiyDefaults.VR provider,
+                                          @NonNull final SaiyRecognitionListener recognitionListener) {
+        return RecognitionTelemetry.track(mContext, provider.name(), getVRLocale(servingRemote()),
+                recognitionListener);
+    }
+
+    /**
+     * Mark the start of a native recognition session, which is requested directly from the
+     * {@link SpeechRecognizer}
+     */
+    public void onNativeStarted() {
+        RecognitionTelemetry.onStart(nativeListener);
+    }
+
     /**
      * Utility method to construct the {@link RecognitionNuance} instance
      *
@@ -1761,7 +1826,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
 
         if (servingRemote()) {
-            return new RecognitionNuance(mContext, recognitionListener,
+            return new RecognitionNuance(mContext, track(SaiyDefaults.VR.NUANCE, recognitionListener),
                     DetectionType.Long,
                     getCallback().getParcel().getNUANCE_SERVER_URI(),
                     getCallback().getParcel().getNUANCE_SERVER_URI_NLU(),
@@ -1772,7 +1837,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
                     getCallback().getParcel().getVRLanguageNuance(),
                     getSupportedLanguage(true));
         } else {
-            return new RecognitionNuance(mContext, recognitionListener,
+            return new RecognitionNuance(mContext, track(SaiyDefaults.VR.NUANCE, recognitionListener),
                     DetectionType.Long, getNuanceUri(false),
                     getNuanceUri(false),
                     NuanceConfiguration.APP_KEY, NuanceConfiguration.CONTEXT_TAG,
@@ -1795,16 +1860,45 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
 
         if (servingRemote()) {
+            return new RecognitionGoogleCloud(mContext, track(SaiyDefaults.VR.GOOGLE_CLOUD, recognitionListener),
+                    getCallback().getParcel().getVRLanguageGoogle(), getGoogleCloudAccessToken(), recogMic);
+        } else {
+            return new RecognitionGoogleCloud(mContext, track(SaiyDefaults.VR.GOOGLE_CLOUD, recognitionListener),
+                    VRLanguageGoogle.getLanguage(getVRLocale()), getGoogleCloudAccessToken(), recogMic);
+        }
+    }
 
-            return new RecognitionGoogleCloud(mContext, recognitionListener,
-                    getCallback().getParcel().getVRLanguageGoogle(),
-                    new AccessToken(getCallback().getParcel().getGOOGLE_CLOUD_ACCESS_TOKEN(),
-                            new Date(System.currentTimeMillis()
-                                    + getCallback().getParcel().getGOOGLE_CLOUD_ACCESS_EXPIRY())),
-                    recogMic);
+    /**
+     * Get the Google Cloud access token supplied by the remote caller, or the one configured locally
+     *
+     * @return the {@link AccessToken}
+     */
+    private AccessToken getGoogleCloudAccessToken() {
+        if (servingRemote()) {
+            return new AccessToken(getCallback().getParcel().getGOOGLE_CLOUD_ACCESS_TOKEN(),
+                    new Date(System.currentTimeMillis() + getCallback().getParcel().getGOOGLE_CLOUD_ACCESS_EXPIRY()));
+        } else {
+            return GoogleConfiguration.ACCESS_TOKEN;
+        }
+    }
+
+    /**
+     * Open the connections to the default recognition and NLU providers ahead of a likely recognition,
+     * using the credentials of the remote caller if there is one
+     *
+     * @param trigger the event that made a recognition likely
+     */
+    public void preConnectRecognition(@NonNull final String trigger) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "preConnectRecognition: " + trigger);
+        }
+
+        if (servingRemote()) {
+            final Uri remoteUri = getCallback().getParcel().getREMOTE_SERVER_URI();
+            PreConnect.warm(mContext, trigger, getDefaultRecognition(), getDefaultLanguageModel(),
+                    getGoogleCloudAccessToken(), remoteUri != null ? remoteUri.toString() : null);
         } else {
-            return new RecognitionGoogleCloud(mContext, recognitionListener,
-                    VRLanguageGoogle.getLanguage(getVRLocale()), GoogleConfiguration.ACCESS_TOKEN, recogMic);
+            PreConnect.warm(mContext, trigger);
         }
     }
 
@@ -1822,13 +1916,13 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
 
         if (servingRemote()) {
 
-            return new RecognitionGoogleChromium(recognitionListener,
+            return new RecognitionGoogleChromium(track(SaiyDefaults.VR.GOOGLE_CHROMIUM, recognitionListener),
                     getCallback().getParcel().getVRLanguageGoogle(),
                     getCallback().getParcel().getGOOGLE_CHROMIUM_API_KEY(), true, saiySoundPool);
 
         } else {
 
-            return new RecognitionGoogleChromium(recognitionListener,
+            return new RecognitionGoogleChromium(track(SaiyDefaults.VR.GOOGLE_CHROMIUM, recognitionListener),
                     VRLanguageGoogle.getLanguage(getVRLocale()),
                     GoogleConfiguration.GOOGLE_SPEECH_API_KEY, true, saiySoundPool);
         }
@@ -1846,7 +1940,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
 
         if (servingRemote()) {
-            return new RecognitionMicrosoft(mContext, recognitionListener,
+            return new RecognitionMicrosoft(mContext, track(SaiyDefaults.VR.MICROSOFT, recognitionListener),
                     getCallback().getParcel().getOXFORD_KEY_1(),
                     getCallback().getParcel().getOXFORD_KEY_2(),
                     getCallback().getParcel().getLUIS_APP_ID(),
@@ -1857,7 +1951,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
                     getCallback().getParcel().getNLULanguageMicrosoft(),
                     getSupportedLanguage(true), true, saiySoundPool);
         } else {
-            return new RecognitionMicrosoft(mContext, recognitionListener,
+            return new RecognitionMicrosoft(mContext, track(SaiyDefaults.VR.MICROSOFT, recognitionListener),
                     MicrosoftConfiguration.OXFORD_KEY_1,
                     MicrosoftConfiguration.OXFORD_KEY_2, MicrosoftConfiguration.LUIS_APP_ID,
                     MicrosoftConfiguration.LUIS_SUBSCRIPTION_ID, getDefaultLanguageModel(),
@@ -1896,14 +1990,14 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
 
         if (servingRemote()) {
-            return new RecognitionWit(mContext, recognitionListener,
+            return new RecognitionWit(mContext, track(SaiyDefaults.VR.WIT, recognitionListener),
                     getCallback().getParcel().getWIT_SERVER_ACCESS_TOKEN(),
                     SaiyDefaults.LanguageModel.remoteToLocal(getCallback().getParcel().getLanguageModel()),
                     getTTSLocale(true),
                     getCallback().getParcel().getVRLanguageWit(),
                     getSupportedLanguage(true), true, saiySoundPool);
         } else {
-            return new RecognitionWit(mContext, recognitionListener,
+            return new RecognitionWit(mContext, track(SaiyDefaults.VR.WIT, recognitionListener),
                     WitConfiguration.WIT_ACCESS_TOKEN,
                     getDefaultLanguageModel(),
                     getTTSLocale(),
@@ -1926,7 +2020,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
 
         if (servingRemote()) {
-            return new RecognitionBluemix(recognitionListener,
+            return new RecognitionBluemix(track(SaiyDefaults.VR.IBM, recognitionListener),
                     getCallback().getParcel().getIBM_SERVICE_USER_NAME(),
                     getCallback().getParcel().getIBM_SERVICE_PASSWORD(),
                     SaiyDefaults.LanguageModel.remoteToLocal(getCallback().getParcel().getLanguageModel()),
@@ -1934,7 +2028,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
                     getCallback().getParcel().getVRLanguageIBM(),
                     getSupportedLanguage(true), true, recogMic);
         } else {
-            return new RecognitionBluemix(recognitionListener,
+            return new RecognitionBluemix(track(SaiyDefaults.VR.IBM, recognitionListener),
                     BluemixConfiguration.BLUEMIX_USERNAME,
                     BluemixConfiguration.BLUEMIX_PASSWORD,
                     getDefaultLanguageModel(), getTTSLocale(),
@@ -1943,6 +2037,81 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
     }
 
+    /**
+     * Check if the default recognition should be raced against the provider chosen by the user.
+     * Only the providers that can share a capture take part, and the IBM language model is excluded,
+     * as it is resolved by its recogniser rather than from the results. The commands that need no
+     * network can be recognised on the device, as the second provider only.
+     *
+     * @return true if the recognition should be hedged
+     */
+    public boolean isHedgedRecognition() {
+
+        if (servingRemote()) {
+            return false;
+        }
+
+        final String hedge = SPH.getHedgeRecognition(mContext);
+        final String provider = getDefaultRecognition().name();
+
+        return UtilsString.notNaked(hedge) && !hedge.equals(provider)
+                && (isHedgeProvider(hedge) || hedge.equals(OFFLINE_PROVIDER)) && isHedgeProvider(provider)
+                && getDefaultLanguageModel() != SaiyDefaults.LanguageModel.IBM;
+    }
+
+    private boolean isHedgeProvider(@NonNull final String provider) {
+        return provider.equals(SaiyDefaults.VR.GOOGLE_CLOUD.name())
+                || provider.equals(SaiyDefaults.VR.IBM.name());
+    }
+
+    /**
+     * Utility method to construct the {@link RecognitionHedge} instance, racing the default
+     * recognition against the provider chosen by the user, over a single capture. This is resource
+     * intensive when the second provider is on the device, and should not be called on the main
+     * thread.
+     *
+     * @param recognitionListener the {@link SaiyRecognitionListener}
+     * @return the {@link RecognitionHedge} instance
+     */
+    public RecognitionHedge getHedgedRecognition(@NonNull final SaiyRecognitionListener recognitionListener) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getHedgedRecognition");
+        }
+
+        final RecognitionMic recogMic = getMicRecognition(null, AudioParameters.getDefaultMicrosoft(),
+                false, 0, true, false);
+        final CaptureSession captureSession = new CaptureSession(recogMic);
+
+        final RecognitionHedge recogHedge = new RecognitionHedge(recognitionListener);
+        addHedgeLeg(recogHedge, getDefaultRecognition().name(), captureSession.getMic());
+        addHedgeLeg(recogHedge, SPH.getHedgeRecognition(mContext), captureSession.getMic());
+
+        return recogHedge;
+    }
+
+    private void addHedgeLeg(@NonNull final RecognitionHedge recogHedge, @NonNull final String provider,
+                             @NonNull final RecognitionMic recogMic) {
+
+        recogHedge.addLeg(provider, SPH.getHedgeConfidence(mContext, provider),
+                SPH.getHedgeBudget(mContext, provider), new RecognitionHedge.LegFactory() {
+                    @Override
+                    public IHedgeLeg create(@NonNull final SaiyRecognitionListener legListener) {
+
+                        if (provider.equals(SaiyDefaults.VR.IBM.name())) {
+                            return getIBMRecognition(recogMic, legListener);
+                        }
+
+                        if (provider.equals(OFFLINE_PROVIDER)) {
+                            return new RecognitionSphinxCommand(mContext, RecognitionTelemetry.track(mContext,
+                                    OFFLINE_PROVIDER, getVRLocale(false), legListener),
+                                    getSupportedLanguage(false), recogMic);
+                        }
+
+                        return getGoogleCloudRecognition(recogMic, legListener);
+                    }
+                });
+    }
+
     /**
      * Utility method to construct the {@link RecognitionRemote} instance
      *
@@ -1955,7 +2124,7 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         }
 
         if (servingRemote()) {
-            return new RecognitionRemote(recognitionListener, getVRLocale().toString(),
+            return new RecognitionRemote(track(SaiyDefaults.VR.REMOTE, recognitionListener), getVRLocale().toString(),
                     getCallback().getParcel().getREMOTE_SERVER_URI(),
                     getCallback().getParcel().getREMOTE_ACCESS_TOKEN(), saiySoundPool);
         } else {
@@ -1976,6 +2145,31 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         return new RecognitionSphinx(mContext, listener, getSupportedLanguage(false));
     }
 
+    /**
+     * Check if the commands that need no network should be recognised on the device, in place of
+     * the default recognition, which cannot be reached
+     *
+     * @return true if the offline recognition should be used
+     */
+    public boolean isOfflineRecognition() {
+        return !servingRemote() && SPH.getOfflineCommands(mContext);
+    }
+
+    /**
+     * Utility method to construct the {@link RecognitionSphinxCommand} instance. This is resource
+     * intensive and should not be called on the main thread.
+     *
+     * @param recognitionListener the {@link SaiyRecognitionListener}
+     * @return the {@link RecognitionSphinxCommand} instance
+     */
+    public RecognitionSphinxCommand getOfflineRecognition(@NonNull final SaiyRecognitionListener recognitionListener) {
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "getOfflineRecognition");
+        }
+        return new RecognitionSphinxCommand(mContext, RecognitionTelemetry.track(mContext, OFFLINE_PROVIDER,
+                getVRLocale(false), recognitionListener), getSupportedLanguage(false));
+    }
+
     /**
      * Utility method to construct the {@link RecognitionMic} instance
      *
@@ -2056,7 +2250,8 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
             return null;
         }
 
-        recognizer.setRecognitionListener(recognitionListener);
+        nativeListener = track(SaiyDefaults.VR.NATIVE, recognitionListener);
+        recognizer.setRecognitionListener(nativeListener);
 
         if (DEBUG) {
             MyLog.getElapsed(CLS_NAME, "getNativeRecognition", then);
@@ -2346,12 +2541,15 @@ public class SelfAwareConditions extends SelfAwareHelper implements IConditionLi
         if (tts != null) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                 if (TTSDefaults.isApprovedVoice(tts.getInitialisedEngine())) {
-                    if (!isSilentUtterance() && getUtterance().length() < SelfAwareCache.MAX_UTTERANCE_CHARS) {
+                    if (!isSilentUtterance()) {
                         if (!servingRemote()) {
                             final SaiyVoice voice = tts.getBoundSaiyVoice();
 
                             if (voice != null) {
-                                cache.shouldCache(params, getTTSLocale(), getUtterance(), tts.getInitialisedEngine(), voice);
+                                cache.shouldCacheSegments(params, getTTSLocale(), getUtterance(),
+                                        tts.getInitialisedEngine(), voice);
+                                cache.prewarm(getSupportedLanguage(false), getTTSLocale(), tts.getInitialisedEngine(),
+                                        voice, params);
                             } else {
                                 if (DEBUG) {
                                     MyLog.i(CLS_NAME, "onTTSEnded: not caching voice: saiyVoice null");
@@ -1103,6 +1103,50 @@ public class SelfAwareHelper {
 
     }
 
+    /**
+     * Split the utterance into sentence or clause segments of no more than the given length, for
+     * use as the unit of the speech cache. Unlike {@link #splitUtteranceRegex(String, int)}, there is
+     * no fallback to an arbitrary split, as such segments would never be repeated.
+     *
+     * @param utterance the utterance to split
+     * @param maxLength the maximum length of a segment
+     * @return an ArrayList<String> of the segments in order, or an empty list if the utterance
+     * cannot be segmented at clause boundaries.
+     */
+    public static ArrayList<String> splitUtteranceSegments(@NonNull final String utterance, final int maxLength) {
+
+        final ArrayList<String> segments = new ArrayList<>();
+
+        final Matcher matcher = Pattern.compile(".{1," + maxLength + "}?(?:[.!?,;:]\\s+|\\n|$)",
+                Pattern.DOTALL).matcher(utterance);
+
+        int end = 0;
+        String segment;
+        while (end < utterance.length() && matcher.find()) {
+
+            if (matcher.start() != end) {
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "splitUtteranceSegments: no boundary within maxLength");
+                }
+                segments.clear();
+                return segments;
+            }
+
+            segment = matcher.group().trim();
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+
+            end = matcher.end();
+        }
+
+        if (end < utterance.length()) {
+            segments.clear();
+        }
+
+        return segments;
+    }
+
     /**
      * Called if the more readable {@link #splitUtteranceRegex(String, int)} has failed.
      *
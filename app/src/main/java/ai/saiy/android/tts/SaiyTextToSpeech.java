@@ -55,6 +55,10 @@ import java.util.ListIterator;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import ai.saiy.android.R;
@@ -103,6 +107,10 @@ public class SaiyTextToSpeech extends TextToSpeech {
     public static final String ARRAY_SINGLE = "array_single";
     public static final String ARRAY_DELIMITER = "~~";
 
+    private static final String SEGMENT_MARKER = "saiy_segment_";
+    private static final long MIN_SEGMENT_WAIT = 10000L;
+    private static final long SEGMENT_WAIT_PER_CHAR = 250L;
+
     private volatile SaiyAudioTrack audioTrack;
 
     private volatile SaiyProgressListener listener;
@@ -110,6 +118,11 @@ public class SaiyTextToSpeech extends TextToSpeech {
     private volatile Set<SaiyVoice> saiyVoiceSet;
     private volatile Set<Voice> defaultVoiceSet;
 
+    private final AtomicInteger segmentGeneration = new AtomicInteger();
+    private final AtomicLong markerSequence = new AtomicLong();
+    private volatile CountDownLatch segmentLatch;
+    private volatile String segmentMarker;
+
     private final Context mContext;
 
     /**
@@ -289,7 +302,7 @@ public class SaiyTextToSpeech extends TextToSpeech {
                         @NonNull final SelfAwareParameters params, @NonNull final String utteranceId) {
 
         if (queueMode != QUEUE_ADD && !params.getUtteranceId().startsWith(ARRAY)
-                && canSynthesise(text.toString(), params)) {
+                && (canSynthesise(text.toString(), params) || canSynthesiseSegments(text.toString(), params))) {
             return SUCCESS;
         } else {
             if (text.length() > getMaxUtteranceLength()) {
@@ -583,6 +596,342 @@ public class SaiyTextToSpeech extends TextToSpeech {
         return false;
     }
 
+    /**
+     * Method to check if an utterance too long to have been cached whole contains segments that
+     * have been cached individually. If so, the utterance is played segment by segment in order,
+     * with runs of cached segments streamed back to back using the {@link AudioTrack}, and only the
+     * runs between them synthesised by the engine. The audio of each cached segment is fetched and
+     * decoded only as the {@link SaiyAudioTrack} reaches it.
+     *
+     * @param utterance the pending utterance
+     * @param params    the {@link SelfAwareParameters}
+     * @return true if at least one segment is available to stream. False otherwise.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean canSynthesiseSegments(@NonNull final String utterance, @NonNull final SelfAwareParameters params) {
+
+        if (utterance.length() < SelfAwareCache.MAX_UTTERANCE_CHARS || utterance.matches(SaiyRequestParams.SILENCE)
+                || getAudioTrack() == null || !audioTrack.isIdle()
+                || !TTSDefaults.isApprovedVoice(getInitialisedEngine())
+                || !UtilsString.notNaked(getInitialisedEngine())) {
+            return false;
+        }
+
+        final SaiyVoice voice = getBoundSaiyVoice();
+
+        if (voice == null) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "canSynthesiseSegments: false: saiyVoice null");
+            }
+            return false;
+        }
+
+        final ArrayList<String> segments = SelfAwareHelper.splitUtteranceSegments(utterance,
+                SelfAwareCache.MAX_UTTERANCE_CHARS);
+        final int segmentsSize = segments.size();
+
+        if (segmentsSize < 2) {
+            if (DEBUG) {
+                MyLog.i(CLS_NAME, "canSynthesiseSegments: false: not segmented");
+            }
+            return false;
+        }
+
+        final long[] rowIds = new DBSpeech(mContext).getRowIds(getInitialisedEngine(), voice.getName(), segments);
+
+        final ArrayList<Pair<String, Long>> pieces = new ArrayList<>(segmentsSize);
+        final ArrayList<String> uncached = new ArrayList<>(segmentsSize);
+        int cachedSize = 0;
+
+        for (int i = 0; i < segmentsSize; i++) {
+
+            if (rowIds[i] > -1) {
+
+                if (!uncached.isEmpty()) {
+                    pieces.add(new Pair<>(TextUtils.join(" ", uncached), -1L));
+                    uncached.clear();
+                }
+
+                pieces.add(new Pair<>(segments.get(i), rowIds[i]));
+                cachedSize++;
+            } else {
+                uncached.add(segments.get(i));
+            }
+        }
+
+        if (DEBUG) {
+            MyLog.i(CLS_NAME, "canSynthesiseSegments: segments: " + segmentsSize + " cached: " + cachedSize);
+        }
+
+        if (cachedSize == 0) {
+            return false;
+        }
+
+        if (!uncached.isEmpty()) {
+            pieces.add(new Pair<>(TextUtils.join(" ", uncached), -1L));
+        }
+
+        final int piecesSize = pieces.size();
+        final String utteranceId = params.getUtteranceId();
+        final boolean overrideId = utteranceId.contains(ARRAY_DELIMITER);
+        final ArrayList<String> pieceIds = new ArrayList<>(piecesSize);
+
+        for (int i = 0; i < piecesSize; i++) {
+            pieceIds.add(resolveUtteranceId(utteranceId, piecesSize, i, overrideId));
+        }
+
+        final int generation = segmentGeneration.get();
+
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+                playSegments(pieces, pieceIds, params, generation);
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Play the pieces of a segmented utterance in order, streaming each run of cached pieces with
+     * the {@link SaiyAudioTrack} and passing the others to the engine, waiting for one to finish
+     * before the next begins. Playback is abandoned if {@link #stop()} is called.
+     *
+     * @param pieces     the text of each piece, paired with the row id of its cached audio, or -1
+     * @param pieceIds   the utterance id of each piece
+     * @param params     the {@link SelfAwareParameters}
+     * @param generation the value of {@link #segmentGeneration} when playback was requested
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void playSegments(@NonNull final List<Pair<String, Long>> pieces, @NonNull final List<String> pieceIds,
+                              @NonNull final SelfAwareParameters params, final int generation) {
+
+        final int piecesSize = pieces.size();
+        int position = 0;
+
+        while (position < piecesSize && generation == segmentGeneration.get()) {
+
+            if (pieces.get(position).second > -1) {
+
+                final ArrayList<Pair<SaiyAudioTrack.AudioLoader, String>> run = new ArrayList<>();
+
+                for (int i = position; i < piecesSize && pieces.get(i).second > -1; i++) {
+                    run.add(new Pair<SaiyAudioTrack.AudioLoader, String>(
+                            new SegmentLoader(pieces.get(i).second), pieceIds.get(i)));
+                }
+
+                final SaiyAudioTrack track = getAudioTrack();
+
+                if (track == null) {
+                    return;
+                }
+
+                track.setListener(listener);
+                track.setVolume(params.getVolume());
+
+                final int played = track.enqueue(run);
+
+                if (played < 0) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "playSegments: interrupted");
+                    }
+                    return;
+                }
+
+                position += played;
+
+                if (played == run.size()) {
+                    continue;
+                }
+
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "playSegments: cached audio unavailable: " + position);
+                }
+            }
+
+            if (!speakSegment(pieces.get(position).first, pieceIds.get(position), params, generation,
+                    position == (piecesSize - 1))) {
+                return;
+            }
+
+            position++;
+        }
+    }
+
+    /**
+     * Pass a piece of a segmented utterance to the engine and, unless it is the last, wait until
+     * it has been spoken. A silent marker utterance is queued behind the piece to wait for, as the
+     * engine may split the piece and use an utterance id of its own for the final part.
+     *
+     * @param text        the text of the piece
+     * @param utteranceId the utterance id of the piece
+     * @param params      the {@link SelfAwareParameters}
+     * @param generation  the value of {@link #segmentGeneration} when playback was requested
+     * @param last        true if this is the last piece of the utterance
+     * @return true if the piece was spoken. False if the engine didn't respond in time, or
+     * {@link #stop()} was called.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean speakSegment(@NonNull final String text, @NonNull final String utteranceId,
+                                 @NonNull final SelfAwareParameters params, final int generation,
+                                 final boolean last) {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final String marker = SEGMENT_MARKER + markerSequence.incrementAndGet();
+        segmentLatch = latch;
+        segmentMarker = marker;
+
+        if (generation != segmentGeneration.get()) {
+            return false;
+        }
+
+        params.setUtteranceId(utteranceId);
+
+        if (last) {
+            speak21(text, QUEUE_ADD, params, utteranceId);
+            return true;
+        }
+
+        speak21(text, QUEUE_ADD, params, utteranceId);
+        playSilentUtterance(1, QUEUE_ADD, marker);
+
+        try {
+            if (!latch.await(MIN_SEGMENT_WAIT + (text.length() * SEGMENT_WAIT_PER_CHAR), TimeUnit.MILLISECONDS)) {
+                if (DEBUG) {
+                    MyLog.w(CLS_NAME, "speakSegment: timed out");
+                }
+                return false;
+            }
+        } catch (final InterruptedException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "speakSegment: InterruptedException");
+                e.printStackTrace();
+            }
+            return false;
+        }
+
+        return generation == segmentGeneration.get();
+    }
+
+    /**
+     * Release any wait in {@link #speakSegment(String, String, SelfAwareParameters, int, boolean)} and
+     * abandon the segmented utterance being played.
+     */
+    private void cancelSegments() {
+        segmentGeneration.incrementAndGet();
+
+        final CountDownLatch latch = segmentLatch;
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Fetches and decodes the cached audio of a segment when the {@link SaiyAudioTrack} reaches it
+     */
+    private final class SegmentLoader implements SaiyAudioTrack.AudioLoader {
+
+        private final long rowId;
+
+        private SegmentLoader(final long rowId) {
+            this.rowId = rowId;
+        }
+
+        @Override
+        public byte[] load() {
+
+            final SpeechCacheResult speechCacheResult = new DBSpeech(mContext).getBytes(rowId);
+
+            if (speechCacheResult.isSuccess()) {
+
+                final byte[] uncompressedBytes = AudioCompression.decompressBytes(mContext,
+                        speechCacheResult.getCompressedBytes(), rowId);
+
+                if (UtilsList.notNaked(uncompressedBytes)) {
+                    return uncompressedBytes;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Passes the engine's callbacks to the {@link SaiyProgressListener}, other than those of the
+     * markers queued by {@link #speakSegment(String, String, SelfAwareParameters, int, boolean)}, which
+     * are consumed here.
+     */
+    private final SaiyProgressListener progressRelay = new SaiyProgressListener() {
+
+        private boolean isMarker(final String utteranceId) {
+            return utteranceId != null && utteranceId.startsWith(SEGMENT_MARKER);
+        }
+
+        private boolean releaseMarker(final String utteranceId) {
+            if (isMarker(utteranceId)) {
+                final CountDownLatch latch = segmentLatch;
+                if (latch != null && utteranceId.equals(segmentMarker)) {
+                    latch.countDown();
+                }
+                return true;
+            }
+
+            return false;
+        }
+
+        @Override
+        public void onAudioAvailable(final String utteranceId, final byte[] audio) {
+            if (!isMarker(utteranceId)) {
+                listener.onAudioAvailable(utteranceId, audio);
+            }
+        }
+
+        @Override
+        public void onBeginSynthesis(final String utteranceId, final int sampleRateInHz, final int audioFormat,
+                                     final int channelCount) {
+            if (!isMarker(utteranceId)) {
+                listener.onBeginSynthesis(utteranceId, sampleRateInHz, audioFormat, channelCount);
+            }
+        }
+
+        @Override
+        public void onStart(final String utteranceId) {
+            if (!isMarker(utteranceId)) {
+                listener.onStart(utteranceId);
+            }
+        }
+
+        @Override
+        public void onDone(final String utteranceId) {
+            if (!releaseMarker(utteranceId)) {
+                listener.onDone(utteranceId);
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public void onError(final String utteranceId) {
+            if (!releaseMarker(utteranceId)) {
+                listener.onError(utteranceId);
+            }
+        }
+
+        @Override
+        public void onError(final String utteranceId, final int errorCode) {
+            if (!releaseMarker(utteranceId)) {
+                listener.onError(utteranceId, errorCode);
+            }
+        }
+
+        @Override
+        public void onStop(final String utteranceId, final boolean interrupted) {
+            if (!releaseMarker(utteranceId)) {
+                listener.onStop(utteranceId, interrupted);
+            }
+        }
+    };
+
     /**
      * Begin streaming the byte[] of pcm audio data via the {@link AudioTrack} object
      *
@@ -1074,7 +1423,7 @@ public class SaiyTextToSpeech extends TextToSpeech {
     @Override
     public int setOnUtteranceProgressListener(final UtteranceProgressListener listener) {
         this.listener = (SaiyProgressListener) listener;
-        return super.setOnUtteranceProgressListener(listener);
+        return super.setOnUtteranceProgressListener(progressRelay);
     }
 
     @Override
@@ -1596,6 +1945,7 @@ public class SaiyTextToSpeech extends TextToSpeech {
 
     @Override
     public void shutdown() {
+        cancelSegments();
 
         if (audioTrack != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             switch (audioTrack.getPlayState()) {
@@ -1628,6 +1978,7 @@ public class SaiyTextToSpeech extends TextToSpeech {
 
     @Override
     public int stop() {
+        cancelSegments();
 
         if (audioTrack != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             switch (audioTrack.getPlayState()) {
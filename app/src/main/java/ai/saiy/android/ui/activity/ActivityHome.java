@@ -50,6 +50,7 @@ import ai.saiy.android.intent.ExecuteIntent;
 import ai.saiy.android.localisation.SaiyResourcesHelper;
 import ai.saiy.android.localisation.SupportedLanguage;
 import ai.saiy.android.service.helper.LocalRequest;
+import ai.saiy.android.service.helper.PreConnect;
 import ai.saiy.android.service.helper.SelfAwareHelper;
 import ai.saiy.android.ui.activity.helper.ActivityHomeHelper;
 import ai.saiy.android.ui.fragment.FragmentAbout;
@@ -126,6 +127,8 @@ public class ActivityHome extends AppCompatActivity implements NavigationView.On
         }
 
         setupUI();
+
+        PreConnect.warm(getApplicationContext(), PreConnect.TRIGGER_UI);
     }
 
     /**
@@ -175,6 +175,12 @@ public class FragmentAdvancedSettings extends Fragment implements View.OnClickLi
             case 6:
                 helper.showPauseDetectionSlider();
                 break;
+            case 7:
+                helper.showDiagnostics();
+                break;
+            case 8:
+                helper.showHedgeSelector();
+                break;
             default:
                 break;
         }
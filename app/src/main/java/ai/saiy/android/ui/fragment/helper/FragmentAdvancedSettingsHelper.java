@@ -27,6 +27,7 @@ import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.afollestad.materialdialogs.DialogAction;
 import com.afollestad.materialdialogs.MaterialDialog;
@@ -34,10 +35,17 @@ import com.afollestad.materialdialogs.MaterialDialog;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import ai.saiy.android.R;
+import ai.saiy.android.api.SaiyDefaults;
+import ai.saiy.android.intent.ExecuteIntent;
+import ai.saiy.android.intent.IntentConstants;
+import ai.saiy.android.recognition.helper.RecognitionTelemetry;
 import ai.saiy.android.recognition.provider.android.RecognitionNative;
+import ai.saiy.android.recognition.provider.hedge.RecognitionHedge;
+import ai.saiy.android.service.helper.SelfAwareConditions;
 import ai.saiy.android.tts.attributes.Gender;
 import ai.saiy.android.ui.activity.ActivityHome;
 import ai.saiy.android.ui.components.DividerItemDecoration;
@@ -135,6 +143,20 @@ public class FragmentAdvancedSettingsHelper {
         containerUI.setIconExtra(FragmentHome.CHEVRON);
         mObjects.add(containerUI);
 
+        containerUI = new ContainerUI();
+        containerUI.setTitle(getString(R.string.menu_diagnostics));
+        containerUI.setSubtitle(getString(R.string.menu_tap_options));
+        containerUI.setIconMain(R.drawable.ic_pulse);
+        containerUI.setIconExtra(FragmentHome.CHEVRON);
+        mObjects.add(containerUI);
+
+        containerUI = new ContainerUI();
+        containerUI.setTitle(getString(R.string.menu_hedge));
+        containerUI.setSubtitle(getString(R.string.menu_tap_configure));
+        containerUI.setIconMain(R.drawable.ic_traffic_light);
+        containerUI.setIconExtra(FragmentHome.CHEVRON);
+        mObjects.add(containerUI);
+
         return mObjects;
     }
 
@@ -551,6 +573,349 @@ public class FragmentAdvancedSettingsHelper {
         return getApplicationContext().getString(id);
     }
 
+    /**
+     * Show the recognition latencies measured by {@link RecognitionTelemetry}, with the option to
+     * export them to a file
+     */
+    @SuppressWarnings("ConstantConditions")
+    public void showDiagnostics() {
+
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                final String report = RecognitionTelemetry.getReport();
+
+                FragmentAdvancedSettingsHelper.this.getParentActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+
+                        final MaterialDialog materialDialog = new MaterialDialog.Builder(FragmentAdvancedSettingsHelper.this.getParentActivity())
+                                .autoDismiss(false)
+                                .title(R.string.menu_diagnostics)
+                                .content(report)
+                                .positiveText(R.string.menu_export)
+                                .negativeText(android.R.string.cancel)
+                                .iconRes(R.drawable.ic_pulse)
+                                .backgroundColorRes(R.color.colorTint)
+
+                                .onPositive(new MaterialDialog.SingleButtonCallback() {
+                                    @Override
+                                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+                                        if (DEBUG) {
+                                            MyLog.i(CLS_NAME, "showDiagnostics: onPositive");
+                                        }
+
+                                        dialog.dismiss();
+
+                                        AsyncTask.execute(new Runnable() {
+                                            @Override
+                                            public void run() {
+
+                                                final Context context = FragmentAdvancedSettingsHelper.this.getApplicationContext();
+                                                final File file = RecognitionTelemetry.export(context);
+
+                                                if (file != null && ExecuteIntent.shareFile(context, file,
+                                                        IntentConstants.TEXT_PLAIN)) {
+                                                    return;
+                                                }
+
+                                                if (FragmentAdvancedSettingsHelper.this.getParent().isActive()) {
+                                                    if (file != null) {
+                                                        FragmentAdvancedSettingsHelper.this.getParentActivity().toast(
+                                                                FragmentAdvancedSettingsHelper.this.getApplicationContext().getString(
+                                                                        R.string.diagnostics_exported,
+                                                                        file.getAbsolutePath()), Toast.LENGTH_LONG);
+                                                    } else {
+                                                        FragmentAdvancedSettingsHelper.this.getParentActivity().toast(
+                                                                FragmentAdvancedSettingsHelper.this.getString(R.string.diagnostics_export_failed),
+                                                                Toast.LENGTH_SHORT);
+                                                    }
+                                                }
+                                            }
+                                        });
+                                    }
+                                })
+
+                                .onNegative(new MaterialDialog.SingleButtonCallback() {
+                                    @Override
+                                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+                                        if (DEBUG) {
+                                            MyLog.i(CLS_NAME, "showDiagnostics: onNegative");
+                                        }
+                                        dialog.dismiss();
+                                    }
+                                })
+
+                                .cancelListener(new DialogInterface.OnCancelListener() {
+                                    @Override
+                                    public void onCancel(final DialogInterface dialog) {
+                                        if (DEBUG) {
+                                            MyLog.i(CLS_NAME, "showDiagnostics: onCancel");
+                                        }
+
+                                        dialog.dismiss();
+                                    }
+                                }).build();
+
+                        materialDialog.getWindow().getAttributes().windowAnimations = R.style.dialog_animation_left;
+                        materialDialog.show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the provider to race against the default recognition. Once one is selected, its
+     * thresholds and budgets are shown.
+     */
+    @SuppressWarnings("ConstantConditions")
+    public void showHedgeSelector() {
+
+        final String[] providers = {null, SaiyDefaults.VR.GOOGLE_CLOUD.name(), SaiyDefaults.VR.IBM.name(),
+                SelfAwareConditions.OFFLINE_PROVIDER};
+
+        final int selected = Math.max(0, ArrayUtils.indexOf(providers,
+                SPH.getHedgeRecognition(getApplicationContext())));
+
+        final MaterialDialog materialDialog = new MaterialDialog.Builder(getParentActivity())
+                .autoDismiss(false)
+                .alwaysCallSingleChoiceCallback()
+                .title(R.string.menu_hedge)
+                .content(R.string.hedge_intro_text)
+                .items(R.array.array_hedge)
+                .positiveText(R.string.menu_select)
+                .negativeText(android.R.string.cancel)
+                .iconRes(R.drawable.ic_traffic_light)
+                .backgroundColorRes(R.color.colorTint)
+
+                .itemsCallbackSingleChoice(selected, new MaterialDialog.ListCallbackSingleChoice() {
+                    @Override
+                    public boolean onSelection(final MaterialDialog dialog, final View view, final int which, final CharSequence text) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSelector: onSelection: " + which + ": " + text);
+                        }
+                        return true;
+                    }
+                })
+
+                .onPositive(new MaterialDialog.SingleButtonCallback() {
+                    @Override
+                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+
+                        final String provider = providers[dialog.getSelectedIndex()];
+
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSelector: onPositive: " + provider);
+                        }
+
+                        SPH.setHedgeRecognition(FragmentAdvancedSettingsHelper.this.getApplicationContext(), provider);
+                        dialog.dismiss();
+
+                        if (provider != null) {
+                            FragmentAdvancedSettingsHelper.this.showHedgeSliders(provider);
+                        }
+                    }
+                })
+
+                .onNegative(new MaterialDialog.SingleButtonCallback() {
+                    @Override
+                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSelector: onNegative");
+                        }
+                        dialog.dismiss();
+                    }
+                })
+
+                .cancelListener(new DialogInterface.OnCancelListener() {
+                    @Override
+                    public void onCancel(final DialogInterface dialog) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSelector: onCancel");
+                        }
+                        dialog.dismiss();
+                    }
+                }).build();
+
+        materialDialog.getWindow().getAttributes().windowAnimations = R.style.dialog_animation_left;
+        materialDialog.show();
+    }
+
+    /**
+     * Show the confidence at which each provider's result is accepted without waiting for the
+     * other, and the time each has to answer after the end of speech
+     *
+     * @param hedgeProvider the name of the provider raced against the default recognition
+     */
+    @SuppressWarnings("ConstantConditions")
+    private void showHedgeSliders(@NonNull final String hedgeProvider) {
+
+        final String defaultProvider = SPH.getDefaultRecognition(getApplicationContext()).name();
+
+        final MaterialDialog materialDialog = new MaterialDialog.Builder(getParentActivity())
+                .customView(R.layout.hedge_dialog_layout, true)
+                .autoDismiss(false)
+                .title(R.string.menu_hedge)
+                .iconRes(R.drawable.ic_traffic_light)
+                .positiveText(R.string.save)
+                .neutralText(R.string.text_default)
+                .negativeText(android.R.string.cancel)
+
+                .onNeutral(new MaterialDialog.SingleButtonCallback() {
+                    @Override
+                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+                        final View view = dialog.getCustomView();
+                        ((SeekBar) view.findViewById(R.id.hedgeDefaultConfidenceSeekBar))
+                                .setProgress(toConfidenceProgress(RecognitionHedge.DEFAULT_CONFIDENCE));
+                        ((SeekBar) view.findViewById(R.id.hedgeDefaultBudgetSeekBar))
+                                .setProgress(toBudgetProgress(RecognitionHedge.DEFAULT_BUDGET));
+                        ((SeekBar) view.findViewById(R.id.hedgeSecondConfidenceSeekBar))
+                                .setProgress(toConfidenceProgress(RecognitionHedge.DEFAULT_CONFIDENCE));
+                        ((SeekBar) view.findViewById(R.id.hedgeSecondBudgetSeekBar))
+                                .setProgress(toBudgetProgress(RecognitionHedge.DEFAULT_BUDGET));
+                    }
+                })
+
+                .onPositive(new MaterialDialog.SingleButtonCallback() {
+                    @Override
+                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSliders: onPositive");
+                        }
+
+                        final Context context = FragmentAdvancedSettingsHelper.this.getApplicationContext();
+                        final View view = dialog.getCustomView();
+
+                        SPH.setHedgeConfidence(context, defaultProvider, fromConfidenceProgress(
+                                ((SeekBar) view.findViewById(R.id.hedgeDefaultConfidenceSeekBar)).getProgress()));
+                        SPH.setHedgeBudget(context, defaultProvider, fromBudgetProgress(
+                                ((SeekBar) view.findViewById(R.id.hedgeDefaultBudgetSeekBar)).getProgress()));
+                        SPH.setHedgeConfidence(context, hedgeProvider, fromConfidenceProgress(
+                                ((SeekBar) view.findViewById(R.id.hedgeSecondConfidenceSeekBar)).getProgress()));
+                        SPH.setHedgeBudget(context, hedgeProvider, fromBudgetProgress(
+                                ((SeekBar) view.findViewById(R.id.hedgeSecondBudgetSeekBar)).getProgress()));
+
+                        dialog.dismiss();
+                    }
+                })
+
+                .onNegative(new MaterialDialog.SingleButtonCallback() {
+                    @Override
+                    public void onClick(@NonNull final MaterialDialog dialog, @NonNull final DialogAction which) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSliders: onNegative");
+                        }
+                        dialog.dismiss();
+                    }
+                })
+
+                .cancelListener(new DialogInterface.OnCancelListener() {
+                    @Override
+                    public void onCancel(final DialogInterface dialog) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "showHedgeSliders: onCancel");
+                        }
+                        dialog.dismiss();
+                    }
+                }).build();
+
+        final View view = materialDialog.getCustomView();
+        final String defaultLabel = getString(R.string.hedge_default);
+        final String secondLabel = getString(R.string.hedge_second);
+
+        setConfidenceSlider(view, R.id.hedgeDefaultConfidenceSeekBar, R.id.hedgeDefaultConfidenceText,
+                defaultLabel, SPH.getHedgeConfidence(getApplicationContext(), defaultProvider));
+        setBudgetSlider(view, R.id.hedgeDefaultBudgetSeekBar, R.id.hedgeDefaultBudgetText,
+                defaultLabel, SPH.getHedgeBudget(getApplicationContext(), defaultProvider));
+        setConfidenceSlider(view, R.id.hedgeSecondConfidenceSeekBar, R.id.hedgeSecondConfidenceText,
+                secondLabel, SPH.getHedgeConfidence(getApplicationContext(), hedgeProvider));
+        setBudgetSlider(view, R.id.hedgeSecondBudgetSeekBar, R.id.hedgeSecondBudgetText,
+                secondLabel, SPH.getHedgeBudget(getApplicationContext(), hedgeProvider));
+
+        materialDialog.getWindow().getAttributes().windowAnimations = R.style.dialog_animation_left;
+        materialDialog.show();
+    }
+
+    private void setConfidenceSlider(@NonNull final View view, final int seekBarId, final int textId,
+                                     @NonNull final String label, final float confidence) {
+
+        final TextView seekText = (TextView) view.findViewById(textId);
+        final SeekBar seekBar = (SeekBar) view.findViewById(seekBarId);
+
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+
+            @Override
+            public void onProgressChanged(final SeekBar seekBar, final int progress, final boolean fromUser) {
+                seekText.setText(getApplicationContext().getString(R.string.hedge_confidence_text, label,
+                        Math.round(fromConfidenceProgress(progress) * 100)));
+            }
+
+            @Override
+            public void onStartTrackingTouch(final SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(final SeekBar seekBar) {
+            }
+        });
+
+        seekBar.setProgress(toConfidenceProgress(confidence));
+        seekText.setText(getApplicationContext().getString(R.string.hedge_confidence_text, label,
+                Math.round(fromConfidenceProgress(seekBar.getProgress()) * 100)));
+    }
+
+    private void setBudgetSlider(@NonNull final View view, final int seekBarId, final int textId,
+                                 @NonNull final String label, final long budget) {
+
+        final TextView seekText = (TextView) view.findViewById(textId);
+        final SeekBar seekBar = (SeekBar) view.findViewById(seekBarId);
+
+        seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+
+            @Override
+            public void onProgressChanged(final SeekBar seekBar, final int progress, final boolean fromUser) {
+                seekText.setText(getApplicationContext().getString(R.string.hedge_budget_text, label,
+                        fromBudgetProgress(progress) / 1000F));
+            }
+
+            @Override
+            public void onStartTrackingTouch(final SeekBar seekBar) {
+            }
+
+            @Override
+            public void onStopTrackingTouch(final SeekBar seekBar) {
+            }
+        });
+
+        seekBar.setProgress(toBudgetProgress(budget));
+        seekText.setText(getApplicationContext().getString(R.string.hedge_budget_text, label,
+                fromBudgetProgress(seekBar.getProgress()) / 1000F));
+    }
+
+    /**
+     * The confidence slider runs from 50% to 100%, in steps of 1%
+     */
+    private static int toConfidenceProgress(final float confidence) {
+        return Math.max(0, Math.min(50, Math.round(confidence * 100) - 50));
+    }
+
+    private static float fromConfidenceProgress(final int progress) {
+        return (progress + 50) / 100F;
+    }
+
+    /**
+     * The budget slider runs from half a second to ten seconds, in steps of half a second
+     */
+    private static int toBudgetProgress(final long budget) {
+        return Math.max(0, Math.min(19, (int) (budget / 500) - 1));
+    }
+
+    private static long fromBudgetProgress(final int progress) {
+        return (progress + 1) * 500L;
+    }
+
     /**
      * Utility method to ensure we double check the context being used.
      *
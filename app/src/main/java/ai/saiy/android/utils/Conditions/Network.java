@@ -23,6 +23,7 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.support.annotation.NonNull;
 import android.support.annotation.WorkerThread;
+import android.support.v4.net.ConnectivityManagerCompat;
 import android.telephony.TelephonyManager;
 
 import java.io.IOException;
@@ -229,6 +230,34 @@ public final class Network {
         }
     }
 
+    /**
+     * Get a readable name for the current connection type
+     *
+     * @param ctx the application Context
+     * @return the name of the connection type, or NONE if there is no connection
+     */
+    public static String getConnectionName(final Context ctx) {
+
+        if (!isNetworkAvailable(ctx)) {
+            return "NONE";
+        }
+
+        switch (getConnectionType(ctx)) {
+
+            case CONNECTION_TYPE_WIFI:
+                return "WIFI";
+            case CONNECTION_TYPE_4G:
+                return "4G";
+            case CONNECTION_TYPE_3G:
+                return "3G";
+            case CONNECTION_TYPE_2G:
+                return "2G";
+            case CONNECTION_TYPE_UNKNOWN:
+            default:
+                return "UNKNOWN";
+        }
+    }
+
     /**
      * Is the device 4g capable
      *
@@ -275,6 +304,18 @@ public final class Network {
         return (info != null && info.isConnected());
     }
 
+    /**
+     * Check if there is connectivity that the user is not charged for by volume
+     *
+     * @param ctx the application Context
+     * @return true if the device is connected to an unmetered network
+     */
+    public static boolean isConnectedUnmetered(final Context ctx) {
+        final ConnectivityManager cm = (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo info = cm.getActiveNetworkInfo();
+        return (info != null && info.isConnected() && !ConnectivityManagerCompat.isActiveNetworkMetered(cm));
+    }
+
     /**
      * Check if there is any connectivity to a mobile network
      *
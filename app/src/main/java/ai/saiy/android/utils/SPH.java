@@ -35,6 +35,8 @@ import ai.saiy.android.algorithms.soundex.SoundexHelper;
 import ai.saiy.android.api.SaiyDefaults;
 import ai.saiy.android.api.request.SaiyRequestParams;
 import ai.saiy.android.applications.Installed;
+import ai.saiy.android.audio.PreRoll;
+import ai.saiy.android.cache.speech.SpeechCachePolicy;
 import ai.saiy.android.cognitive.emotion.provider.beyondverbal.containers.BVCredentials;
 import ai.saiy.android.cognitive.motion.provider.google.Motion;
 import ai.saiy.android.command.battery.BatteryInformation;
@@ -44,6 +46,8 @@ import ai.saiy.android.database.DBSpeech;
 import ai.saiy.android.defaults.songrecognition.SongRecognitionProvider;
 import ai.saiy.android.memory.Memory;
 import ai.saiy.android.recognition.provider.android.RecognitionNative;
+import ai.saiy.android.recognition.provider.google.cloud.RecognitionGoogleCloud;
+import ai.saiy.android.recognition.provider.hedge.RecognitionHedge;
 import ai.saiy.android.service.SelfAware;
 import ai.saiy.android.service.helper.SelfAwareConditions;
 import ai.saiy.android.tts.attributes.Gender;
@@ -127,6 +131,15 @@ public class SPH {
     private static final String LAST_USED = "last_used";
     private static final String USED_INCREMENT = "used_increment";
     private static final String MAX_SPEECH_CACHE_SIZE = "max_speech_cache_size";
+    private static final String SPEECH_CACHE_POLICY = "speech_cache_policy";
+    private static final String SPEECH_CACHE_PREWARM = "speech_cache_prewarm";
+    private static final String HOTWORD_PRE_ROLL = "hotword_pre_roll";
+    private static final String SPHINX_ASSETS_VERSION = "sphinx_assets_version";
+    private static final String GOOGLE_CLOUD_BATCH = "google_cloud_batch";
+    private static final String HEDGE_RECOGNITION = "hedge_recognition";
+    private static final String HEDGE_CONFIDENCE = "hedge_confidence_";
+    private static final String HEDGE_BUDGET = "hedge_budget_";
+    private static final String OFFLINE_COMMANDS = "offline_commands";
     private static final String DEFAULT_SONG_RECOGNITION = "default_song_recognition";
     private static final String ANNOUNCE_TASKER = "announce_tasker";
     private static final String ANNOUNCE_NOTIFICATIONS = "announce_notifications";
@@ -395,6 +408,241 @@ public class SPH {
         edit.commit();
     }
 
+    /**
+     * Get the speech cache eviction policy
+     *
+     * @param ctx the application context
+     * @return the {@link SpeechCachePolicy}
+     */
+    public static SpeechCachePolicy getSpeechCachePolicy(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return SpeechCachePolicy.getPolicy(pref.getString(SPEECH_CACHE_POLICY, SpeechCachePolicy.GREEDY_DUAL.name()));
+    }
+
+    /**
+     * Set the speech cache eviction policy
+     *
+     * @param ctx    the application context
+     * @param policy the {@link SpeechCachePolicy}
+     */
+    public static void setSpeechCachePolicy(@NonNull final Context ctx, @NonNull final SpeechCachePolicy policy) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putString(SPEECH_CACHE_POLICY, policy.name());
+        edit.commit();
+    }
+
+    /**
+     * Get the last time the speech cache was pre-warmed
+     *
+     * @param ctx the application context
+     * @return the time in milliseconds
+     */
+    public static long getSpeechCachePrewarm(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getLong(SPEECH_CACHE_PREWARM, 0L);
+    }
+
+    /**
+     * Set the last time the speech cache was pre-warmed
+     *
+     * @param ctx  the application context
+     * @param time the time in milliseconds
+     */
+    public static void setSpeechCachePrewarm(@NonNull final Context ctx, final long time) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putLong(SPEECH_CACHE_PREWARM, time);
+        edit.commit();
+    }
+
+    /**
+     * Get the length of audio to hand over from the hotword detection to the command recognition
+     *
+     * @param ctx the application context
+     * @return the pre-roll length in milliseconds
+     */
+    public static int getHotwordPreRoll(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getInt(HOTWORD_PRE_ROLL, PreRoll.DEFAULT_MILLIS);
+    }
+
+    /**
+     * Set the length of audio to hand over from the hotword detection to the command recognition
+     *
+     * @param ctx    the application context
+     * @param millis the pre-roll length in milliseconds
+     */
+    public static void setHotwordPreRoll(@NonNull final Context ctx, final int millis) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putInt(HOTWORD_PRE_ROLL, millis);
+        edit.commit();
+    }
+
+    /**
+     * Get the app version for which the pocketsphinx assets were last checked against their manifest
+     *
+     * @param ctx the application context
+     * @return the version code, or zero if they have never been synced
+     */
+    public static int getSphinxAssetsVersion(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getInt(SPHINX_ASSETS_VERSION, 0);
+    }
+
+    /**
+     * Set the app version for which the pocketsphinx assets were last checked against their manifest
+     *
+     * @param ctx         the application context
+     * @param versionCode the version code
+     */
+    public static void setSphinxAssetsVersion(@NonNull final Context ctx, final int versionCode) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putInt(SPHINX_ASSETS_VERSION, versionCode);
+        edit.commit();
+    }
+
+    /**
+     * Get the duration of audio to send in each Google Cloud streaming request
+     *
+     * @param ctx the application context
+     * @return the batch duration in milliseconds
+     */
+    public static int getGoogleCloudBatch(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getInt(GOOGLE_CLOUD_BATCH, RecognitionGoogleCloud.DEFAULT_BATCH_MILLIS);
+    }
+
+    /**
+     * Set the duration of audio to send in each Google Cloud streaming request
+     *
+     * @param ctx    the application context
+     * @param millis the batch duration in milliseconds
+     */
+    public static void setGoogleCloudBatch(@NonNull final Context ctx, final int millis) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putInt(GOOGLE_CLOUD_BATCH, millis);
+        edit.commit();
+    }
+
+    /**
+     * Get the provider to race against the default recognition
+     *
+     * @param ctx the application context
+     * @return the name of the provider, or null if recognition is not hedged
+     */
+    public static String getHedgeRecognition(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getString(HEDGE_RECOGNITION, null);
+    }
+
+    /**
+     * Set the provider to race against the default recognition
+     *
+     * @param ctx      the application context
+     * @param provider the name of the provider, or null to stop hedging
+     */
+    public static void setHedgeRecognition(@NonNull final Context ctx, @Nullable final String provider) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putString(HEDGE_RECOGNITION, provider);
+        edit.commit();
+    }
+
+    /**
+     * Get the confidence at which a hedged provider's result is accepted without waiting for the
+     * other provider
+     *
+     * @param ctx      the application context
+     * @param provider the name of the provider
+     * @return the confidence threshold
+     */
+    public static float getHedgeConfidence(@NonNull final Context ctx, @NonNull final String provider) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getFloat(HEDGE_CONFIDENCE + provider, RecognitionHedge.DEFAULT_CONFIDENCE);
+    }
+
+    /**
+     * Set the confidence at which a hedged provider's result is accepted without waiting for the
+     * other provider
+     *
+     * @param ctx        the application context
+     * @param provider   the name of the provider
+     * @param confidence the confidence threshold
+     */
+    public static void setHedgeConfidence(@NonNull final Context ctx, @NonNull final String provider,
+                                          final float confidence) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putFloat(HEDGE_CONFIDENCE + provider, confidence);
+        edit.commit();
+    }
+
+    /**
+     * Get the time a hedged provider has to answer after the end of speech
+     *
+     * @param ctx      the application context
+     * @param provider the name of the provider
+     * @return the latency budget in milliseconds
+     */
+    public static long getHedgeBudget(@NonNull final Context ctx, @NonNull final String provider) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getLong(HEDGE_BUDGET + provider, RecognitionHedge.DEFAULT_BUDGET);
+    }
+
+    /**
+     * Set the time a hedged provider has to answer after the end of speech
+     *
+     * @param ctx      the application context
+     * @param provider the name of the provider
+     * @param millis   the latency budget in milliseconds
+     */
+    public static void setHedgeBudget(@NonNull final Context ctx, @NonNull final String provider,
+                                      final long millis) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putLong(HEDGE_BUDGET + provider, millis);
+        edit.commit();
+    }
+
+    /**
+     * Check if the commands that need no network should be recognised on the device when there is no
+     * network connection
+     *
+     * @param ctx the application context
+     * @return true if the offline commands are enabled
+     */
+    public static boolean getOfflineCommands(@NonNull final Context ctx) {
+        final SharedPreferences pref = getPref(ctx);
+        return pref.getBoolean(OFFLINE_COMMANDS, false);
+    }
+
+    /**
+     * Set whether the commands that need no network should be recognised on the device when there is
+     * no network connection
+     *
+     * @param ctx       the application context
+     * @param condition true to enable the offline commands
+     */
+    public static void setOfflineCommands(@NonNull final Context ctx, final boolean condition) {
+        final SharedPreferences pref = getPref(ctx);
+        final SharedPreferences.Editor edit = getEditor(pref);
+
+        edit.putBoolean(OFFLINE_COMMANDS, condition);
+        edit.commit();
+    }
+
     /**
      * Get the last time the application was used
      *
@@ -95,6 +95,28 @@ public class UtilsFile {
 
     }
 
+    /**
+     * Get the content {@link Uri} of a file in the private storage, which can be granted to another
+     * application
+     *
+     * @param ctx  the application context
+     * @param file the file
+     * @return the content {@link Uri} or null if the file is outside of the shared directories
+     */
+    public static Uri getContentUri(@NonNull final Context ctx, @NonNull final File file) {
+
+        try {
+            return FileProvider.getUriForFile(ctx, FILE_PROVIDER, file);
+        } catch (final IllegalArgumentException e) {
+            if (DEBUG) {
+                MyLog.w(CLS_NAME, "getContentUri IllegalArgumentException");
+                e.printStackTrace();
+            }
+        }
+
+        return null;
+    }
+
     /**
      * Utility to copy the contents of a raw resource to a file
      *
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.utils;
+
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ai.saiy.android.configuration.Endpoints;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.OkUrlFactory;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * The HTTP client shared by every REST integration, so that back to back requests to the same host
+ * reuse a warm connection, rather than each opening its own.
+ * <p>
+ * Connections are pooled and kept alive for {@link #KEEP_ALIVE}, negotiate HTTP/2 where the server
+ * supports it, so concurrent requests to a host share one connection, and responses are
+ * transparently gzip compressed. Calls run on a single dispatcher, and no more than
+ * {@link #MAX_REQUESTS_PER_HOST} requests are in flight to any one host, whether they are made
+ * through the client, through {@link #open(URL)} or through the shared Volley queue in
+ * {@link UtilsVolley}. Requests to an endpoint overridden in {@link Endpoints} are redirected to
+ * its replacement.
+ */
+public final class UtilsHttp {
+
+    private static final boolean DEBUG = MyLog.DEBUG;
+    private static final String CLS_NAME = UtilsHttp.class.getSimpleName();
+
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE = TimeUnit.MINUTES.toMillis(5);
+    private static final long HOST_WAIT = 10000L;
+
+    private static final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+    private static volatile OkHttpClient client;
+    private static volatile OkUrlFactory urlFactory;
+
+    /**
+     * Prevent instantiation
+     */
+    public UtilsHttp() {
+        throw new IllegalArgumentException(Resources.getSystem().getString(android.R.string.no));
+    }
+
+    /**
+     * Get the shared client
+     *
+     * @return the {@link OkHttpClient}
+     */
+    public static OkHttpClient getClient() {
+        if (client == null) {
+            synchronized (UtilsHttp.class) {
+                if (client == null) {
+                    if (DEBUG) {
+                        MyLog.i(CLS_NAME, "getClient: creating");
+                    }
+
+                    final Dispatcher dispatcher = new Dispatcher(new ThreadPoolExecutor(0, MAX_REQUESTS,
+                            60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>()));
+                    dispatcher.setMaxRequests(MAX_REQUESTS);
+                    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+                    client = new OkHttpClient.Builder()
+                            .dispatcher(dispatcher)
+                            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE,
+                                    TimeUnit.MILLISECONDS))
+                            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                            .addInterceptor(new Redirect())
+                            .addInterceptor(new HostLimit())
+                            .build();
+                }
+            }
+        }
+
+        return client;
+    }
+
+    /**
+     * Open a connection through the shared client, in place of {@link URL#openConnection()}. The
+     * connection does not pass through the client's interceptors, so an endpoint overridden in
+     * {@link Endpoints} is resolved here. A replacement may be plain http, so the connection should
+     * not be cast to {@link javax.net.ssl.HttpsURLConnection}.
+     *
+     * @param url the {@link URL} to open
+     * @return the {@link HttpURLConnection}
+     * @throws MalformedURLException if the replacement of an overridden endpoint is not a valid url
+     */
+    public static HttpURLConnection open(@NonNull final URL url) throws MalformedURLException {
+        if (urlFactory == null) {
+            synchronized (UtilsHttp.class) {
+                if (urlFactory == null) {
+                    urlFactory = new OkUrlFactory(getClient());
+                }
+            }
+        }
+
+        if (Endpoints.isOverridden()) {
+
+            final String resolved = Endpoints.resolve(url.toString());
+
+            if (!resolved.equals(url.toString())) {
+                if (DEBUG) {
+                    MyLog.i(CLS_NAME, "open: " + url + " -> " + resolved);
+                }
+                return urlFactory.open(new URL(resolved));
+            }
+        }
+
+        return urlFactory.open(url);
+    }
+
+    /**
+     * Sends the requests to an endpoint overridden in {@link Endpoints} to its replacement, such as a
+     * local stand-in server.
+     */
+    private static final class Redirect implements Interceptor {
+
+        @Override
+        public Response intercept(@NonNull final Chain chain) throws IOException {
+
+            final Request request = chain.request();
+
+            if (Endpoints.isOverridden()) {
+
+                final String url = request.url().toString();
+                final String resolved = Endpoints.resolve(url);
+
+                if (!resolved.equals(url)) {
+                    final HttpUrl httpUrl = HttpUrl.parse(resolved);
+                    if (httpUrl != null) {
+                        if (DEBUG) {
+                            MyLog.i(CLS_NAME, "Redirect: " + url + " -> " + httpUrl);
+                        }
+                        return chain.proceed(request.newBuilder().url(httpUrl).build());
+                    }
+                }
+            }
+
+            return chain.proceed(request);
+        }
+    }
+
+    /**
+     * Limits the requests in flight to each host. The dispatcher only limits the calls it runs
+     * itself, whereas this also covers the calls executed on the caller's thread. The connections
+     * opened by {@link #open(URL)} are run by the dispatcher, which replaces the client's
+     * interceptors with its own, so they are limited by the dispatcher alone.
+     */
+    private static final class HostLimit implements Interceptor {
+
+        @Override
+        public Response intercept(@NonNull final Chain chain) throws IOException {
+
+            final String host = chain.request().url().host();
+
+            Semaphore semaphore = hosts.get(host);
+            if (semaphore == null) {
+                final Semaphore created = new Semaphore(MAX_REQUESTS_PER_HOST, true);
+                semaphore = hosts.putIfAbsent(host, created);
+                if (semaphore == null) {
+                    semaphore = created;
+                }
+            }
+
+            try {
+                if (!semaphore.tryAcquire(HOST_WAIT, TimeUnit.MILLISECONDS)) {
+                    throw new InterruptedIOException("too many requests to " + host);
+                }
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException("interrupted waiting for " + host);
+            }
+
+            try {
+                return chain.proceed(chain.request());
+            } finally {
+                semaphore.release();
+            }
+        }
+    }
+}
@@ -21,7 +21,14 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 
 import com.android.volley.Cache;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
 import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
 
 /**
  * Created by benrandall76@gmail.com on 08/09/2016.
@@ -30,6 +37,7 @@ import com.android.volley.toolbox.DiskBasedCache;
 public class UtilsVolley {
 
     private static Cache cache;
+    private static RequestQueue requestQueue;
 
     public static Cache getCache(@NonNull final Context ctx) {
 
@@ -39,4 +47,27 @@ public class UtilsVolley {
 
         return cache;
     }
+
+    /**
+     * Get the request queue shared by every Volley request, which makes its connections through
+     * {@link UtilsHttp}. The queue is started on creation and must not be stopped; a request that
+     * is no longer wanted should be cancelled instead.
+     *
+     * @param ctx the application context
+     * @return the started {@link RequestQueue}
+     */
+    public static synchronized RequestQueue getRequestQueue(@NonNull final Context ctx) {
+
+        if (requestQueue == null) {
+            requestQueue = new RequestQueue(getCache(ctx.getApplicationContext()), new BasicNetwork(new HurlStack() {
+                @Override
+                protected HttpURLConnection createConnection(final URL url) throws IOException {
+                    return UtilsHttp.open(url);
+                }
+            }));
+            requestQueue.start();
+        }
+
+        return requestQueue;
+    }
 }
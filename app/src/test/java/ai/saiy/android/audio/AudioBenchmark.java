@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Times a stage of the audio path over a known duration of audio, and counts the bytes it allocates
+ * on the calling thread, to compare against the budgets in audio_baseline.properties. A budget can
+ * be overridden with a system property of the same name, to tighten it locally or relax it on a
+ * slow machine.
+ */
+public final class AudioBenchmark {
+
+    private static final String BASELINE = "audio_baseline.properties";
+    private static final int WARM_UP = 3;
+
+    private static Properties baseline;
+
+    private AudioBenchmark() {
+    }
+
+    public static final class Result {
+
+        public final String name;
+        public final double realTime;
+        public final double allocatedPerSecond;
+
+        Result(final String name, final double realTime, final double allocatedPerSecond) {
+            this.name = name;
+            this.realTime = realTime;
+            this.allocatedPerSecond = allocatedPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %.0fx real time, %.0f bytes allocated per second of audio",
+                    name, realTime, allocatedPerSecond);
+        }
+    }
+
+    /**
+     * Run the stage after warming it up, keeping the fastest of the timed runs
+     *
+     * @param name         the name to report
+     * @param audioSeconds the duration of audio processed by each run
+     * @param runs         the number of timed runs
+     * @param stage        processes the audio once
+     * @return the {@link Result}
+     */
+    public static Result measure(final String name, final double audioSeconds, final int runs,
+                                 final Runnable stage) {
+
+        for (int i = 0; i < WARM_UP; i++) {
+            stage.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        long allocated = Long.MAX_VALUE;
+        long then;
+        long bytes;
+
+        for (int i = 0; i < runs; i++) {
+            bytes = allocatedBytes();
+            then = System.nanoTime();
+            stage.run();
+            best = Math.min(best, System.nanoTime() - then);
+            allocated = Math.min(allocated, allocatedBytes() - bytes);
+        }
+
+        final Result result = new Result(name, audioSeconds * 1000000000D / Math.max(best, 1),
+                isAllocationReported() ? allocated / audioSeconds : -1);
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * @return true if the runtime reports the bytes allocated by each thread
+     */
+    public static boolean isAllocationReported() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean;
+    }
+
+    /**
+     * @return the bytes allocated so far by this thread, or 0 if the runtime does not report it
+     */
+    private static long allocatedBytes() {
+        if (isAllocationReported()) {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Get a budget from the baseline
+     *
+     * @param key the name of the budget
+     * @return the value
+     */
+    public static double budget(final String key) {
+        final String override = System.getProperty(key);
+        if (override != null) {
+            return Double.parseDouble(override);
+        }
+        return Double.parseDouble(getBaseline().getProperty(key));
+    }
+
+    private static synchronized Properties getBaseline() {
+        if (baseline == null) {
+            baseline = new Properties();
+            final InputStream in = AudioBenchmark.class.getResourceAsStream(BASELINE);
+            try {
+                baseline.load(in);
+                in.close();
+            } catch (final IOException | NullPointerException e) {
+                throw new IllegalStateException("missing " + BASELINE, e);
+            }
+        }
+        return baseline;
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ai.saiy.android.audio.capture.AudioRing;
+import ai.saiy.android.audio.capture.IAudioConsumer;
+import ai.saiy.android.audio.pause.PauseDetector;
+import ai.saiy.android.audio.pause.PauseListener;
+import ai.saiy.android.files.FileCreator;
+import ai.saiy.android.utils.MyLog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays WAV fixtures through each stage of the audio path in capture sized frames, checking the
+ * output is correct, and that throughput, allocation and end point accuracy stay within the budgets
+ * in audio_baseline.properties. Each measurement is printed, so the effect of a change to the audio
+ * path can be read from the test output. The fixtures are synthesised by {@link WavFixture}, as the
+ * project has no recorded utterance to replay.
+ */
+public class AudioPathRegressionTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int NARROWBAND = 8000;
+    private static final int FRAME_BYTES = 3200;
+    private static final int RUNS = 5;
+
+    private static byte[] utterance;
+    private static double seconds;
+
+    @BeforeClass
+    public static void setUp() {
+        MyLog.DEBUG = false;
+
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 60);
+        for (int i = 0; i < 5; i++) {
+            fixture.noise(400).speech(1200, 6000).noise(400);
+        }
+
+        utterance = fixture.toPcm();
+        seconds = utterance.length / (SAMPLE_RATE * 2D);
+    }
+
+    @Test
+    public void pauseDetectorEndPoints() {
+
+        final WavFixture[] fixtures = {
+                new WavFixture(SAMPLE_RATE, 60).noise(500).speech(1500, 6000).noise(2000),
+                new WavFixture(SAMPLE_RATE, 30).noise(300).speech(2500, 3000).noise(2000),
+                new WavFixture(SAMPLE_RATE, 900).noise(500).speech(1500, 9000).noise(2000),
+                new WavFixture(SAMPLE_RATE, 60).noise(500).speech(800, 6000).noise(300).speech(800, 6000)
+                        .noise(2000),
+                new WavFixture(8000, 60).noise(500).speech(1500, 6000).noise(2000)
+        };
+
+        long worst = 0;
+        for (final WavFixture fixture : fixtures) {
+            final byte[] wav = fixture.toWav();
+            final long endpoint = endPoint(wav, WavFixture.getSampleRate(wav), fixture.getSampleRate() / 5);
+            worst = Math.max(worst, Math.abs(endpoint - fixture.getSpeechEnd()
+                    - PauseDetector.DEFAULT_END_SILENCE));
+        }
+
+        System.out.println("pause detector: worst end point error " + worst + "ms");
+        assertTrue("end point error " + worst, worst <= AudioBenchmark.budget("pause.endpoint.error.max"));
+    }
+
+    @Test
+    public void pauseDetectorCost() {
+
+        final byte[] frame = new byte[FRAME_BYTES];
+        final PauseListener listener = new PauseListener() {
+            @Override
+            public void onPauseDetected() {
+            }
+        };
+
+        final AudioBenchmark.Result result = AudioBenchmark.measure("pause detector", seconds, RUNS, new Runnable() {
+            @Override
+            public void run() {
+                final PauseDetector detector = new PauseDetector(listener, SAMPLE_RATE, 1, Long.MAX_VALUE / 2);
+                detector.begin();
+                for (int offset = 0; offset + FRAME_BYTES <= utterance.length; offset += FRAME_BYTES) {
+                    System.arraycopy(utterance, offset, frame, 0, FRAME_BYTES);
+                    detector.addLength(frame, FRAME_BYTES);
+                    detector.monitor();
+                }
+            }
+        });
+
+        assertBudget(result, "pause");
+    }
+
+    @Test
+    public void resamplerStreamsWithoutAllocating() {
+
+        final Resampler resampler = new Resampler(SAMPLE_RATE, NARROWBAND);
+        final short[] samples = new short[FRAME_BYTES / 2];
+        final short[] output = new short[resampler.getMaxOutputLength(samples.length)];
+        final byte[] frame = new byte[FRAME_BYTES];
+        final byte[] bytes = new byte[output.length * 2];
+        final byte[] streamed = new byte[utterance.length];
+        final int[] length = new int[1];
+
+        final AudioBenchmark.Result result = AudioBenchmark.measure("resampler 16k to 8k", seconds, RUNS,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        resampler.reset();
+                        length[0] = 0;
+                        int count;
+                        for (int offset = 0; offset + FRAME_BYTES <= utterance.length; offset += FRAME_BYTES) {
+                            System.arraycopy(utterance, offset, frame, 0, FRAME_BYTES);
+                            AudioConversion.toShorts(frame, FRAME_BYTES, samples);
+                            count = resampler.process(samples, samples.length, output);
+                            count = AudioConversion.toBytes(output, count, bytes);
+                            System.arraycopy(bytes, 0, streamed, length[0], count);
+                            length[0] += count;
+                        }
+                    }
+                });
+
+        final byte[] whole = AudioConversion.resample(utterance, SAMPLE_RATE, NARROWBAND);
+        assertArrayEquals(whole, Arrays.copyOf(streamed, length[0]));
+        assertBudget(result, "resampler");
+    }
+
+    @Test
+    public void resamplerFrequencyResponse() {
+
+        final int[][] conversions = {
+                {16000, 8000},
+                {8000, 16000},
+                {44100, 16000},
+                {48000, 16000}
+        };
+
+        int lower;
+        double passBand;
+        double alias;
+        for (final int[] conversion : conversions) {
+            lower = Math.min(conversion[0], conversion[1]);
+
+            passBand = gain(conversion[0], conversion[1], lower / 8);
+            System.out.println(String.format(Locale.US, "resampler %d to %d: pass band %.2fdB",
+                    conversion[0], conversion[1], passBand));
+            assertTrue("pass band " + passBand, Math.abs(passBand)
+                    <= AudioBenchmark.budget("resampler.passband.max"));
+
+            if (conversion[1] < conversion[0]) {
+                // A tone between the two Nyquist frequencies, which would otherwise fold into the output
+                alias = gain(conversion[0], conversion[1], lower / 2 + lower / 4);
+                System.out.println(String.format(Locale.US, "resampler %d to %d: alias %.1fdB",
+                        conversion[0], conversion[1], alias));
+                assertTrue("alias " + alias, alias <= AudioBenchmark.budget("resampler.alias.max"));
+            }
+        }
+    }
+
+    @Test
+    public void speechCodecRoundTrip() {
+
+        final byte[] encoded = SpeechCodec.encode(utterance);
+        final byte[] decoded = new byte[SpeechCodec.getDecodedLength(encoded)];
+
+        final AudioBenchmark.Result encode = AudioBenchmark.measure("codec encode", seconds, RUNS, new Runnable() {
+            @Override
+            public void run() {
+                SpeechCodec.encode(utterance);
+            }
+        });
+
+        final AudioBenchmark.Result decode = AudioBenchmark.measure("codec decode", seconds, RUNS, new Runnable() {
+            @Override
+            public void run() {
+                SpeechCodec.decode(encoded, decoded, 0);
+            }
+        });
+
+        assertEquals(utterance.length, decoded.length);
+
+        final double snr = snr(utterance, decoded);
+        final double ratio = (double) utterance.length / encoded.length;
+        System.out.println(String.format("codec: ratio %.2f, snr %.1fdB", ratio, snr));
+
+        // The compression the codec replaced, for comparison
+        final byte[] gzip = AudioCompression.gzip(utterance);
+        final AudioBenchmark.Result gzipEncode = AudioBenchmark.measure("gzip encode", seconds, RUNS,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        AudioCompression.gzip(utterance);
+                    }
+                });
+
+        AudioBenchmark.measure("gzip decode", seconds, RUNS, new Runnable() {
+            @Override
+            public void run() {
+                AudioCompression.gunzip(gzip);
+            }
+        });
+
+        final double gzipRatio = (double) utterance.length / gzip.length;
+        System.out.println(String.format("gzip: ratio %.2f", gzipRatio));
+
+        assertTrue("ratio " + ratio + " gzip " + gzipRatio, ratio > gzipRatio);
+        assertTrue(encode + " " + gzipEncode, encode.realTime > gzipEncode.realTime);
+        assertTrue("snr " + snr, snr >= AudioBenchmark.budget("codec.snr.min"));
+        assertTrue(encode.realTime >= AudioBenchmark.budget("codec.encode.realtime.min"));
+        assertBudget(decode, "codec.decode");
+    }
+
+    @Test
+    public void speechCodecOnlyEncodesMono16Bit() {
+
+        final byte[] wav = new WavFixture(SAMPLE_RATE, 60).noise(200).speech(500, 6000).toWav();
+        assertTrue(SpeechCodec.canEncode(wav));
+        assertTrue(SpeechCodec.canEncode(utterance));
+
+        final byte[] stereo = wav.clone();
+        stereo[22] = 2;
+        assertFalse(SpeechCodec.canEncode(stereo));
+
+        final byte[] eightBit = wav.clone();
+        eightBit[34] = 8;
+        assertFalse(SpeechCodec.canEncode(eightBit));
+
+        // Samples that would be lost, as the data chunk is followed by another
+        final byte[] trailing = Arrays.copyOf(wav, wav.length + 12);
+        System.arraycopy("LIST".getBytes(), 0, trailing, wav.length, 4);
+        trailing[wav.length + 4] = 4;
+        assertFalse(SpeechCodec.canEncode(trailing));
+
+        // A chunk before the data is kept in the stored header
+        final byte[] list = new byte[wav.length + 12];
+        System.arraycopy(wav, 0, list, 0, 36);
+        System.arraycopy("LIST".getBytes(), 0, list, 36, 4);
+        list[40] = 4;
+        System.arraycopy(wav, 36, list, 48, wav.length - 36);
+        assertTrue(SpeechCodec.canEncode(list));
+
+        final byte[] decoded = SpeechCodec.decode(SpeechCodec.encode(list));
+        assertEquals(list.length, decoded.length);
+        assertArrayEquals(Arrays.copyOf(list, 56), Arrays.copyOf(decoded, 56));
+        assertTrue(snr(Arrays.copyOfRange(list, 56, list.length),
+                Arrays.copyOfRange(decoded, 56, decoded.length)) >= AudioBenchmark.budget("codec.snr.min"));
+    }
+
+    @Test
+    public void ringDeliversEveryFrame() {
+
+        final AtomicLong first = new AtomicLong();
+        final AtomicLong second = new AtomicLong();
+
+        final AudioBenchmark.Result result = AudioBenchmark.measure("ring", seconds, RUNS, new Runnable() {
+            @Override
+            public void run() {
+                first.set(0);
+                second.set(0);
+
+                final AudioRing ring = new AudioRing(FRAME_BYTES, 8);
+                ring.addConsumer("first", new Checksum(first), AudioRing.BackPressure.BLOCK);
+                ring.addConsumer("second", new Checksum(second), AudioRing.BackPressure.BLOCK);
+
+                byte[] frame;
+                for (int offset = 0; offset + FRAME_BYTES <= utterance.length; offset += FRAME_BYTES) {
+                    frame = ring.claim();
+                    System.arraycopy(utterance, offset, frame, 0, FRAME_BYTES);
+                    ring.publish(FRAME_BYTES);
+                }
+
+                ring.close();
+                ring.await(2000);
+            }
+        });
+
+        final long expected = checksum(utterance, 0, utterance.length - (utterance.length % FRAME_BYTES), 0);
+        assertEquals(expected, first.get());
+        assertEquals(expected, second.get());
+        assertTrue(result.realTime >= AudioBenchmark.budget("ring.realtime.min"));
+    }
+
+    @Test
+    public void ringNeverDeliversTornFrames() {
+
+        final int frames = 2000;
+        final AtomicLong delivered = new AtomicLong();
+        final AtomicLong torn = new AtomicLong();
+        final AtomicLong blocked = new AtomicLong();
+
+        final AudioRing ring = new AudioRing(FRAME_BYTES, 4);
+        ring.addConsumer("slow", new IAudioConsumer() {
+            @Override
+            public void onFrame(final byte[] frame, final int length) {
+                for (int i = 1; i < length; i++) {
+                    if (frame[i] != frame[0]) {
+                        torn.incrementAndGet();
+                        break;
+                    }
+                }
+                delivered.incrementAndGet();
+                Thread.yield();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, AudioRing.BackPressure.DROP);
+        ring.addConsumer("every", new IAudioConsumer() {
+
+            private byte expected;
+
+            @Override
+            public void onFrame(final byte[] frame, final int length) {
+                if (frame[0] == expected && frame[length - 1] == expected) {
+                    blocked.incrementAndGet();
+                }
+                expected++;
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        }, AudioRing.BackPressure.BLOCK);
+
+        byte[] frame;
+        for (int i = 0; i < frames; i++) {
+            frame = ring.claim();
+            Arrays.fill(frame, (byte) i);
+            ring.publish(FRAME_BYTES);
+        }
+
+        ring.close();
+        assertTrue(ring.await(5000));
+
+        System.out.println("ring drop: delivered " + delivered.get() + " of " + frames);
+        assertEquals(0, torn.get());
+        assertTrue(delivered.get() > 0);
+        assertEquals(frames, blocked.get());
+    }
+
+    @Test
+    public void preRollKeepsCommandThroughHold() {
+
+        PreRoll.open(SAMPLE_RATE, PreRoll.DEFAULT_MILLIS);
+
+        final short[] buffer = new short[FRAME_BYTES / 2];
+        final int hotwordFrames = SAMPLE_RATE / buffer.length;
+        final int commandFrames = 4 * SAMPLE_RATE / buffer.length;
+        short sample = 0;
+
+        for (int i = 0; i < hotwordFrames; i++) {
+            for (int j = 0; j < buffer.length; j++) {
+                buffer[j] = sample++;
+            }
+            PreRoll.write(buffer, buffer.length);
+        }
+
+        PreRoll.mark();
+        assertTrue(PreRoll.hold());
+
+        final short first = sample;
+
+        for (int i = 0; i < commandFrames; i++) {
+            for (int j = 0; j < buffer.length; j++) {
+                buffer[j] = sample++;
+            }
+            PreRoll.write(buffer, buffer.length);
+        }
+
+        final Thread capture = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (PreRoll.isHolding()) {
+                    Thread.yield();
+                }
+                PreRoll.close();
+            }
+        });
+        capture.start();
+
+        final byte[] taken = PreRoll.take(SAMPLE_RATE);
+        assertEquals(commandFrames * buffer.length * 2, taken.length);
+
+        for (int i = 0; i < taken.length / 2; i++) {
+            assertEquals((short) (first + i), (short) ((taken[i * 2] & 0xff) | (taken[i * 2 + 1] << 8)));
+        }
+    }
+
+    @Test
+    public void fileCreatorWritesWav() throws IOException {
+
+        final File directory = new File(System.getProperty("java.io.tmpdir"));
+        final File[] file = new File[1];
+        final boolean[] success = new boolean[1];
+        final byte[] frame = new byte[FRAME_BYTES];
+
+        final AudioBenchmark.Result result = AudioBenchmark.measure("file", seconds, RUNS, new Runnable() {
+            @Override
+            public void run() {
+                if (file[0] != null) {
+                    file[0].delete();
+                }
+
+                final FileCreator creator = new FileCreator(directory, 1, SAMPLE_RATE, 16);
+                file[0] = creator.getDefaultFile();
+
+                for (int offset = 0; offset < utterance.length; offset += FRAME_BYTES) {
+                    final int length = Math.min(FRAME_BYTES, utterance.length - offset);
+                    System.arraycopy(utterance, offset, frame, 0, length);
+                    creator.passBuffer(frame, length);
+                }
+
+                success[0] = creator.completeWrite();
+            }
+        });
+
+        assertTrue(success[0]);
+
+        final RandomAccessFile written = new RandomAccessFile(file[0], "r");
+        final byte[] wav = new byte[(int) written.length()];
+        written.readFully(wav);
+        written.close();
+        file[0].delete();
+
+        final int[] data = WavFixture.findData(wav);
+        assertEquals(SAMPLE_RATE, WavFixture.getSampleRate(wav));
+        assertEquals(1, WavFixture.getChannels(wav));
+        assertEquals(utterance.length, data[1]);
+        assertArrayEquals(utterance, Arrays.copyOfRange(wav, data[0], data[0] + data[1]));
+        assertTrue(result.realTime >= AudioBenchmark.budget("file.realtime.min"));
+    }
+
+    private static void assertBudget(final AudioBenchmark.Result result, final String stage) {
+        assertTrue(result.toString(), result.realTime >= AudioBenchmark.budget(stage + ".realtime.min"));
+        if (result.allocatedPerSecond >= 0) {
+            assertTrue(result.toString(), result.allocatedPerSecond
+                    <= AudioBenchmark.budget(stage + ".alloc.max"));
+        }
+    }
+
+    private static long endPoint(final byte[] wav, final int sampleRate, final int frameBytes) {
+
+        final PauseDetector detector = new PauseDetector(new PauseListener() {
+            @Override
+            public void onPauseDetected() {
+            }
+        }, sampleRate, 1, PauseDetector.DEFAULT_PAUSE_IGNORE_TIME);
+        detector.setEndSilence(PauseDetector.DEFAULT_END_SILENCE);
+        detector.begin();
+
+        final int[] data = WavFixture.findData(wav);
+        final byte[] frame = new byte[frameBytes];
+        final int end = data[0] + data[1];
+        int length;
+
+        for (int offset = data[0]; offset < end && !detector.hasDetected(); offset += length) {
+            length = Math.min(frameBytes, end - offset);
+            System.arraycopy(wav, offset, frame, 0, length);
+            detector.addLength(frame, length);
+            detector.monitor();
+        }
+
+        return detector.getEndpointMillis();
+    }
+
+    /**
+     * Measure the level of a one second tone after resampling
+     *
+     * @return the level in decibels relative to the input
+     */
+    private static double gain(final int inputRate, final int outputRate, final int frequency) {
+
+        final short[] input = new short[inputRate];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (short) (16000 * Math.sin(2 * Math.PI * frequency * i / inputRate));
+        }
+
+        final Resampler resampler = new Resampler(inputRate, outputRate);
+        final short[] output = new short[resampler.getMaxOutputLength(input.length)];
+        final int count = resampler.process(input, input.length, output);
+
+        // Skip the filter delay at the start
+        return 20 * Math.log10(rms(output, count / 10, count) / rms(input, 0, input.length));
+    }
+
+    private static double rms(final short[] samples, final int from, final int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) samples[i] * samples[i];
+        }
+        // No quieter than half of one bit, once rounded to 16 bit
+        return Math.max(Math.sqrt(sum / Math.max(to - from, 1)), 0.5);
+    }
+
+    private static double snr(final byte[] reference, final byte[] actual) {
+        double signal = 0;
+        double noise = 0;
+        int expected;
+        for (int i = 0; i + 1 < reference.length; i += 2) {
+            expected = (short) ((reference[i] & 0xff) | (reference[i + 1] << 8));
+            signal += (double) expected * expected;
+            noise += Math.pow(expected - (short) ((actual[i] & 0xff) | (actual[i + 1] << 8)), 2);
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1));
+    }
+
+    private static long checksum(final byte[] bytes, final int offset, final int length, final long seed) {
+        long sum = seed;
+        for (int i = offset; i < offset + length; i++) {
+            sum = sum * 31 + bytes[i];
+        }
+        return sum;
+    }
+
+    private static final class Checksum implements IAudioConsumer {
+
+        private final AtomicLong sum;
+
+        Checksum(final AtomicLong sum) {
+            this.sum = sum;
+        }
+
+        @Override
+        public void onFrame(final byte[] frame, final int length) {
+            sum.set(checksum(frame, 0, length, sum.get()));
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
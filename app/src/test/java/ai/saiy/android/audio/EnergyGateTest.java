@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ai.saiy.android.utils.MyLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays WAV fixtures through the {@link EnergyGate} in hotword capture sized buffers, and checks
+ * that only the audio around the speech is passed on.
+ */
+public class EnergyGateTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_SAMPLES = 6400;
+    private static final int WINDOW_SAMPLES = 160;
+    private static final long TOLERANCE = 60;
+
+    private static class Result implements EnergyGate.Sink {
+
+        private long passed;
+        private long first = -1;
+        private long end;
+        private int openings;
+
+        @Override
+        public void write(final short[] samples, final int length) {
+            if (first < 0) {
+                first = end - length;
+            }
+            passed += length;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MyLog.DEBUG = false;
+    }
+
+    @Test
+    public void closedOnBackgroundNoise() {
+        final Result result = replay(new WavFixture(SAMPLE_RATE, 60).noise(5000).toPcm(), FRAME_SAMPLES);
+
+        assertEquals(0, result.openings);
+        assertEquals(0, result.passed);
+    }
+
+    @Test
+    public void closedOnLoudBackgroundNoise() {
+        final Result result = replay(new WavFixture(SAMPLE_RATE, 900).noise(5000).toPcm(), FRAME_SAMPLES);
+
+        assertEquals(0, result.openings);
+        assertEquals(0, result.passed);
+    }
+
+    @Test
+    public void passesSpeechWithPreRoll() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 60).noise(2000).speech(1000, 6000).noise(3000);
+        final Result result = replay(fixture.toPcm(), WINDOW_SAMPLES);
+
+        assertEquals(1, result.openings);
+        assertNear(2000 - EnergyGate.DEFAULT_PRE_ROLL, result.first * 1000 / SAMPLE_RATE);
+        assertNear(EnergyGate.DEFAULT_PRE_ROLL + 1000 + EnergyGate.DEFAULT_HANGOVER,
+                result.passed * 1000 / SAMPLE_RATE);
+    }
+
+    @Test
+    public void passesSpeechOverLoudBackground() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 900).noise(2000).speech(1000, 9000).noise(3000);
+        final Result result = replay(fixture.toPcm(), FRAME_SAMPLES);
+
+        assertEquals(1, result.openings);
+        assertTrue(result.passed * 1000 / SAMPLE_RATE >= 1000);
+        assertTrue(result.passed * 1000 / SAMPLE_RATE < 3000);
+    }
+
+    @Test
+    public void shortGapsKeepGateOpen() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 60).noise(2000).speech(500, 6000).noise(300)
+                .speech(500, 6000).noise(3000);
+        final Result result = replay(fixture.toPcm(), FRAME_SAMPLES);
+
+        assertEquals(1, result.openings);
+    }
+
+    @Test
+    public void independentOfBufferSize() {
+        final byte[] pcm = new WavFixture(SAMPLE_RATE, 60).noise(2000).speech(1000, 6000).noise(3000).toPcm();
+        final Result small = replay(pcm, 160);
+        final Result large = replay(pcm, 8192);
+
+        assertEquals(small.openings, large.openings);
+        assertEquals(small.passed, large.passed);
+    }
+
+    @Test
+    public void resetRecalibrates() {
+        final EnergyGate gate = new EnergyGate(SAMPLE_RATE, EnergyGate.DEFAULT_PRE_ROLL,
+                EnergyGate.DEFAULT_HANGOVER);
+        replay(gate, new WavFixture(SAMPLE_RATE, 60).noise(1000).speech(1000, 6000).toPcm(), FRAME_SAMPLES);
+        assertTrue(gate.isOpen());
+
+        gate.reset();
+        final Result result = replay(gate, new WavFixture(SAMPLE_RATE, 60).noise(3000).toPcm(), FRAME_SAMPLES);
+
+        assertFalse(gate.isOpen());
+        assertEquals(0, result.passed);
+        assertEquals(0, gate.getMillisPassed());
+        assertEquals(3000, gate.getMillisIn());
+    }
+
+    private static void assertNear(final long expected, final long actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= TOLERANCE);
+    }
+
+    private static Result replay(final byte[] pcm, final int frameSamples) {
+        final EnergyGate gate = new EnergyGate(SAMPLE_RATE, EnergyGate.DEFAULT_PRE_ROLL,
+                EnergyGate.DEFAULT_HANGOVER);
+        gate.reset();
+        return replay(gate, pcm, frameSamples);
+    }
+
+    private static Result replay(final EnergyGate gate, final byte[] pcm, final int frameSamples) {
+
+        final Result result = new Result();
+        final short[] frame = new short[frameSamples];
+        final int samples = pcm.length / 2;
+        int offset = 0;
+        int length;
+
+        while (offset < samples) {
+            length = Math.min(frameSamples, samples - offset);
+            for (int i = 0; i < length; i++) {
+                frame[i] = (short) ((pcm[2 * (offset + i)] & 0xff) | (pcm[2 * (offset + i) + 1] << 8));
+            }
+
+            result.end = offset + length;
+            gate.process(frame, length, result);
+            offset += length;
+        }
+
+        result.openings = gate.getOpenings();
+        return result;
+    }
+}
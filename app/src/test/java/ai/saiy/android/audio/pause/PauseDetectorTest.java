@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio.pause;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ai.saiy.android.audio.WavFixture;
+import ai.saiy.android.utils.MyLog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays WAV fixtures through the {@link PauseDetector} in capture sized buffers, and checks the
+ * end point against the known end of speech in each fixture.
+ */
+public class PauseDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_BYTES = 3200;
+    private static final long END_SILENCE = 800;
+    private static final long TOLERANCE = 60;
+
+    private static class Result implements PauseListener {
+
+        private int detections;
+        private long endpoint = -1;
+        private boolean speech;
+
+        @Override
+        public void onPauseDetected() {
+            detections++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MyLog.DEBUG = false;
+    }
+
+    @Test
+    public void endPointFollowsEndOfSpeech() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 60).noise(500).speech(1500, 6000).noise(2000);
+        final Result result = replay(fixture.toWav(), SAMPLE_RATE, FRAME_BYTES);
+
+        assertTrue(result.speech);
+        assertEquals(1, result.detections);
+        assertNear(2000 + END_SILENCE, result.endpoint);
+    }
+
+    @Test
+    public void shortGapsDoNotEndSpeech() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 60).noise(500).speech(800, 6000).noise(300)
+                .speech(800, 6000).noise(400).speech(600, 6000).noise(2000);
+        final Result result = replay(fixture.toWav(), SAMPLE_RATE, FRAME_BYTES);
+
+        assertTrue(result.speech);
+        assertNear(3400 + END_SILENCE, result.endpoint);
+    }
+
+    @Test
+    public void noSpeechWaitsForIgnoreTime() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 60).noise(8000);
+        final Result result = replay(fixture.toWav(), SAMPLE_RATE, FRAME_BYTES);
+
+        assertFalse(result.speech);
+        assertNear(PauseDetector.DEFAULT_PAUSE_IGNORE_TIME, result.endpoint);
+    }
+
+    @Test
+    public void adaptsToLoudBackground() {
+        final WavFixture fixture = new WavFixture(SAMPLE_RATE, 900).noise(500).speech(1500, 9000).noise(2000);
+        final Result result = replay(fixture.toWav(), SAMPLE_RATE, FRAME_BYTES);
+
+        assertTrue(result.speech);
+        assertNear(2000 + END_SILENCE, result.endpoint);
+    }
+
+    @Test
+    public void narrowbandCapture() {
+        final WavFixture fixture = new WavFixture(8000, 60).noise(500).speech(1500, 6000).noise(2000);
+        final Result result = replay(fixture.toWav(), 8000, 1600);
+
+        assertTrue(result.speech);
+        assertNear(2000 + END_SILENCE, result.endpoint);
+    }
+
+    @Test
+    public void independentOfBufferSize() {
+        final byte[] wav = new WavFixture(SAMPLE_RATE, 60).noise(500).speech(1500, 6000).noise(2000).toWav();
+
+        assertEquals(replay(wav, SAMPLE_RATE, 640).endpoint, replay(wav, SAMPLE_RATE, 4096).endpoint);
+    }
+
+    private static void assertNear(final long expected, final long actual) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(expected - actual) <= TOLERANCE);
+    }
+
+    private static Result replay(final byte[] wav, final int sampleRate, final int frameBytes) {
+
+        final Result result = new Result();
+        final PauseDetector detector = new PauseDetector(result, sampleRate, 1,
+                PauseDetector.DEFAULT_PAUSE_IGNORE_TIME);
+        detector.setEndSilence(END_SILENCE);
+        detector.begin();
+
+        final byte[] frame = new byte[frameBytes];
+        int offset = WavFixture.HEADER_LENGTH;
+        int length;
+
+        while (offset < wav.length && !detector.hasDetected()) {
+            length = Math.min(frameBytes, wav.length - offset);
+            System.arraycopy(wav, offset, frame, 0, length);
+            detector.addLength(frame, length);
+            detector.monitor();
+            offset += length;
+        }
+
+        result.endpoint = detector.getEndpointMillis();
+        result.speech = detector.hasSpeechStarted();
+        return result;
+    }
+}
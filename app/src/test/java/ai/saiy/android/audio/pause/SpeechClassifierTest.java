@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.audio.pause;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the classification shared by the {@link PauseDetector} and the
+ * {@link ai.saiy.android.audio.EnergyGate}, on synthetic windows.
+ */
+public class SpeechClassifierTest {
+
+    private static final int WINDOW = 160;
+    private static final double RATIO = 4.0;
+    private static final double MIN_ENERGY = 150 * 150;
+
+    @Test
+    public void calibratesOnFirstWindows() {
+        final SpeechClassifier classifier = new SpeechClassifier(WINDOW, RATIO, MIN_ENERGY, 0.3);
+
+        for (int i = 0; i < 10; i++) {
+            addWindow(classifier, 100 + i * 10, 2);
+            assertTrue(classifier.isCalibrating());
+            assertFalse(classifier.isSpeech());
+        }
+
+        assertEquals(10, classifier.getWindows());
+        assertEquals(21850, classifier.getNoiseFloor(), 1);
+
+        addWindow(classifier, 6000, 2);
+        assertFalse(classifier.isCalibrating());
+        assertTrue(classifier.isSpeech());
+
+        addWindow(classifier, 150, 2);
+        assertFalse(classifier.isSpeech());
+    }
+
+    @Test
+    public void fricativesNeedHighCrossingRate() {
+        final SpeechClassifier voiced = new SpeechClassifier(WINDOW, RATIO, MIN_ENERGY, 0.3);
+        final SpeechClassifier energyOnly = new SpeechClassifier(WINDOW, RATIO, MIN_ENERGY,
+                SpeechClassifier.NO_FRICATIVES);
+
+        for (int i = 0; i < 10; i++) {
+            addWindow(voiced, 200, 2);
+            addWindow(energyOnly, 200, 2);
+        }
+
+        addWindow(voiced, 300, 1);
+        assertTrue(voiced.isSpeech());
+
+        addWindow(voiced, 300, 40);
+        assertFalse(voiced.isSpeech());
+
+        addWindow(energyOnly, 300, 1);
+        assertFalse(energyOnly.isSpeech());
+    }
+
+    @Test
+    public void floorMovesOnlyWhenAsked() {
+        final SpeechClassifier classifier = new SpeechClassifier(WINDOW, RATIO, MIN_ENERGY, 0.3);
+
+        for (int i = 0; i < 10; i++) {
+            addWindow(classifier, 400, 2);
+        }
+
+        addWindow(classifier, 100, 2);
+        assertEquals(400 * 400, classifier.getNoiseFloor(), 1);
+
+        classifier.adapt();
+        assertEquals(400 * 400 - (400 * 400 - 100 * 100) * 0.2, classifier.getNoiseFloor(), 1);
+
+        classifier.reset();
+        assertEquals(0, classifier.getWindows());
+        assertEquals(0, classifier.getNoiseFloor(), 0);
+    }
+
+    /**
+     * Add a square wave window
+     *
+     * @param amplitude the amplitude of the wave
+     * @param period    the samples in each half cycle
+     */
+    private static void addWindow(final SpeechClassifier classifier, final int amplitude, final int period) {
+        for (int i = 0; i < WINDOW; i++) {
+            final boolean complete = classifier.add((short) ((i / period) % 2 == 0 ? amplitude : -amplitude));
+            assertEquals(i == WINDOW - 1, complete);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.mock;
+
+import java.util.Random;
+
+/**
+ * The latency, jitter and failures a stand-in server adds to each response. The delays and failures
+ * are drawn from a seeded generator, so a run can be repeated exactly.
+ */
+public final class FaultProfile {
+
+    public static final FaultProfile NONE = new FaultProfile(0L, 0L, 0D, 0L);
+
+    private final long latency;
+    private final long jitter;
+    private final double failureRate;
+    private final Random random;
+
+    /**
+     * @param latency     the minimum delay before each response, in milliseconds
+     * @param jitter      the most added to the delay at random, in milliseconds
+     * @param failureRate the fraction of requests that fail, from 0 to 1
+     * @param seed        the seed of the generator
+     */
+    public FaultProfile(final long latency, final long jitter, final double failureRate, final long seed) {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the delay before the next response, in milliseconds
+     */
+    public synchronized long nextDelay() {
+        return jitter > 0 ? latency + (long) (random.nextDouble() * jitter) : latency;
+    }
+
+    /**
+     * @return true if the next request should fail
+     */
+    public synchronized boolean nextFailure() {
+        return failureRate > 0 && random.nextDouble() < failureRate;
+    }
+
+    /**
+     * @return true if a failing request should drop the connection, rather than return an error
+     */
+    public synchronized boolean nextDisconnect() {
+        return random.nextBoolean();
+    }
+}
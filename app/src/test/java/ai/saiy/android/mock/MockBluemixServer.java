@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.mock;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.saiy.android.configuration.BluemixConfiguration;
+import ai.saiy.android.configuration.Endpoints;
+
+/**
+ * Stands in for the IBM Watson speech WebSocket. It follows the protocol the recognition relies on:
+ * a {@code start} action is answered with the listening state, an interim result is sent once
+ * {@link #INTERIM_BYTES} of audio have arrived, and the final result once the audio pauses for
+ * {@link #PAUSE}, after the delay of the current {@link FaultProfile}. A {@code stop} action ends the
+ * utterance and the server reports it is listening again, so the connection can be reused. A
+ * failing utterance is answered with an error.
+ * <p>
+ * The connection is made without TLS, once {@link #standIn()} has overridden the endpoint.
+ */
+public final class MockBluemixServer extends WebSocketServer implements Closeable {
+
+    private static final String ACTION = "action";
+    private static final String START = "start";
+    private static final String STOP = "stop";
+    private static final String LISTENING = "{\"state\":\"listening\"}";
+    private static final String ERROR = "{\"error\":\"Session timed out due to inactivity\"}";
+    private static final String INTERIM = "bluemix_interim.json";
+    private static final String FINAL = "bluemix_final.json";
+
+    private static final int INTERIM_BYTES = 16000;
+    private static final long PAUSE = 250L;
+    private static final long BIND_WAIT = 5000L;
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+    private final Map<WebSocket, Utterance> utterances = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger results = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final String interim = Recordings.load(INTERIM);
+    private final String result = Recordings.load(FINAL);
+    private final int port;
+
+    private volatile FaultProfile faults = FaultProfile.NONE;
+
+    /**
+     * The state of the utterance in progress on a connection
+     */
+    private static final class Utterance {
+
+        private int bytes;
+        private boolean interimSent;
+        private boolean finalSent;
+        private ScheduledFuture<?> pause;
+    }
+
+    public MockBluemixServer() throws IOException {
+        this(getFreePort());
+    }
+
+    private MockBluemixServer(final int port) throws IOException {
+        super(new InetSocketAddress("127.0.0.1", port));
+        this.port = port;
+    }
+
+    private static int getFreePort() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        try {
+            return serverSocket.getLocalPort();
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Start the server, and wait until it accepts connections
+     */
+    public void startAndWait() throws IOException {
+        start();
+
+        final long deadline = System.currentTimeMillis() + BIND_WAIT;
+        while (true) {
+            try {
+                new Socket("127.0.0.1", port).close();
+                return;
+            } catch (final IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (final InterruptedException ie) {
+                    throw new IOException(ie);
+                }
+            }
+        }
+    }
+
+    public void setFaults(final FaultProfile faults) {
+        this.faults = faults;
+    }
+
+    /**
+     * Send the speech connections here, until {@link Endpoints#reset()}
+     */
+    public void standIn() {
+        Endpoints.override(BluemixConfiguration.BLUEMIX_SERVICE_URL, "ws://127.0.0.1:" + port
+                + "/speech-to-text/api");
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    public int getResultCount() {
+        return results.get();
+    }
+
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public void onOpen(final WebSocket conn, final ClientHandshake handshake) {
+        connections.incrementAndGet();
+    }
+
+    @Override
+    public void onClose(final WebSocket conn, final int code, final String reason, final boolean remote) {
+        final Utterance utterance = utterances.remove(conn);
+        if (utterance != null) {
+            synchronized (utterance) {
+                cancelPause(utterance);
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(final WebSocket conn, final String message) {
+
+        final String action;
+        try {
+            action = new JSONObject(message).optString(ACTION);
+        } catch (final JSONException e) {
+            conn.send(ERROR);
+            return;
+        }
+
+        if (START.equals(action)) {
+            utterances.put(conn, new Utterance());
+            conn.send(LISTENING);
+        } else if (STOP.equals(action)) {
+            final Utterance utterance = utterances.remove(conn);
+            if (utterance != null) {
+                synchronized (utterance) {
+                    cancelPause(utterance);
+                    if (!utterance.finalSent && utterance.bytes > 0) {
+                        sendFinal(conn, utterance, true);
+                        return;
+                    }
+                }
+            }
+            conn.send(LISTENING);
+        }
+    }
+
+    @Override
+    public void onMessage(final WebSocket conn, final ByteBuffer message) {
+
+        final Utterance utterance = utterances.get(conn);
+        if (utterance == null) {
+            return;
+        }
+
+        synchronized (utterance) {
+
+            if (utterance.finalSent) {
+                return;
+            }
+
+            utterance.bytes += message.remaining();
+
+            if (!utterance.interimSent && utterance.bytes >= INTERIM_BYTES) {
+                utterance.interimSent = true;
+                conn.send(interim);
+            }
+
+            cancelPause(utterance);
+            utterance.pause = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (utterance) {
+                        if (!utterance.finalSent) {
+                            sendFinal(conn, utterance, false);
+                        }
+                    }
+                }
+            }, PAUSE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Send the final result after the delay of the {@link FaultProfile}, followed by the listening
+     * state if the utterance has been stopped. Must be called holding the lock of the utterance.
+     */
+    private void sendFinal(final WebSocket conn, final Utterance utterance, final boolean stopped) {
+
+        utterance.finalSent = true;
+
+        final FaultProfile faults = this.faults;
+        final boolean fail = faults.nextFailure();
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (conn.isOpen()) {
+                    if (fail) {
+                        failures.incrementAndGet();
+                        conn.send(ERROR);
+                    } else {
+                        results.incrementAndGet();
+                        conn.send(result);
+                    }
+                    if (stopped) {
+                        conn.send(LISTENING);
+                    }
+                }
+            }
+        }, faults.nextDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelPause(final Utterance utterance) {
+        if (utterance.pause != null) {
+            utterance.pause.cancel(false);
+            utterance.pause = null;
+        }
+    }
+
+    @Override
+    public void onError(final WebSocket conn, final Exception ex) {
+        if (conn != null) {
+            utterances.remove(conn);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            stop();
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
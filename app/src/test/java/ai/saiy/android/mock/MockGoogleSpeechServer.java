@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.mock;
+
+import com.google.cloud.speech.v1beta1.SpeechGrpc;
+import com.google.cloud.speech.v1beta1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1beta1.StreamingRecognizeResponse;
+import com.google.protobuf.TextFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.saiy.android.configuration.Endpoints;
+import ai.saiy.android.configuration.GoogleConfiguration;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Stands in for the Google Cloud Speech streaming gRPC service. The recorded responses up to the
+ * first final result are replayed as the audio arrives, one for each {@link #AUDIO_BYTES} received,
+ * and the rest once the client has finished sending, after the delay of the current
+ * {@link FaultProfile}. A failing stream is closed with {@link Status#UNAVAILABLE}.
+ * <p>
+ * The channel connects without TLS once {@link #standIn()} has overridden the endpoint.
+ */
+public final class MockGoogleSpeechServer implements Closeable {
+
+    private static final String RECORDING = "google_streaming.txt";
+    private static final String SEPARATOR = "\n---\n";
+    private static final int AUDIO_BYTES = 8000;
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+    private final List<StreamingRecognizeResponse> responses;
+    private final AtomicInteger streams = new AtomicInteger();
+    private final AtomicInteger results = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private volatile FaultProfile faults = FaultProfile.NONE;
+    private Server server;
+
+    public MockGoogleSpeechServer() throws IOException {
+
+        final List<StreamingRecognizeResponse> responses = new ArrayList<>();
+
+        for (final String message : Recordings.load(RECORDING).split(SEPARATOR)) {
+            final StreamingRecognizeResponse.Builder builder = StreamingRecognizeResponse.newBuilder();
+            TextFormat.merge(message, builder);
+            responses.add(builder.build());
+        }
+
+        this.responses = Collections.unmodifiableList(responses);
+    }
+
+    public void start() throws IOException {
+        server = NettyServerBuilder.forPort(0).addService(new Speech()).build().start();
+    }
+
+    public void setFaults(final FaultProfile faults) {
+        this.faults = faults;
+    }
+
+    /**
+     * Send the speech channel here, until {@link Endpoints#reset()}
+     */
+    public void standIn() {
+        Endpoints.override(GoogleConfiguration.GOOGLE_CLOUD_SPEECH_URL, "http://127.0.0.1:" + server.getPort());
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public int getStreamCount() {
+        return streams.get();
+    }
+
+    public int getResultCount() {
+        return results.get();
+    }
+
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    private final class Speech extends SpeechGrpc.SpeechImplBase {
+
+        @Override
+        public StreamObserver<StreamingRecognizeRequest> streamingRecognize(
+                final StreamObserver<StreamingRecognizeResponse> responseObserver) {
+
+            streams.incrementAndGet();
+
+            return new StreamObserver<StreamingRecognizeRequest>() {
+
+                private int bytes;
+                private int sent;
+
+                @Override
+                public void onNext(final StreamingRecognizeRequest request) {
+                    synchronized (this) {
+                        bytes += request.getAudioContent().size();
+                        while (sent < bytes / AUDIO_BYTES && sent < responses.size()
+                                && !isFinal(responses.get(sent))) {
+                            responseObserver.onNext(responses.get(sent++));
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(final Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+
+                    final FaultProfile faults = MockGoogleSpeechServer.this.faults;
+                    final boolean fail = faults.nextFailure();
+                    final int from;
+                    synchronized (this) {
+                        from = sent;
+                        sent = responses.size();
+                    }
+
+                    executor.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (fail) {
+                                failures.incrementAndGet();
+                                responseObserver.onError(Status.UNAVAILABLE.withDescription("injected failure")
+                                        .asRuntimeException());
+                                return;
+                            }
+
+                            for (int i = from; i < responses.size(); i++) {
+                                responseObserver.onNext(responses.get(i));
+                            }
+                            results.incrementAndGet();
+                            responseObserver.onCompleted();
+                        }
+                    }, faults.nextDelay(), TimeUnit.MILLISECONDS);
+                }
+            };
+        }
+    }
+
+    private static boolean isFinal(final StreamingRecognizeResponse response) {
+        return response.getResultsCount() > 0 && response.getResults(0).getIsFinal();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        if (server != null) {
+            server.shutdownNow();
+        }
+    }
+}
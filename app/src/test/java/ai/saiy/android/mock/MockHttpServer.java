@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.mock;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ai.saiy.android.configuration.Endpoints;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Stands in for the REST and chunked HTTP endpoints of the cloud providers, such as Wit, Wolfram
+ * Alpha and BeyondVerbal. Each route replays a recorded response, sent chunked as the providers do,
+ * after the delay of the current {@link FaultProfile}. A failing request is answered with a server
+ * error or a dropped connection.
+ * <p>
+ * Requests to a provider are sent here once {@link #standIn(String)} has overridden its endpoint.
+ */
+public final class MockHttpServer implements Closeable {
+
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final int CHUNK_SIZE = 256;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final int NOT_FOUND = 404;
+
+    private final MockWebServer server = new MockWebServer();
+    private final TreeMap<String, Route> routes = new TreeMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private volatile FaultProfile faults = FaultProfile.NONE;
+
+    private static final class Route {
+
+        private final String body;
+        private final String contentType;
+
+        Route(final String body, final String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Replay a recording to the requests whose path starts with the prefix. The longest matching
+     * prefix is used.
+     *
+     * @param pathPrefix  the start of the path
+     * @param recording   the name of the recording
+     * @param contentType the content type of the response
+     * @return this server
+     */
+    public MockHttpServer route(final String pathPrefix, final String recording, final String contentType) {
+        synchronized (routes) {
+            routes.put(pathPrefix, new Route(Recordings.load(recording), contentType));
+        }
+        return this;
+    }
+
+    public void setFaults(final FaultProfile faults) {
+        this.faults = faults;
+    }
+
+    public void start() throws IOException {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(final RecordedRequest request) {
+                return respond(request);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return the url of the server, without a trailing slash
+     */
+    public String getUrl() {
+        return "http://" + server.getHostName() + ":" + server.getPort();
+    }
+
+    /**
+     * Send the requests to the endpoint here, until {@link Endpoints#reset()}
+     *
+     * @param endpoint the scheme and host of the provider
+     */
+    public void standIn(final String endpoint) {
+        Endpoints.override(endpoint, getUrl());
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getFailureCount() {
+        return failures.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    private MockResponse respond(final RecordedRequest request) {
+
+        requests.incrementAndGet();
+        bytesReceived.addAndGet(request.getBodySize());
+
+        final FaultProfile faults = this.faults;
+
+        if (faults.nextFailure()) {
+            failures.incrementAndGet();
+            if (faults.nextDisconnect()) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            return new MockResponse().setResponseCode(SERVICE_UNAVAILABLE)
+                    .setHeadersDelay(faults.nextDelay(), TimeUnit.MILLISECONDS);
+        }
+
+        final Route route = getRoute(request.getPath());
+        if (route == null) {
+            return new MockResponse().setResponseCode(NOT_FOUND);
+        }
+
+        return new MockResponse()
+                .setHeader(CONTENT_TYPE, route.contentType)
+                .setChunkedBody(route.body, CHUNK_SIZE)
+                .setHeadersDelay(faults.nextDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    private Route getRoute(final String path) {
+        synchronized (routes) {
+            Route route = null;
+            int length = -1;
+            for (final Map.Entry<String, Route> entry : routes.entrySet()) {
+                if (path != null && path.startsWith(entry.getKey()) && entry.getKey().length() > length) {
+                    route = entry.getValue();
+                    length = entry.getKey().length();
+                }
+            }
+            return route;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2016. Saiy Ltd. All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ai.saiy.android.mock;
+
+import com.google.cloud.speech.v1beta1.RecognitionConfig;
+import com.google.cloud.speech.v1beta1.SpeechGrpc;
+import com.google.cloud.speech.v1beta1.StreamingRecognitionConfig;
+import com.google.cloud.speech.v1beta1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1beta1.StreamingRecognizeResponse;
+import com.google.protobuf.ByteString;
+
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ai.saiy.android.audio.AudioUploader;
+import ai.saiy.android.audio.WavFixture;
+import ai.saiy.android.configuration.BluemixConfiguration;
+import ai.saiy.android.configuration.Endpoints;
+import ai.saiy.android.configuration.GoogleConfiguration;
+import ai.saiy.android.configuration.WitConfiguration;
+import ai.saiy.android.recognition.provider.bluemix.BluemixSession;
+import ai.saiy.android.recognition.provider.bluemix.IWebSocketCallback;
+import ai.saiy.android.recognition.provider.bluemix.mod.TrustAllBluemixWebSocketClient;
+import ai.saiy.android.utils.MyLog;
+import ai.saiy.android.utils.UtilsString;
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.okhttp.OkHttpChannelBuilder;
+import io.grpc.stub.StreamObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives the provider clients against the local stand-in servers, with the endpoints overridden as
+ * they would be on a CI box, and reports the throughput and tail latency of each. The latency is
+ * measured from the end of the audio to the final result, which is what the user waits for.
+ */
+public class StandInLoadTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_SECOND = SAMPLE_RATE * 2;
+    private static final int FRAME_BYTES = 3200;
+    private static final int THREADS = 4;
+    private static final long TIMEOUT = 10000L;
+    private static final String TRANSCRIPT = "what time is it";
+
+    private static byte[] utterance;
+
+    @BeforeClass
+    public static void setUpClass() {
+        MyLog.DEBUG = false;
+        utterance = new WavFixture(SAMPLE_RATE, 60).noise(200).speech(600, 6000).noise(200).toPcm();
+    }
+
+    @Before
+    public void setUp() {
+        Endpoints.reset();
+    }
+
+    @After
+    public void tearDown() {
+        BluemixSession.shutdown();
+        Endpoints.reset();
+    }
+
+    @Test
+    public void endpointsResolveLongestOverride() {
+
+        assertEquals(WitConfiguration.WIT_SPEECH_URL, Endpoints.resolve(WitConfiguration.WIT_SPEECH_URL));
+
+        Endpoints.override("https://api.wit.ai", "http://127.0.0.1:1000");
+        Endpoints.override("https://api.wit.ai/speech", "http://127.0.0.1:2000/wit");
+
+        assertEquals("http://127.0.0.1:2000/wit?v=20160526", Endpoints.resolve(WitConfiguration.WIT_SPEECH_URL));
+        assertEquals("http://127.0.0.1:1000/message", Endpoints.resolve("https://api.wit.ai/message"));
+        assertEquals("https://api.wit.ai.example/", Endpoints.resolve("https://api.wit.ai.example/"));
+    }
+
+    @Test
+    public void witChunkedUploadUnderLoad() throws Exception {
+
+        final MockHttpServer server = new MockHttpServer().route("/speech", "wit_speech.json", "application/json");
+        server.setFaults(new FaultProfile(30L, 30L, 0D, 1L));
+        server.start();
+
+        try {
+            server.standIn("https://api.wit.ai");
+
+            final int requests = 40;
+            final long then = System.nanoTime();
+            final long[] latencies = run(requests, new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    final long[] latency = new long[1];
+                    final String response = upload(latency);
+                    assertNotNull(response);
+                    assertTrue(response, response.contains(TRANSCRIPT));
+                    return latency[0];
+                }
+            });
+
+            report("wit chunked upload", latencies, System.nanoTime() - then);
+
+            assertEquals(requests, server.getRequestCount());
+            assertEquals((long) requests * utterance.length, server.getBytesReceived());
+            assertTrue(percentile(latencies, 50) >= 30L);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void witFailureInjection() throws Exception {
+
+        final MockHttpServer server = new MockHttpServer().route("/speech", "wit_speech.json", "application/json");
+        server.setFaults(new FaultProfile(0L, 0L, 0.3D, 2L));
+        server.start();
+
+        try {
+            server.standIn("https://api.wit.ai");
+
+            int succeeded = 0;
+            int failed = 0;
+
+            for (int i = 0; i < 30; i++) {
+                if (upload(new long[1]) != null) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+            }
+
+            System.out.println(String.format(Locale.US, "wit failure injection: %d succeeded, %d failed, "
+                    + "%d injected", succeeded, failed, server.getFailureCount()));
+
+            assertTrue(succeeded > 0);
+            assertTrue(failed > 0);
+            assertTrue(server.getFailureCount() >= failed);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void bluemixReusesConnection() throws Exception {
+
+        final MockBluemixServer server = new MockBluemixServer();
+        server.setFaults(new FaultProfile(20L, 20L, 0D, 3L));
+        server.startAndWait();
+
+        try {
+            server.standIn();
+
+            final URI uri = BluemixConfiguration.getSpeechURI("en-US_BroadbandModel");
+            assertNotNull(uri);
+            assertEquals("ws", uri.getScheme());
+
+            final HashMap<String, String> headers = new HashMap<>();
+            headers.put("Authorization", "Basic c3RhbmQ6aW4=");
+
+            final int utterances = 10;
+            final long[] latencies = new long[utterances];
+            final long then = System.nanoTime();
+
+            for (int i = 0; i < utterances; i++) {
+
+                final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+                final TrustAllBluemixWebSocketClient client = BluemixSession.acquire(uri, headers,
+                        new IWebSocketCallback() {
+                            @Override
+                            public void onOpen(final ServerHandshake handshakeData) {
+                            }
+
+                            @Override
+                            public void onMessage(final String message) {
+                                messages.add(message);
+                            }
+
+                            @Override
+                            public void onClose(final int code, final String reason, final boolean remote) {
+                            }
+
+                            @Override
+                            public void onError(final Exception ex) {
+                            }
+                        });
+
+                assertNotNull(client);
+
+                final JSONObject start = new JSONObject();
+                start.put("action", "start");
+                start.put("content-type", "audio/l16;rate=16000");
+                start.put("interim_results", true);
+                client.send(start.toString());
+
+                assertTrue(awaitMessage(messages, "listening").contains("listening"));
+
+                for (int offset = 0; offset < utterance.length; offset += FRAME_BYTES) {
+                    client.send(Arrays.copyOfRange(utterance, offset, Math.min(offset + FRAME_BYTES,
+                            utterance.length)));
+                }
+
+                final long sent = System.nanoTime();
+                final String result = awaitMessage(messages, TRANSCRIPT);
+                latencies[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sent);
+                assertTrue(result, result.contains(TRANSCRIPT));
+
+                BluemixSession.release(client, true);
+            }
+
+            report("bluemix websocket", latencies, System.nanoTime() - then);
+
+            assertEquals(utterances, server.getResultCount());
+            assertEquals(1, server.getConnectionCount());
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void googleStreamingUnderLoad() throws Exception {
+
+        final MockGoogleSpeechServer server = new MockGoogleSpeechServer();
+        server.setFaults(new FaultProfile(30L, 30L, 0D, 4L));
+        server.start();
+
+        final ManagedChannel channel = getGoogleChannel(server);
+
+        try {
+            final SpeechGrpc.SpeechStub stub = SpeechGrpc.newStub(channel);
+
+            final int streams = 20;
+            final long then = System.nanoTime();
+            final long[] latencies = run(streams, new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    final long[] latency = new long[1];
+                    final List<StreamingRecognizeResponse> responses = new ArrayList<>();
+                    final Throwable error = stream(stub, latency, responses);
+                    assertNull(error);
+                    assertTrue(getTranscript(responses, false) != null);
+                    assertEquals(TRANSCRIPT, getTranscript(responses, true));
+                    return latency[0];
+                }
+            });
+
+            report("google streaming", latencies, System.nanoTime() - then);
+
+            assertEquals(streams, server.getStreamCount());
+            assertEquals(streams, server.getResultCount());
+            assertTrue(percentile(latencies, 50) >= 30L);
+        } finally {
+            channel.shutdownNow();
+            server.close();
+        }
+    }
+
+    @Test
+    public void googleFailureInjection() throws Exception {
+
+        final MockGoogleSpeechServer server = new MockGoogleSpeechServer();
+        server.setFaults(new FaultProfile(0L, 0L, 1D, 5L));
+        server.start();
+
+        final ManagedChannel channel = getGoogleChannel(server);
+
+        try {
+            final Throwable error = stream(SpeechGrpc.newStub(channel), new long[1],
+                    new ArrayList<StreamingRecognizeResponse>());
+
+            assertNotNull(error);
+            assertEquals(Status.Code.UNAVAILABLE, Status.fromThrowable(error).getCode());
+            assertEquals(1, server.getFailureCount());
+        } finally {
+            channel.shutdownNow();
+            server.close();
+        }
+    }
+
+    /**
+     * Upload the utterance to the Wit speech endpoint, through the same uploader as the recognition
+     *
+     * @param latency set to the milliseconds from the end of the audio to the response
+     * @return the response, or null if the request failed
+     */
+    private static String upload(final long[] latency) {
+
+        final AudioUploader uploader = new AudioUploader(WitConfiguration.WIT_SPEECH_URL, BYTES_PER_SECOND);
+        uploader.setRequestProperty("Content-Type", "audio/raw;encoding=signed-integer;bits=16;rate=16000;"
+                + "endian=little");
+        uploader.setRequestProperty("Authorization", "Bearer stand-in");
+
+        try {
+            uploader.start();
+
+            for (int offset = 0; offset < utterance.length; offset += FRAME_BYTES) {
+                uploader.write(Arrays.copyOfRange(utterance, offset, Math.min(offset + FRAME_BYTES,
+                        utterance.length)), Math.min(FRAME_BYTES, utterance.length - offset));
+            }
+
+            final long then = System.nanoTime();
+
+            if (!uploader.finish()) {
+                return null;
+            }
+
+            final HttpURLConnection connection = uploader.getConnection();
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+
+            final InputStream inputStream = uploader.getInputStream();
+            final String response = UtilsString.streamToString(inputStream);
+            latency[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - then);
+            return response;
+
+        } catch (final Exception e) {
+            return null;
+        } finally {
+            uploader.close();
+        }
+    }
+
+    /**
+     * Open a channel to the Google Cloud Speech endpoint, resolved as the recognition does
+     */
+    private static ManagedChannel getGoogleChannel(final MockGoogleSpeechServer server) {
+        server.standIn();
+
+        final URI uri = URI.create(Endpoints.resolve(GoogleConfiguration.GOOGLE_CLOUD_SPEECH_URL));
+        assertEquals(server.getPort(), uri.getPort());
+
+        return OkHttpChannelBuilder.forAddress(uri.getHost(), uri.getPort()).usePlaintext(true).build();
+    }
+
+    /**
+     * Stream the utterance as the recognition does: the configuration, then the audio in capture
+     * sized requests
+     *
+     * @param latency   set to the milliseconds from the end of the audio to the final result
+     * @param responses the responses received
+     * @return the error the stream ended with, or null if it completed
+     */
+    private static Throwable stream(final SpeechGrpc.SpeechStub stub, final long[] latency,
+                                    final List<StreamingRecognizeResponse> responses) throws InterruptedException {
+
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        final StreamObserver<StreamingRecognizeRequest> requestObserver = stub.streamingRecognize(
+                new StreamObserver<StreamingRecognizeResponse>() {
+                    @Override
+                    public void onNext(final StreamingRecognizeResponse response) {
+                        synchronized (responses) {
+                            responses.add(response);
+                        }
+                    }
+
+                    @Override
+                    public void onError(final Throwable t) {
+                        error.set(t);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        done.countDown();
+                    }
+                });
+
+        requestObserver.onNext(StreamingRecognizeRequest.newBuilder().setStreamingConfig(
+                StreamingRecognitionConfig.newBuilder()
+                        .setConfig(RecognitionConfig.newBuilder()
+                                .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
+                                .setSampleRate(SAMPLE_RATE)
+                                .setLanguageCode("en-US"))
+                        .setInterimResults(true)
+                        .setSingleUtterance(true)).build());
+
+        for (int offset = 0; offset < utterance.length; offset += FRAME_BYTES) {
+            requestObserver.onNext(StreamingRecognizeRequest.newBuilder().setAudioContent(ByteString.copyFrom(
+                    utterance, offset, Math.min(FRAME_BYTES, utterance.length - offset))).build());
+        }
+
+        final long then = System.nanoTime();
+        requestObserver.onCompleted();
+
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        latency[0] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - then);
+        return error.get();
+    }
+
+    private static String getTranscript(final List<StreamingRecognizeResponse> responses, final boolean isFinal) {
+        synchronized (responses) {
+            for (final StreamingRecognizeResponse response : responses) {
+                if (response.getResultsCount() > 0 && response.getResults(0).getIsFinal() == isFinal) {
+                    return response.getResults(0).getAlternatives(0).getTranscript();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String awaitMessage(final BlockingQueue<String> messages, final String contains)
+            throws InterruptedException {
+
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        String message;
+
+        while ((message = messages.poll(Math.max(1, deadline - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS)) != null) {
+            if (message.contains(contains)) {
+                return message;
+            }
+        }
+
+        throw new AssertionError("no message containing: " + contains);
+    }
+
+    /**
+     * Run the task the given number of times across {@link #THREADS} threads
+     *
+     * @return the latencies returned by each run
+     */
+    private static long[] run(final int count, final Callable<Long> task) throws Exception {
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final AtomicBoolean failed = new AtomicBoolean();
+
+        try {
+            final List<Future<Long>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                futures.add(executor.submit(task));
+            }
+
+            final long[] latencies = new long[count];
+            for (int i = 0; i < count; i++) {
+                try {
+                    latencies[i] = futures.get(i).get(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (final Exception e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }
+
+            return latencies;
+        } finally {
+            if (failed.get()) {
+                executor.shutdownNow();
+            } else {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static long percentile(final long[] latencies, final int percentile) {
+        final long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    private static void report(final String name, final long[] latencies, final long elapsedNanos) {
+        System.out.println(String.format(Locale.US, "%s: %d in %d ms, %.1f per second, latency p50 %d p90 %d "
+                        + "p99 %d max %d ms", name, latencies.length, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                latencies.length * 1000000000D / elapsedNanos, percentile(latencies, 50),
+                percentile(latencies, 90), percentile(latencies, 99), percentile(latencies, 100)));
+    }
+}